@@ -0,0 +1,406 @@
+/*
+ * Copyright © 2017 Damien Vergnet
+ * 
+ * This file is part of Jenealogio.
+ *
+ * This program is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ * 
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ * 
+ * You should have received a copy of the GNU General Public License
+ * along with this program.  If not, see <http://www.gnu.org/licenses/>.
+ */
+package net.darmo_creations.jenealogio;
+
+import java.io.IOException;
+import java.io.PrintStream;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.Paths;
+import java.text.ParseException;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Locale;
+import java.util.Map;
+import java.util.Optional;
+import java.util.Set;
+import java.util.function.UnaryOperator;
+import java.util.stream.Collectors;
+import java.util.stream.IntStream;
+import java.util.stream.Stream;
+
+import net.darmo_creations.gui_framework.config.WritableConfig;
+import net.darmo_creations.jenealogio.dao.FamilyDao;
+import net.darmo_creations.jenealogio.dao.FileFormat;
+import net.darmo_creations.jenealogio.gui.components.display_panel.DisplayPanel;
+import net.darmo_creations.jenealogio.model.FamilyEdit;
+import net.darmo_creations.jenealogio.model.family.Family;
+import net.darmo_creations.jenealogio.model.family.FamilyMember;
+import net.darmo_creations.jenealogio.model.family.Relationship;
+import net.darmo_creations.jenealogio.util.Images;
+import net.darmo_creations.jenealogio.util.LongPointMap;
+import net.darmo_creations.utils.FilesUtil;
+import net.darmo_creations.utils.Nullable;
+import net.darmo_creations.utils.version.VersionException;
+
+/**
+ * Command-line mode. Tree files are processed without opening the main window so that it can run
+ * on servers. All files given are processed in parallel.
+ * 
+ * <pre>
+ * load [--ignore-version] &lt;files or directories&gt;
+ * validate [--ignore-version] &lt;files or directories&gt;
+ * stats [--ignore-version] &lt;files or directories&gt;
+ * convert [--ignore-version] &lt;json|binary|store&gt; &lt;output directory&gt; &lt;files or directories&gt;
+ * export [--ignore-version] &lt;png|svg|jpg|...&gt; &lt;output directory&gt; &lt;files or directories&gt;
+ * </pre>
+ * 
+ * Directories are searched recursively for tree files. Files written to an output directory keep
+ * their path relative to the directory they were found in. A file is not processed if its output
+ * is an input file or is also the output of another file.
+ * 
+ * @author Damien Vergnet
+ */
+public final class BatchMode {
+  private static final String USAGE = String.join("\n", //
+      "Usage:", //
+      "  load [--ignore-version] <files or directories>", //
+      "  validate [--ignore-version] <files or directories>", //
+      "  stats [--ignore-version] <files or directories>", //
+      "  convert [--ignore-version] <json|binary|store> <output directory> <files or directories>", //
+      "  export [--ignore-version] <png|svg|jpg|...> <output directory> <files or directories>");
+
+  /**
+   * Runs a command.
+   * 
+   * @param args the command and its arguments
+   * @return the exit status: 0 if all files were processed, 1 if some failed, 2 if the arguments
+   *         are invalid
+   */
+  public static int run(String[] args) {
+    return new BatchMode(System.out, System.err).execute(args);
+  }
+
+  private final PrintStream out, err;
+  private boolean ignoreVersion;
+
+  /**
+   * Creates a batch mode.
+   * 
+   * @param out the stream results are written to
+   * @param err the stream errors are written to
+   */
+  BatchMode(PrintStream out, PrintStream err) {
+    this.out = out;
+    this.err = err;
+  }
+
+  /**
+   * Runs a command.
+   * 
+   * @param args the command and its arguments
+   * @return the exit status
+   */
+  int execute(String[] args) {
+    List<String> arguments = new ArrayList<>(Arrays.asList(args));
+
+    if (arguments.isEmpty())
+      return usage();
+    String command = arguments.remove(0);
+    this.ignoreVersion = arguments.remove("--ignore-version");
+
+    try {
+      switch (command) {
+        case "load":
+          return process(arguments, this::load);
+        case "validate":
+          return process(arguments, this::validate);
+        case "stats":
+          return process(arguments, this::stats);
+        case "convert": {
+          if (arguments.size() < 3)
+            return usage();
+          FileFormat format;
+          try {
+            format = FileFormat.valueOf(arguments.remove(0).toUpperCase(Locale.ROOT));
+          }
+          catch (IllegalArgumentException ex) {
+            return usage();
+          }
+          Path outputDir = Paths.get(arguments.remove(0));
+          return process(arguments, outputDir::resolve, (file, output) -> convert(file, format, output));
+        }
+        case "export": {
+          if (arguments.size() < 3)
+            return usage();
+          String ext = arguments.remove(0).toLowerCase(Locale.ROOT);
+          Path outputDir = Paths.get(arguments.remove(0));
+          return process(arguments, path -> outputDir.resolve(withExtension(path, ext)), (file, output) -> export(file, ext, output));
+        }
+        default:
+          return usage();
+      }
+    }
+    catch (IOException ex) {
+      this.err.println(ex.getMessage());
+      return 1;
+    }
+  }
+
+  /**
+   * Runs an action on all tree files in parallel. Results are printed in the order of the files.
+   * 
+   * @param paths the files and directories
+   * @param action the action; returns the line to print
+   * @return the exit status
+   * @throws IOException if a directory could not be read
+   */
+  private int process(List<String> paths, Action action) throws IOException {
+    return process(paths, null, (file, output) -> action.run(file));
+  }
+
+  /**
+   * Runs an action that writes a file for each tree file in parallel. Results are printed in the
+   * order of the files. Files whose output is an input file or is shared with another file fail
+   * without running the action.
+   * 
+   * @param paths the files and directories
+   * @param outputs returns the output of a file from its path relative to the directory it was
+   *          found in; null if the action writes nothing
+   * @param action the action; returns the line to print
+   * @return the exit status
+   * @throws IOException if a directory could not be read
+   */
+  private int process(List<String> paths, @Nullable UnaryOperator<Path> outputs, WriteAction action) throws IOException {
+    if (paths.isEmpty())
+      return usage();
+
+    List<Path> files = new ArrayList<>();
+    List<Path> relativePaths = new ArrayList<>();
+    for (String p : paths) {
+      Path path = Paths.get(p);
+      if (Files.isDirectory(path)) {
+        try (Stream<Path> stream = Files.walk(path)) {
+          stream.filter(f -> Files.isRegularFile(f) && FilesUtil.hasExtension(f.toString(), Jenealogio.TREE_FILE_EXT)).sorted().forEach(
+              f -> {
+                files.add(f);
+                relativePaths.add(path.relativize(f));
+              });
+        }
+      }
+      else {
+        files.add(path);
+        relativePaths.add(path.getFileName());
+      }
+    }
+
+    List<Path> outputFiles = new ArrayList<>();
+    Map<Integer, String> conflicts = new HashMap<>();
+    if (outputs != null) {
+      Set<Path> inputs = files.stream().map(f -> f.toAbsolutePath().normalize()).collect(Collectors.toSet());
+      Map<Path, Path> written = new HashMap<>();
+      for (int i = 0; i < files.size(); i++) {
+        Path o = outputs.apply(relativePaths.get(i));
+        Path key = o.toAbsolutePath().normalize();
+        Path previous = written.putIfAbsent(key, files.get(i));
+
+        if (inputs.contains(key))
+          conflicts.put(i, "output " + o + " is an input file");
+        else if (previous != null)
+          conflicts.put(i, "output " + o + " is also the output of " + previous);
+        outputFiles.add(o);
+      }
+    }
+
+    List<Result> results = IntStream.range(0, files.size()).parallel().mapToObj(i -> {
+      Path file = files.get(i);
+      if (conflicts.containsKey(i))
+        return new Result(file + ": " + conflicts.get(i), false);
+      try {
+        return new Result(file + ": " + action.run(file, outputs != null ? outputFiles.get(i) : null), true);
+      }
+      catch (IOException | ParseException | VersionException | RuntimeException ex) {
+        return new Result(file + ": " + ex.getClass().getSimpleName() + (ex.getMessage() != null ? ": " + ex.getMessage() : ""), false);
+      }
+    }).collect(Collectors.toList());
+
+    boolean ok = true;
+    for (Result result : results) {
+      (result.success ? this.out : this.err).println(result.message);
+      ok &= result.success;
+    }
+
+    return ok ? 0 : 1;
+  }
+
+  private String load(Path file) throws IOException, ParseException, VersionException {
+    Family family = loadFile(file).getFamily();
+    return "loaded \"" + family.getName() + "\"";
+  }
+
+  private String validate(Path file) throws IOException, ParseException, VersionException {
+    List<String> errors = validate(loadFile(file));
+
+    if (!errors.isEmpty())
+      throw new ParseException(String.join("; ", errors), -1);
+    return "valid";
+  }
+
+  /**
+   * Checks the consistency of a tree.
+   * 
+   * @param edit the tree and its cards positions
+   * @return the errors found
+   */
+  static List<String> validate(FamilyEdit edit) {
+    Family family = edit.getFamily();
+    LongPointMap locations = edit.getLocations();
+    List<String> errors = new ArrayList<>();
+
+    for (FamilyMember member : family.getMembersView()) {
+      if (member.getId() < 0 || member.getId() >= family.getGlobalId())
+        errors.add("member " + member.getId() + " has an ID out of range");
+      if (!locations.containsKey(member.getId()))
+        errors.add("member " + member.getId() + " has no position");
+    }
+    for (Relationship relation : family.getRelationsView()) {
+      String name = "relation " + relation.getPartner1() + "-" + relation.getPartner2();
+      if (relation.getPartner1() == relation.getPartner2())
+        errors.add(name + " has the same member twice");
+      if (!family.getMember(relation.getPartner1()).isPresent() || !family.getMember(relation.getPartner2()).isPresent())
+        errors.add(name + " has a missing partner");
+      for (long child : relation.getChildrenIds()) {
+        if (!family.getMember(child).isPresent())
+          errors.add(name + " has a missing child " + child);
+        else if (relation.isInRelationship(child))
+          errors.add(name + " has a partner as child");
+      }
+    }
+
+    return errors;
+  }
+
+  private String stats(Path file) throws IOException, ParseException, VersionException {
+    Family family = loadFile(file).getFamily();
+    int men = 0, women = 0, dead = 0, portraits = 0;
+    int weddings = 0, children = 0;
+
+    for (FamilyMember member : family.getMembersView()) {
+      if (member.isMan())
+        men++;
+      else if (member.isWoman())
+        women++;
+      if (member.isDead())
+        dead++;
+      if (member.getPortrait().isPresent())
+        portraits++;
+    }
+    for (Relationship relation : family.getRelationsView()) {
+      if (relation.isWedding())
+        weddings++;
+      children += relation.getChildrenCount();
+    }
+
+    int members = family.getMembersView().size();
+    return String.format("\"%s\": %d members (%d men, %d women, %d unknown, %d dead, %d portraits), "
+        + "%d relations (%d weddings, %d children)", family.getName(), members, men, women, members - men - women, dead, portraits,
+        family.getRelationsView().size(), weddings, children);
+  }
+
+  private String convert(Path file, FileFormat format, Path output) throws IOException, ParseException, VersionException {
+    FamilyEdit edit = loadFile(file);
+
+    createParentDirectories(output);
+    FamilyDao.instance().save(output.toString(), edit, format);
+    return "converted to " + output;
+  }
+
+  private String export(Path file, String ext, Path output) throws IOException, ParseException, VersionException {
+    FamilyEdit edit = loadFile(file);
+
+    createParentDirectories(output);
+    DisplayPanel panel = new DisplayPanel(null);
+    panel.refresh(edit.getFamily(), edit.getLocations(), new WritableConfig());
+    if ("svg".equals(ext))
+      panel.exportToSvg(Files.newBufferedWriter(output, StandardCharsets.UTF_8));
+    else if ("png".equals(ext))
+      panel.exportToPng(Files.newOutputStream(output));
+    else
+      Images.writeImage(panel.exportToImage(), output.toString());
+    return "exported to " + output;
+  }
+
+  /**
+   * Replaces the extension of a tree file.
+   * 
+   * @param file the file
+   * @param ext the new extension
+   * @return the file with the new extension
+   */
+  private static Path withExtension(Path file, String ext) {
+    String name = file.getFileName().toString();
+    Optional<String> treeExt = FilesUtil.getExtension(name);
+    if (treeExt.isPresent())
+      name = name.substring(0, name.length() - treeExt.get().length() - 1);
+    return file.resolveSibling(name + "." + ext);
+  }
+
+  private static void createParentDirectories(Path file) throws IOException {
+    Path parent = file.toAbsolutePath().getParent();
+    if (parent != null)
+      Files.createDirectories(parent);
+  }
+
+  private FamilyEdit loadFile(Path file) throws IOException, ParseException, VersionException {
+    return FamilyDao.instance().load(file.toString(), this.ignoreVersion);
+  }
+
+  private int usage() {
+    this.err.println(USAGE);
+    return 2;
+  }
+
+  /**
+   * An action run on a file.
+   * 
+   * @author Damien Vergnet
+   */
+  @FunctionalInterface
+  private interface Action {
+    String run(Path file) throws IOException, ParseException, VersionException;
+  }
+
+  /**
+   * An action run on a file that writes another file.
+   * 
+   * @author Damien Vergnet
+   */
+  @FunctionalInterface
+  private interface WriteAction {
+    String run(Path file, @Nullable Path output) throws IOException, ParseException, VersionException;
+  }
+
+  /**
+   * The result of an action.
+   * 
+   * @author Damien Vergnet
+   */
+  private static class Result {
+    private final String message;
+    private final boolean success;
+
+    Result(String message, boolean success) {
+      this.message = message;
+      this.success = success;
+    }
+  }
+}
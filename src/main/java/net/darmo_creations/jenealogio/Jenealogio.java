@@ -27,6 +27,7 @@ import net.darmo_creations.gui_framework.config.Language;
 import net.darmo_creations.gui_framework.config.WritableConfig;
 import net.darmo_creations.jenealogio.config.ConfigTags;
 import net.darmo_creations.jenealogio.gui.MainFrame;
+import net.darmo_creations.jenealogio.model.family.Portrait;
 import net.darmo_creations.utils.version.Version;
 
 public class Jenealogio implements Application {
@@ -38,6 +39,8 @@ public class Jenealogio implements Application {
   public static final String TREE_FILE_EXT = "gtree";
   /** Image file extensions a tree can be exported into */
   public static final String[] IMAGE_FILES_EXTS = {"bmp", "png", "jpg", "jpeg", "gif"};
+  /** Vector image file extensions a tree can be exported into */
+  public static final String[] VECTOR_IMAGE_FILES_EXTS = {"svg"};
 
   @Override
   public void preInit() {
@@ -54,6 +57,9 @@ public class Jenealogio implements Application {
     WritableConfig.registerTag(ConfigTags.LINK_SELECTED_COLOR, Color.GREEN);
     WritableConfig.registerTag(ConfigTags.SELECTION_BORDER_COLOR, new Color(0, 120, 215, 128));
     WritableConfig.registerTag(ConfigTags.SELECTION_BACKGROUND_COLOR, new Color(185, 213, 241, 128));
+    WritableConfig.registerTag(ConfigTags.BINARY_FILES, false);
+    WritableConfig.registerTag(ConfigTags.JOURNALED_SAVES, false);
+    WritableConfig.registerTag(ConfigTags.IMAGE_CACHE_SIZE, (int) (Portrait.DEFAULT_CACHE_CAPACITY >> 20));
   }
 
   @Override
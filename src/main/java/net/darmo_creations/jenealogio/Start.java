@@ -39,6 +39,12 @@ public class Start {
     l.add(new Language("Esperanto", new Locale("eo")));
 
     ApplicationRegistry.setLanguages(l);
+    // Any argument starts the command-line mode, see BatchMode
+    if (args.length > 0) {
+      System.setProperty("java.awt.headless", "true");
+      new Jenealogio().preInit();
+      System.exit(BatchMode.run(args));
+    }
     ApplicationRegistry.registerApplication(Jenealogio.class);
     GuiFramework.run();
   }
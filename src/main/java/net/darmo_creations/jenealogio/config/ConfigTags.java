@@ -18,6 +18,9 @@
  */
 package net.darmo_creations.jenealogio.config;
 
+import net.darmo_creations.gui_framework.config.tags.BooleanTag;
+import net.darmo_creations.gui_framework.config.tags.IntegerTag;
+
 public class ConfigTags {
   public static final ColorTag CARD_BORDER_COLOR = new ColorTag("card_border_color");
   public static final ColorTag CARD_SELECTED_BORDER_COLOR = new ColorTag("card_selected_border_color");
@@ -33,6 +36,13 @@ public class ConfigTags {
   public static final ColorTag SELECTION_BORDER_COLOR = new ColorTag("selection_border_color");
   public static final ColorTag SELECTION_BACKGROUND_COLOR = new ColorTag("selection_background_color");
 
+  /** If true, trees are saved in the binary format */
+  public static final BooleanTag BINARY_FILES = new BooleanTag("binary_files");
+  /** If true, only the changes are written when a tree is saved */
+  public static final BooleanTag JOURNALED_SAVES = new BooleanTag("journaled_saves");
+  /** Maximum size of decoded portraits kept in memory, in MiB */
+  public static final IntegerTag IMAGE_CACHE_SIZE = new IntegerTag("image_cache_size");
+
   /** This array contains all color tags */
   public static final ColorTag[] COLORS_TAGS;
 
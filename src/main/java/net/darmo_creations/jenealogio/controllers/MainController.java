@@ -19,19 +19,22 @@
 package net.darmo_creations.jenealogio.controllers;
 
 import java.awt.Component;
-import java.awt.Point;
 import java.io.File;
 import java.io.IOException;
+import java.nio.charset.StandardCharsets;
 import java.nio.file.Files;
+import java.nio.file.Path;
 import java.nio.file.Paths;
 import java.text.ParseException;
 import java.util.ArrayList;
 import java.util.List;
 import java.util.Map;
 import java.util.Optional;
+import java.util.concurrent.ExecutionException;
 import java.util.stream.Collectors;
 
 import javax.swing.JOptionPane;
+import javax.swing.SwingWorker;
 
 import net.darmo_creations.gui_framework.ApplicationRegistry;
 import net.darmo_creations.gui_framework.config.WritableConfig;
@@ -41,6 +44,7 @@ import net.darmo_creations.jenealogio.Jenealogio;
 import net.darmo_creations.jenealogio.config.ColorTag;
 import net.darmo_creations.jenealogio.config.ConfigTags;
 import net.darmo_creations.jenealogio.dao.FamilyDao;
+import net.darmo_creations.jenealogio.dao.FileFormat;
 import net.darmo_creations.jenealogio.events.CardDragEvent;
 import net.darmo_creations.jenealogio.events.CardEvent;
 import net.darmo_creations.jenealogio.events.CardsSelectionEvent;
@@ -49,10 +53,14 @@ import net.darmo_creations.jenealogio.events.LinkEvent;
 import net.darmo_creations.jenealogio.gui.MainFrame;
 import net.darmo_creations.jenealogio.gui.components.display_panel.DisplayPanel;
 import net.darmo_creations.jenealogio.model.FamilyEdit;
+import net.darmo_creations.jenealogio.model.TreeLayout;
 import net.darmo_creations.jenealogio.model.family.Family;
 import net.darmo_creations.jenealogio.model.family.FamilyMember;
+import net.darmo_creations.jenealogio.model.family.Portrait;
 import net.darmo_creations.jenealogio.model.family.Relationship;
 import net.darmo_creations.jenealogio.util.Images;
+import net.darmo_creations.jenealogio.util.LongObjectMap;
+import net.darmo_creations.jenealogio.util.LongPointMap;
 import net.darmo_creations.utils.FilesUtil;
 import net.darmo_creations.utils.I18n;
 import net.darmo_creations.utils.UndoRedoManager;
@@ -92,11 +100,16 @@ public class MainController extends ApplicationController<MainFrame> implements
 
   /** Undo/redo manager */
   private UndoRedoManager<FamilyEdit> undoRedoManager;
+  /** The edit the undo/redo manager currently points to */
+  private FamilyEdit currentEdit;
+  /** Computes the automatic layout, null if none is running */
+  private SwingWorker<LongPointMap, Void> layoutWorker;
 
   public MainController(MainFrame frame, WritableConfig config) {
     super(frame, config);
     this.familyDao = FamilyDao.instance();
     this.lastSavedEdit = null;
+    this.currentEdit = null;
     this.selectedCards = new ArrayList<>();
 
     this.undoRedoManager = new UndoRedoManager<>();
@@ -108,6 +121,7 @@ public class MainController extends ApplicationController<MainFrame> implements
   @Override
   public void init() {
     super.init();
+    Portrait.setCacheCapacity(Math.max(0, this.config.getValue(ConfigTags.IMAGE_CACHE_SIZE)) * (1L << 20));
     this.fileOpen = false;
     this.alreadySaved = false;
     this.saved = true;
@@ -189,6 +203,9 @@ public class MainController extends ApplicationController<MainFrame> implements
         case EXPORT_IMAGE:
           exportImage();
           break;
+        case AUTO_LAYOUT:
+          autoLayout();
+          break;
       }
     }
   }
@@ -367,6 +384,7 @@ public class MainController extends ApplicationController<MainFrame> implements
         this.saved = false;
         this.frame.resetDisplay();
         this.lastSavedEdit = new FamilyEdit(this.family, this.frame.getCardsPositions());
+        this.currentEdit = this.lastSavedEdit;
         addEdit();
         updateFrameMenus();
       }
@@ -423,12 +441,15 @@ public class MainController extends ApplicationController<MainFrame> implements
       this.lastSavedEdit = this.familyDao.load(fileName, ignoreVersion);
       this.family = this.lastSavedEdit.getFamily();
       this.undoRedoManager.addEdit(this.lastSavedEdit);
+      this.currentEdit = this.lastSavedEdit;
       this.fileName = fileName;
       this.fileOpen = true;
       this.alreadySaved = true;
       this.saved = true;
       this.frame.resetDisplay();
       this.frame.refreshDisplay(this.family, this.lastSavedEdit.getLocations(), this.config);
+      // Cards are at the loaded positions, the next edit only needs the ones moved afterwards.
+      this.frame.getMovedCardsPositions();
     }
     catch (VersionException ex) {
       int choice = this.frame.showConfirmDialog(I18n.getLocalizedString("popup.version_warning.text"));
@@ -469,7 +490,7 @@ public class MainController extends ApplicationController<MainFrame> implements
         return true;
     }
 
-    return save();
+    return save(true);
   }
 
   /**
@@ -478,13 +499,35 @@ public class MainController extends ApplicationController<MainFrame> implements
    * @return true if and only if the save was successful
    */
   private boolean save() {
+    return save(false);
+  }
+
+  /**
+   * Saves the current file. If journaled saves are enabled and the file is the one that was last
+   * loaded or saved, only the changes are written. An existing file keeps its format, the
+   * 'binary_files' option only applies to new files and to "save as".
+   * 
+   * @param newFile true if the file is not the one that was last loaded or saved
+   * @return true if and only if the save was successful
+   */
+  private boolean save(boolean newFile) {
     if (this.fileName == null)
       return true;
 
     try {
-      FamilyEdit newSave = new FamilyEdit(this.family, this.frame.getCardsPositions());
+      FamilyEdit newSave = new FamilyEdit(this.currentEdit, this.family, this.frame.getMovedCardsPositions());
+      this.currentEdit = newSave;
 
-      this.familyDao.save(this.fileName, newSave);
+      Path path = Paths.get(this.fileName);
+      FileFormat format;
+      if (!newFile && this.alreadySaved && Files.exists(path))
+        format = FamilyDao.formatOf(path);
+      else
+        format = this.config.getValue(ConfigTags.BINARY_FILES) ? FileFormat.BINARY : FileFormat.JSON;
+      if (!newFile && this.alreadySaved && this.config.getValue(ConfigTags.JOURNALED_SAVES))
+        this.familyDao.saveIncremental(this.fileName, this.lastSavedEdit, newSave, format);
+      else
+        this.familyDao.save(this.fileName, newSave, format);
       this.lastSavedEdit = newSave;
 
       if (!this.alreadySaved)
@@ -508,7 +551,7 @@ public class MainController extends ApplicationController<MainFrame> implements
     if (member.isPresent()) {
       this.saved = false;
       this.family.addMember(member.get());
-      Map<Long, Point> points = this.frame.getCardsPositions();
+      LongPointMap points = new LongPointMap();
       points.put(this.family.getGlobalId() - 1, this.frame.getDisplayMiddlePoint());
       this.frame.refreshDisplay(this.family, points, this.config);
       addEdit();
@@ -626,10 +669,54 @@ public class MainController extends ApplicationController<MainFrame> implements
       }
 
       if (this.fileOpen)
-        refreshFrame();
+        this.frame.repaintDisplay();
     }
   }
 
+  /**
+   * Arranges all cards by generation. The layout of a big tree takes a while, it is computed in a
+   * background thread from a copy of the family and cards' widths, then applied if the tree has not
+   * been modified in the meantime.
+   */
+  private void autoLayout() {
+    if (this.layoutWorker != null)
+      this.layoutWorker.cancel(false);
+
+    Family family = this.family.clone();
+    LongObjectMap<Integer> widths = new LongObjectMap<>(family.getMembersView().size());
+    for (FamilyMember member : family.getMembersView())
+      widths.put(member.getId(), this.frame.getCardWidth(member.getId()));
+    FamilyEdit edit = this.currentEdit;
+
+    this.layoutWorker = new SwingWorker<LongPointMap, Void>() {
+      @Override
+      protected LongPointMap doInBackground() throws Exception {
+        return TreeLayout.layout(family, widths::get);
+      }
+
+      @Override
+      protected void done() {
+        if (MainController.this.layoutWorker == this)
+          MainController.this.layoutWorker = null;
+        // Positions computed from an older tree are dropped.
+        if (isCancelled() || !MainController.this.fileOpen || MainController.this.currentEdit != edit)
+          return;
+
+        try {
+          LongPointMap points = get();
+          MainController.this.saved = false;
+          MainController.this.frame.refreshDisplay(MainController.this.family, points, MainController.this.config);
+          addEdit();
+          updateFrameMenus();
+        }
+        catch (InterruptedException | ExecutionException ex) {
+          MainController.this.frame.showErrorDialog(I18n.getLocalizedString("popup.auto_layout_error.text"));
+        }
+      }
+    };
+    this.layoutWorker.execute();
+  }
+
   /**
    * Exports the tree as an image.
    */
@@ -657,7 +744,13 @@ public class MainController extends ApplicationController<MainFrame> implements
     }
 
     try {
-      Images.writeImage(this.frame.exportToImage(), path);
+      // PNG images are streamed, other raster formats need the whole image.
+      if (FilesUtil.hasExtension(new File(path), "svg"))
+        this.frame.exportToSvg(Files.newBufferedWriter(Paths.get(path), StandardCharsets.UTF_8));
+      else if (FilesUtil.hasExtension(new File(path), "png"))
+        this.frame.exportToPng(Files.newOutputStream(Paths.get(path)));
+      else
+        Images.writeImage(this.frame.exportToImage(), path);
     }
     catch (IOException ex) {
       this.frame.showErrorDialog(I18n.getLocalizedString("popup.image_export_error.text"));
@@ -692,10 +785,12 @@ public class MainController extends ApplicationController<MainFrame> implements
   }
 
   /**
-   * Adds the current family object (after cloning it) to the undo manager.
+   * Adds the current family object (after cloning it) to the undo manager. The new edit shares
+   * unchanged data with the current one and only records the cards moved since.
    */
   private void addEdit() {
-    this.undoRedoManager.addEdit(new FamilyEdit(this.family, this.frame.getCardsPositions()));
+    this.currentEdit = new FamilyEdit(this.currentEdit, this.family, this.frame.getMovedCardsPositions());
+    this.undoRedoManager.addEdit(this.currentEdit);
   }
 
   /**
@@ -723,12 +818,14 @@ public class MainController extends ApplicationController<MainFrame> implements
    */
   private void undoOrRedo_() {
     FamilyEdit edit = this.undoRedoManager.getEdit();
+    this.currentEdit = edit;
     if (edit.equals(this.lastSavedEdit))
       this.saved = true;
     else
       this.saved = false;
     this.family = edit.getFamily();
     this.frame.refreshDisplay(this.family, edit.getLocations(), this.config);
+    this.frame.getMovedCardsPositions();
     updateFrameMenus();
   }
 
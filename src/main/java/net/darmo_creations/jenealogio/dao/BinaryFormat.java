@@ -0,0 +1,535 @@
+/*
+ * Copyright © 2017 Damien Vergnet
+ *
+ * This file is part of Jenealogio.
+ *
+ * This program is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with this program.  If not, see <http://www.gnu.org/licenses/>.
+ */
+package net.darmo_creations.jenealogio.dao;
+
+import java.awt.Point;
+import java.io.BufferedInputStream;
+import java.io.BufferedOutputStream;
+import java.io.DataInputStream;
+import java.io.DataOutputStream;
+import java.io.EOFException;
+import java.io.FilterInputStream;
+import java.io.FilterOutputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.nio.ByteBuffer;
+import java.nio.channels.Channels;
+import java.nio.channels.FileChannel;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardOpenOption;
+import java.text.ParseException;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Map;
+import java.util.Optional;
+import java.util.Set;
+
+import net.darmo_creations.jenealogio.Jenealogio;
+import net.darmo_creations.jenealogio.model.FamilyEdit;
+import net.darmo_creations.jenealogio.model.date.Date;
+import net.darmo_creations.jenealogio.model.family.Family;
+import net.darmo_creations.jenealogio.model.family.FamilyMember;
+import net.darmo_creations.jenealogio.model.family.Gender;
+import net.darmo_creations.jenealogio.model.family.Portrait;
+import net.darmo_creations.jenealogio.model.family.Relationship;
+import net.darmo_creations.jenealogio.util.LongPointMap;
+import net.darmo_creations.utils.version.Version;
+import net.darmo_creations.utils.version.VersionException;
+
+/**
+ * Reads and writes trees in the binary format. A binary file is made of:
+ * <ul>
+ * <li>a header: magic number, format version, app version, global ID and family name;</li>
+ * <li>the records section: all members then all relations;</li>
+ * <li>the blobs section: portraits, as encoded image bytes, each one preceded by its length;</li>
+ * <li>the blobs index: the number of blobs then the offset of each blob in the file;</li>
+ * <li>the offset of the blobs index, as the last 8 bytes of the file.</li>
+ * </ul>
+ * Members only reference portraits by their index so that records can be read without reading
+ * portraits. All numbers are big-endian. Every length and count read from a file is checked against
+ * the number of bytes left before anything is allocated.
+ * 
+ * @author Damien Vergnet
+ */
+final class BinaryFormat {
+  /** First bytes of binary files; the first one cannot start a JSON file */
+  private static final byte[] MAGIC = {(byte) 0x89, 'J', 'G', 'T'};
+  /** Version of the binary format */
+  private static final int FORMAT_VERSION = 2;
+
+  /** Size of a member without any string */
+  private static final int MIN_MEMBER_SIZE = Long.BYTES + 13 * Integer.BYTES + 1;
+  /** Size of a relation without any string nor child */
+  private static final int MIN_RELATION_SIZE = 2 * Long.BYTES + 2 + 4 * Integer.BYTES;
+  /** Size of a child that was not adopted */
+  private static final int MIN_CHILD_SIZE = Long.BYTES + 1;
+
+  /**
+   * Tells if the given file is in the binary format.
+   * 
+   * @param file the file
+   * @return true if the file starts with the magic number
+   * @throws IOException if an I/O error occured
+   */
+  static boolean isBinary(Path file) throws IOException {
+    byte[] bytes = new byte[MAGIC.length];
+
+    try (InputStream in = Files.newInputStream(file)) {
+      int n = 0;
+      int read;
+      while (n < bytes.length && (read = in.read(bytes, n, bytes.length - n)) >= 0)
+        n += read;
+      return n == bytes.length && Arrays.equals(bytes, MAGIC);
+    }
+  }
+
+  /**
+   * Loads a family from a binary file.
+   * 
+   * @param file the file
+   * @param ignoreVersion if true, any version mismatch will be ignored
+   * @return the loaded family and positions
+   * @throws IOException if an I/O error occured
+   * @throws ParseException if the file is corrupted
+   * @throws VersionException if file's version is more recent than the current version
+   */
+  static FamilyEdit load(Path file, boolean ignoreVersion) throws IOException, ParseException, VersionException {
+    try (FileChannel channel = FileChannel.open(file, StandardOpenOption.READ)) {
+      BoundedInputStream in = new BoundedInputStream(new BufferedInputStream(Channels.newInputStream(channel)), channel.size());
+
+      byte[] magic = new byte[MAGIC.length];
+      in.readFully(magic);
+      if (!Arrays.equals(magic, MAGIC) || in.readInt() != FORMAT_VERSION)
+        throw new ParseException("corrupted file", -1);
+      Version version = new Version(in.readInt());
+      if (!ignoreVersion && version.after(Jenealogio.CURRENT_VERSION))
+        throw new VersionException(Jenealogio.CURRENT_VERSION, version);
+      long globalId = in.readLong();
+      String name = readString(in);
+
+      int membersNb = checkCount(in, in.readInt(), MIN_MEMBER_SIZE);
+      List<MemberRecord> records = new ArrayList<>(membersNb);
+      LongPointMap locations = new LongPointMap(membersNb);
+      for (int i = 0; i < membersNb; i++) {
+        MemberRecord record = readMember(in);
+        records.add(record);
+        locations.put(record.id, record.x, record.y);
+      }
+
+      int relationsNb = checkCount(in, in.readInt(), MIN_RELATION_SIZE);
+      Set<Relationship> relations = new HashSet<>();
+      for (int i = 0; i < relationsNb; i++)
+        relations.add(readRelation(in));
+
+      long[] offsets = readBlobsIndex(channel);
+      Set<FamilyMember> members = new HashSet<>();
+      for (MemberRecord record : records) {
+        Portrait portrait = null;
+        if (record.blob >= 0)
+          portrait = new Portrait(readBlob(channel, offsets[record.blob]));
+        members.add(record.toMember(portrait));
+      }
+
+      return new FamilyEdit(new Family(globalId, name, members, relations), locations);
+    }
+    catch (EOFException | IndexOutOfBoundsException | IllegalArgumentException | NullPointerException ex) {
+      throw new ParseException("corrupted file", -1);
+    }
+  }
+
+  /**
+   * Saves a family to a binary file.
+   * 
+   * @param file the file
+   * @param edit the family and positions
+   * @throws IOException if an I/O error occured
+   */
+  static void save(Path file, FamilyEdit edit) throws IOException {
+    Family family = edit.getFamily();
+    LongPointMap locations = edit.getLocations();
+
+    try (CountingOutputStream counter = new CountingOutputStream(new BufferedOutputStream(Files.newOutputStream(file)))) {
+      DataOutputStream out = new DataOutputStream(counter);
+      List<FamilyMember> withImage = new ArrayList<>();
+
+      out.write(MAGIC);
+      out.writeInt(FORMAT_VERSION);
+      out.writeInt(Jenealogio.CURRENT_VERSION.getFullValue());
+      out.writeLong(family.getGlobalId());
+      writeString(out, family.getName());
+
+      out.writeInt(family.getMembersView().size());
+      for (FamilyMember m : family.getMembersView()) {
+        int blob = -1;
+        if (m.getPortrait().isPresent()) {
+          blob = withImage.size();
+          withImage.add(m);
+        }
+        writeMember(out, m, locations.get(m.getId()), blob);
+      }
+
+      out.writeInt(family.getRelationsView().size());
+      for (Relationship r : family.getRelationsView())
+        writeRelation(out, r);
+
+      long[] offsets = new long[withImage.size()];
+      for (int i = 0; i < offsets.length; i++) {
+        byte[] bytes = withImage.get(i).getPortrait().get().getData();
+        offsets[i] = counter.getCount();
+        out.writeInt(bytes.length);
+        out.write(bytes);
+      }
+
+      long indexOffset = counter.getCount();
+      out.writeInt(offsets.length);
+      for (long offset : offsets)
+        out.writeLong(offset);
+      out.writeLong(indexOffset);
+      out.flush();
+    }
+  }
+
+  /**
+   * Reads the blobs index at the end of the file.
+   * 
+   * @param channel the file
+   * @return the offset of each blob
+   * @throws IOException if an I/O error occured
+   * @throws ParseException if the index does not fit in the file
+   */
+  private static long[] readBlobsIndex(FileChannel channel) throws IOException, ParseException {
+    long size = channel.size();
+    ByteBuffer buffer = ByteBuffer.allocate(Long.BYTES);
+    readFully(channel, buffer, size - Long.BYTES);
+    long indexOffset = buffer.getLong(0);
+    if (indexOffset < 0 || indexOffset > size - Integer.BYTES - Long.BYTES)
+      throw new ParseException("blobs index out of file", -1);
+
+    buffer = ByteBuffer.allocate(Integer.BYTES);
+    readFully(channel, buffer, indexOffset);
+    int blobsNb = buffer.getInt(0);
+    if (blobsNb < 0 || blobsNb > (size - indexOffset - Integer.BYTES - Long.BYTES) / Long.BYTES)
+      throw new ParseException("wrong blobs number", -1);
+
+    buffer = ByteBuffer.allocate(blobsNb * Long.BYTES);
+    readFully(channel, buffer, indexOffset + Integer.BYTES);
+    buffer.flip();
+    long[] offsets = new long[blobsNb];
+    buffer.asLongBuffer().get(offsets);
+
+    return offsets;
+  }
+
+  /**
+   * Reads the blob at the given offset.
+   * 
+   * @param channel the file
+   * @param offset blob's offset
+   * @return blob's bytes
+   * @throws IOException if an I/O error occured
+   * @throws ParseException if the blob does not fit in the file
+   */
+  private static byte[] readBlob(FileChannel channel, long offset) throws IOException, ParseException {
+    ByteBuffer buffer = ByteBuffer.allocate(Integer.BYTES);
+    readFully(channel, buffer, offset);
+    int length = buffer.getInt(0);
+    if (length < 0 || length > channel.size() - offset - Integer.BYTES)
+      throw new ParseException("wrong blob length", -1);
+
+    buffer = ByteBuffer.allocate(length);
+    readFully(channel, buffer, offset + Integer.BYTES);
+
+    return buffer.array();
+  }
+
+  /**
+   * Fills the given buffer with bytes from the channel, starting at the given position.
+   * 
+   * @throws EOFException if the end of the file is reached before the buffer is full
+   */
+  private static void readFully(FileChannel channel, ByteBuffer buffer, long position) throws IOException {
+    if (position < 0)
+      throw new IllegalArgumentException("negative position");
+    while (buffer.hasRemaining()) {
+      int n = channel.read(buffer, position + buffer.position());
+      if (n < 0)
+        throw new EOFException();
+    }
+  }
+
+  static void writeMember(DataOutputStream out, FamilyMember m, Point location, int blob) throws IOException {
+    out.writeLong(m.getId());
+    writeString(out, m.getFamilyName().orElse(null));
+    writeString(out, m.getUseName().orElse(null));
+    writeString(out, m.getFirstName().orElse(null));
+    writeString(out, m.getOtherNames().orElse(null));
+    writeString(out, m.getGender().getCode());
+    writeDate(out, m.getBirthDate());
+    writeString(out, m.getBirthLocation().orElse(null));
+    writeDate(out, m.getDeathDate());
+    writeString(out, m.getDeathLocation().orElse(null));
+    out.writeBoolean(m.isDead());
+    writeString(out, m.getComment().orElse(null));
+    out.writeInt(location.x);
+    out.writeInt(location.y);
+    out.writeInt(blob);
+  }
+
+  static MemberRecord readMember(BoundedInputStream in) throws IOException, ParseException {
+    MemberRecord record = new MemberRecord();
+
+    record.id = in.readLong();
+    record.familyName = readString(in);
+    record.useName = readString(in);
+    record.firstName = readString(in);
+    record.otherNames = readString(in);
+    record.gender = Gender.fromCode(readString(in));
+    record.birthDate = readDate(in);
+    record.birthLocation = readString(in);
+    record.deathDate = readDate(in);
+    record.deathLocation = readString(in);
+    record.dead = in.readBoolean();
+    record.comment = readString(in);
+    record.x = in.readInt();
+    record.y = in.readInt();
+    record.blob = in.readInt();
+
+    return record;
+  }
+
+  static void writeRelation(DataOutputStream out, Relationship r) throws IOException {
+    out.writeLong(r.getPartner1());
+    out.writeLong(r.getPartner2());
+    out.writeBoolean(r.isWedding());
+    out.writeBoolean(r.hasEnded());
+    writeDate(out, r.getDate());
+    writeString(out, r.getLocation().orElse(null));
+    writeDate(out, r.getEndDate());
+    long[] children = r.getChildrenIds();
+    out.writeInt(children.length);
+    for (long child : children) {
+      out.writeLong(child);
+      out.writeBoolean(r.isAdopted(child));
+      if (r.isAdopted(child))
+        writeDate(out, r.getAdoptionDate(child));
+    }
+  }
+
+  static Relationship readRelation(BoundedInputStream in) throws IOException, ParseException {
+    long partner1 = in.readLong();
+    long partner2 = in.readLong();
+    boolean isWedding = in.readBoolean();
+    boolean hasEnded = in.readBoolean();
+    Date date = readDate(in);
+    String location = readString(in);
+    Date endDate = readDate(in);
+    int childrenNb = checkCount(in, in.readInt(), MIN_CHILD_SIZE);
+    Set<Long> children = new HashSet<>();
+    Map<Long, Date> adoptions = new HashMap<>();
+
+    for (int i = 0; i < childrenNb; i++) {
+      long child = in.readLong();
+      children.add(child);
+      if (in.readBoolean())
+        adoptions.put(child, readDate(in));
+    }
+
+    return new Relationship(date, location, isWedding, hasEnded, endDate, partner1, partner2, children, adoptions);
+  }
+
+  /**
+   * Writes a date as its packed value (see {@link Date#toInt()}), 0 if there is none.
+   */
+  private static void writeDate(DataOutputStream out, Optional<Date> optDate) throws IOException {
+    out.writeInt(optDate.map(Date::toInt).orElse(0));
+  }
+
+  /**
+   * Reads a date written by {@link #writeDate(DataOutputStream, Optional)}.
+   * 
+   * @throws IllegalArgumentException if the value is not a valid date
+   */
+  private static Date readDate(DataInputStream in) throws IOException {
+    int packed = in.readInt();
+    return packed != 0 ? Date.fromInt(packed) : null;
+  }
+
+  /**
+   * Writes a string as its length in bytes (-1 for null) followed by its UTF-8 bytes.
+   */
+  static void writeString(DataOutputStream out, String s) throws IOException {
+    if (s == null) {
+      out.writeInt(-1);
+    }
+    else {
+      byte[] bytes = s.getBytes(StandardCharsets.UTF_8);
+      out.writeInt(bytes.length);
+      out.write(bytes);
+    }
+  }
+
+  static String readString(BoundedInputStream in) throws IOException, ParseException {
+    int length = in.readInt();
+
+    if (length < 0)
+      return null;
+    byte[] bytes = new byte[checkCount(in, length, 1)];
+    in.readFully(bytes);
+
+    return new String(bytes, StandardCharsets.UTF_8);
+  }
+
+  /**
+   * Checks a number of items read from a stream against the number of bytes left in it.
+   * 
+   * @param in the stream
+   * @param n the number of items
+   * @param minSize the smallest size of an item in bytes
+   * @return the number of items
+   * @throws ParseException if the number is negative or the items cannot fit in the bytes left
+   */
+  static int checkCount(BoundedInputStream in, int n, int minSize) throws ParseException {
+    if (n < 0 || (long) n * minSize > in.remaining())
+      throw new ParseException("wrong length: " + n, -1);
+    return n;
+  }
+
+  /**
+   * A member read from the records section, waiting for its portrait.
+   * 
+   * @author Damien Vergnet
+   */
+  static class MemberRecord {
+    long id;
+    String familyName, useName, firstName, otherNames;
+    Gender gender;
+    Date birthDate, deathDate;
+    String birthLocation, deathLocation;
+    boolean dead;
+    String comment;
+    int x, y;
+    int blob;
+
+    FamilyMember toMember(Portrait portrait) {
+      return new FamilyMember(this.id, portrait, this.familyName, this.useName, this.firstName, this.otherNames, this.gender,
+          this.birthDate, this.birthLocation, this.deathDate, this.deathLocation, this.dead, this.comment);
+    }
+  }
+
+  /**
+   * A data input stream that knows how many bytes are left to read.
+   * 
+   * @author Damien Vergnet
+   */
+  static class BoundedInputStream extends DataInputStream {
+    /**
+     * Creates a stream.
+     * 
+     * @param in the underlying stream
+     * @param size the number of bytes in the underlying stream
+     */
+    BoundedInputStream(InputStream in, long size) {
+      super(new CountingInputStream(in, size));
+    }
+
+    /**
+     * @return the number of bytes left to read
+     */
+    long remaining() {
+      return ((CountingInputStream) this.in).remaining;
+    }
+  }
+
+  /**
+   * An input stream that counts down the bytes read from it.
+   * 
+   * @author Damien Vergnet
+   */
+  private static class CountingInputStream extends FilterInputStream {
+    private long remaining;
+
+    CountingInputStream(InputStream in, long size) {
+      super(in);
+      this.remaining = size;
+    }
+
+    @Override
+    public int read() throws IOException {
+      int b = this.in.read();
+      if (b >= 0)
+        this.remaining--;
+      return b;
+    }
+
+    @Override
+    public int read(byte[] b, int off, int len) throws IOException {
+      int n = this.in.read(b, off, len);
+      if (n > 0)
+        this.remaining -= n;
+      return n;
+    }
+
+    @Override
+    public long skip(long n) throws IOException {
+      long skipped = this.in.skip(n);
+      this.remaining -= skipped;
+      return skipped;
+    }
+  }
+
+  /**
+   * An output stream that counts the bytes written to it.
+   * 
+   * @author Damien Vergnet
+   */
+  private static class CountingOutputStream extends FilterOutputStream {
+    private long count;
+
+    CountingOutputStream(OutputStream out) {
+      super(out);
+    }
+
+    /**
+     * @return the number of bytes written so far
+     */
+    long getCount() {
+      return this.count;
+    }
+
+    @Override
+    public void write(int b) throws IOException {
+      this.out.write(b);
+      this.count++;
+    }
+
+    @Override
+    public void write(byte[] b, int off, int len) throws IOException {
+      this.out.write(b, off, len);
+      this.count += len;
+    }
+  }
+
+  private BinaryFormat() {}
+}
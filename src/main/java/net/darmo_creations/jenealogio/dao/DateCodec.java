@@ -0,0 +1,141 @@
+/*
+ * Copyright © 2017 Damien Vergnet
+ *
+ * This file is part of Jenealogio.
+ *
+ * This program is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with this program.  If not, see <http://www.gnu.org/licenses/>.
+ */
+package net.darmo_creations.jenealogio.dao;
+
+import java.time.format.DateTimeParseException;
+
+import net.darmo_creations.jenealogio.model.date.Date;
+
+/**
+ * Reads and writes dates in the JSON format: "YYYY-MM-DD" where each unknown part is replaced by
+ * question marks. Dates are parsed and written character by character, without regular expressions
+ * nor {@link String#format(String, Object...)}, as a big tree holds hundreds of thousands of them.
+ * <p>
+ * This is the only date parser of the application and it is strict: as saved dates are always
+ * valid, a part out of range (a 13th month, February 30th or a 32nd day even if the month is
+ * unknown) means the file is corrupted and is rejected instead of being rolled over like in
+ * {@link net.darmo_creations.jenealogio.model.date.DateBuilder DateBuilder}.
+ * </p>
+ * 
+ * @author Damien Vergnet
+ */
+final class DateCodec {
+  /** The length of a formatted date */
+  static final int LENGTH = 10;
+
+  /**
+   * Parses a date.
+   * 
+   * @param s the text
+   * @return the date or null if the text is empty or all parts are unknown
+   * @throws DateTimeParseException if the date was wrongly formatted or a part is out of range
+   */
+  static Date parse(CharSequence s) throws DateTimeParseException {
+    if (s.length() == 0)
+      return null;
+    if (s.length() != LENGTH || s.charAt(4) != '-' || s.charAt(7) != '-')
+      throw new DateTimeParseException("wrong date format", s, 0);
+
+    int year = readPart(s, 0, 4);
+    int month = readPart(s, 5, 2);
+    int day = readPart(s, 8, 2);
+
+    if (year == Date.UNKNOWN && month == Date.UNKNOWN && day == Date.UNKNOWN)
+      return null;
+    try {
+      return Date.of(year, month, day);
+    }
+    catch (IllegalArgumentException e) {
+      throw new DateTimeParseException(e.getMessage(), s, 0, e);
+    }
+  }
+
+  /**
+   * Formats a date.
+   * 
+   * @param date the date
+   * @return the formatted date
+   * @throws IllegalArgumentException if the year has more than 4 digits
+   */
+  static String format(Date date) {
+    char[] buffer = new char[LENGTH];
+    write(date, buffer, 0);
+    return new String(buffer);
+  }
+
+  /**
+   * Formats a date in a buffer, without creating any object.
+   * 
+   * @param date the date
+   * @param buffer the buffer; {@link #LENGTH} characters are written
+   * @param offset the index of the first character
+   * @return the index after the last character
+   * @throws IllegalArgumentException if the year has more than 4 digits
+   */
+  static int write(Date date, char[] buffer, int offset) {
+    writePart(buffer, offset, 4, date.isYearSet() ? date.getYear() : Date.UNKNOWN);
+    buffer[offset + 4] = '-';
+    writePart(buffer, offset + 5, 2, date.isMonthSet() ? date.getMonth() : Date.UNKNOWN);
+    buffer[offset + 7] = '-';
+    writePart(buffer, offset + 8, 2, date.isDateSet() ? date.getDate() : Date.UNKNOWN);
+
+    return offset + LENGTH;
+  }
+
+  /**
+   * Reads a fixed-length part of a date.
+   * 
+   * @return the value or {@link Date#UNKNOWN} if the part is only made of question marks
+   */
+  private static int readPart(CharSequence s, int offset, int length) {
+    boolean unknown = s.charAt(offset) == '?';
+    int value = 0;
+
+    for (int i = offset; i < offset + length; i++) {
+      char c = s.charAt(i);
+      if (unknown ? c != '?' : c < '0' || c > '9')
+        throw new DateTimeParseException("wrong date format", s, i);
+      value = value * 10 + c - '0';
+    }
+
+    return unknown ? Date.UNKNOWN : value;
+  }
+
+  /**
+   * Writes a fixed-length part of a date, padded with zeros.
+   * 
+   * @param value the value or {@link Date#UNKNOWN} to write question marks
+   */
+  private static void writePart(char[] buffer, int offset, int length, int value) {
+    if (value == Date.UNKNOWN) {
+      for (int i = offset; i < offset + length; i++)
+        buffer[i] = '?';
+      return;
+    }
+
+    for (int i = offset + length - 1; i >= offset; i--) {
+      buffer[i] = (char) ('0' + value % 10);
+      value /= 10;
+    }
+    if (value != 0)
+      throw new IllegalArgumentException("too many digits");
+  }
+
+  private DateCodec() {}
+}
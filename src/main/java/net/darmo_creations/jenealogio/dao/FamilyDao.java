@@ -18,40 +18,49 @@
  */
 package net.darmo_creations.jenealogio.dao;
 
-import java.awt.Point;
-import java.awt.image.BufferedImage;
-import java.io.ByteArrayInputStream;
-import java.io.ByteArrayOutputStream;
+import java.io.BufferedReader;
+import java.io.BufferedWriter;
 import java.io.IOException;
+import java.io.Writer;
+import java.nio.channels.FileChannel;
+import java.nio.file.FileSystemException;
 import java.nio.file.Files;
+import java.nio.file.Path;
 import java.nio.file.Paths;
+import java.nio.file.StandardCopyOption;
+import java.nio.file.StandardOpenOption;
 import java.text.ParseException;
 import java.time.format.DateTimeParseException;
-import java.util.Arrays;
+import java.util.ArrayDeque;
+import java.util.Deque;
 import java.util.HashMap;
 import java.util.HashSet;
 import java.util.Map;
 import java.util.NoSuchElementException;
 import java.util.Optional;
 import java.util.Set;
-import java.util.regex.Matcher;
-import java.util.regex.Pattern;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
 
-import javax.imageio.ImageIO;
 import javax.xml.bind.DatatypeConverter;
 
 import org.json.simple.JSONArray;
 import org.json.simple.JSONObject;
+import org.json.simple.JSONStreamAware;
+import org.json.simple.JSONValue;
+import org.json.simple.parser.ContentHandler;
 import org.json.simple.parser.JSONParser;
 
 import net.darmo_creations.jenealogio.Jenealogio;
 import net.darmo_creations.jenealogio.model.FamilyEdit;
 import net.darmo_creations.jenealogio.model.date.Date;
-import net.darmo_creations.jenealogio.model.date.DateBuilder;
 import net.darmo_creations.jenealogio.model.family.Family;
 import net.darmo_creations.jenealogio.model.family.FamilyMember;
 import net.darmo_creations.jenealogio.model.family.Gender;
+import net.darmo_creations.jenealogio.model.family.Portrait;
 import net.darmo_creations.jenealogio.model.family.Relationship;
+import net.darmo_creations.jenealogio.util.LongPointMap;
 import net.darmo_creations.utils.version.Version;
 import net.darmo_creations.utils.version.VersionException;
 
@@ -61,19 +70,26 @@ import net.darmo_creations.utils.version.VersionException;
  * @author Damien Vergnet
  */
 public class FamilyDao {
-  private static FamilyDao instance;
+  /** A journal is never compacted before it reaches this size */
+  private static final long MIN_COMPACTION_SIZE = 1 << 20;
+  /** Number of times a mapped file replacement is tried once stores are released */
+  private static final int RELEASE_ATTEMPTS = 10;
+  /** Delay between these attempts, in milliseconds */
+  private static final long RELEASE_DELAY = 100;
+
+  /** Created eagerly as batch mode uses the instance from several threads. */
+  private static final FamilyDao INSTANCE = new FamilyDao();
 
   /**
    * @return the instance
    */
   public static FamilyDao instance() {
-    if (instance == null)
-      instance = new FamilyDao();
-    return instance;
+    return INSTANCE;
   }
 
   /**
-   * Loads the family from the given file with positions for the cards.
+   * Loads the family from the given file with positions for the cards. The file format is detected
+   * automatically. If the file has a journal, the changes it holds are applied.
    * 
    * @param file the file to load
    * @param ignoreVersion if true, any version mismatch will be ignored
@@ -83,105 +99,45 @@ public class FamilyDao {
    * @throws VersionException if file's version is more recent than the current version
    */
   public FamilyEdit load(String file, boolean ignoreVersion) throws IOException, ParseException, VersionException {
-    String jsonString = String.join("", Files.readAllLines(Paths.get(file)));
-
-    try {
-      JSONParser p = new JSONParser();
-      JSONObject obj = (JSONObject) p.parse(jsonString);
-      Set<FamilyMember> members = new HashSet<>();
-      Set<Relationship> weddings = new HashSet<>();
-      Family family = new Family((Long) obj.get("global_id"), (String) obj.get("name"), members, weddings);
-      Map<Long, Point> locations = new HashMap<>();
-
-      Long rawVersion = (Long) obj.get("version");
-      Version version = new Version(rawVersion != null ? (int) (long) rawVersion : 0);
-
-      if (!ignoreVersion && version.after(Jenealogio.CURRENT_VERSION)) {
-        throw new VersionException(Jenealogio.CURRENT_VERSION, version);
-      }
-
-      // Members loading
-      JSONArray membersObj = (JSONArray) obj.get("members");
-      for (Object o : membersObj) {
-        JSONObject memberObj = (JSONObject) o;
-        long id = (Long) memberObj.get("id");
-        BufferedImage image = base64Decode((String) memberObj.get("image"));
-        String familyName = getNullIfEmpty((String) memberObj.get("name"));
-        String useName = getNullIfEmpty((String) memberObj.get("use_name"));
-        String firstName = getNullIfEmpty((String) memberObj.get("first_name"));
-        String otherNames = getNullIfEmpty((String) memberObj.get("other_names"));
-        Gender gender = Gender.fromCode((String) memberObj.get("gender"));
-        Date birthDate = getDate((String) memberObj.get("birth_date"));
-        String birthLocation = getNullIfEmpty((String) memberObj.get("birth_location"));
-        Date deathDate = getDate((String) memberObj.get("death_date"));
-        String deathLocation = getNullIfEmpty((String) memberObj.get("death_location"));
-        Boolean dead = (Boolean) memberObj.get("dead");
-        // This boolean may not be present in older save versions.
-        dead = dead == null ? false : dead;
-        String comment = getNullIfEmpty((String) memberObj.get("comment"));
-        JSONObject positionObj = (JSONObject) memberObj.get("position");
-        int x = (int) (long) positionObj.get("x");
-        int y = (int) (long) positionObj.get("y");
-
-        locations.put(id, new Point(x, y));
-        members.add(new FamilyMember(id, image, familyName, useName, firstName, otherNames, gender, birthDate, birthLocation, deathDate,
-            deathLocation, dead, comment));
-      }
-
-      // Relations loading
-      JSONArray relationsObj;
-      boolean before1_3d = version.before(Jenealogio.V1_3D);
+    synchronized (lock(file)) {
+      return Journal.replay(Paths.get(file), loadBase(file, ignoreVersion));
+    }
+  }
 
-      if (before1_3d) {
-        relationsObj = (JSONArray) obj.get("weddings");
-      }
-      else {
-        relationsObj = (JSONArray) obj.get("relations");
+  /**
+   * Loads a file without its journal. Families loaded from store files read their members and
+   * relations from the file when they are looked up (see {@link MappedFamilyStore#load()}).
+   * 
+   * @param file the file to load
+   * @param ignoreVersion if true, any version mismatch will be ignored
+   * @return the loaded family and positions
+   * @throws IOException if an I/O error occured
+   * @throws ParseException if the file is corrupted/wrongly formatted
+   * @throws VersionException if file's version is more recent than the current version
+   */
+  private FamilyEdit loadBase(String file, boolean ignoreVersion) throws IOException, ParseException, VersionException {
+    if (BinaryFormat.isBinary(Paths.get(file)))
+      return BinaryFormat.load(Paths.get(file), ignoreVersion);
+    if (MappedFamilyStore.isStore(Paths.get(file))) {
+      // Sections stay mapped once the store is closed.
+      try (MappedFamilyStore store = MappedFamilyStore.open(Paths.get(file), ignoreVersion)) {
+        return store.load();
       }
+    }
 
-      for (Object o : relationsObj) {
-        JSONObject relationObj = (JSONObject) o;
-        Date date = getDate((String) relationObj.get("date"));
-        String location = getNullIfEmpty((String) relationObj.get("location"));
-        boolean isWedding = true;
-        boolean hasEnded = false;
-        Date endDate = null;
-
-        if (!before1_3d) {
-          String type = getNullIfEmpty((String) relationObj.get("type"));
-          isWedding = "wedding".equalsIgnoreCase(type);
-          String s = (String) relationObj.get("end_date");
-          if (s != null)
-            endDate = getDate(s);
-          if (endDate == null)
-            hasEnded = (Boolean) relationObj.get("has_ended");
-          else
-            hasEnded = true;
-        }
+    LoadHandler handler = new LoadHandler(ignoreVersion);
 
-        String partnerKey = before1_3d ? "spouse" : "partner";
-        long partner1 = (Long) relationObj.get(partnerKey + 1);
-        long partner2 = (Long) relationObj.get(partnerKey + 2);
-        Set<Long> children = new HashSet<>();
-        JSONArray childrenObj = (JSONArray) relationObj.get("children");
+    try (BufferedReader reader = Files.newBufferedReader(Paths.get(file))) {
+      new JSONParser().parse(reader, handler);
 
-        for (int i = 0; i < childrenObj.size(); i++) {
-          children.add((Long) childrenObj.get((Integer) i));
-        }
+      if (handler.newerVersion != null)
+        throw new VersionException(Jenealogio.CURRENT_VERSION, handler.newerVersion);
+      if (!handler.membersRead || !handler.relationsRead)
+        throw new ParseException("corrupted file", -1);
 
-        Map<Long, Date> adoptions = new HashMap<>();
-        JSONObject adoptionsObj = (JSONObject) relationObj.get("adoptions");
-        if (adoptionsObj != null) {
-          for (Object id : adoptionsObj.keySet()) {
-            Optional<String> s = Optional.of((String) adoptionsObj.get(id));
-            adoptions.put(Long.parseLong("" + id), getDate(s.orElse("")));
-          }
-        }
+      Family family = new Family(handler.globalId, handler.name, handler.members, handler.relations);
 
-        weddings.add(new Relationship(date, location, isWedding, hasEnded, endDate, partner1, partner2, children, adoptions));
-      }
-
-      return new FamilyEdit(family, locations);
+      return new FamilyEdit(family, handler.locations);
     }
     catch (NullPointerException | ClassCastException | NoSuchElementException | DateTimeParseException
         | org.json.simple.parser.ParseException ex) {
@@ -189,6 +145,21 @@ public class FamilyDao {
     }
   }
 
+  /**
+   * Opens a store file for random access. Members and relations are read only when they are asked
+   * for, the store must be closed once it is not needed anymore.
+   * 
+   * @param file the store file
+   * @param ignoreVersion if true, any version mismatch will be ignored
+   * @return the store
+   * @throws IOException if an I/O error occured
+   * @throws ParseException if the file is not a valid store
+   * @throws VersionException if file's version is more recent than the current version
+   */
+  public MappedFamilyStore openStore(String file, boolean ignoreVersion) throws IOException, ParseException, VersionException {
+    return MappedFamilyStore.open(Paths.get(file), ignoreVersion);
+  }
+
   /**
    * Returns nul if the given string is empty ({@code "".equals(s)}).
    * 
@@ -199,56 +170,196 @@ public class FamilyDao {
     return "".equals(s) ? null : s;
   }
 
-  /**
-   * The pattern for dates formatted as YYYY-MM-DD
-   */
-  private static final Pattern DATE_PATTERN = Pattern.compile("(\\d{4}|\\?{4})-(\\d{2}|\\?{2})-(\\d{2}|\\?{2})");
-
   /**
    * Returns the date object corresponding to the given string (YYYY-MM-DD format).
    * 
    * @param s the string
    * @return the date object or null if the string is empty
-   * @throws DateTimeParseException if the date was wrongly formatted
+   * @throws DateTimeParseException if the date was wrongly formatted or out of range
    */
   private Date getDate(String s) throws DateTimeParseException {
-    if (!s.isEmpty()) {
-      Matcher matcher = DATE_PATTERN.matcher(s);
-
-      if (matcher.matches()) {
-        DateBuilder builder = new DateBuilder();
-        String year = matcher.group(1);
-        String month = matcher.group(2);
-        String date = matcher.group(3);
-
-        if (year.matches("\\d{4}"))
-          builder.setYear(Integer.parseInt(year));
-        if (month.matches("\\d{2}"))
-          builder.setMonth(Integer.parseInt(month));
-        if (date.matches("\\d{2}"))
-          builder.setDate(Integer.parseInt(date));
-
-        return builder.getDate();
+    return DateCodec.parse(s);
+  }
+
+  /**
+   * Saves the given family to the disk in JSON format.
+   * 
+   * @param file the file to save to
+   * @param edit the edit to save
+   * @throws IOException if an I/O error occured
+   */
+  public void save(String file, final FamilyEdit edit) throws IOException {
+    save(file, edit, FileFormat.JSON);
+  }
+
+  /**
+   * Saves the given family to the disk in the given format. The whole file is written and its
+   * journal is deleted.
+   * 
+   * @param file the file to save to
+   * @param edit the edit to save
+   * @param format the file format
+   * @throws IOException if an I/O error occured
+   */
+  public void save(String file, final FamilyEdit edit, FileFormat format) throws IOException {
+    synchronized (lock(file)) {
+      this.pendingCompactions.remove(file);
+      writeSnapshot(file, edit, format);
+      Journal.delete(Paths.get(file));
+    }
+  }
+
+  /**
+   * Saves the changes made since the file was last loaded or saved by appending them to its journal.
+   * Only the changes are written and they are on the disk when this method returns. Once the journal
+   * is big enough, the whole file is written again in the background, in its current format, and the
+   * journal is deleted.
+   * 
+   * @param file the file to save to; if it does not exist, it is fully written
+   * @param previous the state of the family when the file was last loaded or saved
+   * @param edit the edit to save
+   * @param format the format used if the file does not exist
+   * @throws IOException if an I/O error occured
+   */
+  public void saveIncremental(String file, FamilyEdit previous, final FamilyEdit edit, FileFormat format) throws IOException {
+    synchronized (lock(file)) {
+      Path path = Paths.get(file);
+
+      if (!Files.exists(path)) {
+        save(file, edit, format);
+        return;
       }
 
-      throw new DateTimeParseException("wrong date format", s, -1);
+      Journal.append(path, previous, edit);
+      if (this.pendingCompactions.containsKey(file) || Journal.size(path) > Math.max(MIN_COMPACTION_SIZE, Files.size(path) / 2)) {
+        if (this.pendingCompactions.put(file, new Compaction(edit, formatOf(path))) == null)
+          this.compactor.execute(() -> compact(file));
+      }
     }
+  }
 
-    return null;
+  /**
+   * Returns the format of an existing file.
+   * 
+   * @param file the file
+   * @return the format
+   * @throws IOException if an I/O error occured
+   */
+  public static FileFormat formatOf(Path file) throws IOException {
+    if (BinaryFormat.isBinary(file))
+      return FileFormat.BINARY;
+    if (MappedFamilyStore.isStore(file))
+      return FileFormat.STORE;
+    return FileFormat.JSON;
+  }
+
+  /**
+   * Writes the latest state of a file and deletes its journal.
+   * 
+   * @param file the file
+   */
+  private void compact(String file) {
+    synchronized (lock(file)) {
+      Compaction compaction = this.pendingCompactions.remove(file);
+
+      if (compaction != null) {
+        try {
+          writeSnapshot(file, compaction.edit, compaction.format);
+          Journal.delete(Paths.get(file));
+        }
+        catch (IOException ex) {
+          // The file and its journal are left as they were, the next saves will still be appended.
+        }
+      }
+    }
+  }
+
+  /**
+   * Writes a whole file. The data is first written to a temporary file that is forced to the disk
+   * then replaces the actual one so that the file is never left half-written, even after a crash.
+   * 
+   * @param file the file to save to
+   * @param edit the edit to save
+   * @param format the file format
+   * @throws IOException if an I/O error occured
+   */
+  private void writeSnapshot(String file, FamilyEdit edit, FileFormat format) throws IOException {
+    Path path = Paths.get(file);
+    Path temp = Paths.get(file + ".tmp");
+
+    try {
+      if (format == FileFormat.BINARY)
+        BinaryFormat.save(temp, edit);
+      else if (format == FileFormat.STORE)
+        MappedFamilyStore.save(temp, edit);
+      else
+        saveJson(temp.toString(), edit);
+      // Without this, the move could reach the disk before the data.
+      try (FileChannel channel = FileChannel.open(temp, StandardOpenOption.WRITE)) {
+        channel.force(true);
+      }
+
+      try {
+        replace(temp, path);
+      }
+      catch (FileSystemException ex) {
+        // On Windows, a file cannot be replaced while a store maps it, like the one backing a family
+        // loaded from it. Stores are moved to a copy and their mappings released by the GC.
+        if (!MappedFamilyStore.release(path))
+          throw ex;
+        for (int i = 0;; i++) {
+          System.gc();
+          try {
+            replace(temp, path);
+            break;
+          }
+          catch (FileSystemException ex2) {
+            if (i == RELEASE_ATTEMPTS - 1)
+              throw ex2;
+            try {
+              Thread.sleep(RELEASE_DELAY);
+            }
+            catch (InterruptedException __) {
+              Thread.currentThread().interrupt();
+              throw ex2;
+            }
+          }
+        }
+      }
+    }
+    finally {
+      Files.deleteIfExists(temp);
+    }
+  }
+
+  /**
+   * Replaces a file by another one, atomically if possible.
+   * 
+   * @param source the new file
+   * @param target the file to replace
+   * @throws IOException if an I/O error occured
+   */
+  private static void replace(Path source, Path target) throws IOException {
+    try {
+      Files.move(source, target, StandardCopyOption.REPLACE_EXISTING, StandardCopyOption.ATOMIC_MOVE);
+    }
+    catch (IOException ex) {
+      Files.move(source, target, StandardCopyOption.REPLACE_EXISTING);
+    }
   }
 
   /**
-   * Saves the given family to the disk.
+   * Saves the given family in JSON format. Members and relations are written one by one to the file.
    * 
    * @param file the file to save to
    * @param edit the edit to save
    * @throws IOException if an I/O error occured
    */
   @SuppressWarnings("unchecked")
-  public void save(String file, final FamilyEdit edit) throws IOException {
+  private void saveJson(String file, final FamilyEdit edit) throws IOException {
     JSONObject obj = new JSONObject();
     Family family = edit.getFamily();
-    Map<Long, Point> locations = edit.getLocations();
+    LongPointMap locations = edit.getLocations();
 
     String comment = String.format(
         "This is a save file for Jenealogio v%1$s. "
@@ -258,9 +369,47 @@ public class FamilyDao {
     obj.put("version", Jenealogio.CURRENT_VERSION.getFullValue());
     obj.put("global_id", family.getGlobalId());
     obj.put("name", family.getName());
+    // Only used to keep the same keys order as a full JSON object.
+    obj.put("members", null);
+    obj.put("relations", null);
+
+    try (BufferedWriter writer = Files.newBufferedWriter(Paths.get(file))) {
+      boolean first = true;
+      char[] dateBuffer = new char[DateCodec.LENGTH + 2];
+
+      writer.write('{');
+      for (Object key : obj.keySet()) {
+        if (!first)
+          writer.write(',');
+        first = false;
+        writer.write('"' + JSONObject.escape((String) key) + "\":");
+        if ("members".equals(key))
+          writeMembers(writer, family, locations, dateBuffer);
+        else if ("relations".equals(key))
+          writeRelations(writer, family, dateBuffer);
+        else
+          JSONValue.writeJSONString(obj.get(key), writer);
+      }
+      writer.write('}');
+      writer.newLine();
+    }
+  }
+
+  /**
+   * Writes all members as a JSON array.
+   * 
+   * @param writer the writer
+   * @param family the family
+   * @param locations cards locations
+   * @param dateBuffer the buffer dates are formatted in
+   * @throws IOException if an I/O error occured
+   */
+  @SuppressWarnings("unchecked")
+  private void writeMembers(Writer writer, Family family, LongPointMap locations, char[] dateBuffer) throws IOException {
+    boolean first = true;
 
-    JSONArray membersObj = new JSONArray();
-    for (FamilyMember m : family.getAllMembers()) {
+    writer.write('[');
+    for (FamilyMember m : family.getMembersView()) {
       JSONObject memberObj = new JSONObject();
 
       memberObj.put("id", m.getId());
@@ -269,119 +418,407 @@ public class FamilyDao {
       memberObj.put("first_name", m.getFirstName().orElse(""));
       memberObj.put("other_names", m.getOtherNames().orElse(""));
       memberObj.put("gender", m.getGender().getCode());
-      formatDate(memberObj, "birth_date", m.getBirthDate());
+      formatDate(memberObj, "birth_date", m.getBirthDate(), dateBuffer);
       memberObj.put("birth_location", m.getBirthLocation().orElse(""));
-      formatDate(memberObj, "death_date", m.getDeathDate());
+      formatDate(memberObj, "death_date", m.getDeathDate(), dateBuffer);
       memberObj.put("death_location", m.getDeathLocation().orElse(""));
       memberObj.put("dead", m.isDead());
       memberObj.put("comment", m.getComment().orElse(""));
-      memberObj.put("image", base64Encode(m.getImage()));
+      memberObj.put("image", base64Encode(m.getPortrait()));
       JSONObject posObj = new JSONObject();
       posObj.put("x", locations.get(m.getId()).x);
       posObj.put("y", locations.get(m.getId()).y);
       memberObj.put("position", posObj);
 
-      membersObj.add(memberObj);
+      if (!first)
+        writer.write(',');
+      first = false;
+      memberObj.writeJSONString(writer);
     }
-    obj.put("members", membersObj);
+    writer.write(']');
+  }
 
-    JSONArray relationsObj = new JSONArray();
-    for (Relationship r : family.getAllRelations()) {
+  /**
+   * Writes all relations as a JSON array.
+   * 
+   * @param writer the writer
+   * @param family the family
+   * @param dateBuffer the buffer dates are formatted in
+   * @throws IOException if an I/O error occured
+   */
+  @SuppressWarnings("unchecked")
+  private void writeRelations(Writer writer, Family family, char[] dateBuffer) throws IOException {
+    boolean first = true;
+
+    writer.write('[');
+    for (Relationship r : family.getRelationsView()) {
       JSONObject relationObj = new JSONObject();
 
       relationObj.put("partner1", r.getPartner1());
       relationObj.put("partner2", r.getPartner2());
       relationObj.put("type", r.isWedding() ? "wedding" : "");
-      formatDate(relationObj, "date", r.getDate());
+      formatDate(relationObj, "date", r.getDate(), dateBuffer);
       relationObj.put("location", r.getLocation().orElse(""));
       if (r.getEndDate().isPresent()) {
-        formatDate(relationObj, "end_date", r.getEndDate());
+        formatDate(relationObj, "end_date", r.getEndDate(), dateBuffer);
       }
       else {
         relationObj.put("has_ended", r.hasEnded());
       }
       JSONArray childrenObj = new JSONArray();
       JSONObject adoptionsObj = new JSONObject();
-      for (Long c : r.getChildren()) {
+      for (long c : r.getChildrenIds()) {
         childrenObj.add(c);
         if (r.isAdopted(c))
-          formatDate(adoptionsObj, "" + c, r.getAdoptionDate(c));
+          formatDate(adoptionsObj, "" + c, r.getAdoptionDate(c), dateBuffer);
       }
       relationObj.put("children", childrenObj);
       relationObj.put("adoptions", adoptionsObj);
 
-      relationsObj.add(relationObj);
+      if (!first)
+        writer.write(',');
+      first = false;
+      relationObj.writeJSONString(writer);
     }
-    obj.put("relations", relationsObj);
-
-    Files.write(Paths.get(file), Arrays.asList(obj.toJSONString()));
+    writer.write(']');
   }
 
   /**
-   * Formats a date object as "YYYY-MM-dd" and puts it in the given JSON object under the given key.
+   * Puts a date in the given JSON object under the given key. The date is formatted as "YYYY-MM-dd"
+   * in the buffer when the object is written, so no string is created for it.
    * 
    * @param obj the JSON object
    * @param key the key
    * @param optDate the date
+   * @param buffer the buffer the date is formatted in
    */
   @SuppressWarnings("unchecked")
-  private void formatDate(JSONObject obj, String key, Optional<Date> optDate) {
-    String date = "";
-
-    if (optDate.isPresent()) {
-      Date d = optDate.get();
-
-      date += d.isYearSet() ? String.format("%04d", d.getYear()) : "????";
-      date += "-" + (d.isMonthSet() ? String.format("%02d", d.getMonth()) : "??");
-      date += "-" + (d.isDateSet() ? String.format("%02d", d.getDate()) : "??");
-    }
-    obj.put(key, date);
+  private void formatDate(JSONObject obj, String key, Optional<Date> optDate, char[] buffer) {
+    obj.put(key, optDate.isPresent() ? new JsonDate(optDate.get(), buffer) : "");
   }
 
   /**
-   * Encodes an image to a base64 string.
+   * Encodes an image to a base64 string. The image's data is used as is.
    * 
-   * @param image the image
+   * @param portrait the image
    * @return the base64 string or an empty string if nothing was given
    */
-  private String base64Encode(Optional<BufferedImage> image) {
-    try {
-      if (image.isPresent()) {
-        try (ByteArrayOutputStream baos = new ByteArrayOutputStream()) {
-          ImageIO.write(image.get(), "png", baos);
-          return DatatypeConverter.printBase64Binary(baos.toByteArray());
-        }
-      }
-      else
-        return "";
-    }
-    catch (IOException e) {
-      throw new RuntimeException(e);
-    }
+  private String base64Encode(Optional<Portrait> portrait) {
+    return portrait.map(p -> DatatypeConverter.printBase64Binary(p.getData())).orElse("");
   }
 
   /**
-   * Decodes a base64 string and returns the corresponding image.
+   * Decodes a base64 string and returns the corresponding image. The image itself is only decoded
+   * when it is needed.
    * 
    * @param base64 the base64 string
    * @return the corresponding image
    */
-  private BufferedImage base64Decode(String base64) {
-    try {
-      if (base64 != null && !"".equals(base64)) {
-        byte[] imageByte = DatatypeConverter.parseBase64Binary(base64);
+  private Portrait base64Decode(String base64) {
+    if (base64 != null && !"".equals(base64))
+      return new Portrait(DatatypeConverter.parseBase64Binary(base64));
+    return null;
+  }
+
+  /**
+   * The locks guarding each file and its journal, by file. Locks are never removed, the map grows
+   * by one small entry for each distinct file loaded or saved during the session.
+   */
+  private final Map<String, Object> locks;
+  /** The compactions waiting to be done, by file */
+  private final Map<String, Compaction> pendingCompactions;
+  private final ExecutorService compactor;
+
+  private FamilyDao() {
+    this.locks = new ConcurrentHashMap<>();
+    this.pendingCompactions = new ConcurrentHashMap<>();
+    this.compactor = Executors.newSingleThreadExecutor(runnable -> {
+      Thread thread = new Thread(runnable, "Journal compaction");
+      thread.setDaemon(true);
+      return thread;
+    });
+  }
+
+  /**
+   * Returns the lock of a file. Different files can be loaded and saved concurrently.
+   * 
+   * @param file the file
+   * @return its lock
+   */
+  private Object lock(String file) {
+    return this.locks.computeIfAbsent(Paths.get(file).toAbsolutePath().normalize().toString(), k -> new Object());
+  }
+
+  /**
+   * The latest state of a file whose journal has to be compacted.
+   * 
+   * @author Damien Vergnet
+   */
+  private static class Compaction {
+    final FamilyEdit edit;
+    final FileFormat format;
 
-        try (ByteArrayInputStream bis = new ByteArrayInputStream(imageByte)) {
-          return ImageIO.read(bis);
+    Compaction(FamilyEdit edit, FileFormat format) {
+      this.edit = edit;
+      this.format = format;
+    }
+  }
+
+  /**
+   * This handler builds members and relations while the file is being parsed. Only the member or
+   * relation being read is held as JSON objects, the whole document is never built.
+   * 
+   * @author Damien Vergnet
+   */
+  private class LoadHandler implements ContentHandler {
+    private final boolean ignoreVersion;
+    private final Set<FamilyMember> members;
+    private final Set<Relationship> relations;
+    private final LongPointMap locations;
+    private Long globalId;
+    private String name;
+    /** The file's version if it is more recent than the current one */
+    private Version newerVersion;
+    private boolean membersRead;
+    private boolean relationsRead;
+    /** The top-level key being read */
+    private String section;
+    /** The last key read inside a member or relation */
+    private String key;
+    /** Objects and arrays of the member or relation being read; the innermost one is on top */
+    private final Deque<Object> containers;
+    /** Current nesting level; 1 is the top-level object */
+    private int depth;
+
+    LoadHandler(boolean ignoreVersion) {
+      this.ignoreVersion = ignoreVersion;
+      this.members = new HashSet<>();
+      this.relations = new HashSet<>();
+      this.locations = new LongPointMap();
+      this.containers = new ArrayDeque<>();
+    }
+
+    @Override
+    public void startJSON() {}
+
+    @Override
+    public void endJSON() {}
+
+    @Override
+    public boolean startObject() {
+      this.depth++;
+      if (this.depth > 2 && isRecordSection()) {
+        JSONObject obj = new JSONObject();
+        add(obj);
+        this.containers.push(obj);
+      }
+      return true;
+    }
+
+    @Override
+    public boolean endObject() {
+      if (this.depth > 2 && isRecordSection()) {
+        JSONObject obj = (JSONObject) this.containers.pop();
+        if (this.depth == 3) {
+          if ("members".equals(this.section))
+            readMember(obj);
+          else
+            readRelation(obj, "weddings".equals(this.section));
         }
       }
+      this.depth--;
+      return true;
+    }
+
+    @Override
+    public boolean startArray() {
+      this.depth++;
+      if (this.depth == 2) {
+        if ("members".equals(this.section))
+          this.membersRead = true;
+        else if (isRecordSection())
+          this.relationsRead = true;
+      }
+      else if (this.depth > 2 && isRecordSection()) {
+        JSONArray array = new JSONArray();
+        add(array);
+        this.containers.push(array);
+      }
+      return true;
+    }
+
+    @Override
+    public boolean endArray() {
+      if (this.depth > 2 && isRecordSection())
+        this.containers.pop();
+      this.depth--;
+      return true;
+    }
+
+    @Override
+    public boolean startObjectEntry(String key) {
+      if (this.depth == 1)
+        this.section = key;
       else
-        return null;
+        this.key = key;
+      return true;
     }
-    catch (IOException e) {
-      throw new RuntimeException(e);
+
+    @Override
+    public boolean endObjectEntry() {
+      return true;
+    }
+
+    @Override
+    public boolean primitive(Object value) {
+      if (this.depth == 1) {
+        switch (this.section) {
+          case "version":
+            Version version = new Version((int) (long) (Long) value);
+            if (!this.ignoreVersion && version.after(Jenealogio.CURRENT_VERSION)) {
+              this.newerVersion = version;
+              // Stops parsing
+              return false;
+            }
+            break;
+          case "global_id":
+            this.globalId = (Long) value;
+            break;
+          case "name":
+            this.name = (String) value;
+            break;
+        }
+      }
+      else if (this.depth > 2 && isRecordSection()) {
+        add(value);
+      }
+      return true;
+    }
+
+    /**
+     * @return true if the current top-level key holds members or relations
+     */
+    private boolean isRecordSection() {
+      return "members".equals(this.section) || "relations".equals(this.section) || "weddings".equals(this.section);
+    }
+
+    /**
+     * Adds a value to the innermost container. Does nothing if there is none.
+     * 
+     * @param value the value
+     */
+    @SuppressWarnings("unchecked")
+    private void add(Object value) {
+      Object container = this.containers.peek();
+
+      if (container instanceof JSONObject)
+        ((JSONObject) container).put(this.key, value);
+      else if (container instanceof JSONArray)
+        ((JSONArray) container).add(value);
+    }
+
+    /**
+     * Reads a member and its position.
+     * 
+     * @param memberObj the JSON member
+     */
+    private void readMember(JSONObject memberObj) {
+      long id = (Long) memberObj.get("id");
+      Portrait image = base64Decode((String) memberObj.get("image"));
+      String familyName = getNullIfEmpty((String) memberObj.get("name"));
+      String useName = getNullIfEmpty((String) memberObj.get("use_name"));
+      String firstName = getNullIfEmpty((String) memberObj.get("first_name"));
+      String otherNames = getNullIfEmpty((String) memberObj.get("other_names"));
+      Gender gender = Gender.fromCode((String) memberObj.get("gender"));
+      Date birthDate = getDate((String) memberObj.get("birth_date"));
+      String birthLocation = getNullIfEmpty((String) memberObj.get("birth_location"));
+      Date deathDate = getDate((String) memberObj.get("death_date"));
+      String deathLocation = getNullIfEmpty((String) memberObj.get("death_location"));
+      Boolean dead = (Boolean) memberObj.get("dead");
+      // This boolean may not be present in older save versions.
+      dead = dead == null ? false : dead;
+      String comment = getNullIfEmpty((String) memberObj.get("comment"));
+      JSONObject positionObj = (JSONObject) memberObj.get("position");
+      int x = (int) (long) positionObj.get("x");
+      int y = (int) (long) positionObj.get("y");
+
+      this.locations.put(id, x, y);
+      this.members.add(new FamilyMember(id, image, familyName, useName, firstName, otherNames, gender, birthDate, birthLocation,
+          deathDate, deathLocation, dead, comment));
+    }
+
+    /**
+     * Reads a relation.
+     * 
+     * @param relationObj the JSON relation
+     * @param before1_3d true if the relation uses the format of versions prior to 1.3d
+     */
+    private void readRelation(JSONObject relationObj, boolean before1_3d) {
+      Date date = getDate((String) relationObj.get("date"));
+      String location = getNullIfEmpty((String) relationObj.get("location"));
+      boolean isWedding = true;
+      boolean hasEnded = false;
+      Date endDate = null;
+
+      if (!before1_3d) {
+        String type = getNullIfEmpty((String) relationObj.get("type"));
+        isWedding = "wedding".equalsIgnoreCase(type);
+        String s = (String) relationObj.get("end_date");
+        if (s != null)
+          endDate = getDate(s);
+        if (endDate == null)
+          hasEnded = (Boolean) relationObj.get("has_ended");
+        else
+          hasEnded = true;
+      }
+
+      String partnerKey = before1_3d ? "spouse" : "partner";
+      long partner1 = (Long) relationObj.get(partnerKey + 1);
+      long partner2 = (Long) relationObj.get(partnerKey + 2);
+      Set<Long> children = new HashSet<>();
+      JSONArray childrenObj = (JSONArray) relationObj.get("children");
+
+      for (int i = 0; i < childrenObj.size(); i++) {
+        children.add((Long) childrenObj.get((Integer) i));
+      }
+
+      Map<Long, Date> adoptions = new HashMap<>();
+      JSONObject adoptionsObj = (JSONObject) relationObj.get("adoptions");
+      if (adoptionsObj != null) {
+        for (Object id : adoptionsObj.keySet()) {
+          Optional<String> s = Optional.of((String) adoptionsObj.get(id));
+          adoptions.put(Long.parseLong("" + id), getDate(s.orElse("")));
+        }
+      }
+
+      this.relations.add(new Relationship(date, location, isWedding, hasEnded, endDate, partner1, partner2, children, adoptions));
     }
   }
 
-  private FamilyDao() {}
+  /**
+   * A date written as a JSON string straight from a buffer.
+   * 
+   * @author Damien Vergnet
+   */
+  private static class JsonDate implements JSONStreamAware {
+    private final Date date;
+    private final char[] buffer;
+
+    /**
+     * @param date the date
+     * @param buffer the buffer, at least 2 characters longer than a formatted date
+     */
+    JsonDate(Date date, char[] buffer) {
+      this.date = date;
+      this.buffer = buffer;
+    }
+
+    @Override
+    public void writeJSONString(Writer out) throws IOException {
+      this.buffer[0] = '"';
+      int end = DateCodec.write(this.date, this.buffer, 1);
+      this.buffer[end] = '"';
+      out.write(this.buffer, 0, end + 1);
+    }
+  }
 }
@@ -0,0 +1,34 @@
+/*
+ * Copyright © 2017 Damien Vergnet
+ *
+ * This file is part of Jenealogio.
+ *
+ * This program is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with this program.  If not, see <http://www.gnu.org/licenses/>.
+ */
+package net.darmo_creations.jenealogio.dao;
+
+/**
+ * Formats tree files can be saved in. All use the same extension, the format is detected when a
+ * file is loaded.
+ * 
+ * @author Damien Vergnet
+ */
+public enum FileFormat {
+  /** The JSON format, portraits are inlined as base64 strings */
+  JSON,
+  /** The binary format, portraits are stored as raw bytes after the members and relations */
+  BINARY,
+  /** The store format, fixed-width records that can be read without loading the whole tree */
+  STORE;
+}
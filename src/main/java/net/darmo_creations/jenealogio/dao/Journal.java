@@ -0,0 +1,484 @@
+/*
+ * Copyright © 2017 Damien Vergnet
+ *
+ * This file is part of Jenealogio.
+ *
+ * This program is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with this program.  If not, see <http://www.gnu.org/licenses/>.
+ */
+package net.darmo_creations.jenealogio.dao;
+
+import java.awt.Point;
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.DataOutputStream;
+import java.io.EOFException;
+import java.io.IOException;
+import java.io.UncheckedIOException;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.Paths;
+import java.nio.file.StandardOpenOption;
+import java.text.ParseException;
+import java.util.Arrays;
+import java.util.Objects;
+import java.util.Optional;
+import java.util.zip.CRC32;
+
+import net.darmo_creations.jenealogio.model.FamilyEdit;
+import net.darmo_creations.jenealogio.model.family.Family;
+import net.darmo_creations.jenealogio.model.family.FamilyDiffHandler;
+import net.darmo_creations.jenealogio.model.family.FamilyMember;
+import net.darmo_creations.jenealogio.model.family.Portrait;
+import net.darmo_creations.jenealogio.model.family.Relationship;
+import net.darmo_creations.jenealogio.util.LongHashSet;
+import net.darmo_creations.jenealogio.util.LongPointMap;
+import net.darmo_creations.jenealogio.util.PersistentLongMap;
+
+/**
+ * An append-only log of the changes made to a tree file since it was last fully written. The
+ * journal of a file is stored next to it, with the ".journal" extension.
+ * <p>
+ * The journal starts with a header that identifies the base file by its size and modification
+ * time; a journal that does not match its base file is ignored. Each save then appends one record:
+ * the payload's length, its CRC32 and the payload, a list of operations. A record is only applied
+ * if it is complete and its checksum is valid, thus an interrupted save is dropped and the tree is
+ * recovered as it was after the previous one. Operations hold the final state of what changed, so
+ * applying them twice has no effect.
+ * <p>
+ * <b>N.B.</b>: the base file is not hashed as that would mean reading it on each save. A base file
+ * replaced by another program with one of the same size within the same millisecond (or the same
+ * second on file systems with a coarser resolution) is thus not detected, and the journal would
+ * wrongly be applied to it.
+ * </p>
+ * 
+ * @author Damien Vergnet
+ */
+final class Journal {
+  private static final byte[] MAGIC = {(byte) 0x89, 'J', 'G', 'J'};
+  private static final int FORMAT_VERSION = 2;
+  private static final int HEADER_SIZE = MAGIC.length + Integer.BYTES + 2 * Long.BYTES;
+  /** Records bigger than this are considered corrupted */
+  private static final int MAX_RECORD_SIZE = 1 << 30;
+
+  private static final int OP_HEADER = 1;
+  private static final int OP_MEMBER = 2;
+  private static final int OP_REMOVE_MEMBER = 3;
+  private static final int OP_POSITION = 4;
+  private static final int OP_RELATION = 5;
+  private static final int OP_REMOVE_RELATION = 6;
+
+  /** The portrait is the same as in the previous state */
+  private static final int PORTRAIT_UNCHANGED = 0;
+  /** The portrait follows the member */
+  private static final int PORTRAIT_SET = 1;
+  /** The member has no portrait */
+  private static final int PORTRAIT_NONE = -1;
+
+  /**
+   * Returns the path of the journal of a file.
+   * 
+   * @param base the base file
+   * @return the journal's path
+   */
+  static Path of(Path base) {
+    return Paths.get(base.toString() + ".journal");
+  }
+
+  /**
+   * Returns the size of the journal of a file.
+   * 
+   * @param base the base file
+   * @return the size in bytes; 0 if there is no journal
+   * @throws IOException if an I/O error occured
+   */
+  static long size(Path base) throws IOException {
+    Path journal = of(base);
+    return Files.exists(journal) ? Files.size(journal) : 0;
+  }
+
+  /**
+   * Deletes the journal of a file.
+   * 
+   * @param base the base file
+   * @throws IOException if an I/O error occured
+   */
+  static void delete(Path base) throws IOException {
+    Files.deleteIfExists(of(base));
+  }
+
+  /**
+   * Appends the changes between two states to the journal of a file then forces them to the disk.
+   * The journal is created if it does not exist or does not match the base file.
+   * 
+   * @param base the base file
+   * @param previous the state of the file as it was last loaded or saved
+   * @param next the new state
+   * @throws IOException if an I/O error occured
+   */
+  static void append(Path base, FamilyEdit previous, FamilyEdit next) throws IOException {
+    byte[] payload = diff(previous, next);
+    Path journal = of(base);
+
+    if (Files.exists(journal) && !matches(journal, base))
+      Files.delete(journal);
+
+    try (FileChannel channel = FileChannel.open(journal, StandardOpenOption.CREATE, StandardOpenOption.READ, StandardOpenOption.WRITE)) {
+      long end = channel.size();
+
+      if (end < HEADER_SIZE) {
+        ByteBuffer header = ByteBuffer.allocate(HEADER_SIZE);
+        header.put(MAGIC);
+        header.putInt(FORMAT_VERSION);
+        header.putLong(Files.size(base));
+        header.putLong(Files.getLastModifiedTime(base).toMillis());
+        header.flip();
+        writeFully(channel, header, 0);
+        end = HEADER_SIZE;
+      }
+      else {
+        end = validLength(channel);
+      }
+
+      CRC32 crc = new CRC32();
+      crc.update(payload);
+      ByteBuffer record = ByteBuffer.allocate(2 * Integer.BYTES + payload.length);
+      record.putInt(payload.length);
+      record.putInt((int) crc.getValue());
+      record.put(payload);
+      record.flip();
+      // Drops any incomplete record left by an interrupted save.
+      channel.truncate(end);
+      writeFully(channel, record, end);
+      channel.force(true);
+    }
+  }
+
+  /**
+   * Applies the journal of a file to the state loaded from it. Incomplete or corrupted records at
+   * the end of the journal are ignored. Operations are applied to the loaded family so that a family
+   * backed by a store only holds the members and relations found in the journal.
+   * 
+   * @param base the base file
+   * @param edit the state loaded from the base file
+   * @return the state after all valid records were applied
+   * @throws IOException if an I/O error occured
+   * @throws ParseException if a valid record holds a wrong length, an unknown operation or one that
+   *           cannot be applied
+   */
+  static FamilyEdit replay(Path base, FamilyEdit edit) throws IOException, ParseException {
+    Path journal = of(base);
+
+    if (!Files.exists(journal) || !matches(journal, base))
+      return edit;
+
+    Family family = edit.getFamily();
+    LongPointMap locations = edit.getLocations();
+
+    try (FileChannel channel = FileChannel.open(journal, StandardOpenOption.READ)) {
+      long position = HEADER_SIZE;
+      byte[] payload;
+
+      while ((payload = readRecord(channel, position)) != null) {
+        position += 2 * Integer.BYTES + payload.length;
+        BinaryFormat.BoundedInputStream in = new BinaryFormat.BoundedInputStream(new ByteArrayInputStream(payload), payload.length);
+
+        try {
+          while (in.remaining() > 0) {
+            int op = in.readUnsignedByte();
+
+            switch (op) {
+              case OP_HEADER:
+                family.setGlobalId(in.readLong());
+                family.setName(BinaryFormat.readString(in));
+                break;
+              case OP_MEMBER: {
+                BinaryFormat.MemberRecord record = BinaryFormat.readMember(in);
+                Portrait portrait = null;
+                if (record.blob == PORTRAIT_UNCHANGED) {
+                  portrait = family.getMember(record.id).flatMap(FamilyMember::getPortrait).orElse(null);
+                }
+                else if (record.blob == PORTRAIT_SET) {
+                  byte[] data = new byte[BinaryFormat.checkCount(in, in.readInt(), 1)];
+                  in.readFully(data);
+                  portrait = new Portrait(data);
+                }
+                family.putMember(record.toMember(portrait));
+                locations.put(record.id, record.x, record.y);
+                break;
+              }
+              case OP_REMOVE_MEMBER: {
+                long id = in.readLong();
+                family.removeMember(id);
+                locations.remove(id);
+                break;
+              }
+              case OP_POSITION:
+                locations.put(in.readLong(), in.readInt(), in.readInt());
+                break;
+              case OP_RELATION: {
+                Relationship r = BinaryFormat.readRelation(in);
+                if (family.areInRelationship(r.getPartner1(), r.getPartner2()))
+                  family.updateRelation(r);
+                else
+                  family.addRelation(r);
+                break;
+              }
+              case OP_REMOVE_RELATION:
+                family.getRelation(in.readLong(), in.readLong()).ifPresent(family::removeRelationship);
+                break;
+              default:
+                throw new ParseException("unknown journal operation " + op, -1);
+            }
+          }
+        }
+        catch (EOFException | IndexOutOfBoundsException | IllegalArgumentException | IllegalStateException | NullPointerException ex) {
+          // The record is complete but its operations cannot be read or applied.
+          throw new ParseException("corrupted journal", -1);
+        }
+      }
+    }
+
+    return new FamilyEdit(family, locations);
+  }
+
+  /**
+   * Computes the operations that turn a state into another. Only the members, relations and
+   * locations that are not shared by both states are visited (see
+   * {@link Family#diff(Family, FamilyDiffHandler)}).
+   * 
+   * @param previous the previous state
+   * @param next the new state
+   * @return the encoded operations
+   * @throws IOException if an I/O error occured
+   */
+  private static byte[] diff(FamilyEdit previous, FamilyEdit next) throws IOException {
+    Family oldFamily = previous.getFamily();
+    Family newFamily = next.getFamily();
+    PersistentLongMap<Point> newLocations = next.getLocationsView();
+    ByteArrayOutputStream bytes = new ByteArrayOutputStream();
+    DataOutputStream out = new DataOutputStream(bytes);
+    // Written members carry their location.
+    LongHashSet written = new LongHashSet();
+
+    if (oldFamily.getGlobalId() != newFamily.getGlobalId() || !Objects.equals(oldFamily.getName(), newFamily.getName())) {
+      out.writeByte(OP_HEADER);
+      out.writeLong(newFamily.getGlobalId());
+      BinaryFormat.writeString(out, newFamily.getName());
+    }
+
+    try {
+      // Members are reported before relations so that relations only reference existing members.
+      newFamily.diff(oldFamily, new FamilyDiffHandler() {
+        @Override
+        public void memberAdded(FamilyMember member) {
+          writeMember(null, member);
+        }
+
+        @Override
+        public void memberUpdated(FamilyMember old, FamilyMember member) {
+          writeMember(old, member);
+        }
+
+        @Override
+        public void memberRemoved(FamilyMember old) {
+          write(() -> {
+            out.writeByte(OP_REMOVE_MEMBER);
+            out.writeLong(old.getId());
+          });
+        }
+
+        @Override
+        public void relationAdded(Relationship relation) {
+          writeRelation(relation);
+        }
+
+        @Override
+        public void relationUpdated(Relationship old, Relationship relation) {
+          writeRelation(relation);
+        }
+
+        @Override
+        public void relationRemoved(Relationship old) {
+          write(() -> {
+            out.writeByte(OP_REMOVE_RELATION);
+            out.writeLong(old.getPartner1());
+            out.writeLong(old.getPartner2());
+          });
+        }
+
+        private void writeMember(FamilyMember old, FamilyMember member) {
+          write(() -> {
+            Optional<Portrait> portrait = member.getPortrait();
+            int flag;
+            if (old != null && old.getPortrait().equals(portrait))
+              flag = PORTRAIT_UNCHANGED;
+            else
+              flag = portrait.isPresent() ? PORTRAIT_SET : PORTRAIT_NONE;
+            out.writeByte(OP_MEMBER);
+            BinaryFormat.writeMember(out, member, newLocations.get(member.getId()), flag);
+            if (flag == PORTRAIT_SET) {
+              out.writeInt(portrait.get().getDataLength());
+              out.write(portrait.get().getData());
+            }
+            written.add(member.getId());
+          });
+        }
+
+        private void writeRelation(Relationship relation) {
+          write(() -> {
+            out.writeByte(OP_RELATION);
+            BinaryFormat.writeRelation(out, relation);
+          });
+        }
+      });
+
+      // Locations of removed members are removed with them.
+      newLocations.diff(previous.getLocationsView(), new PersistentLongMap.DiffHandler<Point>() {
+        @Override
+        public void added(long id, Point location) {
+          writePosition(id, location);
+        }
+
+        @Override
+        public void changed(long id, Point old, Point location) {
+          writePosition(id, location);
+        }
+
+        @Override
+        public void removed(long id, Point old) {}
+
+        private void writePosition(long id, Point location) {
+          if (!written.contains(id)) {
+            write(() -> {
+              out.writeByte(OP_POSITION);
+              out.writeLong(id);
+              out.writeInt(location.x);
+              out.writeInt(location.y);
+            });
+          }
+        }
+      });
+    }
+    catch (UncheckedIOException ex) {
+      throw ex.getCause();
+    }
+
+    out.flush();
+    return bytes.toByteArray();
+  }
+
+  /**
+   * Runs a write operation from a diff handler, that cannot throw checked exceptions.
+   * 
+   * @param operation the operation
+   * @throws UncheckedIOException if an I/O error occured
+   */
+  private static void write(WriteOperation operation) {
+    try {
+      operation.write();
+    }
+    catch (IOException ex) {
+      throw new UncheckedIOException(ex);
+    }
+  }
+
+  /**
+   * Tells if a journal matches its base file.
+   */
+  private static boolean matches(Path journal, Path base) throws IOException {
+    try (FileChannel channel = FileChannel.open(journal, StandardOpenOption.READ)) {
+      ByteBuffer header = ByteBuffer.allocate(HEADER_SIZE);
+      while (header.hasRemaining() && channel.read(header) >= 0)
+        continue;
+      if (header.hasRemaining())
+        return false;
+
+      header.flip();
+      byte[] magic = new byte[MAGIC.length];
+      header.get(magic);
+      return Arrays.equals(magic, MAGIC) && header.getInt() == FORMAT_VERSION && header.getLong() == Files.size(base)
+          && header.getLong() == Files.getLastModifiedTime(base).toMillis();
+    }
+  }
+
+  /**
+   * Returns the length of the valid part of a journal, without any incomplete or corrupted record.
+   */
+  private static long validLength(FileChannel channel) throws IOException {
+    long position = HEADER_SIZE;
+    byte[] payload;
+
+    while ((payload = readRecord(channel, position)) != null)
+      position += 2 * Integer.BYTES + payload.length;
+
+    return position;
+  }
+
+  /**
+   * Reads a record.
+   * 
+   * @param channel the journal
+   * @param position record's position
+   * @return the record's payload; null if there is no complete and valid record at this position
+   * @throws IOException if an I/O error occured
+   */
+  private static byte[] readRecord(FileChannel channel, long position) throws IOException {
+    ByteBuffer header = ByteBuffer.allocate(2 * Integer.BYTES);
+
+    try {
+      readFully(channel, header, position);
+      header.flip();
+      int length = header.getInt();
+      int checksum = header.getInt();
+      if (length < 0 || length > MAX_RECORD_SIZE || position + header.capacity() + length > channel.size())
+        return null;
+
+      ByteBuffer payload = ByteBuffer.allocate(length);
+      readFully(channel, payload, position + header.capacity());
+      CRC32 crc = new CRC32();
+      crc.update(payload.array());
+
+      return (int) crc.getValue() == checksum ? payload.array() : null;
+    }
+    catch (EOFException ex) {
+      return null;
+    }
+  }
+
+  private static void readFully(FileChannel channel, ByteBuffer buffer, long position) throws IOException {
+    while (buffer.hasRemaining()) {
+      if (channel.read(buffer, position + buffer.position()) < 0)
+        throw new EOFException();
+    }
+  }
+
+  private static void writeFully(FileChannel channel, ByteBuffer buffer, long position) throws IOException {
+    while (buffer.hasRemaining())
+      channel.write(buffer, position + buffer.position());
+  }
+
+  /**
+   * A write operation that may throw an {@link IOException}.
+   * 
+   * @author Damien Vergnet
+   */
+  @FunctionalInterface
+  private interface WriteOperation {
+    void write() throws IOException;
+  }
+
+  private Journal() {}
+}
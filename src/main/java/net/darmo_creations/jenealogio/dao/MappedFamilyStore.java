@@ -0,0 +1,910 @@
+/*
+ * Copyright © 2017 Damien Vergnet
+ *
+ * This file is part of Jenealogio.
+ *
+ * This program is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with this program.  If not, see <http://www.gnu.org/licenses/>.
+ */
+package net.darmo_creations.jenealogio.dao;
+
+import java.awt.Point;
+import java.io.Closeable;
+import java.io.IOException;
+import java.nio.BufferUnderflowException;
+import java.nio.ByteBuffer;
+import java.nio.MappedByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardCopyOption;
+import java.nio.file.StandardOpenOption;
+import java.text.ParseException;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collection;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Map;
+import java.util.Optional;
+import java.util.Set;
+import java.util.WeakHashMap;
+import java.util.stream.Collectors;
+import java.util.stream.IntStream;
+import java.util.stream.LongStream;
+import java.util.stream.Stream;
+
+import net.darmo_creations.jenealogio.Jenealogio;
+import net.darmo_creations.jenealogio.model.FamilyEdit;
+import net.darmo_creations.jenealogio.model.date.Date;
+import net.darmo_creations.jenealogio.model.family.Family;
+import net.darmo_creations.jenealogio.model.family.FamilyMember;
+import net.darmo_creations.jenealogio.model.family.FamilySource;
+import net.darmo_creations.jenealogio.model.family.Gender;
+import net.darmo_creations.jenealogio.model.family.Portrait;
+import net.darmo_creations.jenealogio.model.family.Relationship;
+import net.darmo_creations.jenealogio.util.LongPointMap;
+import net.darmo_creations.utils.version.Version;
+import net.darmo_creations.utils.version.VersionException;
+
+/**
+ * A tree store whose sections are memory-mapped so that members and relations can be read one by
+ * one without loading the whole tree. A store is made of these sections:
+ * <ul>
+ * <li>a fixed-size header;</li>
+ * <li>the IDs index: the sorted IDs of all members;</li>
+ * <li>members: fixed-width records, in the same order as the IDs index;</li>
+ * <li>relations: fixed-width records;</li>
+ * <li>the relations index: (member ID, relation number) pairs for both partners, sorted by ID;</li>
+ * <li>children: fixed-width records, referenced by relations;</li>
+ * <li>the children index: (child ID, relation number) pairs, sorted by ID;</li>
+ * <li>portraits: encoded images, referenced by members;</li>
+ * <li>strings: length-prefixed UTF-8 strings, referenced by their offset in this section.</li>
+ * </ul>
+ * Members are found by a binary search in the IDs index. All numbers are big-endian. Every record is
+ * checked when the store is opened so that reading it later cannot fail.
+ * <p>
+ * A store is a {@link FamilySource}: the family returned by {@link #load()} reads its members and
+ * relations from the mapped sections. Mappings stay valid after the store is closed, until they are
+ * garbage collected. On Windows, a mapped file cannot be replaced in the meantime:
+ * {@link #release(Path)} maps the stores reading a file from a copy of it so that it can be.
+ * </p>
+ * 
+ * @author Damien Vergnet
+ */
+public final class MappedFamilyStore implements Closeable, FamilySource {
+  /** First bytes of store files; the first one cannot start a JSON file */
+  static final byte[] MAGIC = {(byte) 0x89, 'J', 'G', 'S'};
+  private static final int FORMAT_VERSION = 4;
+
+  private static final int HEADER_SIZE = 60;
+  private static final int MEMBER_SIZE = 74;
+  private static final int RELATION_SIZE = 37;
+  private static final int INDEX_ENTRY_SIZE = 12;
+  private static final int CHILD_SIZE = 13;
+  /** Portraits are mapped in windows of this size as a mapping cannot exceed 2 GB */
+  private static final int PORTRAITS_WINDOW = 1 << 30;
+
+  /** Reference to the null string */
+  private static final int NULL = -1;
+  /** Offsets of the string references in member records */
+  private static final int[] MEMBER_STRINGS = {8, 12, 16, 20, 29, 37, 42};
+
+  private static final int RELATION_WEDDING = 1;
+  private static final int RELATION_ENDED = 1 << 1;
+
+  /** The stores that may still be read, to release their file */
+  private static final Set<MappedFamilyStore> STORES = Collections.synchronizedSet(Collections.newSetFromMap(new WeakHashMap<>()));
+
+  private final FileChannel channel;
+  /** The file sections are mapped from; null once they are mapped from a copy */
+  private volatile Path file;
+  private final long globalId;
+  private final String name;
+  private final int membersNb;
+  private final int relationsNb;
+  private final int childrenNb;
+  // Sections are only replaced by the same bytes mapped from another file.
+  private volatile ByteBuffer ids;
+  private volatile ByteBuffer members;
+  private volatile ByteBuffer relations;
+  private volatile ByteBuffer relationsIndex;
+  private volatile ByteBuffer children;
+  private volatile ByteBuffer childrenIndex;
+  private volatile ByteBuffer[] portraits;
+  private long portraitsLength;
+  private volatile ByteBuffer strings;
+
+  /**
+   * Tells if a file is a store.
+   * 
+   * @param file the file
+   * @return true if the file starts with the store magic number
+   * @throws IOException if an I/O error occured
+   */
+  static boolean isStore(Path file) throws IOException {
+    ByteBuffer bytes = ByteBuffer.allocate(MAGIC.length);
+
+    try (FileChannel channel = FileChannel.open(file, StandardOpenOption.READ)) {
+      while (bytes.hasRemaining() && channel.read(bytes) >= 0)
+        continue;
+    }
+
+    return !bytes.hasRemaining() && Arrays.equals(bytes.array(), MAGIC);
+  }
+
+  /**
+   * Opens a store and checks all of its records. The file stays open until the store is closed;
+   * members and relations can still be read after that.
+   * 
+   * @param file the file
+   * @param ignoreVersion if true, any version mismatch will be ignored
+   * @return the store
+   * @throws IOException if an I/O error occured
+   * @throws ParseException if the file is not a valid store
+   * @throws VersionException if file's version is more recent than the current version
+   */
+  public static MappedFamilyStore open(Path file, boolean ignoreVersion) throws IOException, ParseException, VersionException {
+    FileChannel channel = FileChannel.open(file, StandardOpenOption.READ);
+
+    try {
+      MappedFamilyStore store = new MappedFamilyStore(channel, ignoreVersion);
+      store.file = file.toAbsolutePath().normalize();
+      STORES.add(store);
+      return store;
+    }
+    catch (IOException | ParseException | VersionException | RuntimeException ex) {
+      channel.close();
+      if (ex instanceof BufferUnderflowException || ex instanceof IndexOutOfBoundsException || ex instanceof IllegalArgumentException)
+        throw new ParseException("corrupted file", -1);
+      throw ex;
+    }
+  }
+
+  private MappedFamilyStore(FileChannel channel, boolean ignoreVersion) throws IOException, ParseException, VersionException {
+    this.channel = channel;
+
+    ByteBuffer header = map(channel, 0, HEADER_SIZE);
+    byte[] magic = new byte[MAGIC.length];
+    header.get(magic);
+    if (!Arrays.equals(magic, MAGIC) || header.getInt() != FORMAT_VERSION)
+      throw new ParseException("corrupted file", -1);
+    Version version = new Version(header.getInt());
+    if (!ignoreVersion && version.after(Jenealogio.CURRENT_VERSION))
+      throw new VersionException(Jenealogio.CURRENT_VERSION, version);
+    this.globalId = header.getLong();
+    int nameRef = header.getInt();
+    this.membersNb = header.getInt();
+    this.relationsNb = header.getInt();
+    this.childrenNb = header.getInt();
+    mapSections(channel, header);
+
+    checkString(nameRef);
+    this.name = getString(nameRef);
+    checkRecords();
+  }
+
+  /**
+   * Maps all sections after the header.
+   * 
+   * @param channel the file
+   * @param header the header, positioned after the children count
+   * @throws IOException if an I/O error occured
+   * @throws ParseException if a section is not in the file
+   */
+  private void mapSections(FileChannel channel, ByteBuffer header) throws IOException, ParseException {
+    long portraitsOffset = header.getLong();
+    long stringsOffset = header.getLong();
+    long stringsLength = header.getLong();
+
+    long offset = HEADER_SIZE;
+    this.ids = map(channel, offset, (long) this.membersNb * Long.BYTES);
+    offset += (long) this.membersNb * Long.BYTES;
+    this.members = map(channel, offset, (long) this.membersNb * MEMBER_SIZE);
+    offset += (long) this.membersNb * MEMBER_SIZE;
+    this.relations = map(channel, offset, (long) this.relationsNb * RELATION_SIZE);
+    offset += (long) this.relationsNb * RELATION_SIZE;
+    this.relationsIndex = map(channel, offset, 2L * this.relationsNb * INDEX_ENTRY_SIZE);
+    offset += 2L * this.relationsNb * INDEX_ENTRY_SIZE;
+    this.children = map(channel, offset, (long) this.childrenNb * CHILD_SIZE);
+    offset += (long) this.childrenNb * CHILD_SIZE;
+    this.childrenIndex = map(channel, offset, (long) this.childrenNb * INDEX_ENTRY_SIZE);
+    this.portraitsLength = stringsOffset - portraitsOffset;
+    if (this.portraitsLength < 0)
+      throw new ParseException("corrupted file", -1);
+    ByteBuffer[] portraits = new ByteBuffer[(int) ((this.portraitsLength + PORTRAITS_WINDOW - 1) / PORTRAITS_WINDOW)];
+    for (int i = 0; i < portraits.length; i++) {
+      long start = (long) i * PORTRAITS_WINDOW;
+      portraits[i] = map(channel, portraitsOffset + start, Math.min(PORTRAITS_WINDOW, this.portraitsLength - start));
+    }
+    this.portraits = portraits;
+    this.strings = map(channel, stringsOffset, stringsLength);
+  }
+
+  /**
+   * Maps a section of a file.
+   * 
+   * @param channel the file
+   * @param offset section's offset
+   * @param length section's length
+   * @return the mapped section
+   * @throws IOException if an I/O error occured
+   * @throws ParseException if the section is not in the file
+   */
+  private static MappedByteBuffer map(FileChannel channel, long offset, long length) throws IOException, ParseException {
+    if (offset < 0 || length < 0 || length > Integer.MAX_VALUE || offset + length > channel.size())
+      throw new ParseException("invalid section", -1);
+    return channel.map(FileChannel.MapMode.READ_ONLY, offset, length);
+  }
+
+  /**
+   * Maps the stores still reading a file from a copy of it, so that the file can be replaced once
+   * the previous mappings are garbage collected. The copy is deleted when it is no longer mapped.
+   * 
+   * @param file the file
+   * @return true if a store was reading the file
+   * @throws IOException if the file could not be copied or mapped
+   */
+  static boolean release(Path file) throws IOException {
+    Path path = file.toAbsolutePath().normalize();
+    List<MappedFamilyStore> stores;
+    synchronized (STORES) {
+      stores = STORES.stream().filter(store -> path.equals(store.file)).collect(Collectors.toList());
+    }
+    if (stores.isEmpty())
+      return false;
+
+    Path copy = Files.createTempFile("store", null);
+    FileChannel channel;
+    try {
+      Files.copy(path, copy, StandardCopyOption.REPLACE_EXISTING);
+      channel = FileChannel.open(copy, StandardOpenOption.READ, StandardOpenOption.DELETE_ON_CLOSE);
+    }
+    catch (IOException ex) {
+      Files.deleteIfExists(copy);
+      throw ex;
+    }
+
+    try (FileChannel c = channel) {
+      for (MappedFamilyStore store : stores) {
+        ByteBuffer header = map(c, 0, HEADER_SIZE);
+        header.position(HEADER_SIZE - 3 * Long.BYTES);
+        store.mapSections(c, header);
+        store.file = null;
+      }
+    }
+    catch (ParseException ex) {
+      throw new IOException("file changed while it was mapped", ex);
+    }
+
+    return true;
+  }
+
+  /**
+   * Checks all records: IDs order, references to other sections, genders and dates.
+   * 
+   * @throws ParseException if a record is invalid
+   */
+  private void checkRecords() throws ParseException {
+    for (int i = 0; i < this.membersNb; i++) {
+      int offset = i * MEMBER_SIZE;
+      ByteBuffer b = this.members;
+      long id = this.ids.getLong(i * Long.BYTES);
+
+      check(i == 0 || id > this.ids.getLong((i - 1) * Long.BYTES));
+      check(b.getLong(offset) == id);
+      for (int field : MEMBER_STRINGS)
+        checkString(b.getInt(offset + field));
+      check(getGender(b.get(offset + 24)) != null);
+      checkDate(b.getInt(offset + 25));
+      checkDate(b.getInt(offset + 33));
+      long portraitOffset = b.getLong(offset + 54);
+      int portraitLength = b.getInt(offset + 62);
+      check(portraitLength == -1 || portraitLength >= 0 && portraitOffset >= 0 && portraitOffset <= this.portraitsLength - portraitLength);
+    }
+
+    for (int r = 0; r < this.relationsNb; r++) {
+      int offset = r * RELATION_SIZE;
+      ByteBuffer b = this.relations;
+
+      check(indexOf(b.getLong(offset)) >= 0 && indexOf(b.getLong(offset + 8)) >= 0);
+      checkDate(b.getInt(offset + 17));
+      checkString(b.getInt(offset + 21));
+      checkDate(b.getInt(offset + 25));
+      int childrenStart = b.getInt(offset + 29);
+      int childrenNb = b.getInt(offset + 33);
+      check(childrenStart >= 0 && childrenNb >= 0 && childrenStart <= this.childrenNb - childrenNb);
+    }
+
+    for (int i = 0; i < 2 * this.relationsNb; i++) {
+      long id = checkIndexEntry(this.relationsIndex, i);
+      int offset = this.relationsIndex.getInt(i * INDEX_ENTRY_SIZE + Long.BYTES) * RELATION_SIZE;
+      check(this.relations.getLong(offset) == id || this.relations.getLong(offset + 8) == id);
+    }
+
+    for (int i = 0; i < this.childrenNb; i++) {
+      checkDate(this.children.getInt(i * CHILD_SIZE + 9));
+      long id = checkIndexEntry(this.childrenIndex, i);
+      int offset = this.childrenIndex.getInt(i * INDEX_ENTRY_SIZE + Long.BYTES) * RELATION_SIZE;
+      int childrenStart = this.relations.getInt(offset + 29);
+      boolean found = false;
+      for (int c = childrenStart; c < childrenStart + this.relations.getInt(offset + 33) && !found; c++)
+        found = this.children.getLong(c * CHILD_SIZE) == id;
+      check(found);
+    }
+  }
+
+  /**
+   * Checks an entry of an index: IDs must be sorted and relation numbers in range.
+   * 
+   * @param index the index
+   * @param i entry's number
+   * @return entry's ID
+   * @throws ParseException if the entry is invalid
+   */
+  private long checkIndexEntry(ByteBuffer index, int i) throws ParseException {
+    long id = index.getLong(i * INDEX_ENTRY_SIZE);
+    int r = index.getInt(i * INDEX_ENTRY_SIZE + Long.BYTES);
+
+    check(i == 0 || id >= index.getLong((i - 1) * INDEX_ENTRY_SIZE));
+    check(r >= 0 && r < this.relationsNb);
+
+    return id;
+  }
+
+  /**
+   * Checks that a string reference is null or points to a string that fits in the strings section.
+   */
+  private void checkString(int ref) throws ParseException {
+    if (ref != NULL) {
+      check(ref >= 0 && ref <= this.strings.capacity() - Integer.BYTES);
+      int length = this.strings.getInt(ref);
+      check(length >= 0 && length <= this.strings.capacity() - Integer.BYTES - ref);
+    }
+  }
+
+  private static void checkDate(int packed) throws ParseException {
+    try {
+      unpackDate(packed);
+    }
+    catch (IllegalArgumentException ex) {
+      throw new ParseException("invalid date", -1);
+    }
+  }
+
+  private static void check(boolean condition) throws ParseException {
+    if (!condition)
+      throw new ParseException("corrupted file", -1);
+  }
+
+  /**
+   * @return the global ID
+   */
+  public long getGlobalId() {
+    return this.globalId;
+  }
+
+  /**
+   * @return the family's name
+   */
+  public String getName() {
+    return this.name;
+  }
+
+  @Override
+  public int getMembersNumber() {
+    return this.membersNb;
+  }
+
+  @Override
+  public LongStream getIds() {
+    return LongStream.range(0, this.membersNb).map(i -> this.ids.getLong((int) i * Long.BYTES));
+  }
+
+  /**
+   * Reads the member with the given ID. Its portrait is only read when its data is needed.
+   * 
+   * @param id member's ID
+   * @return the member or nothing if there is none with this ID
+   */
+  @Override
+  public Optional<FamilyMember> getMember(long id) {
+    int i = indexOf(id);
+    return i >= 0 ? Optional.of(readMember(i)) : Optional.empty();
+  }
+
+  /**
+   * Reads the position of the card of a member.
+   * 
+   * @param id member's ID
+   * @return the position or nothing if there is no member with this ID
+   */
+  public Optional<Point> getPosition(long id) {
+    int i = indexOf(id);
+
+    if (i < 0)
+      return Optional.empty();
+    int offset = i * MEMBER_SIZE;
+    return Optional.of(new Point(this.members.getInt(offset + 46), this.members.getInt(offset + 50)));
+  }
+
+  @Override
+  public int getRelationsNumber() {
+    return this.relationsNb;
+  }
+
+  @Override
+  public Stream<Relationship> getRelations() {
+    return IntStream.range(0, this.relationsNb).mapToObj(r -> readRelation(r, null));
+  }
+
+  @Override
+  public Set<Relationship> getRelations(long id) {
+    return readRelations(this.relationsIndex, 2 * this.relationsNb, id);
+  }
+
+  @Override
+  public Set<Relationship> getParentRelations(long id) {
+    return readRelations(this.childrenIndex, this.childrenNb, id);
+  }
+
+  /**
+   * Returns the family backed by this store: members and relations are read when they are looked
+   * up, only the modified ones are held in memory. Positions are all read. The family can still be
+   * used after this store is closed.
+   * 
+   * @return the family and the positions of all members
+   */
+  public FamilyEdit load() {
+    LongPointMap locations = new LongPointMap(this.membersNb);
+
+    for (int i = 0; i < this.membersNb; i++) {
+      int offset = i * MEMBER_SIZE;
+      locations.put(this.members.getLong(offset), this.members.getInt(offset + 46), this.members.getInt(offset + 50));
+    }
+
+    return new FamilyEdit(new Family(this.globalId, this.name, this), locations);
+  }
+
+  /**
+   * Loads some members and the relations between them. Children that are not loaded are not added
+   * to relations.
+   * 
+   * @param ids IDs of the members to load
+   * @return the family and the positions of loaded members
+   */
+  public FamilyEdit load(Collection<Long> ids) {
+    Set<Long> loaded = new HashSet<>();
+    Set<FamilyMember> members = new HashSet<>();
+    LongPointMap locations = new LongPointMap(ids.size());
+
+    for (long id : ids) {
+      int i = indexOf(id);
+      if (i >= 0 && loaded.add(id)) {
+        members.add(readMember(i));
+        locations.put(id, getPosition(id).get());
+      }
+    }
+
+    Set<Integer> relationsNbs = new HashSet<>();
+    Set<Relationship> relations = new HashSet<>();
+    for (long id : loaded) {
+      for (int r : find(this.relationsIndex, 2 * this.relationsNb, id)) {
+        int offset = r * RELATION_SIZE;
+        if (relationsNbs.add(r) && loaded.contains(this.relations.getLong(offset)) && loaded.contains(this.relations.getLong(offset + 8)))
+          relations.add(readRelation(r, loaded));
+      }
+    }
+
+    return new FamilyEdit(new Family(this.globalId, this.name, members, relations), locations);
+  }
+
+  @Override
+  public void close() throws IOException {
+    this.channel.close();
+  }
+
+  /**
+   * Returns the index of the record of the given member.
+   * 
+   * @param id member's ID
+   * @return the index or a negative value if there is none
+   */
+  private int indexOf(long id) {
+    int low = 0;
+    int high = this.membersNb - 1;
+
+    while (low <= high) {
+      int mid = (low + high) >>> 1;
+      long midId = this.ids.getLong(mid * Long.BYTES);
+
+      if (midId < id)
+        low = mid + 1;
+      else if (midId > id)
+        high = mid - 1;
+      else
+        return mid;
+    }
+
+    return -1;
+  }
+
+  /**
+   * Returns the relation numbers of all the entries of an index with the given ID.
+   * 
+   * @param index the relations or children index
+   * @param entries the number of entries in the index
+   * @param id the ID
+   * @return the relation numbers
+   */
+  private static List<Integer> find(ByteBuffer index, int entries, long id) {
+    int low = 0;
+    int high = entries;
+
+    // Lower bound of the ID in the index
+    while (low < high) {
+      int mid = (low + high) >>> 1;
+      if (index.getLong(mid * INDEX_ENTRY_SIZE) < id)
+        low = mid + 1;
+      else
+        high = mid;
+    }
+
+    List<Integer> list = new ArrayList<>();
+    for (int i = low; i < entries && index.getLong(i * INDEX_ENTRY_SIZE) == id; i++)
+      list.add(index.getInt(i * INDEX_ENTRY_SIZE + Long.BYTES));
+
+    return list;
+  }
+
+  /**
+   * Reads the relations of all the entries of an index with the given ID.
+   */
+  private Set<Relationship> readRelations(ByteBuffer index, int entries, long id) {
+    Set<Relationship> set = new HashSet<>();
+
+    for (int r : find(index, entries, id))
+      set.add(readRelation(r, null));
+
+    return set;
+  }
+
+  private FamilyMember readMember(int i) {
+    int offset = i * MEMBER_SIZE;
+    ByteBuffer b = this.members;
+    long portraitOffset = b.getLong(offset + 54);
+    int portraitLength = b.getInt(offset + 62);
+    Portrait portrait = null;
+    if (portraitLength >= 0)
+      portrait = new Portrait(b.getLong(offset + 66), portraitLength, () -> readPortrait(portraitOffset, portraitLength));
+
+    return new FamilyMember(b.getLong(offset), portrait, getString(b.getInt(offset + 8)), getString(b.getInt(offset + 12)),
+        getString(b.getInt(offset + 16)), getString(b.getInt(offset + 20)), getGender(b.get(offset + 24)), unpackDate(b.getInt(offset + 25)),
+        getString(b.getInt(offset + 29)), unpackDate(b.getInt(offset + 33)), getString(b.getInt(offset + 37)), b.get(offset + 41) != 0,
+        getString(b.getInt(offset + 42)));
+  }
+
+  /**
+   * Reads a portrait, that may span several windows.
+   * 
+   * @param offset portrait's offset in the portraits section
+   * @param length portrait's length
+   * @return portrait's bytes
+   */
+  private byte[] readPortrait(long offset, int length) {
+    byte[] data = new byte[length];
+    int read = 0;
+
+    while (read < length) {
+      long position = offset + read;
+      ByteBuffer window = this.portraits[(int) (position / PORTRAITS_WINDOW)].duplicate();
+      window.position((int) (position % PORTRAITS_WINDOW));
+      int n = Math.min(length - read, window.remaining());
+      window.get(data, read, n);
+      read += n;
+    }
+
+    return data;
+  }
+
+  /**
+   * Reads a relation.
+   * 
+   * @param r relation's number
+   * @param loaded if not null, only these children are read
+   * @return the relation
+   */
+  private Relationship readRelation(int r, Set<Long> loaded) {
+    int offset = r * RELATION_SIZE;
+    ByteBuffer b = this.relations;
+    int flags = b.get(offset + 16);
+    int childrenStart = b.getInt(offset + 29);
+    int childrenNb = b.getInt(offset + 33);
+    Set<Long> children = new HashSet<>();
+    Map<Long, Date> adoptions = new HashMap<>();
+
+    for (int i = childrenStart; i < childrenStart + childrenNb; i++) {
+      int childOffset = i * CHILD_SIZE;
+      long child = this.children.getLong(childOffset);
+      if (loaded == null || loaded.contains(child)) {
+        children.add(child);
+        if (this.children.get(childOffset + 8) != 0)
+          adoptions.put(child, unpackDate(this.children.getInt(childOffset + 9)));
+      }
+    }
+
+    return new Relationship(unpackDate(b.getInt(offset + 17)), getString(b.getInt(offset + 21)), (flags & RELATION_WEDDING) != 0,
+        (flags & RELATION_ENDED) != 0, unpackDate(b.getInt(offset + 25)), b.getLong(offset), b.getLong(offset + 8), children, adoptions);
+  }
+
+  /**
+   * Reads a string from the strings section.
+   * 
+   * @param ref string's offset in the section
+   * @return the string
+   */
+  private String getString(int ref) {
+    if (ref == NULL)
+      return null;
+
+    ByteBuffer b = this.strings.duplicate();
+    b.position(ref);
+    byte[] bytes = new byte[b.getInt()];
+    b.get(bytes);
+
+    return new String(bytes, StandardCharsets.UTF_8);
+  }
+
+  /**
+   * Returns the gender for the byte written by {@link #putGender(Gender)}.
+   * 
+   * @return the gender or null if none match
+   */
+  private static Gender getGender(byte code) {
+    return Gender.fromCode(code != 0 ? String.valueOf((char) code) : "");
+  }
+
+  /**
+   * Returns the byte a gender is stored as: the character of its code, 0 for the empty code.
+   */
+  private static int putGender(Gender gender) {
+    String code = gender.getCode();
+    return code.isEmpty() ? 0 : code.charAt(0);
+  }
+
+  /**
+   * Writes a family to a store file.
+   * 
+   * @param file the file
+   * @param edit the family and positions
+   * @throws IOException if an I/O error occured
+   */
+  public static void save(Path file, FamilyEdit edit) throws IOException {
+    Family family = edit.getFamily();
+    LongPointMap locations = edit.getLocations();
+    FamilyMember[] members = family.getMembersView().toArray(new FamilyMember[0]);
+    Relationship[] relations = family.getRelationsView().toArray(new Relationship[0]);
+
+    Arrays.sort(members);
+    int childrenNb = 0;
+    for (Relationship r : relations)
+      childrenNb += r.getChildrenCount();
+    long portraitsOffset = HEADER_SIZE + (long) members.length * (Long.BYTES + MEMBER_SIZE) + (long) relations.length * RELATION_SIZE
+        + 2L * relations.length * INDEX_ENTRY_SIZE + (long) childrenNb * (CHILD_SIZE + INDEX_ENTRY_SIZE);
+    long portraitsLength = 0;
+    for (FamilyMember m : members)
+      portraitsLength += m.getPortrait().map(Portrait::getDataLength).orElse(0);
+    long stringsOffset = portraitsOffset + portraitsLength;
+
+    try (FileChannel channel = FileChannel.open(file, StandardOpenOption.CREATE, StandardOpenOption.WRITE,
+        StandardOpenOption.TRUNCATE_EXISTING)) {
+      SectionWriter out = new SectionWriter(channel, HEADER_SIZE);
+      SectionWriter stringsOut = new SectionWriter(channel, stringsOffset);
+
+      for (FamilyMember m : members)
+        out.putLong(m.getId());
+
+      long portraitOffset = 0;
+      for (FamilyMember m : members) {
+        Point location = locations.get(m.getId());
+        out.putLong(m.getId());
+        out.putInt(stringsOut.putString(m.getFamilyName().orElse(null)));
+        out.putInt(stringsOut.putString(m.getUseName().orElse(null)));
+        out.putInt(stringsOut.putString(m.getFirstName().orElse(null)));
+        out.putInt(stringsOut.putString(m.getOtherNames().orElse(null)));
+        out.put(putGender(m.getGender()));
+        out.putInt(packDate(m.getBirthDate()));
+        out.putInt(stringsOut.putString(m.getBirthLocation().orElse(null)));
+        out.putInt(packDate(m.getDeathDate()));
+        out.putInt(stringsOut.putString(m.getDeathLocation().orElse(null)));
+        out.put(m.isDead() ? 1 : 0);
+        out.putInt(stringsOut.putString(m.getComment().orElse(null)));
+        out.putInt(location.x);
+        out.putInt(location.y);
+        out.putLong(portraitOffset);
+        out.putInt(m.getPortrait().map(Portrait::getDataLength).orElse(-1));
+        out.putLong(m.getPortrait().map(Portrait::getFingerprint).orElse(0L));
+        portraitOffset += m.getPortrait().map(Portrait::getDataLength).orElse(0);
+      }
+
+      int childrenStart = 0;
+      List<long[]> index = new ArrayList<>(2 * relations.length);
+      List<long[]> childrenIndex = new ArrayList<>(childrenNb);
+      for (int i = 0; i < relations.length; i++) {
+        Relationship r = relations[i];
+        out.putLong(r.getPartner1());
+        out.putLong(r.getPartner2());
+        out.put((r.isWedding() ? RELATION_WEDDING : 0) | (r.hasEnded() ? RELATION_ENDED : 0));
+        out.putInt(packDate(r.getDate()));
+        out.putInt(stringsOut.putString(r.getLocation().orElse(null)));
+        out.putInt(packDate(r.getEndDate()));
+        out.putInt(childrenStart);
+        out.putInt(r.getChildrenCount());
+        childrenStart += r.getChildrenCount();
+        index.add(new long[]{r.getPartner1(), i});
+        index.add(new long[]{r.getPartner2(), i});
+        for (long child : r.getChildrenIds())
+          childrenIndex.add(new long[]{child, i});
+      }
+
+      writeIndex(out, index);
+
+      for (Relationship r : relations) {
+        for (long child : r.getChildrenIds()) {
+          out.putLong(child);
+          out.put(r.isAdopted(child) ? 1 : 0);
+          out.putInt(packDate(r.getAdoptionDate(child)));
+        }
+      }
+
+      writeIndex(out, childrenIndex);
+
+      for (FamilyMember m : members) {
+        if (m.getPortrait().isPresent())
+          out.put(m.getPortrait().get().getData());
+      }
+
+      int nameRef = stringsOut.putString(family.getName());
+      out.flush();
+      stringsOut.flush();
+
+      SectionWriter header = new SectionWriter(channel, 0);
+      header.put(MAGIC);
+      header.putInt(FORMAT_VERSION);
+      header.putInt(Jenealogio.CURRENT_VERSION.getFullValue());
+      header.putLong(family.getGlobalId());
+      header.putInt(nameRef);
+      header.putInt(members.length);
+      header.putInt(relations.length);
+      header.putInt(childrenNb);
+      header.putLong(portraitsOffset);
+      header.putLong(stringsOffset);
+      header.putLong(stringsOut.getWritten());
+      header.flush();
+    }
+  }
+
+  /**
+   * Sorts the entries of an index by ID then writes them.
+   * 
+   * @param out the output
+   * @param index the (ID, relation number) pairs
+   * @throws IOException if an I/O error occured
+   */
+  private static void writeIndex(SectionWriter out, List<long[]> index) throws IOException {
+    index.sort((e1, e2) -> Long.compare(e1[0], e2[0]));
+    for (long[] entry : index) {
+      out.putLong(entry[0]);
+      out.putInt((int) entry[1]);
+    }
+  }
+
+  /**
+   * Returns the packed value of a date (see {@link Date#toInt()}), 0 if there is none.
+   */
+  private static int packDate(Optional<Date> optDate) {
+    return optDate.map(Date::toInt).orElse(0);
+  }
+
+  /**
+   * Returns the date for a packed value.
+   * 
+   * @throws IllegalArgumentException if the value is not a valid date
+   */
+  private static Date unpackDate(int packed) {
+    return packed != 0 ? Date.fromInt(packed) : null;
+  }
+
+  /**
+   * Writes a section of a file through a buffer.
+   * 
+   * @author Damien Vergnet
+   */
+  private static class SectionWriter {
+    private final FileChannel channel;
+    private final ByteBuffer buffer;
+    private final long start;
+    private long written;
+
+    SectionWriter(FileChannel channel, long start) {
+      this.channel = channel;
+      this.buffer = ByteBuffer.allocate(1 << 16);
+      this.start = start;
+    }
+
+    /**
+     * @return the number of bytes written so far
+     */
+    long getWritten() {
+      return this.written + this.buffer.position();
+    }
+
+    void put(int b) throws IOException {
+      ensureRemaining(1);
+      this.buffer.put((byte) b);
+    }
+
+    void put(byte[] bytes) throws IOException {
+      int offset = 0;
+      while (offset < bytes.length) {
+        ensureRemaining(1);
+        int n = Math.min(this.buffer.remaining(), bytes.length - offset);
+        this.buffer.put(bytes, offset, n);
+        offset += n;
+      }
+    }
+
+    void putInt(int i) throws IOException {
+      ensureRemaining(Integer.BYTES);
+      this.buffer.putInt(i);
+    }
+
+    void putLong(long l) throws IOException {
+      ensureRemaining(Long.BYTES);
+      this.buffer.putLong(l);
+    }
+
+    /**
+     * Writes a string.
+     * 
+     * @param s the string
+     * @return the string's offset in the section; {@link MappedFamilyStore#NULL} for null
+     */
+    int putString(String s) throws IOException {
+      if (s == null)
+        return NULL;
+      long offset = getWritten();
+      if (offset > Integer.MAX_VALUE)
+        throw new IOException("too many strings");
+      byte[] bytes = s.getBytes(StandardCharsets.UTF_8);
+      putInt(bytes.length);
+      put(bytes);
+      return (int) offset;
+    }
+
+    private void ensureRemaining(int n) throws IOException {
+      if (this.buffer.remaining() < n)
+        flush();
+    }
+
+    void flush() throws IOException {
+      this.buffer.flip();
+      while (this.buffer.hasRemaining())
+        this.written += this.channel.write(this.buffer, this.start + this.written);
+      this.buffer.clear();
+    }
+  }
+}
@@ -17,5 +17,6 @@ public enum EventType implements UserEvent.Type {
   DELETE_CARD,
   DELETE_LINK,
   EDIT_COLORS,
-  EXPORT_IMAGE;
+  EXPORT_IMAGE,
+  AUTO_LAYOUT;
 }
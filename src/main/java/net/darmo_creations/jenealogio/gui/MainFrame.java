@@ -25,6 +25,9 @@ import java.awt.event.ActionListener;
 import java.awt.event.KeyEvent;
 import java.awt.image.BufferedImage;
 import java.io.File;
+import java.io.IOException;
+import java.io.OutputStream;
+import java.io.Writer;
 import java.util.List;
 import java.util.Map;
 import java.util.Optional;
@@ -60,6 +63,7 @@ import net.darmo_creations.jenealogio.model.family.Family;
 import net.darmo_creations.jenealogio.model.family.FamilyMember;
 import net.darmo_creations.jenealogio.model.family.Relationship;
 import net.darmo_creations.jenealogio.util.Images;
+import net.darmo_creations.jenealogio.util.LongPointMap;
 import net.darmo_creations.utils.FilesUtil;
 import net.darmo_creations.utils.I18n;
 
@@ -80,7 +84,8 @@ public class MainFrame extends ApplicationFrame<MainController> {
   private EditColorsDialog editColorsDialog;
 
   private JMenu editMenu;
-  private JMenuItem editTreeItem, saveItem, saveAsItem, exportImageItem, undoItem, redoItem, addCardItem, addLinkItem, editItem, deleteItem;
+  private JMenuItem editTreeItem, saveItem, saveAsItem, exportImageItem, undoItem, redoItem, addCardItem, addLinkItem, editItem, deleteItem,
+      autoLayoutItem;
   private JButton saveBtn, saveAsBtn, undoBtn, redoBtn, addCardBtn, editCardBtn, editLinkBtn, deleteCardBtn, deleteLinkBtn;
   private JToggleButton addLinkBtn;
   private DisplayPanel displayPnl;
@@ -107,6 +112,8 @@ public class MainFrame extends ApplicationFrame<MainController> {
     for (String ext : Jenealogio.IMAGE_FILES_EXTS)
       this.exportFileChooser.addChoosableFileFilter(
           new OneExtensionFileFilter(I18n.toTitleCase(I18n.getLocalizedString("word.image")), ext));
+    for (String ext : Jenealogio.VECTOR_IMAGE_FILES_EXTS)
+      this.exportFileChooser.addChoosableFileFilter(new OneExtensionFileFilter(I18n.getLocalizedString("file_type.vector_image.desc"), ext));
     this.treeDialog = new TreeDialog(this);
     this.cardDialog = new CardDialog(this);
     this.cardDetailsDialog = new CardDetailsDialog(this);
@@ -229,6 +236,12 @@ public class MainFrame extends ApplicationFrame<MainController> {
     this.deleteItem.setMnemonic(I18n.getLocalizedMnemonic("item.delete"));
     this.deleteItem.setAccelerator(KeyStroke.getKeyStroke(KeyEvent.VK_DELETE, 0));
 
+    this.editMenu.addSeparator();
+
+    this.editMenu.add(this.autoLayoutItem = new JMenuItem(I18n.getLocalizedString("item.auto_layout.text")));
+    this.autoLayoutItem.setMnemonic(I18n.getLocalizedMnemonic("item.auto_layout"));
+    this.autoLayoutItem.addActionListener(listeners.get(EventType.AUTO_LAYOUT));
+
     menuBar.add(this.editMenu, 1);
 
     // 'Options' menu
@@ -339,6 +352,7 @@ public class MainFrame extends ApplicationFrame<MainController> {
     this.addLinkItem.setEnabled(fileOpen);
     this.editItem.setEnabled(fileOpen && (cardSelected || linkSelected));
     this.deleteItem.setEnabled(fileOpen && (cardSelected || linkSelected));
+    this.autoLayoutItem.setEnabled(fileOpen);
 
     this.saveAsBtn.setEnabled(fileOpen);
     this.undoBtn.setEnabled(canUndo);
@@ -421,6 +435,13 @@ public class MainFrame extends ApplicationFrame<MainController> {
     this.displayPnl.reset();
   }
 
+  /**
+   * Repaints the tree display, e.g. after colors changed.
+   */
+  public void repaintDisplay() {
+    this.displayPnl.repaintAll();
+  }
+
   /**
    * Refreshes the tree display.
    * 
@@ -436,17 +457,24 @@ public class MainFrame extends ApplicationFrame<MainController> {
    * @param family the tree
    * @param positions positions for all cards
    */
-  public void refreshDisplay(Family family, Map<Long, Point> positions, WritableConfig config) {
+  public void refreshDisplay(Family family, LongPointMap positions, WritableConfig config) {
     this.displayPnl.refresh(family, positions, config);
   }
 
   /**
    * @return the positions of all cards
    */
-  public Map<Long, Point> getCardsPositions() {
+  public LongPointMap getCardsPositions() {
     return this.displayPnl.getCardsPositions();
   }
 
+  /**
+   * @return the positions of the cards added or moved since the last call to this method
+   */
+  public LongPointMap getMovedCardsPositions() {
+    return this.displayPnl.getMovedCardsPositions();
+  }
+
   /**
    * @return the display's current middle coordinate
    */
@@ -460,6 +488,16 @@ public class MainFrame extends ApplicationFrame<MainController> {
     return new Point(x, y);
   }
 
+  /**
+   * Returns the width of a card.
+   * 
+   * @param id the member's ID
+   * @return the width of its card
+   */
+  public int getCardWidth(long id) {
+    return this.displayPnl.getCardWidth(id);
+  }
+
   /**
    * Exports the display panel to an image.
    * 
@@ -469,6 +507,26 @@ public class MainFrame extends ApplicationFrame<MainController> {
     return this.displayPnl.exportToImage();
   }
 
+  /**
+   * Exports the display panel to a PNG image without holding the whole image in memory.
+   * 
+   * @param out the stream to write to; it is closed by this method
+   * @throws IOException if an I/O error occurs
+   */
+  public void exportToPng(OutputStream out) throws IOException {
+    this.displayPnl.exportToPng(out);
+  }
+
+  /**
+   * Exports the display panel to an SVG document.
+   * 
+   * @param out the stream to write to; it is closed by this method
+   * @throws IOException if an I/O error occurs
+   */
+  public void exportToSvg(Writer out) throws IOException {
+    this.displayPnl.exportToSvg(out);
+  }
+
   /**
    * Shows the "open" file chooser.
    * 
@@ -0,0 +1,129 @@
+/*
+ * Copyright © 2017 Damien Vergnet
+ * 
+ * This file is part of Jenealogio.
+ *
+ * This program is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ * 
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ * 
+ * You should have received a copy of the GNU General Public License
+ * along with this program.  If not, see <http://www.gnu.org/licenses/>.
+ */
+package net.darmo_creations.jenealogio.gui.components;
+
+import java.util.Collection;
+import java.util.Collections;
+
+import javax.swing.AbstractListModel;
+
+import net.darmo_creations.jenealogio.util.SearchIndex;
+
+/**
+ * A list model that shows the items of a {@link SearchIndex} matching the last query. Items can
+ * also be hidden whatever the query. The model only stores the positions of the shown items and
+ * fires a single event each time they change, so filtering a big list stays cheap for the
+ * {@link javax.swing.JList}.
+ * 
+ * @author Damien Vergnet
+ * @param <T> items type
+ */
+public class FilteredListModel<T> extends AbstractListModel<T> {
+  private static final long serialVersionUID = -3215465006874317386L;
+
+  private SearchIndex<T> index;
+  private boolean[] hidden;
+  private int[] matches;
+  private int[] shown;
+  private int shownCount;
+
+  /**
+   * Creates an empty model.
+   */
+  public FilteredListModel() {
+    setIndex(new SearchIndex<>(Collections.emptyList(), String::valueOf));
+  }
+
+  /**
+   * Sets the items. All items are shown.
+   * 
+   * @param index the index holding the items
+   */
+  public void setIndex(SearchIndex<T> index) {
+    this.index = index;
+    this.hidden = new boolean[index.size()];
+    setMatches(index, index.search(null));
+  }
+
+  /**
+   * @return the current index
+   */
+  public SearchIndex<T> getIndex() {
+    return this.index;
+  }
+
+  /**
+   * Sets the result of a query. Hidden items are not shown.
+   * 
+   * @param index the index that was queried; if it is not the current one, nothing happens
+   * @param matches the sorted positions of the matching items
+   */
+  public void setMatches(SearchIndex<T> index, int[] matches) {
+    if (index == this.index) {
+      this.matches = matches;
+      update();
+    }
+  }
+
+  /**
+   * Hides or shows items. Items that are not in the index are ignored.
+   * 
+   * @param items the items
+   * @param hidden true to hide them; false to show them
+   */
+  public void setHidden(Collection<T> items, boolean hidden) {
+    for (T item : items) {
+      int i = this.index.indexOf(item);
+      if (i >= 0)
+        this.hidden[i] = hidden;
+    }
+    update();
+  }
+
+  /**
+   * Updates the shown items and notifies listeners.
+   */
+  private void update() {
+    int oldCount = this.shownCount;
+
+    if (this.shown == null || this.shown.length < this.matches.length)
+      this.shown = new int[this.matches.length];
+    this.shownCount = 0;
+    for (int i : this.matches) {
+      if (!this.hidden[i])
+        this.shown[this.shownCount++] = i;
+    }
+
+    int max = Math.max(oldCount, this.shownCount);
+    if (max > 0)
+      fireContentsChanged(this, 0, max - 1);
+  }
+
+  @Override
+  public int getSize() {
+    return this.shownCount;
+  }
+
+  @Override
+  public T getElementAt(int index) {
+    if (index < 0 || index >= this.shownCount)
+      throw new ArrayIndexOutOfBoundsException(index);
+    return this.index.get(this.shown[index]);
+  }
+}
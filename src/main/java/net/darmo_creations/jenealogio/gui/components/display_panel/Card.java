@@ -0,0 +1,211 @@
+/*
+ * Copyright © 2017 Damien Vergnet
+ * 
+ * This file is part of Jenealogio.
+ *
+ * This program is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ * 
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ * 
+ * You should have received a copy of the GNU General Public License
+ * along with this program.  If not, see <http://www.gnu.org/licenses/>.
+ */
+package net.darmo_creations.jenealogio.gui.components.display_panel;
+
+import java.awt.Color;
+import java.awt.FontMetrics;
+import java.awt.Graphics2D;
+import java.awt.Point;
+import java.awt.Rectangle;
+import java.io.IOException;
+
+import net.darmo_creations.gui_framework.config.WritableConfig;
+import net.darmo_creations.jenealogio.config.ConfigTags;
+import net.darmo_creations.jenealogio.model.family.FamilyMember;
+import net.darmo_creations.jenealogio.model.family.Gender;
+import net.darmo_creations.jenealogio.util.Images;
+
+/**
+ * A family member's card in the tree display. Cards are not components, they are drawn and
+ * hit-tested by the {@link DisplayPanel} so that big trees do not need thousands of Swing
+ * components.
+ * 
+ * @author Damien Vergnet
+ */
+class Card {
+  private static final int HEIGHT = 30;
+  private static final int PADDING = 20;
+  private static final int BORDER_WIDTH = 2;
+  private static final int ICON_TEXT_GAP = 4;
+
+  private final long id;
+  private Gender gender;
+  private boolean dead;
+  private String text;
+  private Rectangle bounds;
+  private boolean selected, background;
+
+  /**
+   * Creates a card for the given member at (0, 0).
+   * 
+   * @param member the member to display
+   * @param metrics metrics of the font used to draw the name
+   */
+  Card(FamilyMember member, FontMetrics metrics) {
+    this.id = member.getId();
+    this.bounds = new Rectangle();
+    setInfo(member, metrics);
+  }
+
+  /**
+   * Sets the data to display. The card is resized to fit the member's name.
+   * 
+   * @param member the member to display
+   * @param metrics metrics of the font used to draw the name
+   */
+  void setInfo(FamilyMember member, FontMetrics metrics) {
+    this.gender = member.getGender();
+    this.dead = member.isDead();
+    this.text = member.toString();
+
+    int width = metrics.stringWidth(this.text) + PADDING;
+    if (this.dead)
+      width += Images.TOMBSTONE.getIconWidth() + ICON_TEXT_GAP;
+    this.bounds.setSize(width, HEIGHT);
+  }
+
+  long getMemberId() {
+    return this.id;
+  }
+
+  /**
+   * @return a copy of the card's bounds
+   */
+  Rectangle getBounds() {
+    return new Rectangle(this.bounds);
+  }
+
+  Point getLocation() {
+    return this.bounds.getLocation();
+  }
+
+  void setLocation(Point p) {
+    this.bounds.setLocation(p);
+  }
+
+  /**
+   * @return true if this card is selected; false otherwise
+   */
+  boolean isSelected() {
+    return this.selected;
+  }
+
+  /**
+   * Sets the selection. The background selection is cleared.
+   * 
+   * @param selected
+   */
+  void setSelected(boolean selected) {
+    this.selected = selected;
+    this.background = false;
+  }
+
+  /**
+   * @return true if this card is selected in the background; false otherwise
+   */
+  boolean isSelectedBackground() {
+    return this.background;
+  }
+
+  /**
+   * Sets the background selection. The selection is cleared.
+   * 
+   * @param selected
+   */
+  void setSelectedBackground(boolean selected) {
+    this.background = selected;
+    this.selected = false;
+  }
+
+  /**
+   * Draws this card.
+   * 
+   * @param g the graphics context
+   * @param config the config holding the colors
+   * @param metrics metrics of the font used to draw the name
+   * @param foreground the color of the name
+   */
+  void paint(Graphics2D g, WritableConfig config, FontMetrics metrics, Color foreground) {
+    Rectangle r = this.bounds;
+
+    switch (this.gender) {
+      case MAN:
+        g.setColor(config.getValue(ConfigTags.GENDER_MALE_COLOR));
+        break;
+      case WOMAN:
+        g.setColor(config.getValue(ConfigTags.GENDER_FEMALE_COLOR));
+        break;
+      default:
+        g.setColor(config.getValue(ConfigTags.GENDER_UNKNOWN_COLOR));
+        break;
+    }
+    g.fillRect(r.x, r.y, r.width, r.height);
+
+    if (this.selected)
+      g.setColor(config.getValue(ConfigTags.CARD_SELECTED_BORDER_COLOR));
+    else if (this.background)
+      g.setColor(config.getValue(ConfigTags.CARD_SELECTED_BACKGROUND_BORDER_COLOR));
+    else
+      g.setColor(config.getValue(ConfigTags.CARD_BORDER_COLOR));
+    for (int i = 0; i < BORDER_WIDTH; i++)
+      g.drawRect(r.x + i, r.y + i, r.width - 2 * i - 1, r.height - 2 * i - 1);
+
+    int x = r.x + PADDING / 2;
+    if (this.dead) {
+      Images.TOMBSTONE.paintIcon(null, g, x, r.y + (r.height - Images.TOMBSTONE.getIconHeight()) / 2);
+      x += Images.TOMBSTONE.getIconWidth() + ICON_TEXT_GAP;
+    }
+    g.setFont(metrics.getFont());
+    g.setColor(foreground);
+    g.drawString(this.text, x, r.y + (r.height - metrics.getHeight()) / 2 + metrics.getAscent());
+  }
+
+  /**
+   * Writes this card to an SVG document. The selection is not exported.
+   * 
+   * @param out the SVG writer
+   * @param metrics metrics of the font used to draw the name
+   * @throws IOException if an I/O error occurs
+   */
+  void writeSvg(SvgWriter out, FontMetrics metrics) throws IOException {
+    Rectangle r = this.bounds;
+    String genderClass;
+
+    switch (this.gender) {
+      case MAN:
+        genderClass = SvgWriter.MAN;
+        break;
+      case WOMAN:
+        genderClass = SvgWriter.WOMAN;
+        break;
+      default:
+        genderClass = SvgWriter.UNKNOWN;
+        break;
+    }
+
+    int x = r.x + PADDING / 2;
+    int iconX = -1;
+    if (this.dead) {
+      iconX = x;
+      x += Images.TOMBSTONE.getIconWidth() + ICON_TEXT_GAP;
+    }
+    out.card(r, genderClass, iconX, r.y + (r.height - Images.TOMBSTONE.getIconHeight()) / 2, x,
+        r.y + (r.height - metrics.getHeight()) / 2 + metrics.getAscent(), this.text);
+  }
+}
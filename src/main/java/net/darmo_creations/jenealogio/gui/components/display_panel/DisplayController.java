@@ -32,18 +32,21 @@ import net.darmo_creations.jenealogio.events.CardsSelectionEvent;
 import net.darmo_creations.jenealogio.events.LinkEvent;
 
 /**
- * This controller handles cards and links selection and notifies the DisplayPanel.
+ * This controller handles cards and links selection and notifies the DisplayPanel. Events on cards
+ * are forwarded to a {@link DragController}.
  * 
  * @author Damien Vergnet
  */
 class DisplayController extends MouseAdapter {
   private DisplayPanel panel;
+  private DragController dragController;
   private Point mouseLocation;
   private Point selectionStart;
   private Rectangle selection;
 
   DisplayController(DisplayPanel panel) {
     this.panel = panel;
+    this.dragController = new DragController(panel);
     this.mouseLocation = new Point();
     this.selectionStart = null;
     this.selection = null;
@@ -65,7 +68,12 @@ class DisplayController extends MouseAdapter {
 
   @Override
   public void mousePressed(MouseEvent e) {
-    if (SwingUtilities.isLeftMouseButton(e)) {
+    Optional<Long> card = this.panel.getCardAt(e.getPoint());
+
+    if (card.isPresent()) {
+      this.dragController.mousePressed(e, card.get());
+    }
+    else if (SwingUtilities.isLeftMouseButton(e)) {
       this.selectionStart = e.getPoint();
       this.selection = new Rectangle(this.selectionStart);
       ApplicationRegistry.EVENTS_BUS.dispatchEvent(new CardEvent.Clicked(-1, false));
@@ -74,7 +82,10 @@ class DisplayController extends MouseAdapter {
 
   @Override
   public void mouseReleased(MouseEvent e) {
-    if (SwingUtilities.isLeftMouseButton(e)) {
+    if (this.dragController.isGrabbing()) {
+      this.dragController.mouseReleased(e);
+    }
+    else if (SwingUtilities.isLeftMouseButton(e) && this.selection != null) {
       Optional<long[]> opt = this.panel.getPanelsInsideRectangle(this.selection);
       if (opt.isPresent()) {
         ApplicationRegistry.EVENTS_BUS.dispatchEvent(new CardsSelectionEvent(opt.get()));
@@ -85,11 +96,16 @@ class DisplayController extends MouseAdapter {
   }
 
   /**
-   * Deselects all cards and checks if a link was clicked or double-clicked.
+   * Selects the clicked card or checks if a link was clicked or double-clicked.
    */
   @Override
   public void mouseClicked(MouseEvent e) {
-    if (SwingUtilities.isLeftMouseButton(e)) {
+    Optional<Long> card = this.panel.getCardAt(e.getPoint());
+
+    if (card.isPresent()) {
+      this.dragController.mouseClicked(e, card.get());
+    }
+    else if (SwingUtilities.isLeftMouseButton(e)) {
       Optional<long[]> l = this.panel.getHoveredLinkPartners();
 
       if (l.isPresent()) {
@@ -108,6 +124,11 @@ class DisplayController extends MouseAdapter {
 
   @Override
   public void mouseDragged(MouseEvent e) {
+    if (this.dragController.isGrabbing()) {
+      this.dragController.mouseDragged(e);
+      return;
+    }
+
     Point prevLocation = this.mouseLocation;
 
     updateMouseLocation(e);
@@ -167,8 +188,11 @@ class DisplayController extends MouseAdapter {
 
       this.panel.setVerticalScroll(this.panel.getVerticalScroll() + vTrans);
       this.panel.setHorizontalScroll(this.panel.getHorizontalScroll() + hTrans);
+      repaint();
+    }
+    else {
+      this.panel.updateHoveredLinks();
     }
-    repaint();
   }
 
   private void repaint() {
@@ -19,39 +19,58 @@
 package net.darmo_creations.jenealogio.gui.components.display_panel;
 
 import java.awt.BasicStroke;
+import java.awt.Color;
 import java.awt.Dimension;
+import java.awt.FontMetrics;
 import java.awt.Graphics;
 import java.awt.Graphics2D;
+import java.awt.GraphicsEnvironment;
 import java.awt.Point;
 import java.awt.Rectangle;
 import java.awt.RenderingHints;
 import java.awt.dnd.DnDConstants;
 import java.awt.dnd.DropTarget;
-import java.awt.event.MouseAdapter;
-import java.awt.event.MouseEvent;
+import java.awt.geom.Line2D;
 import java.awt.image.BufferedImage;
+import java.io.IOException;
+import java.io.InterruptedIOException;
+import java.io.OutputStream;
+import java.io.Writer;
+import java.util.ArrayDeque;
 import java.util.ArrayList;
+import java.util.Collection;
+import java.util.Collections;
+import java.util.Deque;
 import java.util.HashMap;
 import java.util.HashSet;
+import java.util.Iterator;
 import java.util.List;
 import java.util.Map;
 import java.util.Optional;
 import java.util.Set;
 import java.util.TooManyListenersException;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
 
 import javax.swing.JPanel;
 import javax.swing.JScrollPane;
 import javax.swing.Scrollable;
-import javax.swing.SwingUtilities;
+import javax.swing.Timer;
+import javax.swing.UIManager;
 
-import net.darmo_creations.gui_framework.ApplicationRegistry;
 import net.darmo_creations.gui_framework.config.WritableConfig;
 import net.darmo_creations.jenealogio.config.ConfigTags;
-import net.darmo_creations.jenealogio.events.CardDragEvent;
 import net.darmo_creations.jenealogio.events.CardEvent;
 import net.darmo_creations.jenealogio.events.LinkEvent;
-import net.darmo_creations.jenealogio.gui.components.FamilyMemberPanel;
 import net.darmo_creations.jenealogio.model.family.Family;
+import net.darmo_creations.jenealogio.model.family.FamilyDiffHandler;
+import net.darmo_creations.jenealogio.model.family.FamilyMember;
+import net.darmo_creations.jenealogio.model.family.Relationship;
+import net.darmo_creations.jenealogio.util.LongHashSet;
+import net.darmo_creations.jenealogio.util.LongPointMap;
+import net.darmo_creations.jenealogio.util.PngStripWriter;
 import net.darmo_creations.utils.events.SubsribeEvent;
 import net.darmo_creations.utils.swing.drag_and_drop.DragAndDropListener;
 import net.darmo_creations.utils.swing.drag_and_drop.DragAndDropTarget;
@@ -68,13 +87,53 @@ public class DisplayPanel extends JPanel implements Scrollable, DragAndDropTarge
 
   /** The maximum distance away from a link the mouse must be to count as a hover. */
   private static final int HOVER_DISTANCE = 5;
+  /** Size of the cells of the spatial index in pixels. */
+  private static final int INDEX_CELL_SIZE = 256;
+  /** Size of the cached tiles in pixels. */
+  private static final int TILE_SIZE = 256;
+  /** Number of tiles cached beyond twice the ones the visible zone can overlap. */
+  private static final int TILES_MARGIN = 32;
+  /** Minimum delay between two repaints of changed zones, about one frame at 60 Hz. */
+  private static final int FRAME_DELAY = 16;
+  /** Maximum number of pixels of the strips rendered when exporting to PNG, 16 MiB per strip. */
+  private static final int EXPORT_STRIP_PIXELS = 1 << 22;
+  /** Empty space kept beyond the farthest card when the panel is enlarged. */
+  private static final int PANEL_MARGIN = 200;
+  /** Strokes of links, indexed by the line's width minus one */
+  private static final BasicStroke[] LINK_STROKES = {new BasicStroke(1), new BasicStroke(2)};
+  /** Strokes of ended links, indexed by the line's width minus one */
+  private static final BasicStroke[] ENDED_LINK_STROKES = {
+    new BasicStroke(1, BasicStroke.CAP_BUTT, BasicStroke.JOIN_BEVEL, 0, new float[]{9}, 0),
+    new BasicStroke(2, BasicStroke.CAP_BUTT, BasicStroke.JOIN_BEVEL, 0, new float[]{9}, 0)};
 
   private WritableConfig config;
   private DropTarget dropTarget;
   private DisplayController controller;
-  private MouseAdapter doubleClickController;
-  private Map<Long, FamilyMemberPanel> panels;
-  private List<Link> links;
+  /** The family as it was at the last refresh */
+  private Family family;
+  private Map<Long, Card> cards;
+  /** Cards added or moved since their positions were last retrieved */
+  private LongHashSet movedCards;
+  /** Cards selected, in the foreground or in the background */
+  private LongHashSet selectedCards;
+  /** Metrics of the font used to draw members' names */
+  private FontMetrics cardMetrics;
+  private Set<Link> links;
+  /** The selected link, if any */
+  private Link selectedLink;
+  /** Cards indexed by their bounds */
+  private SpatialGrid<Long> cardsIndex;
+  /** Links indexed by the zone they are drawn in */
+  private SpatialGrid<Link> linksIndex;
+  /** Links of each member, as a partner or a child */
+  private Map<Long, List<Link>> memberLinks;
+  /** Links the mouse was over when it last moved */
+  private Set<Link> hoveredLinks;
+  /** Rendered links and cards */
+  private TileCache tiles;
+  /** Zone changed since the last repaint */
+  private Rectangle pendingRepaint;
+  private Timer repaintTimer;
 
   private JScrollPane scrollPane;
 
@@ -83,24 +142,27 @@ public class DisplayPanel extends JPanel implements Scrollable, DragAndDropTarge
     setLayout(null);
 
     this.controller = new DisplayController(this);
-    this.doubleClickController = new MouseAdapter() {
-      @Override
-      public void mouseClicked(MouseEvent e) {
-        if (SwingUtilities.isLeftMouseButton(e) && e.getClickCount() == 2 && e.getComponent() instanceof FamilyMemberPanel) {
-          FamilyMemberPanel p = (FamilyMemberPanel) e.getComponent();
-          ApplicationRegistry.EVENTS_BUS.dispatchEvent(new CardEvent.DoubleClicked(p.getMemberId()));
-        }
-      }
-    };
     addMouseListener(this.controller);
     addMouseMotionListener(this.controller);
 
     this.scrollPane = scrollPane;
 
-    this.panels = new HashMap<>();
-    this.links = new ArrayList<>();
-
-    this.dropTarget = new DropTarget(this, DnDConstants.ACTION_COPY_OR_MOVE, null);
+    this.cards = new HashMap<>();
+    this.movedCards = new LongHashSet();
+    this.selectedCards = new LongHashSet();
+    this.cardMetrics = getFontMetrics(UIManager.getFont("Label.font"));
+    this.links = new HashSet<>();
+    this.cardsIndex = new SpatialGrid<>(INDEX_CELL_SIZE);
+    this.linksIndex = new SpatialGrid<>(INDEX_CELL_SIZE);
+    this.memberLinks = new HashMap<>();
+    this.hoveredLinks = new HashSet<>();
+    this.tiles = new TileCache(TILE_SIZE, TILES_MARGIN);
+    this.repaintTimer = new Timer(FRAME_DELAY, e -> flushRepaint());
+    this.repaintTimer.setRepeats(false);
+
+    // Drag and drop is not available when rendering without a display
+    if (!GraphicsEnvironment.isHeadless())
+      this.dropTarget = new DropTarget(this, DnDConstants.ACTION_COPY_OR_MOVE, null);
   }
 
   /**
@@ -119,12 +181,20 @@ public class DisplayPanel extends JPanel implements Scrollable, DragAndDropTarge
   }
 
   /**
-   * Resets the panel. All internal components are destroyed.
+   * Resets the panel. All cards and links are removed.
    */
   public void reset() {
-    this.panels.clear();
+    this.family = null;
+    this.cards.clear();
+    this.movedCards.clear();
+    this.selectedCards.clear();
     this.links.clear();
-    removeAll();
+    this.selectedLink = null;
+    this.cardsIndex.clear();
+    this.linksIndex.clear();
+    this.memberLinks.clear();
+    this.hoveredLinks.clear();
+    repaintAll();
   }
 
   /**
@@ -133,142 +203,358 @@ public class DisplayPanel extends JPanel implements Scrollable, DragAndDropTarge
    * @param family the model
    */
   public void refresh(Family family, WritableConfig config) {
-    refresh(family, new HashMap<>(), config);
+    refresh(family, new LongPointMap(), config);
   }
 
   /**
-   * Refreshes the display from the given model and updates positions of panels specified in the
+   * Refreshes the display from the given model and updates positions of cards specified in the
    * map.
    * 
    * @param family the model
    * @param positions the positions
    */
-  public void refresh(Family family, Map<Long, Point> positions, WritableConfig config) {
+  public void refresh(Family family, LongPointMap positions, WritableConfig config) {
     this.config = config;
-    Set<Long> updatedOrAdded = new HashSet<>();
-    Set<Long> keysToDelete = new HashSet<>(this.panels.keySet());
-
-    // Add/update members
-    family.getAllMembers().forEach(member -> {
-      long id = member.getId();
+    Family previous = this.family != null ? this.family : new Family("");
+    List<FamilyMember> addedOrUpdatedMembers = new ArrayList<>();
+    List<Relationship> addedRelations = new ArrayList<>();
+    List<Relationship> removedRelations = new ArrayList<>();
+    // Cards whose bounds changed, their links have to be updated
+    Set<Long> changedCards = new HashSet<>();
+
+    family.diff(previous, new FamilyDiffHandler() {
+      @Override
+      public void memberAdded(FamilyMember member) {
+        addedOrUpdatedMembers.add(member);
+      }
 
-      if (this.panels.containsKey(id)) {
-        FamilyMemberPanel panel = this.panels.get(id);
+      @Override
+      public void memberUpdated(FamilyMember old, FamilyMember member) {
+        addedOrUpdatedMembers.add(member);
+      }
 
-        panel.setInfo(member, this.config);
-        if (positions != null && positions.containsKey(member.getId())) {
-          Point p = positions.get(member.getId());
-          panel.setBounds(new Rectangle(p, panel.getSize()));
+      @Override
+      public void memberRemoved(FamilyMember old) {
+        Card card = DisplayPanel.this.cards.remove(old.getId());
+        if (card != null) {
+          DisplayPanel.this.cardsIndex.remove(old.getId());
+          DisplayPanel.this.movedCards.remove(old.getId());
+          DisplayPanel.this.selectedCards.remove(old.getId());
+          repaintZone(card.getBounds());
         }
       }
-      else {
-        FamilyMemberPanel panel = new FamilyMemberPanel(member, this.config);
-        DragController dragController = new DragController(this, panel);
 
-        if (positions != null && positions.containsKey(member.getId())) {
-          Point p = positions.get(member.getId());
-          panel.setBounds(new Rectangle(p, panel.getSize()));
-        }
-        else
-          panel.setBounds(new Rectangle(panel.getSize()));
-        panel.setName("member-" + id);
-        panel.addMouseListener(dragController);
-        panel.addMouseListener(this.doubleClickController);
-        panel.addMouseMotionListener(dragController);
-        this.panels.put(id, panel);
-        add(panel);
+      @Override
+      public void relationAdded(Relationship relation) {
+        addedRelations.add(relation);
       }
-      updatedOrAdded.add(id);
-    });
 
-    // Delete members removed from the model
-    keysToDelete.removeAll(updatedOrAdded);
-    keysToDelete.forEach(id -> {
-      remove(this.panels.get(id));
-      this.panels.remove(id);
-    });
+      @Override
+      public void relationUpdated(Relationship old, Relationship relation) {
+        removedRelations.add(old);
+        addedRelations.add(relation);
+      }
 
-    List<Link> updatedOrAddedLinks = new ArrayList<>();
-    // Add/update links
-    family.getAllRelations().forEach(relation -> {
-      long id1 = relation.getPartner1();
-      long id2 = relation.getPartner2();
-      Map<Long, Boolean> children = new HashMap<>();
-      for (Long id : relation.getChildren()) {
-        children.put(id, relation.isAdopted(id));
+      @Override
+      public void relationRemoved(Relationship old) {
+        removedRelations.add(old);
       }
-      Link link = new Link(id1, id2, children, relation.isWedding(), relation.hasEnded());
+    });
 
-      if (this.links.contains(link)) {
-        Link l = this.links.get(this.links.indexOf(link));
+    // Links are removed first as they may reference removed cards.
+    Set<Link> selectedLinks = new HashSet<>();
+    removedRelations.forEach(relation -> findLink(relation.getPartner1(), relation.getPartner2()).ifPresent(link -> {
+      if (link.isSelected())
+        selectedLinks.add(link);
+      removeLink(link);
+    }));
 
-        l.setWedding(link.isWedding());
-        l.setEnded(relation.hasEnded());
-        l.setChildren(link.getChildren());
+    addedOrUpdatedMembers.forEach(member -> {
+      long id = member.getId();
+      Card card = this.cards.get(id);
+
+      if (card != null) {
+        Rectangle old = card.getBounds();
+        card.setInfo(member, this.cardMetrics);
+        repaintZone(old);
+        if (!old.equals(card.getBounds()))
+          changedCards.add(id);
       }
       else {
-        this.links.add(link);
+        card = new Card(member, this.cardMetrics);
+        this.cards.put(id, card);
+        this.movedCards.add(id);
+      }
+      this.cardsIndex.put(id, card.getBounds());
+      repaintZone(card.getBounds());
+    });
+
+    if (positions != null) {
+      positions.forEach((id, x, y) -> {
+        Card card = this.cards.get(id);
+        Point p = new Point(x, y);
+
+        if (card != null && !card.getLocation().equals(p)) {
+          repaintZone(card.getBounds());
+          card.setLocation(p);
+          this.cardsIndex.put(id, card.getBounds());
+          repaintZone(card.getBounds());
+          changedCards.add(id);
+          this.movedCards.add(id);
+        }
+      });
+    }
+
+    addedRelations.forEach(relation -> {
+      long[] ids = relation.getChildrenIds();
+      LongHashSet children = new LongHashSet(ids.length);
+      LongHashSet adopted = new LongHashSet();
+      for (long id : ids) {
+        children.add(id);
+        if (relation.isAdopted(id))
+          adopted.add(id);
       }
-      updatedOrAddedLinks.add(link);
+      Link link = new Link(relation.getPartner1(), relation.getPartner2(), children, adopted, relation.isWedding(), relation.hasEnded());
+      if (selectedLinks.contains(link)) {
+        link.setSelected(true);
+        this.selectedLink = link;
+      }
+      addLink(link);
     });
 
-    // Delete links removed from the model
-    List<Link> linksToDelete = new ArrayList<>(this.links);
-    linksToDelete.removeAll(updatedOrAddedLinks);
-    this.links.removeAll(linksToDelete);
+    changedCards.forEach(id -> this.memberLinks.getOrDefault(id, Collections.emptyList()).forEach(this::updateLinkBounds));
+
+    addedOrUpdatedMembers.forEach(member -> changedCards.add(member.getId()));
+    changedCards.forEach(id -> growToFit(this.cards.get(id).getBounds()));
 
+    this.family = family.clone();
     revalidate();
-    repaint();
   }
 
   /**
-   * @return the positions of all panels
+   * Enlarges the panel so that it contains the given zone. Arranged trees may be bigger than the
+   * default size.
+   * 
+   * @param zone the zone
    */
-  public Map<Long, Point> getCardsPositions() {
-    Map<Long, Point> points = new HashMap<>();
+  private void growToFit(Rectangle zone) {
+    Dimension size = getPreferredSize();
+    int width = Math.max(size.width, zone.x + zone.width + PANEL_MARGIN);
+    int height = Math.max(size.height, zone.y + zone.height + PANEL_MARGIN);
 
-    for (Long id : this.panels.keySet()) {
-      points.put(id, this.panels.get(id).getLocation());
-    }
+    if (width != size.width || height != size.height)
+      setPreferredSize(new Dimension(width, height));
+  }
+
+  /**
+   * Returns the width of a card.
+   * 
+   * @param id the member's ID
+   * @return the width of its card
+   */
+  public int getCardWidth(long id) {
+    return this.cards.get(id).getBounds().width;
+  }
+
+  /**
+   * @return the positions of all cards
+   */
+  public LongPointMap getCardsPositions() {
+    LongPointMap points = new LongPointMap(this.cards.size());
+
+    this.cards.forEach((id, card) -> points.put(id, card.getLocation()));
 
     return points;
   }
 
   /**
-   * Returns all panels that are fully inside the given zone.
+   * Returns the positions of the cards that were added or moved since the last call to this method.
+   * 
+   * @return the positions of the added or moved cards
+   */
+  public LongPointMap getMovedCardsPositions() {
+    LongPointMap points = new LongPointMap(this.movedCards.size());
+
+    this.movedCards.forEachKey(id -> points.put(id, this.cards.get(id).getLocation()));
+    this.movedCards.clear();
+
+    return points;
+  }
+
+  /**
+   * Returns the bounds of a card.
+   * 
+   * @param id the member's ID
+   * @return the card's bounds
+   */
+  Rectangle getCardBounds(long id) {
+    return this.cards.get(id).getBounds();
+  }
+
+  /**
+   * Returns the topmost card at the given point.
+   * 
+   * @param p the point
+   * @return the member's ID or nothing if there is no card at this point
+   */
+  Optional<Long> getCardAt(Point p) {
+    return this.cardsIndex.query(new Rectangle(p.x, p.y, 1, 1)).stream().max(Long::compare);
+  }
+
+  /**
+   * Returns all cards that are fully inside the given zone.
    * 
    * @param r the zone
-   * @return all panels inside the zone
+   * @return the IDs of all cards inside the zone
    */
   public Optional<long[]> getPanelsInsideRectangle(Rectangle r) {
     if (r != null)
-      return Optional.of(
-          this.panels.entrySet().stream().filter(e -> r.contains(e.getValue().getBounds())).mapToLong(e -> e.getKey()).toArray());
+      return Optional.of(this.cardsIndex.query(r).stream().filter(id -> r.contains(this.cardsIndex.getBounds(id))).mapToLong(
+          Long::longValue).toArray());
     return Optional.empty();
   }
 
   /**
-   * Selects the given panels as background.
+   * Selects the given cards as background.
    * 
-   * @param ids panels' IDs
+   * @param ids members' IDs
    */
   public void selectPanelsAsBackground(List<Long> ids) {
-    this.panels.entrySet().stream().filter(e -> ids.contains(e.getKey())).forEach(e -> e.getValue().setSelectedBackground(true));
-    revalidate();
-    repaint();
+    ids.forEach(id -> {
+      Card card = this.cards.get(id);
+
+      if (card != null) {
+        card.setSelectedBackground(true);
+        this.selectedCards.add(id);
+        repaintZone(card.getBounds());
+      }
+    });
   }
 
   /**
-   * Called when a card is dragged.
+   * Returns the cards moved when a card is dragged: the card itself and all selected cards.
    * 
-   * @param evt the event
+   * @param id the dragged card's member ID
+   * @return the IDs of the cards to move
    */
-  @SubsribeEvent
-  public void onCardDragged(CardDragEvent.Dragging evt) {
-    final Point trans = evt.getTranslation();
-    this.panels.entrySet().stream().filter(
-        e -> e.getKey() != evt.getMemberId() && (e.getValue().isSelectedBackground() || e.getValue().isSelected())).forEach(
-            e -> e.getValue().setLocation(e.getValue().getLocation().x + trans.x, e.getValue().getLocation().y + trans.y));
+  List<Long> getDragGroup(long id) {
+    List<Long> group = new ArrayList<>();
+
+    group.add(id);
+    this.selectedCards.forEachKey(cardId -> {
+      if (cardId != id)
+        group.add(cardId);
+    });
+
+    return group;
+  }
+
+  /**
+   * Applies the same translation to several cards. The indexes are updated in bulk and the zone
+   * covering the cards and their links is repainted once.
+   * 
+   * @param ids the members' IDs
+   * @param dx the translation along the x axis
+   * @param dy the translation along the y axis
+   */
+  void moveCards(Collection<Long> ids, int dx, int dy) {
+    Rectangle dirty = null;
+    Set<Link> links = new HashSet<>();
+
+    for (long id : ids) {
+      Card card = this.cards.get(id);
+      Rectangle bounds = card.getBounds();
+
+      dirty = dirty == null ? new Rectangle(bounds) : dirty.union(bounds);
+      bounds.translate(dx, dy);
+      card.setLocation(bounds.getLocation());
+      dirty.add(bounds);
+      this.movedCards.add(id);
+      links.addAll(this.memberLinks.getOrDefault(id, Collections.emptyList()));
+    }
+    if (dirty == null)
+      return;
+    this.cardsIndex.translate(ids, dx, dy);
+
+    for (Link link : links) {
+      Rectangle bounds = getLinkBounds(link);
+      dirty.add(this.linksIndex.getBounds(link));
+      dirty.add(bounds);
+      this.linksIndex.put(link, bounds);
+    }
+
+    repaintZone(dirty);
+  }
+
+  /**
+   * Returns the link between two partners.
+   * 
+   * @param partner1 the first partner's ID
+   * @param partner2 the second partner's ID
+   * @return the link or nothing if there is none
+   */
+  private Optional<Link> findLink(long partner1, long partner2) {
+    return this.memberLinks.getOrDefault(partner1, Collections.emptyList()).stream().filter(
+        l -> l.getParent1() == partner1 && l.getParent2() == partner2).findAny();
+  }
+
+  /**
+   * Adds a link to the indexes and repaints it. The cards it connects must exist.
+   * 
+   * @param link the link
+   */
+  private void addLink(Link link) {
+    Rectangle bounds = getLinkBounds(link);
+
+    this.links.add(link);
+    this.linksIndex.put(link, bounds);
+    this.memberLinks.computeIfAbsent(link.getParent1(), id -> new ArrayList<>()).add(link);
+    this.memberLinks.computeIfAbsent(link.getParent2(), id -> new ArrayList<>()).add(link);
+    link.getChildren().forEachKey(child -> this.memberLinks.computeIfAbsent(child, id -> new ArrayList<>()).add(link));
+    repaintZone(bounds);
+  }
+
+  /**
+   * Removes a link from the indexes and repaints the zone it was drawn in.
+   * 
+   * @param link the link
+   */
+  private void removeLink(Link link) {
+    repaintZone(this.linksIndex.getBounds(link));
+    if (link == this.selectedLink)
+      this.selectedLink = null;
+    this.links.remove(link);
+    this.linksIndex.remove(link);
+    this.hoveredLinks.remove(link);
+    unindexMemberLink(link.getParent1(), link);
+    unindexMemberLink(link.getParent2(), link);
+    link.getChildren().forEachKey(child -> unindexMemberLink(child, link));
+  }
+
+  private void unindexMemberLink(long id, Link link) {
+    List<Link> list = this.memberLinks.get(id);
+
+    if (list != null) {
+      for (Iterator<Link> it = list.iterator(); it.hasNext();) {
+        if (it.next() == link)
+          it.remove();
+      }
+      if (list.isEmpty())
+        this.memberLinks.remove(id);
+    }
+  }
+
+  /**
+   * Updates the bounds of a link after one of its cards changed and repaints it.
+   * 
+   * @param link the link
+   */
+  private void updateLinkBounds(Link link) {
+    Rectangle bounds = getLinkBounds(link);
+
+    repaintZone(this.linksIndex.getBounds(link));
+    repaintZone(bounds);
+    this.linksIndex.put(link, bounds);
   }
 
   /**
@@ -278,22 +564,31 @@ public class DisplayPanel extends JPanel implements Scrollable, DragAndDropTarge
    */
   @SubsribeEvent
   public void onCardClicked(CardEvent.Clicked e) {
-    this.panels.forEach((pId, panel) -> {
-      if (e.getMemberId() < 0) {
-        panel.setSelected(false);
-      }
-      else {
-        if (pId == e.getMemberId())
-          panel.setSelected(true);
-        else if (e.keepPreviousSelection() && panel.isSelected())
-          panel.setSelectedBackground(true);
-        else if (!e.keepPreviousSelection())
-          panel.setSelected(false);
+    long memberId = e.getMemberId();
+    boolean keep = memberId >= 0 && e.keepPreviousSelection();
+
+    // Only the cards that were selected can change, apart from the clicked one.
+    this.selectedCards.forEachKey(id -> {
+      Card card = this.cards.get(id);
+
+      if (id != memberId && (!keep || card.isSelected())) {
+        if (keep)
+          card.setSelectedBackground(true);
+        else
+          card.setSelected(false);
+        repaintZone(card.getBounds());
       }
     });
-    this.links.forEach(l -> l.setSelected(false));
-    revalidate();
-    repaint();
+    if (!keep)
+      this.selectedCards.clear();
+
+    Card card = memberId >= 0 ? this.cards.get(memberId) : null;
+    if (card != null) {
+      card.setSelected(true);
+      this.selectedCards.add(memberId);
+      repaintZone(card.getBounds());
+    }
+    selectLink(null);
   }
 
   /**
@@ -303,32 +598,66 @@ public class DisplayPanel extends JPanel implements Scrollable, DragAndDropTarge
    */
   @SubsribeEvent
   public void onLinkClicked(LinkEvent.Clicked e) {
-    Optional<Link> optL = this.links.stream().filter(
-        l -> l.getParent1() == e.getPartner1Id() && l.getParent2() == e.getPartner2Id()).findAny();
+    Optional<Link> optL = findLink(e.getPartner1Id(), e.getPartner2Id());
 
-    if (optL.isPresent()) {
-      Link link = optL.get();
+    if (optL.isPresent())
+      selectLink(optL.get());
+  }
 
-      this.links.forEach(l -> l.setSelected(false));
+  /**
+   * Selects a link and deselects the previous one. Only these two links are repainted.
+   * 
+   * @param link the link; may be null to deselect the current one
+   */
+  private void selectLink(Link link) {
+    if (link == this.selectedLink)
+      return;
+    if (this.selectedLink != null) {
+      this.selectedLink.setSelected(false);
+      repaintZone(this.linksIndex.getBounds(this.selectedLink));
+    }
+    if (link != null) {
       link.setSelected(true);
+      repaintZone(this.linksIndex.getBounds(link));
     }
+    this.selectedLink = link;
   }
 
   /**
    * @return an array containing the two partners' IDs from the currently hovered link
    */
   public Optional<long[]> getHoveredLinkPartners() {
-    for (Link link : this.links) {
-      Rectangle r1 = this.panels.get(link.getParent1()).getBounds();
-      Rectangle r2 = this.panels.get(link.getParent2()).getBounds();
-      Point p1 = new Point(r1.x + r1.width / 2, r1.y + r1.height / 2);
-      Point p2 = new Point(r2.x + r2.width / 2, r2.y + r2.height / 2);
-
-      if (isMouseOnLink(p1, p2)) {
-        return Optional.of(new long[]{link.getParent1(), link.getParent2()});
-      }
+    return getHoveredLinks().stream().findFirst().map(link -> new long[]{link.getParent1(), link.getParent2()});
+  }
+
+  /**
+   * Returns the links the mouse is over. Only the links near the mouse are tested.
+   * 
+   * @return the hovered links
+   */
+  private Set<Link> getHoveredLinks() {
+    Point m = this.controller.getMouseLocation();
+    Rectangle zone = new Rectangle(m.x - HOVER_DISTANCE, m.y - HOVER_DISTANCE, 2 * HOVER_DISTANCE + 1, 2 * HOVER_DISTANCE + 1);
+    Set<Link> hovered = this.linksIndex.query(zone);
+
+    hovered.removeIf(link -> !isMouseOnLink(getCenter(link.getParent1()), getCenter(link.getParent2())));
+
+    return hovered;
+  }
+
+  /**
+   * Called when the mouse moved. Only the links whose hover state changed are repainted.
+   */
+  void updateHoveredLinks() {
+    Set<Link> hovered = getHoveredLinks();
+
+    if (!hovered.equals(this.hoveredLinks)) {
+      Set<Link> changed = new HashSet<>(hovered);
+      changed.addAll(this.hoveredLinks);
+      changed.removeIf(link -> hovered.contains(link) && this.hoveredLinks.contains(link));
+      this.hoveredLinks = hovered;
+      changed.forEach(link -> repaintZone(this.linksIndex.getBounds(link)));
     }
-    return Optional.empty();
   }
 
   /**
@@ -428,13 +757,49 @@ public class DisplayPanel extends JPanel implements Scrollable, DragAndDropTarge
     this.scrollPane.getHorizontalScrollBar().setValue(value);
   }
 
+  /**
+   * Repaints a zone whose content changed. Cached tiles are dropped right away but the repaint is
+   * delayed so that all zones changed during a frame are repainted at once.
+   * 
+   * @param zone the zone
+   */
+  private void repaintZone(Rectangle zone) {
+    if (zone == null)
+      return;
+    this.tiles.invalidate(zone);
+    this.pendingRepaint = this.pendingRepaint == null ? new Rectangle(zone) : this.pendingRepaint.union(zone);
+    if (!this.repaintTimer.isRunning())
+      this.repaintTimer.start();
+  }
+
+  /**
+   * Repaints the zones changed since the last frame.
+   */
+  private void flushRepaint() {
+    if (this.pendingRepaint != null) {
+      repaint(this.pendingRepaint);
+      this.pendingRepaint = null;
+    }
+  }
+
+  /**
+   * Repaints the whole panel after its content changed.
+   */
+  public void repaintAll() {
+    this.tiles.invalidateAll();
+    repaint();
+  }
+
   @Override
   protected void paintComponent(Graphics g) {
     super.paintComponent(g);
     Graphics2D g2d = (Graphics2D) g;
-    g2d.setRenderingHint(RenderingHints.KEY_ANTIALIASING, RenderingHints.VALUE_ANTIALIAS_ON);
 
     if (this.config != null) {
+      Rectangle clip = g.getClipBounds();
+      if (clip == null)
+        clip = new Rectangle(getSize());
+
       // Selection
       Optional<Rectangle> optStart = this.controller.getSelection();
       if (optStart.isPresent()) {
@@ -444,41 +809,152 @@ public class DisplayPanel extends JPanel implements Scrollable, DragAndDropTarge
         g2d.fillRect(r.x, r.y, r.width, r.height);
         g2d.setColor(this.config.getValue(ConfigTags.SELECTION_BORDER_COLOR));
         g2d.drawRect(r.x, r.y, r.width, r.height);
+        // The selection is under links and cards, cached tiles cannot be used.
+        paintContent(g2d, clip);
       }
+      else {
+        this.tiles.setMaxTiles(getMaxTiles());
+        this.tiles.paint(g2d, clip, getBackground(), this::paintContent);
+      }
+    }
+  }
 
-      // Links
-      this.links.forEach(link -> {
-        final int width = link.isWedding() ? 2 : 1;
-        if (link.hasEnded())
-          g2d.setStroke(new BasicStroke(width, BasicStroke.CAP_BUTT, BasicStroke.JOIN_BEVEL, 0, new float[]{9}, 0));
-        else
-          g2d.setStroke(new BasicStroke(width));
+  /**
+   * Returns the number of tiles to cache: twice the number of tiles the visible zone can overlap,
+   * so that scrolling back and forth reuses them, plus a margin.
+   */
+  private int getMaxTiles() {
+    Rectangle visible = getVisibleRect();
+    int columns = (visible.width + TILE_SIZE - 1) / TILE_SIZE + 1;
+    int rows = (visible.height + TILE_SIZE - 1) / TILE_SIZE + 1;
 
-        // Link between parents
-        Rectangle r1 = this.panels.get(link.getParent1()).getBounds();
-        Rectangle r2 = this.panels.get(link.getParent2()).getBounds();
-        Point p1 = new Point(r1.x + r1.width / 2, r1.y + r1.height / 2);
-        Point p2 = new Point(r2.x + r2.width / 2, r2.y + r2.height / 2);
-        Point middle = new Point((p1.x + p2.x) / 2, (p1.y + p2.y) / 2);
+    return 2 * columns * rows + TILES_MARGIN;
+  }
 
-        if (isMouseOnLink(p1, p2))
-          g2d.setColor(this.config.getValue(ConfigTags.LINK_HOVERED_COLOR));
-        else
-          g2d.setColor(
-              link.isSelected() ? this.config.getValue(ConfigTags.LINK_SELECTED_COLOR) : this.config.getValue(ConfigTags.LINK_COLOR));
+  /**
+   * Draws the links and cards that intersect a zone.
+   * 
+   * @param g2d the graphics context
+   * @param zone the zone
+   */
+  private void paintContent(Graphics2D g2d, Rectangle zone) {
+    g2d.setRenderingHint(RenderingHints.KEY_ANTIALIASING, RenderingHints.VALUE_ANTIALIAS_ON);
+    // Links' bounds may cover the whole zone while few of their segments cross it, segments are
+    // culled one by one. The area is widened by the strokes' width and caps.
+    Rectangle area = new Rectangle(zone);
+    area.grow(4, 4);
+
+    // Links
+    this.linksIndex.query(zone).forEach(link -> {
+      final int i = link.isWedding() ? 1 : 0;
+      g2d.setStroke(link.hasEnded() ? ENDED_LINK_STROKES[i] : LINK_STROKES[i]);
+
+      // Link between parents
+      Point p1 = getCenter(link.getParent1());
+      Point p2 = getCenter(link.getParent2());
+      Point middle = new Point((p1.x + p2.x) / 2, (p1.y + p2.y) / 2);
+
+      if (this.hoveredLinks.contains(link))
+        g2d.setColor(this.config.getValue(ConfigTags.LINK_HOVERED_COLOR));
+      else
+        g2d.setColor(
+            link.isSelected() ? this.config.getValue(ConfigTags.LINK_SELECTED_COLOR) : this.config.getValue(ConfigTags.LINK_COLOR));
+      if (area.intersectsLine(p1.x, p1.y, p2.x, p2.y))
         g2d.drawLine(p1.x, p1.y, p2.x, p2.y);
 
-        g2d.setStroke(new BasicStroke(width));
-        // Links to children
-        link.getChildren().forEach((id, adopted) -> {
-          Rectangle r = this.panels.get(id).getBounds();
-          Point p = new Point(r.x + r.width / 2, r.y + r.height / 2);
-
-          g2d.setColor(this.config.getValue(adopted ? ConfigTags.LINK_ADOPTED_CHILD_COLOR : ConfigTags.LINK_CHILD_COLOR));
-          g2d.drawLine(middle.x, middle.y, p.x, p.y);
-        });
+      g2d.setStroke(LINK_STROKES[i]);
+      // Links to children
+      Object strokeControl = g2d.getRenderingHint(RenderingHints.KEY_STROKE_CONTROL);
+      g2d.setRenderingHint(RenderingHints.KEY_STROKE_CONTROL, RenderingHints.VALUE_STROKE_PURE);
+      link.getChildren().forEachKey(id -> {
+        Point p = getCenter(id);
+        if (!area.intersectsLine(middle.x, middle.y, p.x, p.y))
+          return;
+
+        g2d.setColor(this.config.getValue(link.isAdopted(id) ? ConfigTags.LINK_ADOPTED_CHILD_COLOR : ConfigTags.LINK_CHILD_COLOR));
+        drawClippedLine(g2d, area, middle, p);
       });
+      g2d.setRenderingHint(RenderingHints.KEY_STROKE_CONTROL, strokeControl);
+    });
+
+    // Cards, drawn over links; cards with higher IDs are on top
+    Color foreground = UIManager.getColor("Label.foreground");
+    g2d.setStroke(LINK_STROKES[0]);
+    this.cardsIndex.query(zone).stream().sorted().forEach(id -> this.cards.get(id).paint(g2d, this.config, this.cardMetrics, foreground));
+  }
+
+  /**
+   * Draws the part of a solid line that is inside an area. The antialiasing rasterizer goes through
+   * whole lines before clipping them, a line to a distant child would otherwise be rasterized again
+   * for each tile it crosses.
+   * <p>
+   * Clipped ends are not on pixel boundaries and stroke normalization would move each of them
+   * differently, making lines jump at tiles' borders. Lines must be drawn with pure stroke control;
+   * they are moved by the quarter of a pixel normalization moves integer coordinates by so that
+   * they look like lines drawn with {@link Graphics2D#drawLine(int, int, int, int)}.
+   * </p>
+   * 
+   * @param g2d the graphics context
+   * @param area the area
+   * @param from the line's start
+   * @param to the line's end
+   */
+  private static void drawClippedLine(Graphics2D g2d, Rectangle area, Point from, Point to) {
+    double dx = to.x - from.x;
+    double dy = to.y - from.y;
+    // Liang-Barsky algorithm, the visible part goes from t[0] to t[1]
+    double[] t = {0, 1};
+
+    if (clip(-dx, from.x - area.x, t) && clip(dx, area.x + area.width - from.x, t) && clip(-dy, from.y - area.y, t)
+        && clip(dy, area.y + area.height - from.y, t))
+      g2d.draw(new Line2D.Double(from.x + t[0] * dx + 0.25, from.y + t[0] * dy + 0.25, from.x + t[1] * dx + 0.25,
+          from.y + t[1] * dy + 0.25));
+  }
+
+  /**
+   * Clips a line's parameter range against one of the area's edges.
+   * 
+   * @return false if the line is outside of the edge
+   */
+  private static boolean clip(double p, double q, double[] t) {
+    if (p == 0)
+      return q >= 0;
+
+    double r = q / p;
+    if (p < 0) {
+      if (r > t[1])
+        return false;
+      t[0] = Math.max(t[0], r);
     }
+    else {
+      if (r < t[0])
+        return false;
+      t[1] = Math.min(t[1], r);
+    }
+    return true;
+  }
+
+  /**
+   * Returns the zone a link is drawn in: the rectangle containing the centers of the partners'
+   * cards and of their children's cards, widened by the stroke's width.
+   * 
+   * @param link the link
+   * @return the link's bounds
+   */
+  private Rectangle getLinkBounds(Link link) {
+    Rectangle bounds = new Rectangle(getCenter(link.getParent1()));
+    bounds.add(getCenter(link.getParent2()));
+    link.getChildren().forEachKey(id -> bounds.add(getCenter(id)));
+    bounds.grow(2, 2);
+    return bounds;
+  }
+
+  /**
+   * @return the center of the card of the given member
+   */
+  private Point getCenter(long id) {
+    Rectangle r = this.cards.get(id).getBounds();
+    return new Point(r.x + r.width / 2, r.y + r.height / 2);
   }
 
   @Override
@@ -507,48 +983,125 @@ public class DisplayPanel extends JPanel implements Scrollable, DragAndDropTarge
   }
 
   /**
-   * Exports this panel to an image.
+   * Exports the tree to an image. The image only covers the cards' bounding box.
    * 
-   * @return this panel as an image
+   * @return the tree as an image
    */
   public BufferedImage exportToImage() {
-    BufferedImage image = new BufferedImage(getWidth(), getHeight(), BufferedImage.TYPE_INT_RGB);
-    paint(image.createGraphics());
+    Rectangle zone = getTreeBounds();
+    BufferedImage image = new BufferedImage(zone.width, zone.height, BufferedImage.TYPE_INT_RGB);
 
-    Point p1 = getTopLeftPoint();
-    Point p2 = getBottomRightPoint();
+    renderExportZone(image, zone);
 
-    return image.getSubimage(p1.x, p1.y, p2.x - p1.x, p2.y - p1.y);
+    return image;
   }
 
   /**
-   * @return the topmost leftmost point of the tree
+   * Exports the tree to a PNG image. The image is rendered in horizontal strips on all available
+   * cores and each strip is written as soon as the previous ones are, so the memory used does not
+   * depend on the size of the tree.
+   * 
+   * @param out the stream to write to; it is closed by this method
+   * @throws IOException if an I/O error occurs
    */
-  private Point getTopLeftPoint() {
-    Point point = new Point(4000, 4000);
-
-    this.panels.values().forEach(p -> {
-      Point l = p.getLocation();
-      point.x = Math.min(point.x, l.x);
-      point.y = Math.min(point.y, l.y);
+  public void exportToPng(OutputStream out) throws IOException {
+    Rectangle zone = getTreeBounds();
+    int stripHeight = Math.max(1, Math.min(zone.height, EXPORT_STRIP_PIXELS / zone.width));
+    int threads = Runtime.getRuntime().availableProcessors();
+    ExecutorService executor = Executors.newFixedThreadPool(threads, r -> {
+      Thread t = new Thread(r, "Image export");
+      t.setDaemon(true);
+      return t;
     });
+    // Strips are rendered ahead of the writer but only a few are kept in memory.
+    Deque<Future<BufferedImage>> pending = new ArrayDeque<>();
+
+    try (PngStripWriter writer = new PngStripWriter(out, zone.width, zone.height)) {
+      int y = zone.y;
+      while (y < zone.y + zone.height || !pending.isEmpty()) {
+        while (y < zone.y + zone.height && pending.size() <= threads) {
+          Rectangle strip = new Rectangle(zone.x, y, zone.width, Math.min(stripHeight, zone.y + zone.height - y));
+          pending.add(executor.submit(() -> {
+            BufferedImage image = new BufferedImage(strip.width, strip.height, BufferedImage.TYPE_INT_RGB);
+            renderExportZone(image, strip);
+            return image;
+          }));
+          y += strip.height;
+        }
+        writer.writeStrip(pending.removeFirst().get());
+      }
+    }
+    catch (InterruptedException e) {
+      Thread.currentThread().interrupt();
+      throw new InterruptedIOException();
+    }
+    catch (ExecutionException e) {
+      throw new IOException(e.getCause());
+    }
+    finally {
+      executor.shutdownNow();
+    }
+  }
+
+  /**
+   * Exports the tree to an SVG document. Links then cards are written one by one so the document is
+   * streamed. Hover and selection are not exported.
+   * 
+   * @param out the stream to write to; it is closed by this method
+   * @throws IOException if an I/O error occurs
+   */
+  public void exportToSvg(Writer out) throws IOException {
+    try (SvgWriter svg = new SvgWriter(out, getTreeBounds(), this.config, getBackground(), UIManager.getColor("Label.foreground"),
+        this.cardMetrics.getFont())) {
+      for (Link link : this.links) {
+        String width = link.isWedding() ? " " + SvgWriter.WEDDING : "";
+        Point p1 = getCenter(link.getParent1());
+        Point p2 = getCenter(link.getParent2());
+        Point middle = new Point((p1.x + p2.x) / 2, (p1.y + p2.y) / 2);
+
+        svg.line(p1.x, p1.y, p2.x, p2.y, SvgWriter.LINK + width + (link.hasEnded() ? " " + SvgWriter.ENDED : ""));
+        for (long child : link.getChildren().toKeyArray()) {
+          Point p = getCenter(child);
+          svg.line(middle.x, middle.y, p.x, p.y, (link.isAdopted(child) ? SvgWriter.ADOPTED : SvgWriter.CHILD) + width);
+        }
+      }
 
-    return point;
+      // Cards with higher IDs are on top
+      long[] ids = this.cards.keySet().stream().mapToLong(Long::longValue).sorted().toArray();
+      for (long id : ids)
+        this.cards.get(id).writeSvg(svg, this.cardMetrics);
+    }
   }
 
   /**
-   * @return the bottommost rightmost point of the tree
+   * Renders a zone of the tree into an image of the same size.
+   * 
+   * @param image the image
+   * @param zone the zone
    */
-  private Point getBottomRightPoint() {
-    Point point = new Point();
+  private void renderExportZone(BufferedImage image, Rectangle zone) {
+    Graphics2D g = image.createGraphics();
 
-    this.panels.values().forEach(p -> {
-      Rectangle r = p.getBounds();
-      point.x = Math.max(point.x, r.x + r.width);
-      point.y = Math.max(point.y, r.y + r.height);
-    });
+    g.setColor(getBackground());
+    g.fillRect(0, 0, zone.width, zone.height);
+    if (this.config != null) {
+      g.translate(-zone.x, -zone.y);
+      g.setClip(zone);
+      paintContent(g, zone);
+    }
+    g.dispose();
+  }
 
-    return point;
+  /**
+   * @return the smallest rectangle containing all cards; a 1x1 rectangle if there are none
+   */
+  private Rectangle getTreeBounds() {
+    Rectangle bounds = null;
+
+    for (Card card : this.cards.values())
+      bounds = bounds == null ? card.getBounds() : bounds.union(card.getBounds());
+
+    return bounds != null ? bounds : new Rectangle(1, 1);
   }
 
   /**
@@ -560,7 +1113,7 @@ public class DisplayPanel extends JPanel implements Scrollable, DragAndDropTarge
     private final long parent1, parent2;
     private boolean wedding;
     private boolean ended;
-    private Map<Long, Boolean> children;
+    private LongHashSet children, adopted;
     private boolean selected;
 
     /**
@@ -569,11 +1122,13 @@ public class DisplayPanel extends JPanel implements Scrollable, DragAndDropTarge
      * @param parent1 one parent
      * @param parent2 the other parent
      * @param children the children
+     * @param adopted the adopted children
      */
-    public Link(long parent1, long parent2, Map<Long, Boolean> children, boolean wedding, boolean ended) {
+    public Link(long parent1, long parent2, LongHashSet children, LongHashSet adopted, boolean wedding, boolean ended) {
       this.parent1 = parent1;
       this.parent2 = parent2;
-      this.children = new HashMap<>(children);
+      this.children = children;
+      this.adopted = adopted;
       this.wedding = wedding;
       this.ended = ended;
       this.selected = false;
@@ -587,12 +1142,12 @@ public class DisplayPanel extends JPanel implements Scrollable, DragAndDropTarge
       return this.parent2;
     }
 
-    public Map<Long, Boolean> getChildren() {
+    public LongHashSet getChildren() {
       return this.children;
     }
 
-    public void setChildren(Map<Long, Boolean> children) {
-      this.children = children;
+    public boolean isAdopted(long child) {
+      return this.adopted.contains(child);
     }
 
     public boolean isWedding() {
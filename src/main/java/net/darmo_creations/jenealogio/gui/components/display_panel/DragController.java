@@ -20,106 +20,122 @@ package net.darmo_creations.jenealogio.gui.components.display_panel;
 
 import java.awt.Point;
 import java.awt.Rectangle;
-import java.awt.event.MouseAdapter;
 import java.awt.event.MouseEvent;
+import java.util.List;
 
 import javax.swing.SwingUtilities;
 
 import net.darmo_creations.gui_framework.ApplicationRegistry;
 import net.darmo_creations.jenealogio.events.CardDragEvent;
 import net.darmo_creations.jenealogio.events.CardEvent;
-import net.darmo_creations.jenealogio.gui.components.FamilyMemberPanel;
 
 /**
- * This controller handles dragging events inside the DisplayPanel.
+ * This controller handles dragging events for the cards of the DisplayPanel. Events are forwarded
+ * by the {@link DisplayController} along with the ID of the card under the mouse.
  * 
  * @author Damien Vergnet
  */
-class DragController extends MouseAdapter {
+class DragController {
   /** Grid size in pixels */
   static final int GRID_STEP = 10;
 
   private DisplayPanel displayPanel;
-  private FamilyMemberPanel memberPanel;
-  /** The point where the mouse grabbed in the panel. */
+  /** The card being grabbed. */
+  private long memberId;
+  /** The point where the mouse grabbed in the card. */
   private Point grabPoint;
   private boolean dragging;
+  /** The cards moved along with the grabbed one. */
+  private List<Long> group;
 
   /**
-   * Creates a controller with the given container and component.
+   * Creates a controller with the given container.
    * 
    * @param displayPanel the container
-   * @param memberPanel the component this controller is monitoring
    */
-  DragController(DisplayPanel displayPanel, FamilyMemberPanel memberPanel) {
+  DragController(DisplayPanel displayPanel) {
     this.displayPanel = displayPanel;
-    this.memberPanel = memberPanel;
     this.grabPoint = null;
     this.dragging = false;
   }
 
-  @Override
-  public void mousePressed(MouseEvent e) {
+  /**
+   * Called when the mouse is pressed over a card.
+   * 
+   * @param e the event
+   * @param memberId the card's member ID
+   */
+  void mousePressed(MouseEvent e, long memberId) {
     if (SwingUtilities.isLeftMouseButton(e)) {
-      this.grabPoint = new Point(e.getX(), e.getY());
+      Point location = this.displayPanel.getCardBounds(memberId).getLocation();
+      this.memberId = memberId;
+      this.grabPoint = new Point(e.getX() - location.x, e.getY() - location.y);
     }
   }
 
-  @Override
-  public void mouseReleased(MouseEvent e) {
+  /**
+   * Called when the mouse is released after being pressed over a card.
+   * 
+   * @param e the event
+   */
+  void mouseReleased(MouseEvent e) {
     if (this.dragging && SwingUtilities.isLeftMouseButton(e)) {
       this.dragging = false;
-      ApplicationRegistry.EVENTS_BUS.dispatchEvent(new CardDragEvent.Post(this.memberPanel.getMemberId()));
+      this.group = null;
+      ApplicationRegistry.EVENTS_BUS.dispatchEvent(new CardDragEvent.Post(this.memberId));
     }
+    if (SwingUtilities.isLeftMouseButton(e))
+      this.grabPoint = null;
   }
 
-  @Override
-  public void mouseClicked(MouseEvent e) {
+  /**
+   * Called when a card is clicked.
+   * 
+   * @param e the event
+   * @param memberId the card's member ID
+   */
+  void mouseClicked(MouseEvent e, long memberId) {
     if (SwingUtilities.isLeftMouseButton(e)) {
       int modifiers = e.getModifiers();
       boolean isCtrlDown = (modifiers & MouseEvent.CTRL_MASK) != 0;
-      ApplicationRegistry.EVENTS_BUS.dispatchEvent(new CardEvent.Clicked(this.memberPanel.getMemberId(), isCtrlDown));
+      ApplicationRegistry.EVENTS_BUS.dispatchEvent(new CardEvent.Clicked(memberId, isCtrlDown));
+      if (e.getClickCount() == 2)
+        ApplicationRegistry.EVENTS_BUS.dispatchEvent(new CardEvent.DoubleClicked(memberId));
     }
   }
 
-  @Override
-  public void mouseDragged(MouseEvent e) {
-    if (SwingUtilities.isLeftMouseButton(e)) {
-      Rectangle bounds = this.memberPanel.getBounds();
+  /**
+   * Called when the mouse is dragged after being pressed over a card.
+   * 
+   * @param e the event
+   */
+  void mouseDragged(MouseEvent e) {
+    if (SwingUtilities.isLeftMouseButton(e) && this.grabPoint != null) {
+      Rectangle bounds = this.displayPanel.getCardBounds(this.memberId);
       Rectangle containerBounds = this.displayPanel.getBounds();
-      if (this.grabPoint == null)
-        mousePressed(e);
-      int newX = Math.max(containerBounds.x,
-          Math.min(containerBounds.width - bounds.width, e.getXOnScreen() - getXOffset() - this.grabPoint.x));
-      int newY = Math.max(containerBounds.y,
-          Math.min(containerBounds.height - bounds.height, e.getYOnScreen() - getYOffset() - this.grabPoint.y));
+      int newX = Math.max(0, Math.min(containerBounds.width - bounds.width, e.getX() - this.grabPoint.x));
+      int newY = Math.max(0, Math.min(containerBounds.height - bounds.height, e.getY() - this.grabPoint.y));
       newX = (newX / GRID_STEP) * GRID_STEP;
       newY = (newY / GRID_STEP) * GRID_STEP;
-      Point oldLocation = this.memberPanel.getLocation();
+      Point oldLocation = bounds.getLocation();
       Point newLocation = new Point(newX, newY);
 
       if (!oldLocation.equals(newLocation)) {
         if (!this.dragging) {
           this.dragging = true;
-          ApplicationRegistry.EVENTS_BUS.dispatchEvent(new CardDragEvent.Pre(this.memberPanel.getMemberId()));
+          this.group = this.displayPanel.getDragGroup(this.memberId);
+          ApplicationRegistry.EVENTS_BUS.dispatchEvent(new CardDragEvent.Pre(this.memberId));
         }
-        this.memberPanel.setLocation(newLocation);
-        ApplicationRegistry.EVENTS_BUS.dispatchEvent(new CardDragEvent.Dragging(this.memberPanel.getMemberId(), oldLocation, newLocation));
+        this.displayPanel.moveCards(this.group, newLocation.x - oldLocation.x, newLocation.y - oldLocation.y);
+        ApplicationRegistry.EVENTS_BUS.dispatchEvent(new CardDragEvent.Dragging(this.memberId, oldLocation, newLocation));
       }
     }
   }
 
   /**
-   * @return the onscreen x offset
-   */
-  private int getXOffset() {
-    return this.displayPanel.getLocationOnScreen().x;
-  }
-
-  /**
-   * @return the onscreen y offset
+   * @return true if a card has been grabbed
    */
-  private int getYOffset() {
-    return this.displayPanel.getLocationOnScreen().y;
+  boolean isGrabbing() {
+    return this.grabPoint != null;
   }
 }
@@ -0,0 +1,214 @@
+/*
+ * Copyright © 2017 Damien Vergnet
+ * 
+ * This file is part of Jenealogio.
+ *
+ * This program is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ * 
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ * 
+ * You should have received a copy of the GNU General Public License
+ * along with this program.  If not, see <http://www.gnu.org/licenses/>.
+ */
+package net.darmo_creations.jenealogio.gui.components.display_panel;
+
+import java.awt.Rectangle;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collection;
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.LinkedHashSet;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+
+/**
+ * A uniform grid that indexes items by their bounding rectangle. Each item is referenced by every
+ * cell its rectangle overlaps so that only the cells intersecting a zone are looked at when
+ * querying it.
+ * 
+ * @author Damien Vergnet
+ * @param <T> items type
+ */
+class SpatialGrid<T> {
+  private final int cellSize;
+  private final Map<Long, Set<T>> cells;
+  private final Map<T, Rectangle> bounds;
+
+  /**
+   * Creates an empty grid.
+   * 
+   * @param cellSize cells' width and height in pixels
+   */
+  SpatialGrid(int cellSize) {
+    if (cellSize <= 0)
+      throw new IllegalArgumentException("cell size must be positive");
+    this.cellSize = cellSize;
+    this.cells = new HashMap<>();
+    this.bounds = new HashMap<>();
+  }
+
+  /**
+   * @return the number of items
+   */
+  int size() {
+    return this.bounds.size();
+  }
+
+  /**
+   * Adds an item or updates its bounds.
+   * 
+   * @param item the item
+   * @param r its bounding rectangle
+   */
+  void put(T item, Rectangle r) {
+    Rectangle old = this.bounds.get(item);
+
+    if (old != null) {
+      if (old.equals(r))
+        return;
+      // Small moves usually stay within the same cells
+      if (Arrays.equals(range(old), range(r))) {
+        old.setBounds(r);
+        return;
+      }
+      remove(item);
+    }
+
+    Rectangle copy = new Rectangle(r);
+    this.bounds.put(item, copy);
+    for (long cell : cellsOf(copy))
+      this.cells.computeIfAbsent(cell, k -> new HashSet<>()).add(item);
+  }
+
+  /**
+   * Translates the bounds of several items at once. Items that are not in the grid are ignored.
+   * 
+   * @param items the items
+   * @param dx the translation along the x axis
+   * @param dy the translation along the y axis
+   */
+  void translate(Collection<T> items, int dx, int dy) {
+    for (T item : items) {
+      Rectangle old = this.bounds.get(item);
+      if (old != null)
+        put(item, new Rectangle(old.x + dx, old.y + dy, old.width, old.height));
+    }
+  }
+
+  /**
+   * Removes an item. Nothing happens if it is not in the grid.
+   * 
+   * @param item the item
+   */
+  void remove(T item) {
+    Rectangle r = this.bounds.remove(item);
+
+    if (r != null) {
+      for (long cell : cellsOf(r)) {
+        Set<T> items = this.cells.get(cell);
+        if (items != null) {
+          items.remove(item);
+          if (items.isEmpty())
+            this.cells.remove(cell);
+        }
+      }
+    }
+  }
+
+  /**
+   * Removes all items.
+   */
+  void clear() {
+    this.cells.clear();
+    this.bounds.clear();
+  }
+
+  /**
+   * Returns the bounds of an item.
+   * 
+   * @param item the item
+   * @return its bounds or null if it is not in the grid
+   */
+  Rectangle getBounds(T item) {
+    Rectangle r = this.bounds.get(item);
+    return r != null ? new Rectangle(r) : null;
+  }
+
+  /**
+   * Returns all items whose bounds intersect the given zone.
+   * 
+   * @param zone the zone
+   * @return the items
+   */
+  Set<T> query(Rectangle zone) {
+    Set<T> result = new LinkedHashSet<>();
+    int[] range = range(zone);
+    long count = (long) (range[2] - range[0] + 1) * (range[3] - range[1] + 1);
+
+    if (count > this.cells.size()) {
+      // The zone is bigger than the populated area, only non-empty cells are looked at.
+      this.cells.forEach((key, items) -> {
+        int x = (int) (key >> 32);
+        int y = (int) (long) key;
+        if (x >= range[0] && x <= range[2] && y >= range[1] && y <= range[3])
+          collect(items, zone, result);
+      });
+    }
+    else {
+      for (long cell : cellsOf(zone)) {
+        Set<T> items = this.cells.get(cell);
+        if (items != null)
+          collect(items, zone, result);
+      }
+    }
+
+    return result;
+  }
+
+  /**
+   * Adds the items that intersect a zone to a set.
+   */
+  private void collect(Set<T> items, Rectangle zone, Set<T> result) {
+    for (T item : items) {
+      if (this.bounds.get(item).intersects(zone))
+        result.add(item);
+    }
+  }
+
+  /**
+   * Returns the keys of all cells overlapped by a rectangle.
+   */
+  private List<Long> cellsOf(Rectangle r) {
+    int[] range = range(r);
+    List<Long> keys = new ArrayList<>();
+
+    for (int x = range[0]; x <= range[2]; x++) {
+      for (int y = range[1]; y <= range[3]; y++)
+        keys.add(key(x, y));
+    }
+
+    return keys;
+  }
+
+  /**
+   * Returns the coordinates of the cells at the corners of a rectangle.
+   * 
+   * @return an array containing the minimum x and y then the maximum x and y
+   */
+  private int[] range(Rectangle r) {
+    return new int[]{Math.floorDiv(r.x, this.cellSize), Math.floorDiv(r.y, this.cellSize),
+      Math.floorDiv(r.x + Math.max(r.width, 1) - 1, this.cellSize), Math.floorDiv(r.y + Math.max(r.height, 1) - 1, this.cellSize)};
+  }
+
+  private static long key(int x, int y) {
+    return ((long) x << 32) | (y & 0xFFFFFFFFL);
+  }
+}
@@ -0,0 +1,212 @@
+/*
+ * Copyright © 2017 Damien Vergnet
+ * 
+ * This file is part of Jenealogio.
+ *
+ * This program is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ * 
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ * 
+ * You should have received a copy of the GNU General Public License
+ * along with this program.  If not, see <http://www.gnu.org/licenses/>.
+ */
+package net.darmo_creations.jenealogio.gui.components.display_panel;
+
+import java.awt.Color;
+import java.awt.Font;
+import java.awt.Graphics2D;
+import java.awt.Rectangle;
+import java.awt.image.BufferedImage;
+import java.io.ByteArrayOutputStream;
+import java.io.Closeable;
+import java.io.IOException;
+import java.io.Writer;
+import java.util.Base64;
+
+import javax.imageio.ImageIO;
+
+import net.darmo_creations.gui_framework.config.WritableConfig;
+import net.darmo_creations.jenealogio.config.ConfigTags;
+import net.darmo_creations.jenealogio.util.Images;
+
+/**
+ * Writes the tree as an SVG document. Elements are written as they are given so that trees of any
+ * size can be streamed to a file. Colors and strokes are declared once as CSS classes to keep the
+ * file small.
+ * 
+ * @author Damien Vergnet
+ */
+class SvgWriter implements Closeable {
+  /** Class of links between partners */
+  static final String LINK = "l";
+  /** Class of links between weddings */
+  static final String WEDDING = "w";
+  /** Class of links of ended relationships */
+  static final String ENDED = "e";
+  /** Class of links to children */
+  static final String CHILD = "c";
+  /** Class of links to adopted children */
+  static final String ADOPTED = "a";
+  /** Classes of cards for each gender */
+  static final String MAN = "m", WOMAN = "f", UNKNOWN = "u";
+
+  private static final String TOMBSTONE_ID = "t";
+
+  private final Writer out;
+
+  /**
+   * Creates a writer and writes the header of the document.
+   * 
+   * @param out the stream to write to; it is closed along with the writer
+   * @param viewBox the zone of the tree to export
+   * @param config the config holding the colors
+   * @param background background color
+   * @param foreground text color
+   * @param font text font
+   * @throws IOException if an I/O error occurs
+   */
+  SvgWriter(Writer out, Rectangle viewBox, WritableConfig config, Color background, Color foreground, Font font) throws IOException {
+    this.out = out;
+
+    out.write("<?xml version=\"1.0\" encoding=\"UTF-8\"?>\n");
+    out.write(String.format("<svg xmlns=\"http://www.w3.org/2000/svg\" xmlns:xlink=\"http://www.w3.org/1999/xlink\" "
+        + "width=\"%d\" height=\"%d\" viewBox=\"%d %d %d %d\">\n", viewBox.width, viewBox.height, viewBox.x, viewBox.y,
+        viewBox.width, viewBox.height));
+
+    out.write("<style>\n");
+    out.write(String.format("line{stroke-width:1}.%s{stroke:%s}.%s{stroke-width:2}.%s{stroke-dasharray:9}\n", LINK,
+        color(config.getValue(ConfigTags.LINK_COLOR)), WEDDING, ENDED));
+    out.write(String.format(".%s{stroke:%s}.%s{stroke:%s}\n", CHILD, color(config.getValue(ConfigTags.LINK_CHILD_COLOR)), ADOPTED,
+        color(config.getValue(ConfigTags.LINK_ADOPTED_CHILD_COLOR))));
+    out.write(String.format("rect{stroke:%s;stroke-width:2}\n", color(config.getValue(ConfigTags.CARD_BORDER_COLOR))));
+    out.write(String.format(".%s rect{fill:%s}.%s rect{fill:%s}.%s rect{fill:%s}\n", MAN,
+        color(config.getValue(ConfigTags.GENDER_MALE_COLOR)), WOMAN, color(config.getValue(ConfigTags.GENDER_FEMALE_COLOR)), UNKNOWN,
+        color(config.getValue(ConfigTags.GENDER_UNKNOWN_COLOR))));
+    out.write(String.format("text{fill:%s;font-family:\"%s\";font-size:%dpx;white-space:pre}\n", color(foreground), escape(font.getFamily()),
+        font.getSize()));
+    out.write("</style>\n");
+
+    out.write(String.format("<defs><symbol id=\"%s\"><image width=\"%d\" height=\"%d\" xlink:href=\"data:image/png;base64,%s\"/></symbol></defs>\n",
+        TOMBSTONE_ID, Images.TOMBSTONE.getIconWidth(), Images.TOMBSTONE.getIconHeight(), tombstone()));
+    out.write(String.format("<rect x=\"%d\" y=\"%d\" width=\"%d\" height=\"%d\" style=\"fill:%s;stroke:none\"/>\n", viewBox.x, viewBox.y,
+        viewBox.width, viewBox.height, color(background)));
+  }
+
+  /**
+   * Writes a line.
+   * 
+   * @param x1 start x
+   * @param y1 start y
+   * @param x2 end x
+   * @param y2 end y
+   * @param classes CSS classes of the line
+   * @throws IOException if an I/O error occurs
+   */
+  void line(int x1, int y1, int x2, int y2, String classes) throws IOException {
+    this.out.write("<line class=\"");
+    this.out.write(classes);
+    this.out.write("\" x1=\"" + x1 + "\" y1=\"" + y1 + "\" x2=\"" + x2 + "\" y2=\"" + y2 + "\"/>\n");
+  }
+
+  /**
+   * Writes a card.
+   * 
+   * @param bounds card's bounds
+   * @param genderClass CSS class for the member's gender
+   * @param iconX x position of the tombstone or -1 if it should not be shown
+   * @param iconY y position of the tombstone
+   * @param textX x position of the text
+   * @param textY baseline of the text
+   * @param text the text
+   * @throws IOException if an I/O error occurs
+   */
+  void card(Rectangle bounds, String genderClass, int iconX, int iconY, int textX, int textY, String text) throws IOException {
+    // The stroke is centered on the outline, the rectangle is shrunk so that the border stays inside the card.
+    this.out.write("<g class=\"" + genderClass + "\"><rect x=\"" + (bounds.x + 1) + "\" y=\"" + (bounds.y + 1) + "\" width=\""
+        + (bounds.width - 2) + "\" height=\"" + (bounds.height - 2) + "\"/>");
+    if (iconX >= 0)
+      this.out.write("<use xlink:href=\"#" + TOMBSTONE_ID + "\" x=\"" + iconX + "\" y=\"" + iconY + "\"/>");
+    this.out.write("<text x=\"" + textX + "\" y=\"" + textY + "\">");
+    this.out.write(escape(text));
+    this.out.write("</text></g>\n");
+  }
+
+  /**
+   * Writes the end of the document then closes the stream.
+   */
+  @Override
+  public void close() throws IOException {
+    try {
+      this.out.write("</svg>\n");
+    }
+    finally {
+      this.out.close();
+    }
+  }
+
+  /**
+   * @return the tombstone icon as a base64-encoded PNG
+   */
+  private static String tombstone() throws IOException {
+    BufferedImage image = new BufferedImage(Images.TOMBSTONE.getIconWidth(), Images.TOMBSTONE.getIconHeight(),
+        BufferedImage.TYPE_INT_ARGB);
+    Graphics2D g = image.createGraphics();
+    Images.TOMBSTONE.paintIcon(null, g, 0, 0);
+    g.dispose();
+
+    ByteArrayOutputStream bytes = new ByteArrayOutputStream();
+    ImageIO.write(image, "png", bytes);
+    return Base64.getEncoder().encodeToString(bytes.toByteArray());
+  }
+
+  /**
+   * @return the given color in hexadecimal notation
+   */
+  private static String color(Color c) {
+    return String.format("#%06x", c.getRGB() & 0xFFFFFF);
+  }
+
+  /**
+   * Escapes XML special characters.
+   */
+  static String escape(String s) {
+    StringBuilder sb = null;
+
+    for (int i = 0; i < s.length(); i++) {
+      char c = s.charAt(i);
+      String replacement;
+      switch (c) {
+        case '&':
+          replacement = "&amp;";
+          break;
+        case '<':
+          replacement = "&lt;";
+          break;
+        case '>':
+          replacement = "&gt;";
+          break;
+        case '"':
+          replacement = "&quot;";
+          break;
+        default:
+          replacement = null;
+          break;
+      }
+      if (replacement != null) {
+        if (sb == null)
+          sb = new StringBuilder(s.substring(0, i));
+        sb.append(replacement);
+      }
+      else if (sb != null)
+        sb.append(c);
+    }
+
+    return sb != null ? sb.toString() : s;
+  }
+}
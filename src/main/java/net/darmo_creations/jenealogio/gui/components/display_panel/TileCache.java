@@ -0,0 +1,157 @@
+/*
+ * Copyright © 2017 Damien Vergnet
+ * 
+ * This file is part of Jenealogio.
+ *
+ * This program is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ * 
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ * 
+ * You should have received a copy of the GNU General Public License
+ * along with this program.  If not, see <http://www.gnu.org/licenses/>.
+ */
+package net.darmo_creations.jenealogio.gui.components.display_panel;
+
+import java.awt.Color;
+import java.awt.Graphics2D;
+import java.awt.Rectangle;
+import java.awt.geom.AffineTransform;
+import java.awt.image.BufferedImage;
+import java.util.Iterator;
+import java.util.LinkedHashMap;
+import java.util.Map;
+import java.util.function.BiConsumer;
+
+/**
+ * A back-buffer split into square tiles. Tiles are rendered when they are first painted then
+ * reused until a zone they overlap is invalidated. Only the most recently used tiles are kept.
+ * Tiles are rendered at the scale of the device they are painted on so that they stay sharp on
+ * HiDPI screens.
+ * 
+ * @author Damien Vergnet
+ */
+class TileCache {
+  private final int tileSize;
+  private final LinkedHashMap<Long, BufferedImage> tiles;
+  private int maxTiles;
+  private double scaleX;
+  private double scaleY;
+
+  /**
+   * Creates an empty cache.
+   * 
+   * @param tileSize tiles' width and height in pixels
+   * @param maxTiles the maximum number of tiles kept
+   */
+  TileCache(int tileSize, int maxTiles) {
+    this.tileSize = tileSize;
+    this.maxTiles = maxTiles;
+    this.tiles = new LinkedHashMap<Long, BufferedImage>(16, 0.75f, true) {
+      private static final long serialVersionUID = 1L;
+
+      @Override
+      protected boolean removeEldestEntry(Map.Entry<Long, BufferedImage> eldest) {
+        return size() > TileCache.this.maxTiles;
+      }
+    };
+    this.scaleX = 1;
+    this.scaleY = 1;
+  }
+
+  /**
+   * Sets the maximum number of tiles kept. The least recently used tiles are dropped if there are
+   * more.
+   * 
+   * @param maxTiles the maximum number of tiles
+   */
+  void setMaxTiles(int maxTiles) {
+    this.maxTiles = maxTiles;
+
+    Iterator<Long> it = this.tiles.keySet().iterator();
+    for (int n = this.tiles.size(); n > maxTiles; n--) {
+      it.next();
+      it.remove();
+    }
+  }
+
+  /**
+   * Drops the tiles overlapping the given zone.
+   * 
+   * @param zone the zone
+   */
+  void invalidate(Rectangle zone) {
+    if (zone == null)
+      return;
+
+    Iterator<Long> it = this.tiles.keySet().iterator();
+    while (it.hasNext()) {
+      long key = it.next();
+      if (getTileBounds((int) (key >> 32), (int) key).intersects(zone))
+        it.remove();
+    }
+  }
+
+  /**
+   * Drops all tiles.
+   */
+  void invalidateAll() {
+    this.tiles.clear();
+  }
+
+  /**
+   * Paints the tiles overlapping a zone. Missing tiles are rendered first, all tiles are rendered
+   * again if the scale of the graphics context changed.
+   * 
+   * @param g the graphics context
+   * @param zone the zone to paint
+   * @param background tiles' background color
+   * @param renderer draws the content of a zone; the graphics context is clipped to the zone
+   */
+  void paint(Graphics2D g, Rectangle zone, Color background, BiConsumer<Graphics2D, Rectangle> renderer) {
+    AffineTransform transform = g.getTransform();
+    if (transform.getScaleX() != this.scaleX || transform.getScaleY() != this.scaleY) {
+      invalidateAll();
+      this.scaleX = transform.getScaleX();
+      this.scaleY = transform.getScaleY();
+    }
+    int width = (int) Math.ceil(this.tileSize * this.scaleX);
+    int height = (int) Math.ceil(this.tileSize * this.scaleY);
+
+    int minX = Math.floorDiv(zone.x, this.tileSize);
+    int minY = Math.floorDiv(zone.y, this.tileSize);
+    int maxX = Math.floorDiv(zone.x + zone.width - 1, this.tileSize);
+    int maxY = Math.floorDiv(zone.y + zone.height - 1, this.tileSize);
+
+    for (int x = minX; x <= maxX; x++) {
+      for (int y = minY; y <= maxY; y++) {
+        long key = ((long) x << 32) | (y & 0xFFFFFFFFL);
+        Rectangle bounds = getTileBounds(x, y);
+        BufferedImage tile = this.tiles.get(key);
+
+        if (tile == null) {
+          tile = new BufferedImage(width, height, BufferedImage.TYPE_INT_RGB);
+          Graphics2D tileGraphics = tile.createGraphics();
+          tileGraphics.setColor(background);
+          tileGraphics.fillRect(0, 0, width, height);
+          tileGraphics.scale(this.scaleX, this.scaleY);
+          tileGraphics.translate(-bounds.x, -bounds.y);
+          tileGraphics.setClip(bounds);
+          renderer.accept(tileGraphics, bounds);
+          tileGraphics.dispose();
+          this.tiles.put(key, tile);
+        }
+        g.drawImage(tile, bounds.x, bounds.y, this.tileSize, this.tileSize, null);
+      }
+    }
+  }
+
+  private Rectangle getTileBounds(int x, int y) {
+    return new Rectangle(x * this.tileSize, y * this.tileSize, this.tileSize, this.tileSize);
+  }
+}
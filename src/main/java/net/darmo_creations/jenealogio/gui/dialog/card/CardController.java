@@ -21,17 +21,17 @@ package net.darmo_creations.jenealogio.gui.dialog.card;
 import java.awt.event.ActionEvent;
 import java.awt.event.ItemEvent;
 import java.awt.event.ItemListener;
-import java.awt.image.BufferedImage;
 import java.io.File;
 import java.io.IOException;
+import java.nio.file.Files;
 import java.util.Optional;
 
-import javax.imageio.ImageIO;
 import javax.swing.event.DocumentEvent;
 import javax.swing.event.DocumentListener;
 
 import net.darmo_creations.jenealogio.model.family.FamilyMember;
 import net.darmo_creations.jenealogio.model.family.Gender;
+import net.darmo_creations.jenealogio.model.family.Portrait;
 import net.darmo_creations.utils.I18n;
 import net.darmo_creations.utils.swing.dialog.DefaultDialogController;
 
@@ -59,7 +59,7 @@ class CardController extends DefaultDialogController<CardDialog> implements Docu
     if (member != null) {
       this.dialog.setTitle(I18n.getLocalizedString("dialog.update_card.title"));
       this.dialog.setId(member.getId());
-      this.dialog.setImage(member.getImage());
+      this.dialog.setPortrait(member.getPortrait());
       this.dialog.setFamilyName(member.getFamilyName().orElse(""));
       this.dialog.setUseName(member.getUseName().orElse(""));
       this.dialog.setFirstName(member.getFirstName().orElse(""));
@@ -77,7 +77,7 @@ class CardController extends DefaultDialogController<CardDialog> implements Docu
     else {
       this.dialog.setTitle(I18n.getLocalizedString("dialog.add_card.title"));
       this.dialog.setId(-1);
-      this.dialog.setImage(Optional.empty());
+      this.dialog.setPortrait(Optional.empty());
       this.dialog.setFamilyName("");
       this.dialog.setUseName("");
       this.dialog.setFirstName("");
@@ -126,20 +126,21 @@ class CardController extends DefaultDialogController<CardDialog> implements Docu
   }
 
   /**
-   * Opens up a file chooser then set the profile image on the dialog.
+   * Opens up a file chooser then set the profile image on the dialog. The file's content is kept as
+   * is, the image is not encoded again.
    */
   private void setImage() {
     File file = this.dialog.showOpenFileChooser();
     if (file != null) {
-      Optional<BufferedImage> image;
+      Optional<Portrait> portrait;
       try {
-        image = Optional.ofNullable(ImageIO.read(file));
+        portrait = Optional.of(new Portrait(Files.readAllBytes(file.toPath())));
       }
       catch (IOException e) {
         this.dialog.showErrorDialog(I18n.getLocalizedString("popup.open_image_error.text"));
-        image = Optional.empty();
+        portrait = Optional.empty();
       }
-      this.dialog.setImage(image);
+      this.dialog.setPortrait(portrait);
     }
   }
 
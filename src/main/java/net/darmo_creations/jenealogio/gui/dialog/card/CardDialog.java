@@ -54,6 +54,7 @@ import net.darmo_creations.jenealogio.gui.components.DateField;
 import net.darmo_creations.jenealogio.model.date.Date;
 import net.darmo_creations.jenealogio.model.family.FamilyMember;
 import net.darmo_creations.jenealogio.model.family.Gender;
+import net.darmo_creations.jenealogio.model.family.Portrait;
 import net.darmo_creations.jenealogio.util.Images;
 import net.darmo_creations.utils.I18n;
 import net.darmo_creations.utils.swing.ImageLabel;
@@ -72,7 +73,7 @@ public class CardDialog extends AbstractDialog {
   private JFileChooser fileChooser;
 
   private long id;
-  private BufferedImage image;
+  private Portrait portrait;
   private JLabel imageLbl;
   private JTextField familyNameFld, useNameFld, firstNameFld, otherNamesFld, birthLocationFld, deathLocationFld;
   private JCheckBox deadChkBox;
@@ -105,7 +106,7 @@ public class CardDialog extends AbstractDialog {
     this.fileChooser.setMultiSelectionEnabled(false);
     this.fileChooser.setFileFilter(new ExtensionsFileFilter(I18n.getLocalizedString("file_type.image.desc"), Jenealogio.IMAGE_FILES_EXTS));
 
-    this.image = null;
+    this.portrait = null;
     this.imageLbl = new ImageLabel(null, true);
     this.imageLbl.setPreferredSize(new Dimension(120, 150));
     this.imageLbl.setMaximumSize(this.imageLbl.getPreferredSize());
@@ -570,15 +571,17 @@ public class CardDialog extends AbstractDialog {
   /**
    * Sets the image.
    * 
-   * @param image the image
+   * @param portrait the image
    */
-  void setImage(Optional<BufferedImage> image) {
-    if (image.isPresent()) {
-      this.image = image.get();
-      this.imageLbl.setIcon(new ImageIcon(image.get()));
+  void setPortrait(Optional<Portrait> portrait) {
+    BufferedImage image = portrait.map(Portrait::getImage).orElse(null);
+
+    if (image != null) {
+      this.portrait = portrait.get();
+      this.imageLbl.setIcon(new ImageIcon(image));
     }
     else {
-      this.image = null;
+      this.portrait = null;
       this.imageLbl.setIcon(null);
     }
   }
@@ -588,7 +591,7 @@ public class CardDialog extends AbstractDialog {
    */
   public Optional<FamilyMember> getCard() {
     if (!isCanceled()) {
-      FamilyMember member = new FamilyMember(getId(), this.image, getFamilyName(), getUseName(), getFirstName(), getOtherNames(),
+      FamilyMember member = new FamilyMember(getId(), this.portrait, getFamilyName(), getUseName(), getFirstName(), getOtherNames(),
           getGender(), getBirthDate(), getBirthLocation(), getDeathDate(), getDeathLocation(), isDead(), getComment());
 
       return Optional.of(member);
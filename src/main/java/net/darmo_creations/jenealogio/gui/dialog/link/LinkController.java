@@ -21,6 +21,7 @@ package net.darmo_creations.jenealogio.gui.dialog.link;
 import java.awt.event.ActionEvent;
 import java.util.Collections;
 import java.util.HashMap;
+import java.util.List;
 import java.util.Map;
 import java.util.Set;
 import java.util.stream.Collectors;
@@ -71,7 +72,7 @@ class LinkController extends DefaultDialogController<LinkDialog> implements List
    * @param family the family
    */
   void reset(Relationship relation, Family family) {
-    Set<FamilyMember> availableChildren = family.getPotentialChildren(relation);
+    List<FamilyMember> availableChildren = family.streamPotentialChildren(relation).collect(Collectors.toList());
 
     this.partner1 = family.getMember(relation.getPartner1()).get();
     this.partner2 = family.getMember(relation.getPartner2()).get();
@@ -83,7 +84,6 @@ class LinkController extends DefaultDialogController<LinkDialog> implements List
     this.dialog.setEndDate(relation.getEndDate().orElse(null));
     this.dialog.setPartner1(family.getMember(relation.getPartner1()).get().toString());
     this.dialog.setPartner2(family.getMember(relation.getPartner2()).get().toString());
-    this.dialog.setAvailableChildren(availableChildren);
     Map<Long, Date> adoptions = new HashMap<>();
     for (Long id : relation.getChildren()) {
       if (relation.isAdopted(id))
@@ -91,6 +91,7 @@ class LinkController extends DefaultDialogController<LinkDialog> implements List
     }
     Set<FamilyMember> children = relation.getChildren().stream().map(id -> family.getMember(id).get()).collect(Collectors.toSet());
     this.dialog.setChildren(children, adoptions);
+    this.dialog.setAvailableChildren(availableChildren);
 
     this.dialog.setCanceled(false);
     this.dialog.setAddButtonEnabled(false);
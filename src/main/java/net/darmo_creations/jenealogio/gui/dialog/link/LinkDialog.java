@@ -26,12 +26,16 @@ import java.awt.GridBagLayout;
 import java.awt.Insets;
 import java.awt.event.WindowAdapter;
 import java.awt.event.WindowEvent;
+import java.util.ArrayList;
+import java.util.Collections;
 import java.util.HashMap;
 import java.util.HashSet;
 import java.util.List;
 import java.util.Map;
 import java.util.Optional;
 import java.util.Set;
+import java.util.concurrent.ExecutionException;
+import java.util.stream.Collectors;
 
 import javax.swing.DefaultListModel;
 import javax.swing.JButton;
@@ -41,20 +45,23 @@ import javax.swing.JList;
 import javax.swing.JPanel;
 import javax.swing.JScrollPane;
 import javax.swing.JTextField;
+import javax.swing.SwingWorker;
+import javax.swing.Timer;
 import javax.swing.border.EmptyBorder;
 import javax.swing.event.DocumentEvent;
 import javax.swing.event.DocumentListener;
-import javax.swing.text.BadLocationException;
 
 import net.darmo_creations.jenealogio.gui.MainFrame;
 import net.darmo_creations.jenealogio.gui.components.AdoptionListRenderer;
 import net.darmo_creations.jenealogio.gui.components.DateField;
+import net.darmo_creations.jenealogio.gui.components.FilteredListModel;
 import net.darmo_creations.jenealogio.model.date.Date;
 import net.darmo_creations.jenealogio.model.family.AdoptionListEntry;
 import net.darmo_creations.jenealogio.model.family.Family;
 import net.darmo_creations.jenealogio.model.family.FamilyMember;
 import net.darmo_creations.jenealogio.model.family.Relationship;
 import net.darmo_creations.jenealogio.util.Images;
+import net.darmo_creations.jenealogio.util.SearchIndex;
 import net.darmo_creations.utils.I18n;
 import net.darmo_creations.utils.Nullable;
 import net.darmo_creations.utils.swing.dialog.AbstractDialog;
@@ -67,6 +74,9 @@ import net.darmo_creations.utils.swing.dialog.AbstractDialog;
 public class LinkDialog extends AbstractDialog {
   private static final long serialVersionUID = -6591620133064467367L;
 
+  /** Delay in milliseconds after the last keystroke before the search is run. */
+  private static final int SEARCH_DELAY = 150;
+
   private LinkController controller;
   private JCheckBox weddingChk;
   private DateField dateFld;
@@ -79,8 +89,12 @@ public class LinkDialog extends AbstractDialog {
   private JButton adoptionValidateBtn;
   private JList<AdoptionListEntry> childrenList;
   private JList<FamilyMember> availChildrenList;
+  private FilteredListModel<FamilyMember> availChildrenModel;
   private JButton addBtn, removeBtn;
   private JTextField searchFld;
+  private Timer searchTimer;
+  private SwingWorker<int[], Void> searchWorker;
+  private SwingWorker<SearchIndex<FamilyMember>, Void> indexWorker;
 
   /**
    * Creates a new dialog.
@@ -123,7 +137,8 @@ public class LinkDialog extends AbstractDialog {
     this.childrenList.setCellRenderer(new AdoptionListRenderer());
     this.childrenList.addListSelectionListener(this.controller);
     this.childrenList.setName("children");
-    this.availChildrenList = new JList<>(new DefaultListModel<>());
+    this.availChildrenModel = new FilteredListModel<>();
+    this.availChildrenList = new JList<>(this.availChildrenModel);
     this.availChildrenList.addListSelectionListener(this.controller);
     this.availChildrenList.setName("available-children");
     this.addBtn = new JButton(Images.ARROW_UP);
@@ -150,22 +165,11 @@ public class LinkDialog extends AbstractDialog {
       }
 
       private void update(DocumentEvent e) {
-        try {
-          String text = e.getDocument().getText(0, e.getDocument().getLength()).toLowerCase();
-          DefaultListModel<FamilyMember> model = (DefaultListModel<FamilyMember>) LinkDialog.this.availChildrenList.getModel();
-
-          for (int i = 0; i < model.size(); i++) {
-            FamilyMember m = model.getElementAt(i);
-
-            if (m.toString().toLowerCase().contains(text)) {
-              model.remove(i);
-              model.insertElementAt(m, 0);
-            }
-          }
-        }
-        catch (BadLocationException ex) {}
+        LinkDialog.this.searchTimer.restart();
       }
     });
+    this.searchTimer = new Timer(SEARCH_DELAY, e -> search());
+    this.searchTimer.setRepeats(false);
 
     JPanel fieldsPnl = new JPanel(new GridBagLayout());
     fieldsPnl.setBorder(new EmptyBorder(5, 5, 5, 5));
@@ -472,15 +476,104 @@ public class LinkDialog extends AbstractDialog {
   }
 
   /**
-   * Sets the list of potential children.
+   * Sets the list of potential children. The current children are indexed too so that they can be
+   * put back in the list. This method must be called after {@link #setChildren(Set, Map)}.
+   * <p>
+   * The search index is built in a background thread, the list is filled once it is ready.
+   * </p>
    * 
-   * @param children the potential children
+   * @param children the potential children, the current children must not be included
    */
-  void setAvailableChildren(Set<FamilyMember> children) {
-    DefaultListModel<FamilyMember> model = (DefaultListModel<FamilyMember>) this.availChildrenList.getModel();
-    model.removeAllElements();
-    children.forEach(child -> model.addElement(child));
+  void setAvailableChildren(List<FamilyMember> children) {
+    DefaultListModel<AdoptionListEntry> childrenModel = (DefaultListModel<AdoptionListEntry>) this.childrenList.getModel();
+    List<FamilyMember> members = new ArrayList<>(children);
+    for (int i = 0; i < childrenModel.size(); i++)
+      members.add(childrenModel.getElementAt(i).getMember());
+
     this.searchFld.setText(null);
+    cancelSearch();
+    if (this.indexWorker != null)
+      this.indexWorker.cancel(false);
+    this.availChildrenList.clearSelection();
+    this.availChildrenModel.setIndex(new SearchIndex<>(Collections.emptyList(), FamilyMember::toString));
+
+    this.indexWorker = new SwingWorker<SearchIndex<FamilyMember>, Void>() {
+      @Override
+      protected SearchIndex<FamilyMember> doInBackground() throws Exception {
+        return new SearchIndex<>(members, FamilyMember::toString);
+      }
+
+      @Override
+      protected void done() {
+        if (!isCancelled()) {
+          try {
+            LinkDialog.this.availChildrenModel.setIndex(get());
+            // Children may have been removed while the index was being built.
+            DefaultListModel<AdoptionListEntry> model = (DefaultListModel<AdoptionListEntry>) LinkDialog.this.childrenList.getModel();
+            List<FamilyMember> children = new ArrayList<>();
+            for (int i = 0; i < model.size(); i++)
+              children.add(model.getElementAt(i).getMember());
+            LinkDialog.this.availChildrenModel.setHidden(children, true);
+            if (!LinkDialog.this.searchFld.getText().isEmpty())
+              search();
+          }
+          catch (InterruptedException | ExecutionException ex) {
+            showErrorDialog(I18n.getLocalizedString("popup.children_list_error.text"));
+          }
+        }
+      }
+    };
+    this.indexWorker.execute();
+  }
+
+  /**
+   * Looks for the members matching the search field in a background thread. Only the last query is
+   * shown.
+   */
+  private void search() {
+    cancelSearch();
+
+    String query = this.searchFld.getText();
+    SearchIndex<FamilyMember> index = this.availChildrenModel.getIndex();
+    this.searchWorker = new SwingWorker<int[], Void>() {
+      @Override
+      protected int[] doInBackground() throws Exception {
+        return index.search(query);
+      }
+
+      @Override
+      protected void done() {
+        if (!isCancelled()) {
+          int[] matches;
+          boolean failed = false;
+          try {
+            matches = get();
+          }
+          catch (InterruptedException | ExecutionException ex) {
+            // The unfiltered list is shown instead.
+            matches = index.search(null);
+            failed = true;
+          }
+          LinkDialog.this.availChildrenList.clearSelection();
+          LinkDialog.this.availChildrenModel.setMatches(index, matches);
+          setAddButtonEnabled(false);
+          if (failed)
+            showErrorDialog(I18n.getLocalizedString("popup.search_error.text"));
+        }
+      }
+    };
+    this.searchWorker.execute();
+  }
+
+  /**
+   * Cancels the pending search, if any.
+   */
+  private void cancelSearch() {
+    this.searchTimer.stop();
+    if (this.searchWorker != null) {
+      this.searchWorker.cancel(false);
+      this.searchWorker = null;
+    }
   }
 
   /**
@@ -489,13 +582,11 @@ public class LinkDialog extends AbstractDialog {
   void addSelectedChildren() {
     if (!this.availChildrenList.isSelectionEmpty()) {
       List<FamilyMember> items = this.availChildrenList.getSelectedValuesList();
-      DefaultListModel<FamilyMember> srcModel = (DefaultListModel<FamilyMember>) this.availChildrenList.getModel();
       DefaultListModel<AdoptionListEntry> destModel = (DefaultListModel<AdoptionListEntry>) this.childrenList.getModel();
 
-      items.forEach(child -> {
-        destModel.addElement(new AdoptionListEntry(child, false, null));
-        srcModel.removeElement(child);
-      });
+      items.forEach(child -> destModel.addElement(new AdoptionListEntry(child, false, null)));
+      this.availChildrenList.clearSelection();
+      this.availChildrenModel.setHidden(items, true);
     }
     if (this.availChildrenList.isSelectionEmpty())
       this.addBtn.setEnabled(false);
@@ -508,12 +599,10 @@ public class LinkDialog extends AbstractDialog {
     if (!this.childrenList.isSelectionEmpty()) {
       List<AdoptionListEntry> items = this.childrenList.getSelectedValuesList();
       DefaultListModel<AdoptionListEntry> srcModel = (DefaultListModel<AdoptionListEntry>) this.childrenList.getModel();
-      DefaultListModel<FamilyMember> destModel = (DefaultListModel<FamilyMember>) this.availChildrenList.getModel();
 
-      items.forEach(entry -> {
-        destModel.addElement(entry.getMember());
-        srcModel.removeElement(entry);
-      });
+      items.forEach(srcModel::removeElement);
+      this.availChildrenList.clearSelection();
+      this.availChildrenModel.setHidden(items.stream().map(AdoptionListEntry::getMember).collect(Collectors.toList()), false);
     }
     if (this.childrenList.isSelectionEmpty())
       this.removeBtn.setEnabled(false);
@@ -19,19 +19,29 @@
 package net.darmo_creations.jenealogio.model;
 
 import java.awt.Point;
-import java.util.HashMap;
-import java.util.Map;
+import java.util.ArrayList;
+import java.util.List;
 
 import net.darmo_creations.jenealogio.model.family.Family;
+import net.darmo_creations.jenealogio.model.family.FamilyDiffHandler;
+import net.darmo_creations.jenealogio.model.family.FamilyMember;
+import net.darmo_creations.jenealogio.model.family.Relationship;
+import net.darmo_creations.jenealogio.util.LongPointMap;
+import net.darmo_creations.jenealogio.util.PersistentLongMap;
+import net.darmo_creations.utils.Nullable;
 
 /**
  * This class represents a family edit used by the UndoManager class in the MainController.
+ * <p>
+ * Edits share all unchanged data with the family they were created from and with the previous
+ * edit, so each edit only costs memory for what changed.
+ * </p>
  *
  * @author Damien Vergnet
  */
 public final class FamilyEdit {
   private final Family family;
-  private final Map<Long, Point> locations;
+  private final PersistentLongMap<Point> locations;
 
   /**
    * Creates an edit.
@@ -39,9 +49,57 @@ public final class FamilyEdit {
    * @param family the family
    * @param locations locations for all cards
    */
-  public FamilyEdit(final Family family, final Map<Long, Point> locations) {
+  public FamilyEdit(final Family family, final LongPointMap locations) {
+    this(null, family, locations);
+  }
+
+  /**
+   * Creates an edit that shares the locations that did not change with a previous edit. Only the
+   * locations of the cards that were added or moved since the previous edit have to be given, the
+   * locations of the removed members are dropped.
+   * 
+   * @param previous the previous edit; may be null
+   * @param family the family
+   * @param locations locations of the added or moved cards; locations for all cards if there is no
+   *          previous edit
+   */
+  public FamilyEdit(@Nullable FamilyEdit previous, final Family family, final LongPointMap locations) {
+    PersistentLongMap<Point> l = previous != null ? previous.locations : PersistentLongMap.empty();
+    List<Long> removed = new ArrayList<>();
+
+    if (previous != null) {
+      family.diff(previous.family, new FamilyDiffHandler() {
+        @Override
+        public void memberAdded(FamilyMember member) {}
+
+        @Override
+        public void memberUpdated(FamilyMember old, FamilyMember member) {}
+
+        @Override
+        public void memberRemoved(FamilyMember old) {
+          removed.add(old.getId());
+        }
+
+        @Override
+        public void relationAdded(Relationship relation) {}
+
+        @Override
+        public void relationUpdated(Relationship old, Relationship relation) {}
+
+        @Override
+        public void relationRemoved(Relationship old) {}
+      });
+    }
+    for (long id : removed)
+      l = l.remove(id);
+    for (long id : locations.toKeyArray()) {
+      Point p = locations.get(id);
+      if (!p.equals(l.get(id)))
+        l = l.put(id, p);
+    }
+
     this.family = family.clone();
-    this.locations = new HashMap<>(locations);
+    this.locations = l;
   }
 
   /**
@@ -51,11 +109,24 @@ public final class FamilyEdit {
     return this.family.clone();
   }
 
+  /**
+   * Returns a read-only view of the locations of all cards. Unlike {@link #getLocations()},
+   * locations are not copied so they <b>must not</b> be modified. Views of successive edits share
+   * the locations that did not change.
+   * 
+   * @return locations for all cards
+   */
+  public PersistentLongMap<Point> getLocationsView() {
+    return this.locations;
+  }
+
   /**
    * @return locations for all cards
    */
-  public Map<Long, Point> getLocations() {
-    return new HashMap<>(this.locations);
+  public LongPointMap getLocations() {
+    LongPointMap locations = new LongPointMap(this.locations.size());
+    this.locations.forEach(e -> locations.put(e.getKey(), e.getValue()));
+    return locations;
   }
 
   @Override
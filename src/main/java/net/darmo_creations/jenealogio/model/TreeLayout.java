@@ -0,0 +1,356 @@
+/*
+ * Copyright © 2017 Damien Vergnet
+ * 
+ * This file is part of Jenealogio.
+ *
+ * This program is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ * 
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ * 
+ * You should have received a copy of the GNU General Public License
+ * along with this program.  If not, see <http://www.gnu.org/licenses/>.
+ */
+package net.darmo_creations.jenealogio.model;
+
+import java.util.ArrayDeque;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Comparator;
+import java.util.Deque;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.function.LongToIntFunction;
+
+import net.darmo_creations.jenealogio.model.family.Family;
+import net.darmo_creations.jenealogio.model.family.FamilyMember;
+import net.darmo_creations.jenealogio.model.family.Relationship;
+import net.darmo_creations.jenealogio.util.LongPointMap;
+
+/**
+ * Arranges the cards of a tree by generation using a layered (Sugiyama-style) layout.
+ * <ol>
+ * <li>Partners are grouped into units that are always placed side by side.</li>
+ * <li>Units are assigned to layers so that children are below their parents.</li>
+ * <li>Units are ordered inside each layer by barycenter sweeps to reduce link crossings.</li>
+ * <li>Units are placed from left to right, centered below their parents when there is room.</li>
+ * </ol>
+ * Every step is linear in the number of members and relations except for the sorting of the layers,
+ * so big trees are arranged quickly.
+ * 
+ * @author Damien Vergnet
+ */
+public final class TreeLayout {
+  /** Space around the tree */
+  public static final int MARGIN = 20;
+  /** Vertical distance between two generations */
+  public static final int LAYER_HEIGHT = 100;
+  /** Horizontal space between two partners */
+  public static final int CARD_GAP = 30;
+  /** Horizontal space between two units */
+  public static final int UNIT_GAP = 50;
+  /** Number of down and up barycenter sweeps */
+  private static final int SWEEPS = 4;
+
+  /**
+   * Computes the locations of all cards of a family.
+   * 
+   * @param family the family
+   * @param cardWidth gives the width of a member's card from its ID
+   * @return the location of every member's card
+   */
+  public static LongPointMap layout(Family family, LongToIntFunction cardWidth) {
+    return new TreeLayout(family, cardWidth).run();
+  }
+
+  private final long[] ids;
+  private final int[] widths;
+  private final Map<Long, Integer> indexes;
+  private final List<Relationship> relations;
+
+  /** Unit of each member */
+  private int[] unitOf;
+  /** Members of each unit, partners next to each other */
+  private int[][] units;
+  /** Parent units and child units of each unit */
+  private int[][] parents, children;
+  private int[] layerOf;
+  private List<List<Integer>> layers;
+  /** Position of each unit in its layer */
+  private int[] order;
+
+  private TreeLayout(Family family, LongToIntFunction cardWidth) {
+    int n = family.getMembersView().size();
+    this.ids = new long[n];
+    this.widths = new int[n];
+    this.indexes = new HashMap<>(2 * n);
+    int i = 0;
+    for (FamilyMember member : family.getMembersView()) {
+      this.ids[i] = member.getId();
+      this.widths[i] = cardWidth.applyAsInt(member.getId());
+      this.indexes.put(member.getId(), i);
+      i++;
+    }
+    this.relations = new ArrayList<>();
+    for (Relationship r : family.getRelationsView()) {
+      if (this.indexes.containsKey(r.getPartner1()) && this.indexes.containsKey(r.getPartner2()))
+        this.relations.add(r);
+    }
+  }
+
+  private LongPointMap run() {
+    buildUnits();
+    buildUnitsGraph();
+    assignLayers();
+    reduceCrossings();
+    return assignCoordinates();
+  }
+
+  /**
+   * Groups partners into units: connected components of the partners graph.
+   */
+  private void buildUnits() {
+    int n = this.ids.length;
+    int[] root = new int[n];
+    List<List<Integer>> partners = new ArrayList<>(n);
+
+    for (int i = 0; i < n; i++) {
+      root[i] = i;
+      partners.add(new ArrayList<>(1));
+    }
+    for (Relationship r : this.relations) {
+      int a = this.indexes.get(r.getPartner1());
+      int b = this.indexes.get(r.getPartner2());
+      partners.get(a).add(b);
+      partners.get(b).add(a);
+      int ra = find(root, a), rb = find(root, b);
+      if (ra != rb)
+        root[ra] = rb;
+    }
+
+    this.unitOf = new int[n];
+    Arrays.fill(this.unitOf, -1);
+    List<int[]> units = new ArrayList<>();
+    boolean[] visited = new boolean[n];
+    // Members are ordered by a traversal starting from the member with the fewest partners so that
+    // chains of partners are placed in order.
+    Integer[] byDegree = new Integer[n];
+    for (int i = 0; i < n; i++)
+      byDegree[i] = i;
+    Arrays.sort(byDegree, Comparator.comparingInt(i -> partners.get(i).size()));
+    for (int start : byDegree) {
+      if (visited[start])
+        continue;
+      List<Integer> members = new ArrayList<>();
+      Deque<Integer> stack = new ArrayDeque<>();
+      stack.push(start);
+      visited[start] = true;
+      while (!stack.isEmpty()) {
+        int m = stack.pop();
+        members.add(m);
+        for (int p : partners.get(m)) {
+          if (!visited[p]) {
+            visited[p] = true;
+            stack.push(p);
+          }
+        }
+      }
+      int unit = units.size();
+      int[] array = new int[members.size()];
+      for (int i = 0; i < array.length; i++) {
+        array[i] = members.get(i);
+        this.unitOf[array[i]] = unit;
+      }
+      units.add(array);
+    }
+    this.units = units.toArray(new int[units.size()][]);
+  }
+
+  private static int find(int[] root, int i) {
+    while (root[i] != i) {
+      root[i] = root[root[i]];
+      i = root[i];
+    }
+    return i;
+  }
+
+  /**
+   * Builds the graph whose edges go from the unit of two partners to the units of their children.
+   */
+  private void buildUnitsGraph() {
+    int u = this.units.length;
+    int[] parentsCount = new int[u], childrenCount = new int[u];
+    List<int[]> edges = new ArrayList<>();
+
+    for (Relationship r : this.relations) {
+      int parent = this.unitOf[this.indexes.get(r.getPartner1())];
+      for (long child : r.getChildrenIds()) {
+        Integer c = this.indexes.get(child);
+        if (c != null && this.unitOf[c] != parent) {
+          edges.add(new int[]{parent, this.unitOf[c]});
+          childrenCount[parent]++;
+          parentsCount[this.unitOf[c]]++;
+        }
+      }
+    }
+
+    this.parents = new int[u][];
+    this.children = new int[u][];
+    for (int i = 0; i < u; i++) {
+      this.parents[i] = new int[parentsCount[i]];
+      this.children[i] = new int[childrenCount[i]];
+    }
+    for (int[] e : edges) {
+      this.children[e[0]][--childrenCount[e[0]]] = e[1];
+      this.parents[e[1]][--parentsCount[e[1]]] = e[0];
+    }
+  }
+
+  /**
+   * Puts each unit one layer below its lowest parent unit. Units without parents are then moved down
+   * to just above their highest child. Cycles, which only appear in inconsistent trees, are broken
+   * arbitrarily.
+   */
+  private void assignLayers() {
+    int u = this.units.length;
+    int[] remaining = new int[u];
+    int[] topological = new int[u];
+    int count = 0;
+    boolean[] done = new boolean[u];
+    Deque<Integer> queue = new ArrayDeque<>();
+
+    this.layerOf = new int[u];
+    for (int i = 0; i < u; i++) {
+      remaining[i] = this.parents[i].length;
+      if (remaining[i] == 0)
+        queue.add(i);
+    }
+    int next = 0;
+    while (count < u) {
+      if (queue.isEmpty()) {
+        // Cycle: the next unit not yet placed is taken as if all its parents were
+        while (done[next])
+          next++;
+        queue.add(next);
+        remaining[next] = 0;
+      }
+      int unit = queue.poll();
+      if (done[unit])
+        continue;
+      done[unit] = true;
+      topological[count++] = unit;
+      for (int c : this.children[unit]) {
+        this.layerOf[c] = Math.max(this.layerOf[c], this.layerOf[unit] + 1);
+        if (--remaining[c] == 0)
+          queue.add(c);
+      }
+    }
+
+    for (int i = u - 1; i >= 0; i--) {
+      int unit = topological[i];
+      if (this.parents[unit].length == 0 && this.children[unit].length != 0) {
+        int min = Integer.MAX_VALUE;
+        for (int c : this.children[unit])
+          min = Math.min(min, this.layerOf[c]);
+        this.layerOf[unit] = Math.max(this.layerOf[unit], min - 1);
+      }
+    }
+
+    this.layers = new ArrayList<>();
+    for (int unit : topological) {
+      while (this.layers.size() <= this.layerOf[unit])
+        this.layers.add(new ArrayList<>());
+      this.layers.get(this.layerOf[unit]).add(unit);
+    }
+  }
+
+  /**
+   * Orders the units of each layer by the mean position of their parents then of their children.
+   */
+  private void reduceCrossings() {
+    this.order = new int[this.units.length];
+    updateOrder();
+
+    for (int sweep = 0; sweep < SWEEPS; sweep++) {
+      for (int l = 1; l < this.layers.size(); l++)
+        sortLayer(this.layers.get(l), this.parents);
+      for (int l = this.layers.size() - 2; l >= 0; l--)
+        sortLayer(this.layers.get(l), this.children);
+    }
+  }
+
+  private void sortLayer(List<Integer> layer, int[][] neighbors) {
+    Map<Integer, Double> keys = new HashMap<>(2 * layer.size());
+
+    for (int unit : layer) {
+      int[] n = neighbors[unit];
+      if (n.length == 0)
+        keys.put(unit, (double) this.order[unit]);
+      else {
+        double sum = 0;
+        for (int v : n)
+          sum += this.order[v];
+        keys.put(unit, sum / n.length);
+      }
+    }
+    layer.sort(Comparator.comparingDouble(keys::get));
+    for (int i = 0; i < layer.size(); i++)
+      this.order[layer.get(i)] = i;
+  }
+
+  private void updateOrder() {
+    for (List<Integer> layer : this.layers)
+      for (int i = 0; i < layer.size(); i++)
+        this.order[layer.get(i)] = i;
+  }
+
+  /**
+   * Places units from left to right, layer by layer. A unit is centered below its parents unless
+   * that would make it overlap the previous unit.
+   * 
+   * @return the location of every card
+   */
+  private LongPointMap assignCoordinates() {
+    int[] unitX = new int[this.units.length];
+    int[] unitWidth = new int[this.units.length];
+    LongPointMap locations = new LongPointMap(this.ids.length);
+
+    for (int i = 0; i < this.units.length; i++) {
+      int w = (this.units[i].length - 1) * CARD_GAP;
+      for (int m : this.units[i])
+        w += this.widths[m];
+      unitWidth[i] = w;
+    }
+
+    for (int l = 0; l < this.layers.size(); l++) {
+      int right = MARGIN - UNIT_GAP;
+      for (int unit : this.layers.get(l)) {
+        int x = right + UNIT_GAP;
+        int[] p = this.parents[unit];
+        if (p.length != 0) {
+          long sum = 0;
+          for (int v : p)
+            sum += unitX[v] + unitWidth[v] / 2;
+          x = Math.max(x, (int) (sum / p.length) - unitWidth[unit] / 2);
+        }
+        unitX[unit] = x;
+        right = x + unitWidth[unit];
+
+        int y = MARGIN + l * LAYER_HEIGHT;
+        int cardX = x;
+        for (int m : this.units[unit]) {
+          locations.put(this.ids[m], cardX, y);
+          cardX += this.widths[m] + CARD_GAP;
+        }
+      }
+    }
+
+    return locations;
+  }
+}
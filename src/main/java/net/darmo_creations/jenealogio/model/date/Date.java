@@ -18,55 +18,146 @@
  */
 package net.darmo_creations.jenealogio.model.date;
 
-import java.util.Calendar;
-
 /**
- * This class represents a date that can be incomplete. It uses an instance of
- * {@link java.util.Calendar} to handle data. <b>N.B.</b>: unlike the Calendar class, January is 1
- * not 0, and so on.
+ * This class represents a date that can be incomplete. Dates are immutable and packed in a single
+ * int: the year, the month, the day then a flag for each known part, from the highest bits to the
+ * lowest. Unknown parts are stored as 0 so that dates known up to the same part are compared as
+ * plain ints. <b>N.B.</b>: January is 1, and so on.
+ * <p>
+ * Instances are obtained through {@link #of(int, int, int)}, {@link #fromInt(int)} or a
+ * {@link DateBuilder}. Frequently used dates are shared. The packed value returned by
+ * {@link #toInt()} is the only binary encoding of dates, used by every save format.
+ * </p>
  * 
  * @author Damien Vergnet
  */
 public final class Date implements Comparable<Date>, Cloneable {
-  private int year, month, day, nbOfDaysInMonth;
-  private boolean yearSet, monthSet, daySet;
+  /** Value passed to {@link #of(int, int, int)} for unknown parts */
+  public static final int UNKNOWN = -1;
+  /** The biggest supported year */
+  public static final int MAX_YEAR = (1 << 19) - 1;
+
+  private static final int DAY_SET = 1;
+  private static final int MONTH_SET = 1 << 1;
+  private static final int YEAR_SET = 1 << 2;
+  private static final int DAY_SHIFT = 3;
+  private static final int MONTH_SHIFT = 8;
+  private static final int YEAR_SHIFT = 12;
+
+  /** Direct-mapped cache of shared instances, a slot holds the last date that was hashed to it. */
+  private static final Date[] CACHE = new Date[1 << 16];
+
+  private final int packed;
+
+  private Date(int packed) {
+    this.packed = packed;
+  }
 
   /**
-   * Creates a date from a builder.
+   * Returns the date with the given parts.
    * 
-   * @param builder the builder
-   */
-  Date(DateBuilder builder) {
-    this.yearSet = builder.isYearSet();
-    this.monthSet = builder.isMonthSet();
-    this.daySet = builder.isDateSet();
-
-    Calendar calendar = (Calendar) builder.getCalendar().clone();
-    if (this.yearSet)
-      this.year = calendar.get(Calendar.YEAR);
-    if (this.monthSet) {
-      this.month = calendar.get(Calendar.MONTH) + 1;
-      this.nbOfDaysInMonth = calendar.getActualMaximum(Calendar.DAY_OF_MONTH);
+   * @param year the year or {@link #UNKNOWN}
+   * @param month the month (1 for January) or {@link #UNKNOWN}
+   * @param day the day in the month (1 for the first day) or {@link #UNKNOWN}
+   * @return the date
+   * @throws IllegalArgumentException if all parts are unknown or if a part is out of range
+   */
+  public static Date of(int year, int month, int day) {
+    int packed = 0;
+
+    if (year != UNKNOWN) {
+      if (year < 0 || year > MAX_YEAR)
+        throw new IllegalArgumentException("year out of range: " + year);
+      packed |= YEAR_SET | year << YEAR_SHIFT;
+    }
+    if (month != UNKNOWN) {
+      if (month < 1 || month > 12)
+        throw new IllegalArgumentException("month out of range: " + month);
+      packed |= MONTH_SET | month << MONTH_SHIFT;
     }
-    if (this.daySet)
-      this.day = calendar.get(Calendar.DAY_OF_MONTH);
+    if (day != UNKNOWN) {
+      int max = month != UNKNOWN ? daysInMonth(year, month) : 31;
+      if (day < 1 || day > max)
+        throw new IllegalArgumentException("day out of range: " + day);
+      packed |= DAY_SET | day << DAY_SHIFT;
+    }
+    if (packed == 0)
+      throw new IllegalArgumentException("empty date");
 
-    if (!this.yearSet && !this.monthSet && !this.daySet)
-      throw new IllegalStateException("empty date");
+    return intern(packed);
+  }
+
+  /**
+   * Returns the date encoded by the given int.
+   * 
+   * @param packed an int returned by {@link #toInt()}
+   * @return the date
+   * @throws IllegalArgumentException if the int is not a valid date
+   */
+  public static Date fromInt(int packed) {
+    int year = (packed & YEAR_SET) != 0 ? packed >>> YEAR_SHIFT : UNKNOWN;
+    int month = (packed & MONTH_SET) != 0 ? (packed >>> MONTH_SHIFT) & 0xF : UNKNOWN;
+    int day = (packed & DAY_SET) != 0 ? (packed >>> DAY_SHIFT) & 0x1F : UNKNOWN;
+    Date date = of(year, month, day);
+
+    // Bits of unknown parts must be cleared.
+    if (date.packed != packed)
+      throw new IllegalArgumentException("invalid date: " + packed);
+    return date;
+  }
+
+  /**
+   * Returns the shared instance for a valid packed date.
+   */
+  private static Date intern(int packed) {
+    int slot = (packed * 0x9E3779B9) >>> 16;
+    Date date = CACHE[slot];
+
+    if (date == null || date.packed != packed) {
+      // Dates are immutable, a racing thread may at worst replace the slot with an equal date.
+      date = new Date(packed);
+      CACHE[slot] = date;
+    }
+
+    return date;
+  }
+
+  /**
+   * Returns the number of days in a month. February has 29 days when the year is unknown.
+   */
+  static int daysInMonth(int year, int month) {
+    switch (month) {
+      case 2:
+        return year == UNKNOWN || year % 4 == 0 && (year % 100 != 0 || year % 400 == 0) ? 29 : 28;
+      case 4:
+      case 6:
+      case 9:
+      case 11:
+        return 30;
+      default:
+        return 31;
+    }
+  }
+
+  /**
+   * @return this date packed in an int; known dates compare like their ints
+   */
+  public int toInt() {
+    return this.packed;
   }
 
   /**
    * @return true if and only if the year, month and date are known
    */
   public boolean isIncomplete() {
-    return !this.yearSet || !this.monthSet || !this.daySet;
+    return (this.packed & (YEAR_SET | MONTH_SET | DAY_SET)) != (YEAR_SET | MONTH_SET | DAY_SET);
   }
 
   /**
    * @return true if the year is set
    */
   public boolean isYearSet() {
-    return this.yearSet;
+    return (this.packed & YEAR_SET) != 0;
   }
 
   /**
@@ -74,7 +165,7 @@ public final class Date implements Comparable<Date>, Cloneable {
    */
   public int getYear() {
     if (isYearSet())
-      return this.year;
+      return this.packed >>> YEAR_SHIFT;
     throw new NullPointerException("year not set");
   }
 
@@ -82,7 +173,7 @@ public final class Date implements Comparable<Date>, Cloneable {
    * @return true if the month is set
    */
   public boolean isMonthSet() {
-    return this.monthSet;
+    return (this.packed & MONTH_SET) != 0;
   }
 
   /**
@@ -90,24 +181,22 @@ public final class Date implements Comparable<Date>, Cloneable {
    */
   public int getMonth() {
     if (isMonthSet())
-      return this.month;
+      return (this.packed >>> MONTH_SHIFT) & 0xF;
     throw new NullPointerException("month not set");
   }
 
   /**
-   * @return the number of days in the current month
+   * @return the number of days in the current month; February has 29 days if the year is unknown
    */
   public int getDaysNbInMonth() {
-    if (isMonthSet())
-      return this.nbOfDaysInMonth;
-    throw new NullPointerException("month not set");
+    return daysInMonth(isYearSet() ? getYear() : UNKNOWN, getMonth());
   }
 
   /**
    * @return true if the date is set
    */
   public boolean isDateSet() {
-    return this.daySet;
+    return (this.packed & DAY_SET) != 0;
   }
 
   /**
@@ -115,7 +204,7 @@ public final class Date implements Comparable<Date>, Cloneable {
    */
   public int getDate() {
     if (isDateSet())
-      return this.day;
+      return (this.packed >>> DAY_SHIFT) & 0x1F;
     throw new NullPointerException("date not set");
   }
 
@@ -141,47 +230,31 @@ public final class Date implements Comparable<Date>, Cloneable {
     return compareTo(other) > 0;
   }
 
+  /**
+   * Compares two dates on the parts both of them have, starting from the year.
+   * 
+   * @throws NullPointerException if one of the years is not set
+   */
   @Override
   public int compareTo(Date other) {
-    if (isYearSet() && isMonthSet() && other.isYearSet() && other.isMonthSet() && (!isDateSet() || !other.isDateSet())) {
-      if (getYear() < other.getYear() || getYear() == other.getYear() && getMonth() < other.getMonth())
-        return -1;
-      if (getYear() > other.getYear() || getYear() == other.getYear() && getMonth() > other.getMonth())
-        return 1;
-      return 0;
-    }
+    int common = this.packed & other.packed;
+    int shift;
 
-    if (isYearSet() && other.isYearSet() && (!isMonthSet() || !other.isMonthSet())) {
-      if (getYear() < other.getYear())
-        return -1;
-      if (getYear() > other.getYear())
-        return 1;
-      return 0;
-    }
+    if ((common & YEAR_SET) == 0)
+      throw new NullPointerException("year not set");
+    if ((common & MONTH_SET) == 0)
+      shift = YEAR_SHIFT;
+    else if ((common & DAY_SET) == 0)
+      shift = MONTH_SHIFT;
+    else
+      shift = DAY_SHIFT;
 
-    if (getYear() < other.getYear() || getYear() == other.getYear() && getMonth() < other.getMonth()
-        || getYear() == other.getYear() && getMonth() == other.getMonth() && getDate() < other.getDate())
-      return -1;
-    if (getYear() > other.getYear() || getYear() == other.getYear() && getMonth() > other.getMonth()
-        || getYear() == other.getYear() && getMonth() == other.getMonth() && getDate() > other.getDate())
-      return 1;
-    return 0;
+    return Integer.compare(this.packed >>> shift, other.packed >>> shift);
   }
 
   @Override
   public int hashCode() {
-    final int prime = 31;
-    int result = 1;
-
-    result = prime * result + this.day;
-    result = prime * result + (this.daySet ? 1231 : 1237);
-    result = prime * result + this.month;
-    result = prime * result + (this.monthSet ? 1231 : 1237);
-    result = prime * result + this.nbOfDaysInMonth;
-    result = prime * result + this.year;
-    result = prime * result + (this.yearSet ? 1231 : 1237);
-
-    return result;
+    return this.packed;
   }
 
   @Override
@@ -192,31 +265,15 @@ public final class Date implements Comparable<Date>, Cloneable {
       return false;
     if (getClass() != obj.getClass())
       return false;
-    Date other = (Date) obj;
-    if (this.day != other.day)
-      return false;
-    if (this.daySet != other.daySet)
-      return false;
-    if (this.month != other.month)
-      return false;
-    if (this.monthSet != other.monthSet)
-      return false;
-    if (this.nbOfDaysInMonth != other.nbOfDaysInMonth)
-      return false;
-    if (this.year != other.year)
-      return false;
-    if (this.yearSet != other.yearSet)
-      return false;
-    return true;
+    return this.packed == ((Date) obj).packed;
   }
 
+  /**
+   * Dates are immutable, this method returns this instance.
+   */
   @Override
   public Date clone() {
-    try {
-      return (Date) super.clone();
-    }
-    catch (CloneNotSupportedException e) {
-      throw new Error(e);
-    }
+    return this;
   }
+
 }
@@ -1,21 +1,20 @@
 package net.darmo_creations.jenealogio.model.date;
 
-import java.util.Calendar;
-
 /**
- * This builder constructs a {@link Date} object.
+ * This builder constructs a {@link Date} object. Like {@link java.util.Calendar} in lenient mode,
+ * days out of their month roll over the month if it is known and months out of their year roll
+ * over the year if it is known.
  *
  * @author Damien Vergnet
  */
 public final class DateBuilder {
-  private Calendar calendar;
+  private int year, month, date;
   private boolean yearSet, monthSet, dateSet;
 
   /**
    * Creates a builder.
    */
   public DateBuilder() {
-    this.calendar = Calendar.getInstance();
     this.yearSet = false;
     this.monthSet = false;
     this.dateSet = false;
@@ -27,7 +26,7 @@ public final class DateBuilder {
    * @param year the year
    */
   public void setYear(int year) {
-    this.calendar.set(Calendar.YEAR, year);
+    this.year = year;
     this.yearSet = true;
   }
 
@@ -37,7 +36,7 @@ public final class DateBuilder {
    * @param month the month
    */
   public void setMonth(int month) {
-    this.calendar.set(Calendar.MONTH, month - 1);
+    this.month = month;
     this.monthSet = true;
   }
 
@@ -47,32 +46,42 @@ public final class DateBuilder {
    * @param date the date
    */
   public void setDate(int date) {
-    this.calendar.set(Calendar.DAY_OF_MONTH, date);
+    this.date = date;
     this.dateSet = true;
   }
 
   /**
    * @return the constructed date or null if nothing has been set
+   * @throws IllegalArgumentException if a part is out of range and cannot roll over
    */
   public Date getDate() {
-    if (this.yearSet || this.monthSet || this.dateSet)
-      return new Date(this);
-    return null;
-  }
+    if (!this.yearSet && !this.monthSet && !this.dateSet)
+      return null;
 
-  Calendar getCalendar() {
-    return this.calendar;
-  }
+    int year = this.year, month = this.month, date = this.date;
 
-  boolean isYearSet() {
-    return this.yearSet;
-  }
+    if (this.monthSet && this.dateSet) {
+      while (date < 1) {
+        month--;
+        date += getLength(year, month);
+      }
+      while (date > getLength(year, month)) {
+        date -= getLength(year, month);
+        month++;
+      }
+    }
+    if (this.yearSet && this.monthSet) {
+      year += Math.floorDiv(month - 1, 12);
+      month = Math.floorMod(month - 1, 12) + 1;
+    }
 
-  boolean isMonthSet() {
-    return this.monthSet;
+    return Date.of(this.yearSet ? year : Date.UNKNOWN, this.monthSet ? month : Date.UNKNOWN, this.dateSet ? date : Date.UNKNOWN);
   }
 
-  boolean isDateSet() {
-    return this.dateSet;
+  /**
+   * Returns the number of days in a month that may be out of the year.
+   */
+  private int getLength(int year, int month) {
+    return Date.daysInMonth(this.yearSet ? year + Math.floorDiv(month - 1, 12) : Date.UNKNOWN, Math.floorMod(month - 1, 12) + 1);
   }
 }
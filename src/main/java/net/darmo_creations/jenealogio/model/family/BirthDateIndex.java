@@ -0,0 +1,104 @@
+/*
+ * Copyright © 2017 Damien Vergnet
+ * 
+ * This file is part of Jenealogio.
+ *
+ * This program is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ * 
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ * 
+ * You should have received a copy of the GNU General Public License
+ * along with this program.  If not, see <http://www.gnu.org/licenses/>.
+ */
+package net.darmo_creations.jenealogio.model.family;
+
+import java.util.Arrays;
+import java.util.Collection;
+import java.util.Comparator;
+import java.util.Optional;
+import java.util.stream.LongStream;
+
+import net.darmo_creations.jenealogio.model.date.Date;
+
+/**
+ * An immutable index of members sorted by birth year. Members whose birth year is unknown are kept
+ * apart.
+ * <p>
+ * Years are used instead of full dates because incomplete dates are only compared on the parts
+ * both dates have, which is not a total order.
+ * </p>
+ * 
+ * @author Damien Vergnet
+ */
+final class BirthDateIndex {
+  /** IDs of the members with a birth year, sorted by year then ID */
+  private final long[] ids;
+  /** Birth year of each member in {@link #ids} */
+  private final int[] years;
+  /** IDs of the members without a birth year, sorted */
+  private final long[] others;
+
+  /**
+   * Indexes the given members.
+   * 
+   * @param members the members
+   */
+  BirthDateIndex(Collection<FamilyMember> members) {
+    FamilyMember[] sorted = members.toArray(new FamilyMember[members.size()]);
+    Arrays.sort(sorted, Comparator.comparingLong(FamilyMember::getId));
+
+    // Each year is packed with the member's rank by ID so that a primitive sort orders both.
+    long[] dated = new long[sorted.length];
+    long[] others = new long[sorted.length];
+    int datedCount = 0, othersCount = 0;
+
+    for (int i = 0; i < sorted.length; i++) {
+      Optional<Date> birth = sorted[i].getBirthDate();
+      if (birth.isPresent() && birth.get().isYearSet())
+        dated[datedCount++] = (long) birth.get().getYear() << 32 | i;
+      else
+        others[othersCount++] = sorted[i].getId();
+    }
+
+    Arrays.sort(dated, 0, datedCount);
+    this.ids = new long[datedCount];
+    this.years = new int[datedCount];
+    for (int i = 0; i < datedCount; i++) {
+      this.years[i] = (int) (dated[i] >>> 32);
+      this.ids[i] = sorted[(int) dated[i]].getId();
+    }
+    this.others = Arrays.copyOf(others, othersCount);
+  }
+
+  /**
+   * Returns the IDs of the members born on or after the given year, by increasing year.
+   * 
+   * @param year the year
+   * @return a lazy stream of IDs
+   */
+  LongStream bornSince(int year) {
+    // First index whose year is greater than or equal to the given one
+    int low = 0, high = this.years.length;
+    while (low < high) {
+      int mid = (low + high) >>> 1;
+      if (this.years[mid] < year)
+        low = mid + 1;
+      else
+        high = mid;
+    }
+    return Arrays.stream(this.ids, low, this.ids.length);
+  }
+
+  /**
+   * @return the IDs of the members whose birth year is unknown
+   */
+  LongStream withoutBirthYear() {
+    return Arrays.stream(this.others);
+  }
+}
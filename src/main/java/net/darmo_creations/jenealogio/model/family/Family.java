@@ -18,28 +18,71 @@
  */
 package net.darmo_creations.jenealogio.model.family;
 
+import java.util.AbstractCollection;
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.Collections;
 import java.util.HashSet;
 import java.util.Iterator;
+import java.util.List;
 import java.util.Objects;
 import java.util.Optional;
 import java.util.Set;
-import java.util.function.Predicate;
 import java.util.stream.Collectors;
+import java.util.stream.LongStream;
+import java.util.stream.Stream;
+
+import net.darmo_creations.jenealogio.model.date.Date;
+import net.darmo_creations.jenealogio.util.PersistentLongMap;
 
 /**
  * A family has members and each member can be in relationships.
+ * <p>
+ * Members are indexed by ID and relationships are indexed by both partners and by children so that
+ * lookups do not depend on the size of the family.
+ * </p>
+ * <p>
+ * Indexes are persistent maps and the members and relations they contain are never modified, so
+ * copies of a family share all of their data until one of them is modified.
+ * </p>
+ * <p>
+ * A family can also be backed by a {@link FamilySource}: indexes then only hold the members and
+ * relations that were modified and all others are read from the source when they are looked up.
+ * </p>
  * 
  * @author Damien Vergnet
  */
 public class Family implements Cloneable {
+  /** Marks the members of the source that were removed */
+  private static final FamilyMember REMOVED = new FamilyMember(-1, (Portrait) null, null, null, null, null, Gender.UNKNOW, null, null,
+      null, null, false, null);
+
   /** The global ID */
   private long globalId;
   /** This family's name */
   private String name;
-  /** Members */
-  private Set<FamilyMember> members;
-  /** Relationships */
-  private Set<Relationship> relations;
+  /** The members and relations that were not modified; null if this family holds all of them */
+  private final FamilySource source;
+  /**
+   * Members, by ID; with a source, only the modified ones and {@link #REMOVED} for the removed ones
+   */
+  private PersistentLongMap<FamilyMember> members;
+  /**
+   * Relationships, by partner ID then by the other partner's ID; with a source, only for partners
+   * whose relations were modified, maps are then kept even if empty
+   */
+  private PersistentLongMap<PersistentLongMap<Relationship>> relations;
+  /**
+   * Relationships, by child ID; lists are never modified once indexed; with a source, only for
+   * children whose parents were modified, lists are then kept even if empty
+   */
+  private PersistentLongMap<List<Relationship>> parentRelations;
+  /** Number of members */
+  private int membersCount;
+  /** Number of relationships */
+  private int relationsCount;
+  /** Members by birth year; built when needed and dropped when members change */
+  private BirthDateIndex birthDateIndex;
 
   /**
    * Creates a family with no members and no relations.
@@ -51,7 +94,8 @@ public class Family implements Cloneable {
   }
 
   /**
-   * Creates a family with the given members and relations.
+   * Creates a family with the given members and relations. The given sets are not kept. If several
+   * relations have the same partners, only one of them is kept.
    * 
    * @param globalId global ID's initial value
    * @param name family's name
@@ -61,8 +105,48 @@ public class Family implements Cloneable {
   public Family(long globalId, String name, Set<FamilyMember> members, Set<Relationship> relations) {
     this.globalId = globalId;
     setName(name);
-    this.members = Objects.requireNonNull(members);
-    this.relations = Objects.requireNonNull(relations);
+    this.source = null;
+    this.members = PersistentLongMap.empty();
+    this.relations = PersistentLongMap.empty();
+    this.parentRelations = PersistentLongMap.empty();
+    Objects.requireNonNull(members).forEach(member -> this.members = this.members.put(member.getId(), member));
+    this.membersCount = this.members.size();
+    Objects.requireNonNull(relations).forEach(this::indexRelation);
+  }
+
+  /**
+   * Creates a family backed by a source. Nothing is read from the source until it is looked up.
+   * 
+   * @param globalId global ID's initial value
+   * @param name family's name
+   * @param source the members and relations
+   */
+  public Family(long globalId, String name, FamilySource source) {
+    this.globalId = globalId;
+    setName(name);
+    this.source = Objects.requireNonNull(source);
+    this.members = PersistentLongMap.empty();
+    this.relations = PersistentLongMap.empty();
+    this.parentRelations = PersistentLongMap.empty();
+    this.membersCount = source.getMembersNumber();
+    this.relationsCount = source.getRelationsNumber();
+  }
+
+  /**
+   * Creates a copy of a family. Both families share their indexes and source.
+   * 
+   * @param family the family to copy
+   */
+  private Family(Family family) {
+    this.globalId = family.globalId;
+    this.name = family.name;
+    this.source = family.source;
+    this.members = family.members;
+    this.relations = family.relations;
+    this.parentRelations = family.parentRelations;
+    this.membersCount = family.membersCount;
+    this.relationsCount = family.relationsCount;
+    this.birthDateIndex = family.birthDateIndex;
   }
 
   /**
@@ -87,7 +171,36 @@ public class Family implements Cloneable {
    * @return all the members
    */
   public Set<FamilyMember> getAllMembers() {
-    return this.members.stream().map(member -> member.clone()).collect(Collectors.toSet());
+    return getMembersView().stream().map(member -> member.clone()).collect(Collectors.toSet());
+  }
+
+  /**
+   * Returns a read-only view of all the members. Unlike {@link #getAllMembers()}, members are not
+   * copied so they <b>must not</b> be modified. The view is not affected by later modifications of
+   * this family.
+   * 
+   * @return all the members
+   */
+  public Collection<FamilyMember> getMembersView() {
+    if (this.source == null)
+      return this.members.values();
+
+    final FamilySource source = this.source;
+    final PersistentLongMap<FamilyMember> members = this.members;
+    final int size = this.membersCount;
+
+    return new AbstractCollection<FamilyMember>() {
+      @Override
+      public Iterator<FamilyMember> iterator() {
+        Stream<FamilyMember> unmodified = source.getIds().filter(id -> !members.containsKey(id)).mapToObj(id -> source.getMember(id).get());
+        return Stream.concat(unmodified, members.values().stream().filter(m -> m != REMOVED)).iterator();
+      }
+
+      @Override
+      public int size() {
+        return size;
+      }
+    };
   }
 
   /**
@@ -97,7 +210,7 @@ public class Family implements Cloneable {
    * @return the member or nothing if none were found
    */
   public Optional<FamilyMember> getMember(long id) {
-    return this.members.stream().filter(member -> member.getId() == id).findAny().map(member -> member.clone());
+    return Optional.ofNullable(findMember(id)).map(member -> member.clone());
   }
 
   /**
@@ -107,7 +220,24 @@ public class Family implements Cloneable {
    * @param member the new member
    */
   public void addMember(FamilyMember member) {
-    this.members.add(member.clone(getNextMemberId()));
+    FamilyMember m = member.clone(getNextMemberId());
+    this.members = this.members.put(m.getId(), m);
+    this.membersCount++;
+    this.birthDateIndex = null;
+  }
+
+  /**
+   * Adds a member with its own ID or replaces the member that has the same ID. Unlike
+   * {@link #addMember(FamilyMember)}, the global ID is not changed; this is meant to restore a saved
+   * state.
+   * 
+   * @param member the member
+   */
+  public void putMember(FamilyMember member) {
+    if (findMember(member.getId()) == null)
+      this.membersCount++;
+    this.members = this.members.put(member.getId(), member.clone());
+    this.birthDateIndex = null;
   }
 
   /**
@@ -116,11 +246,9 @@ public class Family implements Cloneable {
    * @param member the member's updated data
    */
   public void updateMember(FamilyMember member) {
-    Predicate<FamilyMember> p = m -> m.getId() == member.getId();
-
-    if (this.members.stream().anyMatch(p)) {
-      this.members.removeIf(p);
-      this.members.add(member.clone());
+    if (findMember(member.getId()) != null) {
+      this.members = this.members.put(member.getId(), member.clone());
+      this.birthDateIndex = null;
     }
   }
 
@@ -131,14 +259,20 @@ public class Family implements Cloneable {
    * @param id the ID of the member to remove
    */
   public void removeMember(long id) {
-    for (Iterator<Relationship> it = this.relations.iterator(); it.hasNext();) {
-      Relationship relation = it.next();
-      if (relation.isInRelationship(id))
-        it.remove();
-      else if (relation.isChild(id))
-        relation.removeChild(id);
-    }
-    this.members.removeIf(m -> m.getId() == id);
+    if (findMember(id) == null)
+      return;
+
+    new ArrayList<>(getRelationsMap(id).values()).forEach(this::unindexRelation);
+    // Relations are shared with copies of this family, they are replaced instead of being modified.
+    new ArrayList<>(getParentRelations(id)).forEach(relation -> {
+      Relationship r = relation.clone();
+      r.removeChild(id);
+      unindexRelation(relation);
+      indexRelation(r);
+    });
+    this.members = this.source != null ? this.members.put(id, REMOVED) : this.members.remove(id);
+    this.membersCount--;
+    this.birthDateIndex = null;
   }
 
   /**
@@ -147,7 +281,40 @@ public class Family implements Cloneable {
    * @return all the relations
    */
   public Set<Relationship> getAllRelations() {
-    return this.relations.stream().map(r -> r.clone()).collect(Collectors.toSet());
+    return getRelationsView().stream().map(r -> r.clone()).collect(Collectors.toSet());
+  }
+
+  /**
+   * Returns a read-only view of all the relations. Unlike {@link #getAllRelations()}, relations are
+   * not copied so they <b>must not</b> be modified. The view is not affected by later modifications
+   * of this family.
+   * 
+   * @return all the relations
+   */
+  public Collection<Relationship> getRelationsView() {
+    final FamilySource source = this.source;
+    final PersistentLongMap<PersistentLongMap<Relationship>> relations = this.relations;
+    final int size = this.relationsCount;
+
+    return new AbstractCollection<Relationship>() {
+      @Override
+      public Iterator<Relationship> iterator() {
+        // Each relation is indexed twice, it is kept for its first partner unless only the second one
+        // was indexed (the first one still being read from the source).
+        Stream<Relationship> indexed = relations.stream().flatMap(e -> e.getValue().values().stream().filter(
+            r -> r.getPartner1() == e.getKey() || !relations.containsKey(r.getPartner1())));
+        if (source == null)
+          return indexed.iterator();
+        Stream<Relationship> unmodified = source.getRelations().filter(
+            r -> !relations.containsKey(r.getPartner1()) && !relations.containsKey(r.getPartner2()));
+        return Stream.concat(unmodified, indexed).iterator();
+      }
+
+      @Override
+      public int size() {
+        return size;
+      }
+    };
   }
 
   /**
@@ -158,20 +325,17 @@ public class Family implements Cloneable {
    * @return the relationship between the two IDs
    */
   public Optional<Relationship> getRelation(long id1, long id2) {
-    return this.relations.stream().filter(r -> r.isInRelationship(id1) && r.isInRelationship(id2)).findAny().map(
-        relation -> relation.clone());
+    return Optional.ofNullable(getRelationsMap(id1).get(id2)).map(relation -> relation.clone());
   }
 
   /**
-   * Gets the relations for the given member. This method checks for every relation if one of the
-   * two partners is the given member.
+   * Gets the relations for the given member.
    * 
    * @param memberId the member's ID
    * @return the relations
    */
   public Set<Relationship> getRelations(long memberId) {
-    return this.relations.stream().filter(relation -> relation.isInRelationship(memberId)).map(relation -> relation.clone()).collect(
-        Collectors.toSet());
+    return getRelationsMap(memberId).values().stream().map(relation -> relation.clone()).collect(Collectors.toSet());
   }
 
   /**
@@ -182,7 +346,7 @@ public class Family implements Cloneable {
    */
   public void addRelation(Relationship relation) {
     if (!areInRelationship(relation.getPartner1(), relation.getPartner2())) {
-      this.relations.add(relation.clone());
+      indexRelation(relation.clone());
     }
   }
 
@@ -192,15 +356,15 @@ public class Family implements Cloneable {
    * @param relation the relation's new data
    */
   public void updateRelation(Relationship relation) {
-    Predicate<Relationship> p = r -> r.isInRelationship(relation.getPartner1()) && r.isInRelationship(relation.getPartner2());
+    Relationship old = getRelationsMap(relation.getPartner1()).get(relation.getPartner2());
 
-    if (this.relations.stream().anyMatch(p)) {
-      relation.getChildren().forEach(id -> {
-        if (!getMember(id).isPresent())
+    if (old != null) {
+      for (long id : relation.getChildrenIds()) {
+        if (findMember(id) == null)
           throw new IllegalStateException("member ID '" + id + "' does not exist");
-      });
-      this.relations.removeIf(p);
-      this.relations.add(relation.clone());
+      }
+      unindexRelation(old);
+      indexRelation(relation.clone());
     }
   }
 
@@ -210,7 +374,10 @@ public class Family implements Cloneable {
    * @param relation the relation to delete
    */
   public void removeRelationship(Relationship relation) {
-    this.relations.removeIf(r -> r.isInRelationship(relation.getPartner1()) && r.isInRelationship(relation.getPartner2()));
+    Relationship old = getRelationsMap(relation.getPartner1()).get(relation.getPartner2());
+
+    if (old != null)
+      unindexRelation(old);
   }
 
   /**
@@ -221,7 +388,7 @@ public class Family implements Cloneable {
    * @return true if and only if they are in a relationship
    */
   public boolean areInRelationship(long id1, long id2) {
-    return this.relations.stream().anyMatch(relation -> relation.isInRelationship(id1) && relation.isInRelationship(id2));
+    return getRelationsMap(id1).containsKey(id2);
   }
 
   /**
@@ -231,7 +398,7 @@ public class Family implements Cloneable {
    * @return true if and only if the member has known parents
    */
   public boolean hasParents(long memberId) {
-    return this.relations.stream().anyMatch(r -> r.getChildren().contains(memberId));
+    return !getParentRelations(memberId).isEmpty();
   }
 
   /**
@@ -242,9 +409,7 @@ public class Family implements Cloneable {
    * @return a list of all potential children
    */
   public Set<FamilyMember> getPotentialChildren(Relationship relation) {
-    if (relation == null)
-      return getAllMembers();
-    return getPotentialChildren(getMember(relation.getPartner1()).get(), getMember(relation.getPartner2()).get(), relation.getChildren());
+    return streamPotentialChildren(relation).map(m -> m.clone()).collect(Collectors.toSet());
   }
 
   /**
@@ -257,34 +422,259 @@ public class Family implements Cloneable {
    * @return a list of potential children
    */
   public Set<FamilyMember> getPotentialChildren(FamilyMember partner1, FamilyMember partner2, Set<Long> children) {
-    Set<FamilyMember> all = getAllMembers();
+    return streamPotentialChildren(partner1, partner2, children).map(m -> m.clone()).collect(Collectors.toSet());
+  }
 
+  /**
+   * Returns all members that can be children of the given couple. If the argument is null, all
+   * members are returned. Like {@link #getMembersView()}, members are not copied so they <b>must
+   * not</b> be modified.
+   * 
+   * @param relation the couple
+   * @return a lazy stream of all potential children
+   * @see #streamPotentialChildren(FamilyMember, FamilyMember, Set)
+   */
+  public Stream<FamilyMember> streamPotentialChildren(Relationship relation) {
+    if (relation == null)
+      return getMembersView().stream();
+    return streamPotentialChildren(findMember(relation.getPartner1()), findMember(relation.getPartner2()), relation.getChildren());
+  }
+
+  /**
+   * Returns all members that can be children of the given couple. If one of the partners is null,
+   * all members are returned. Like {@link #getMembersView()}, members are not copied so they
+   * <b>must not</b> be modified.
+   * <p>
+   * Members born the same year or after the youngest partner are looked up in an index sorted by
+   * birth year, followed by those whose birth year is unknown. The stream is lazy, it can be paged
+   * using {@link Stream#skip(long)} and {@link Stream#limit(long)}.
+   * </p>
+   * 
+   * @param partner1 the first partner
+   * @param partner2 the second partner
+   * @param children the children
+   * @return a lazy stream of potential children
+   */
+  public Stream<FamilyMember> streamPotentialChildren(FamilyMember partner1, FamilyMember partner2, Set<Long> children) {
     if (partner1 == null || partner2 == null)
-      return all;
+      return getMembersView().stream();
+
+    // Members older than the youngest spouse are filtered out.
+    FamilyMember youngest = null;
 
-    all.removeIf(m -> m.getId() == partner1.getId());
-    all.removeIf(m -> m.getId() == partner2.getId());
+    if (partner1.getBirthDate().isPresent() && partner2.getBirthDate().isPresent()) {
+      youngest = partner1.compareBirthdays(partner2).get() > 0 ? partner1 : partner2;
+    }
+    else if (partner1.getBirthDate().isPresent()) {
+      youngest = partner1;
+    }
+    else if (partner2.getBirthDate().isPresent()) {
+      youngest = partner2;
+    }
+    final FamilyMember y = youngest;
+
+    Stream<FamilyMember> candidates;
+    Optional<Date> birth = y != null ? y.getBirthDate() : Optional.empty();
+    if (birth.isPresent() && birth.get().isYearSet()) {
+      if (this.birthDateIndex == null)
+        this.birthDateIndex = new BirthDateIndex(getMembersView());
+      BirthDateIndex index = this.birthDateIndex;
+      candidates = LongStream.concat(index.bornSince(birth.get().getYear()), index.withoutBirthYear()).mapToObj(this::findMember);
+    }
+    else {
+      candidates = getMembersView().stream();
+    }
 
-    if (partner1.getBirthDate().isPresent() || partner2.getBirthDate().isPresent()) {
-      // Filter out all members that are older than the youngest spouse.
-      FamilyMember youngest = null;
+    return candidates.filter(m -> m.getId() != partner1.getId() && m.getId() != partner2.getId()).filter(
+        m -> y == null || m.compareBirthdays(y).orElse(1) > 0).filter(m -> !children.contains(m.getId()) && !hasParents(m.getId()));
+  }
 
-      if (partner1.getBirthDate().isPresent() && partner2.getBirthDate().isPresent()) {
-        youngest = partner1.compareBirthdays(partner2).get() > 0 ? partner1 : partner2;
+  /**
+   * Reports the differences between a previous version of this family and this family: added,
+   * updated and removed members then relations. Members and relations are compared by identity.
+   * Data shared with the previous version (see {@link #clone()}) is skipped, so the cost only
+   * depends on the number of changes when this family derives from the previous one. Families backed
+   * by different sources are compared member by member and relation by relation.
+   * 
+   * @param previous the previous version
+   * @param handler the object the differences are reported to
+   */
+  public void diff(Family previous, FamilyDiffHandler handler) {
+    if (this.source != previous.source) {
+      diffAll(previous, handler);
+      return;
+    }
+
+    // Both families have the same source, only their indexes may differ.
+    this.members.diff(previous.members, new PersistentLongMap.DiffHandler<FamilyMember>() {
+      @Override
+      public void added(long id, FamilyMember member) {
+        reportMember(readMember(id), member, handler);
+      }
+
+      @Override
+      public void changed(long id, FamilyMember old, FamilyMember member) {
+        reportMember(old, member, handler);
       }
-      else if (partner1.getBirthDate().isPresent()) {
-        youngest = partner1;
+
+      @Override
+      public void removed(long id, FamilyMember old) {
+        reportMember(old, readMember(id), handler);
       }
-      else {
-        youngest = partner2;
+    });
+
+    this.relations.diff(previous.relations, new PersistentLongMap.DiffHandler<PersistentLongMap<Relationship>>() {
+      @Override
+      public void added(long id, PersistentLongMap<Relationship> map) {
+        reportRelations(id, readRelationsMap(id), map, handler);
       }
-      final FamilyMember y = youngest;
-      all.removeIf(m -> m.compareBirthdays(y).orElse(1) <= 0);
-    }
 
-    all.removeIf(m -> children.contains(m.getId()) || hasParents(m.getId()));
+      @Override
+      public void changed(long id, PersistentLongMap<Relationship> oldMap, PersistentLongMap<Relationship> map) {
+        reportRelations(id, oldMap, map, handler);
+      }
 
-    return all;
+      @Override
+      public void removed(long id, PersistentLongMap<Relationship> oldMap) {
+        reportRelations(id, oldMap, readRelationsMap(id), handler);
+      }
+    });
+  }
+
+  /**
+   * Tells if this family differs from another one backed by the same source. Only the modified
+   * members and relations of both families are compared.
+   * 
+   * @param other the other family
+   * @return true if a member or a relation differs
+   */
+  private boolean differs(Family other) {
+    boolean[] differs = {false};
+
+    diff(other, new FamilyDiffHandler() {
+      @Override
+      public void memberAdded(FamilyMember member) {
+        differs[0] = true;
+      }
+
+      @Override
+      public void memberUpdated(FamilyMember previous, FamilyMember member) {
+        // Members are reported when they are not the same object.
+        differs[0] |= !previous.equals(member);
+      }
+
+      @Override
+      public void memberRemoved(FamilyMember previous) {
+        differs[0] = true;
+      }
+
+      @Override
+      public void relationAdded(Relationship relation) {
+        differs[0] = true;
+      }
+
+      @Override
+      public void relationUpdated(Relationship previous, Relationship relation) {
+        differs[0] = true;
+      }
+
+      @Override
+      public void relationRemoved(Relationship previous) {
+        differs[0] = true;
+      }
+    });
+
+    return differs[0];
+  }
+
+  /**
+   * Reports the difference between two versions of a member.
+   * 
+   * @param old the previous version; null or {@link #REMOVED} if there was none
+   * @param member the current version; null or {@link #REMOVED} if there is none
+   * @param handler the object the difference is reported to
+   */
+  private static void reportMember(FamilyMember old, FamilyMember member, FamilyDiffHandler handler) {
+    boolean existed = old != null && old != REMOVED;
+    boolean exists = member != null && member != REMOVED;
+
+    if (!existed && exists)
+      handler.memberAdded(member);
+    else if (existed && !exists)
+      handler.memberRemoved(old);
+    else if (existed && old != member)
+      handler.memberUpdated(old, member);
+  }
+
+  /**
+   * Reports the differences between two versions of the relations of a member. Each relation is
+   * indexed for both partners, it is only reported for the first one.
+   * 
+   * @param id member's ID
+   * @param oldMap the previous relations
+   * @param map the current relations
+   * @param handler the object the differences are reported to
+   */
+  private static void reportRelations(long id, PersistentLongMap<Relationship> oldMap, PersistentLongMap<Relationship> map,
+      FamilyDiffHandler handler) {
+    map.diff(oldMap, new PersistentLongMap.DiffHandler<Relationship>() {
+      @Override
+      public void added(long id2, Relationship relation) {
+        if (relation.getPartner1() == id)
+          handler.relationAdded(relation);
+      }
+
+      @Override
+      public void changed(long id2, Relationship old, Relationship relation) {
+        // Relations read from the source are new objects each time.
+        if (old.equals(relation))
+          return;
+
+        boolean wasFirst = old.getPartner1() == id;
+        boolean isFirst = relation.getPartner1() == id;
+
+        if (wasFirst && isFirst)
+          handler.relationUpdated(old, relation);
+        else if (wasFirst)
+          handler.relationRemoved(old);
+        else if (isFirst)
+          handler.relationAdded(relation);
+      }
+
+      @Override
+      public void removed(long id2, Relationship old) {
+        if (old.getPartner1() == id)
+          handler.relationRemoved(old);
+      }
+    });
+  }
+
+  /**
+   * Reports the differences with a family that does not have the same source by looking up each
+   * member and relation of one family in the other.
+   * 
+   * @param previous the previous version
+   * @param handler the object the differences are reported to
+   */
+  private void diffAll(Family previous, FamilyDiffHandler handler) {
+    for (FamilyMember member : getMembersView())
+      reportMember(previous.findMember(member.getId()), member, handler);
+    for (FamilyMember old : previous.getMembersView()) {
+      if (findMember(old.getId()) == null)
+        handler.memberRemoved(old);
+    }
+
+    for (Relationship relation : getRelationsView()) {
+      Relationship old = previous.getRelationsMap(relation.getPartner1()).get(relation.getPartner2());
+      if (old == null)
+        handler.relationAdded(relation);
+      else if (!old.equals(relation))
+        handler.relationUpdated(old, relation);
+    }
+    for (Relationship old : previous.getRelationsView()) {
+      if (!areInRelationship(old.getPartner1(), old.getPartner2()))
+        handler.relationRemoved(old);
+    }
   }
 
   /**
@@ -294,6 +684,16 @@ public class Family implements Cloneable {
     return this.globalId;
   }
 
+  /**
+   * Sets the global ID. This is meant to restore a saved state, the ID must be greater than the IDs
+   * of all members.
+   * 
+   * @param globalId the global ID
+   */
+  public void setGlobalId(long globalId) {
+    this.globalId = globalId;
+  }
+
   /**
    * @return the next member ID
    */
@@ -301,14 +701,140 @@ public class Family implements Cloneable {
     return this.globalId++;
   }
 
+  /**
+   * Returns the member with the given ID.
+   * 
+   * @param id the ID
+   * @return the member or null if there is none
+   */
+  private FamilyMember findMember(long id) {
+    FamilyMember member = this.members.get(id);
+
+    if (member == null)
+      return readMember(id);
+    return member != REMOVED ? member : null;
+  }
+
+  /**
+   * Reads a member from the source.
+   * 
+   * @param id the ID
+   * @return the member or null if there is no source or no member with this ID in it
+   */
+  private FamilyMember readMember(long id) {
+    return this.source != null ? this.source.getMember(id).orElse(null) : null;
+  }
+
+  /**
+   * Returns the relations of a member, indexed by the other partner's ID.
+   * 
+   * @param memberId the member's ID
+   * @return the relations; an empty map if there are none
+   */
+  private PersistentLongMap<Relationship> getRelationsMap(long memberId) {
+    PersistentLongMap<Relationship> map = this.relations.get(memberId);
+    return map != null ? map : readRelationsMap(memberId);
+  }
+
+  /**
+   * Reads the relations of a member from the source, indexed by the other partner's ID.
+   * 
+   * @param memberId the member's ID
+   * @return the relations; an empty map if there are none or there is no source
+   */
+  private PersistentLongMap<Relationship> readRelationsMap(long memberId) {
+    PersistentLongMap<Relationship> map = PersistentLongMap.empty();
+
+    if (this.source != null) {
+      for (Relationship r : this.source.getRelations(memberId))
+        map = map.put(r.getPartner1() == memberId ? r.getPartner2() : r.getPartner1(), r);
+    }
+
+    return map;
+  }
+
+  /**
+   * Indexes the relations of a member. Empty maps are only kept to hide the relations of the source.
+   * 
+   * @param memberId the member's ID
+   * @param map the relations, indexed by the other partner's ID
+   */
+  private void putRelationsMap(long memberId, PersistentLongMap<Relationship> map) {
+    this.relations = map.isEmpty() && this.source == null ? this.relations.remove(memberId) : this.relations.put(memberId, map);
+  }
+
+  /**
+   * Returns the relations a member is a child of.
+   * 
+   * @param memberId the member's ID
+   * @return the relations; an empty list if there are none
+   */
+  private List<Relationship> getParentRelations(long memberId) {
+    List<Relationship> list = this.parentRelations.get(memberId);
+
+    if (list == null && this.source != null)
+      return new ArrayList<>(this.source.getParentRelations(memberId));
+    return list != null ? list : Collections.emptyList();
+  }
+
+  /**
+   * Adds a relation to all indexes. Any relation between the same partners is replaced.
+   * 
+   * @param relation the relation
+   */
+  private void indexRelation(Relationship relation) {
+    long id1 = relation.getPartner1();
+    long id2 = relation.getPartner2();
+    Relationship old = getRelationsMap(id1).get(id2);
+
+    if (old != null)
+      unindexRelation(old);
+    putRelationsMap(id1, getRelationsMap(id1).put(id2, relation));
+    putRelationsMap(id2, getRelationsMap(id2).put(id1, relation));
+    this.relationsCount++;
+    for (long id : relation.getChildrenIds()) {
+      List<Relationship> list = new ArrayList<>(getParentRelations(id));
+      list.add(relation);
+      this.parentRelations = this.parentRelations.put(id, list);
+    }
+  }
+
+  /**
+   * Removes a relation from all indexes.
+   * 
+   * @param relation the relation
+   */
+  private void unindexRelation(Relationship relation) {
+    long id1 = relation.getPartner1();
+    long id2 = relation.getPartner2();
+
+    putRelationsMap(id1, getRelationsMap(id1).remove(id2));
+    putRelationsMap(id2, getRelationsMap(id2).remove(id1));
+    this.relationsCount--;
+    for (long child : relation.getChildrenIds()) {
+      List<Relationship> list = new ArrayList<>(getParentRelations(child));
+      // Relations read from the source are new objects each time, they are found by their partners.
+      list.removeIf(r -> Math.min(r.getPartner1(), r.getPartner2()) == Math.min(id1, id2)
+          && Math.max(r.getPartner1(), r.getPartner2()) == Math.max(id1, id2));
+      if (list.isEmpty() && this.source == null)
+        this.parentRelations = this.parentRelations.remove(child);
+      else
+        this.parentRelations = this.parentRelations.put(child, list);
+    }
+  }
+
   @Override
   public String toString() {
-    return getName() + this.members + "," + this.relations;
+    return getName() + getMembersView() + "," + getRelationsView();
   }
 
+  /**
+   * Returns a copy of this family. The copy shares all its data with this family, modifying one of
+   * them does not affect the other.
+   */
   @Override
   public Family clone() {
-    return new Family(this.globalId, this.name, getAllMembers(), getAllRelations());
+    return new Family(this);
   }
 
   @Override
@@ -316,10 +842,11 @@ public class Family implements Cloneable {
     final int prime = 31;
     int result = 1;
 
+    // Members and relations are left out as families backed by a source would have to read them all.
     result = prime * result + (int) (this.globalId ^ (this.globalId >>> 32));
-    result = prime * result + ((this.members == null) ? 0 : this.members.hashCode());
+    result = prime * result + this.membersCount;
     result = prime * result + ((this.name == null) ? 0 : this.name.hashCode());
-    result = prime * result + ((this.relations == null) ? 0 : this.relations.hashCode());
+    result = prime * result + this.relationsCount;
 
     return result;
   }
@@ -335,24 +862,26 @@ public class Family implements Cloneable {
     Family other = (Family) obj;
     if (this.globalId != other.globalId)
       return false;
-    if (this.members == null) {
-      if (other.members != null)
-        return false;
-    }
-    else if (!this.members.equals(other.members))
-      return false;
     if (this.name == null) {
       if (other.name != null)
         return false;
     }
     else if (!this.name.equals(other.name))
       return false;
-    if (this.relations == null) {
-      if (other.relations != null)
+    if (this.membersCount != other.membersCount || this.relationsCount != other.relationsCount)
+      return false;
+    if (this.source == null && other.source == null)
+      return this.members.equals(other.members) && this.relations.equals(other.relations);
+    if (this.source == other.source)
+      return !differs(other);
+    for (FamilyMember member : getMembersView()) {
+      if (!member.equals(other.findMember(member.getId())))
+        return false;
+    }
+    for (Relationship relation : getRelationsView()) {
+      if (!relation.equals(other.getRelationsMap(relation.getPartner1()).get(relation.getPartner2())))
         return false;
     }
-    else if (!this.relations.equals(other.relations))
-      return false;
     return true;
   }
-}
\ No newline at end of file
+}
\ No newline at end of file
@@ -0,0 +1,72 @@
+/*
+ * Copyright © 2017 Damien Vergnet
+ * 
+ * This file is part of Jenealogio.
+ *
+ * This program is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ * 
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ * 
+ * You should have received a copy of the GNU General Public License
+ * along with this program.  If not, see <http://www.gnu.org/licenses/>.
+ */
+package net.darmo_creations.jenealogio.model.family;
+
+/**
+ * Receives the differences between two versions of a family. The members and relations given are
+ * the ones held by the families, they <b>must not</b> be modified.
+ * 
+ * @author Damien Vergnet
+ * @see Family#diff(Family, FamilyDiffHandler)
+ */
+public interface FamilyDiffHandler {
+  /**
+   * Called for each member only present in the current family.
+   * 
+   * @param member the member
+   */
+  void memberAdded(FamilyMember member);
+
+  /**
+   * Called for each member that was updated.
+   * 
+   * @param previous the previous data
+   * @param member the current data
+   */
+  void memberUpdated(FamilyMember previous, FamilyMember member);
+
+  /**
+   * Called for each member only present in the previous family.
+   * 
+   * @param previous the member
+   */
+  void memberRemoved(FamilyMember previous);
+
+  /**
+   * Called for each relation only present in the current family.
+   * 
+   * @param relation the relation
+   */
+  void relationAdded(Relationship relation);
+
+  /**
+   * Called for each relation that was updated.
+   * 
+   * @param previous the previous data
+   * @param relation the current data
+   */
+  void relationUpdated(Relationship previous, Relationship relation);
+
+  /**
+   * Called for each relation only present in the previous family.
+   * 
+   * @param previous the relation
+   */
+  void relationRemoved(Relationship previous);
+}
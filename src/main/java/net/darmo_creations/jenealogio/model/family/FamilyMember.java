@@ -25,7 +25,6 @@ import java.util.Optional;
 
 import net.darmo_creations.jenealogio.model.date.Date;
 import net.darmo_creations.jenealogio.util.CalendarUtil;
-import net.darmo_creations.jenealogio.util.Images;
 import net.darmo_creations.utils.Nullable;
 
 /**
@@ -49,7 +48,7 @@ import net.darmo_creations.utils.Nullable;
  */
 public class FamilyMember implements Comparable<FamilyMember>, Cloneable {
   private final long id;
-  private BufferedImage image;
+  private Portrait portrait;
   private String familyName;
   private String useName;
   private String firstName;
@@ -106,8 +105,33 @@ public class FamilyMember implements Comparable<FamilyMember>, Cloneable {
   public FamilyMember(long id, @Nullable BufferedImage image, @Nullable String familyName, @Nullable String useName,
       @Nullable String firstName, @Nullable String otherNames, Gender gender, @Nullable Date birthDate, @Nullable String birthLocation,
       @Nullable Date deathDate, @Nullable String deathLocation, boolean dead, @Nullable String comment) {
+    this(id, image != null ? new Portrait(image) : null, familyName, useName, firstName, otherNames, gender, birthDate, birthLocation,
+        deathDate, deathLocation, dead, comment);
+  }
+
+  /**
+   * Creates a new member with the given ID and portrait.
+   * 
+   * @param id internal ID
+   * @param portrait the profile image
+   * @param familyName the family name
+   * @param useName the use name (e.g.: after marriage)
+   * @param firstName the first name
+   * @param otherNames other names
+   * @param gender the gender (can be <code>Gender.UNKNOWN</code>)
+   * @param birthDate the birthday
+   * @param birthLocation the birth location
+   * @param deathDate the death date
+   * @param deathLocation the death location
+   * @param dead if both the death date and death location are null, tells that if the person is
+   *          dead or not; otherwise, if either the date or location is not null, it is ignored
+   * @param comment a comment
+   */
+  public FamilyMember(long id, @Nullable Portrait portrait, @Nullable String familyName, @Nullable String useName,
+      @Nullable String firstName, @Nullable String otherNames, Gender gender, @Nullable Date birthDate, @Nullable String birthLocation,
+      @Nullable Date deathDate, @Nullable String deathLocation, boolean dead, @Nullable String comment) {
     this.id = id;
-    setImage(image);
+    this.portrait = portrait;
     setFamilyName(familyName);
     setUseName(useName);
     setFirstName(firstName);
@@ -130,10 +154,20 @@ public class FamilyMember implements Comparable<FamilyMember>, Cloneable {
   }
 
   /**
+   * Returns the profile image. The image is decoded if needed, prefer {@link #getPortrait()} when the
+   * image itself is not needed.
+   * 
    * @return the profile image
    */
   public Optional<BufferedImage> getImage() {
-    return Optional.ofNullable(this.image != null ? Images.deepCopy(this.image) : null);
+    return getPortrait().map(Portrait::getImage);
+  }
+
+  /**
+   * @return the profile image's holder
+   */
+  public Optional<Portrait> getPortrait() {
+    return Optional.ofNullable(this.portrait);
   }
 
   /**
@@ -142,7 +176,7 @@ public class FamilyMember implements Comparable<FamilyMember>, Cloneable {
    * @param image the new profile image
    */
   void setImage(@Nullable BufferedImage image) {
-    this.image = image != null ? Images.deepCopy(image) : null;
+    this.portrait = image != null ? new Portrait(image) : null;
   }
 
   /**
@@ -243,7 +277,7 @@ public class FamilyMember implements Comparable<FamilyMember>, Cloneable {
    * @return the birth date
    */
   public Optional<Date> getBirthDate() {
-    return Optional.ofNullable(this.birthDate != null ? this.birthDate.clone() : null);
+    return Optional.ofNullable(this.birthDate);
   }
 
   /**
@@ -252,7 +286,7 @@ public class FamilyMember implements Comparable<FamilyMember>, Cloneable {
    * @param birthDate the new birth date
    */
   void setBirthDate(@Nullable Date birthDate) {
-    this.birthDate = birthDate != null ? birthDate.clone() : null;
+    this.birthDate = birthDate;
   }
 
   /**
@@ -337,11 +371,8 @@ public class FamilyMember implements Comparable<FamilyMember>, Cloneable {
    *         is younger; nothing if one of the dates is empty
    */
   public Optional<Integer> compareBirthdays(FamilyMember member) {
-    Optional<Date> thisBirth = getBirthDate();
-    Optional<Date> otherBirth = member.getBirthDate();
-
-    if (thisBirth.isPresent() && otherBirth.isPresent()) {
-      return Optional.of(thisBirth.get().compareTo(otherBirth.get()));
+    if (this.birthDate != null && member.birthDate != null) {
+      return Optional.of(this.birthDate.compareTo(member.birthDate));
     }
 
     return Optional.empty();
@@ -367,7 +398,7 @@ public class FamilyMember implements Comparable<FamilyMember>, Cloneable {
    * @return the death date
    */
   public Optional<Date> getDeathDate() {
-    return Optional.ofNullable(this.deathDate != null ? this.deathDate.clone() : null);
+    return Optional.ofNullable(this.deathDate);
   }
 
   /**
@@ -376,7 +407,7 @@ public class FamilyMember implements Comparable<FamilyMember>, Cloneable {
    * @param deathDate the new death date
    */
   void setDeathDate(@Nullable Date deathDate) {
-    this.deathDate = deathDate != null ? deathDate.clone() : null;
+    this.deathDate = deathDate;
     updateDeath();
   }
 
@@ -453,7 +484,7 @@ public class FamilyMember implements Comparable<FamilyMember>, Cloneable {
     result = prime * result + ((this.firstName == null) ? 0 : this.firstName.hashCode());
     result = prime * result + ((this.gender == null) ? 0 : this.gender.hashCode());
     result = prime * result + (int) (this.id ^ (this.id >>> 32));
-    result = prime * result + ((this.image == null) ? 0 : Images.hashCode(this.image));
+    result = prime * result + ((this.portrait == null) ? 0 : this.portrait.hashCode());
     result = prime * result + ((this.otherNames == null) ? 0 : this.otherNames.hashCode());
     result = prime * result + ((this.useName == null) ? 0 : this.useName.hashCode());
 
@@ -517,15 +548,11 @@ public class FamilyMember implements Comparable<FamilyMember>, Cloneable {
       return false;
     if (this.id != other.id)
       return false;
-    if (this.image == null) {
-      if (other.image != null)
-        return false;
-    }
-    else if (this.image != null) {
-      if (other.image == null)
+    if (this.portrait == null) {
+      if (other.portrait != null)
         return false;
     }
-    else if (Images.hashCode(this.image) != Images.hashCode(other.image))
+    else if (!this.portrait.equals(other.portrait))
       return false;
     if (this.otherNames == null) {
       if (other.otherNames != null)
@@ -556,7 +583,8 @@ public class FamilyMember implements Comparable<FamilyMember>, Cloneable {
    * @return the copied person
    */
   FamilyMember clone(long id) {
-    return new FamilyMember(id, getImage().orElse(null), this.familyName, this.useName, this.firstName, this.otherNames, this.gender,
+    // Portraits are immutable, no need to copy them.
+    return new FamilyMember(id, this.portrait, this.familyName, this.useName, this.firstName, this.otherNames, this.gender,
         getBirthDate().orElse(null), this.birthLocation, getDeathDate().orElse(null), this.deathLocation, this.dead, this.comment);
   }
 
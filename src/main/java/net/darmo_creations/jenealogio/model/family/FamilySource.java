@@ -0,0 +1,80 @@
+/*
+ * Copyright © 2017 Damien Vergnet
+ * 
+ * This file is part of Jenealogio.
+ *
+ * This program is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ * 
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ * 
+ * You should have received a copy of the GNU General Public License
+ * along with this program.  If not, see <http://www.gnu.org/licenses/>.
+ */
+package net.darmo_creations.jenealogio.model.family;
+
+import java.util.Optional;
+import java.util.Set;
+import java.util.stream.LongStream;
+import java.util.stream.Stream;
+
+/**
+ * Members and relations held outside of the heap and read when needed. A family created from a
+ * source only holds the members and relations modified since; the others are read from the source
+ * each time they are looked up. The content of a source must not change while families use it.
+ * 
+ * @author Damien Vergnet
+ * @see Family#Family(long, String, FamilySource)
+ */
+public interface FamilySource {
+  /**
+   * @return the number of members
+   */
+  int getMembersNumber();
+
+  /**
+   * @return the IDs of all members, in ascending order
+   */
+  LongStream getIds();
+
+  /**
+   * Reads a member. Each call returns a new object.
+   * 
+   * @param id member's ID
+   * @return the member or nothing if there is none with this ID
+   */
+  Optional<FamilyMember> getMember(long id);
+
+  /**
+   * @return the number of relations
+   */
+  int getRelationsNumber();
+
+  /**
+   * Reads all relations, each one once.
+   * 
+   * @return a lazy stream of the relations
+   */
+  Stream<Relationship> getRelations();
+
+  /**
+   * Reads all relations a member is a partner in.
+   * 
+   * @param id member's ID
+   * @return the relations
+   */
+  Set<Relationship> getRelations(long id);
+
+  /**
+   * Reads all relations a member is a child of.
+   * 
+   * @param id member's ID
+   * @return the relations
+   */
+  Set<Relationship> getParentRelations(long id);
+}
@@ -0,0 +1,190 @@
+/*
+ * Copyright © 2017 Damien Vergnet
+ * 
+ * This file is part of Jenealogio.
+ * 
+ * This program is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ * 
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ * 
+ * You should have received a copy of the GNU General Public License
+ * along with this program.  If not, see <http://www.gnu.org/licenses/>.
+ */
+package net.darmo_creations.jenealogio.model.family;
+
+import java.awt.image.BufferedImage;
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.io.UncheckedIOException;
+import java.util.Arrays;
+import java.util.Objects;
+import java.util.function.Supplier;
+
+import javax.imageio.ImageIO;
+
+import net.darmo_creations.jenealogio.util.ImageCache;
+import net.darmo_creations.jenealogio.util.Images;
+
+/**
+ * An immutable holder for a member's profile image. The image is kept encoded (PNG, JPEG, etc.)
+ * and only decoded when it is needed; decoded images are kept in a shared {@link ImageCache}. The
+ * fingerprint of the encoded data is computed once so that members can be hashed and compared
+ * without decoding their image. A portrait can also be created from a fingerprint and a function
+ * that reads its data when it is first needed. Since it cannot be modified, a portrait can be shared
+ * between a member and its copies.
+ * 
+ * @author Damien Vergnet
+ */
+public final class Portrait {
+  /** Default capacity of the cache: 64 MiB */
+  public static final long DEFAULT_CACHE_CAPACITY = 64L << 20;
+
+  private static final ImageCache<Portrait> CACHE = new ImageCache<>(DEFAULT_CACHE_CAPACITY);
+
+  private volatile byte[] data;
+  private final Supplier<byte[]> reader;
+  private final int length;
+  private final long fingerprint;
+
+  /**
+   * Creates a portrait from an image. The image is encoded as PNG.
+   * 
+   * @param image the image
+   */
+  public Portrait(BufferedImage image) {
+    this(encode(Objects.requireNonNull(image)));
+    CACHE.put(this, Images.deepCopy(image));
+  }
+
+  /**
+   * Creates a portrait from encoded image data. The array is not copied so it <b>must not</b> be
+   * modified afterwards.
+   * 
+   * @param data the image data
+   */
+  public Portrait(byte[] data) {
+    this.data = Objects.requireNonNull(data);
+    this.reader = null;
+    this.length = data.length;
+    this.fingerprint = Images.fingerprint(data);
+  }
+
+  /**
+   * Creates a portrait whose encoded data is read when it is first needed. The fingerprint
+   * <b>must</b> be the one of the data (see {@link Images#fingerprint(byte[])}) and the returned
+   * arrays <b>must not</b> be modified afterwards.
+   * 
+   * @param fingerprint the data's fingerprint
+   * @param length the data's length
+   * @param reader the function that reads the data
+   */
+  public Portrait(long fingerprint, int length, Supplier<byte[]> reader) {
+    this.reader = Objects.requireNonNull(reader);
+    this.length = length;
+    this.fingerprint = fingerprint;
+  }
+
+  /**
+   * Returns a copy of the image. The image is decoded if it is not in the cache.
+   * 
+   * @return a copy of the image; null if the data could not be decoded
+   */
+  public BufferedImage getImage() {
+    BufferedImage image = CACHE.get(this);
+
+    if (image == null) {
+      try {
+        image = ImageIO.read(new ByteArrayInputStream(data()));
+      }
+      catch (IOException e) {
+        image = null;
+      }
+      if (image == null)
+        return null;
+      CACHE.put(this, image);
+    }
+
+    return Images.deepCopy(image);
+  }
+
+  /**
+   * @return a copy of the encoded image data
+   */
+  public byte[] getData() {
+    return data().clone();
+  }
+
+  /**
+   * @return the encoded image data's length
+   */
+  public int getDataLength() {
+    return this.length;
+  }
+
+  /**
+   * Returns the encoded image data, reads it if it was not yet.
+   */
+  private byte[] data() {
+    byte[] data = this.data;
+
+    if (data == null)
+      this.data = data = this.reader.get();
+    return data;
+  }
+
+  /**
+   * @return the image's fingerprint
+   */
+  public long getFingerprint() {
+    return this.fingerprint;
+  }
+
+  /**
+   * Sets the capacity of the cache for decoded images.
+   * 
+   * @param capacity the capacity in bytes
+   */
+  public static void setCacheCapacity(long capacity) {
+    CACHE.setCapacity(capacity);
+  }
+
+  /**
+   * Encodes an image as PNG.
+   * 
+   * @param image the image
+   * @return the PNG data
+   */
+  private static byte[] encode(BufferedImage image) {
+    try (ByteArrayOutputStream baos = new ByteArrayOutputStream()) {
+      ImageIO.write(image, "png", baos);
+      return baos.toByteArray();
+    }
+    catch (IOException e) {
+      throw new UncheckedIOException(e);
+    }
+  }
+
+  @Override
+  public int hashCode() {
+    return (int) (this.fingerprint ^ (this.fingerprint >>> 32));
+  }
+
+  @Override
+  public boolean equals(Object obj) {
+    if (this == obj)
+      return true;
+    if (obj == null)
+      return false;
+    if (getClass() != obj.getClass())
+      return false;
+    Portrait other = (Portrait) obj;
+    return this.fingerprint == other.fingerprint && this.length == other.length && Arrays.equals(data(), other.data());
+  }
+}
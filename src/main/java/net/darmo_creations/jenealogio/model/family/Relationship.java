@@ -18,7 +18,6 @@
  */
 package net.darmo_creations.jenealogio.model.family;
 
-import java.util.HashMap;
 import java.util.HashSet;
 import java.util.Map;
 import java.util.NoSuchElementException;
@@ -26,6 +25,8 @@ import java.util.Optional;
 import java.util.Set;
 
 import net.darmo_creations.jenealogio.model.date.Date;
+import net.darmo_creations.jenealogio.util.LongHashSet;
+import net.darmo_creations.jenealogio.util.LongObjectMap;
 import net.darmo_creations.utils.Nullable;
 
 /**
@@ -37,8 +38,8 @@ public final class Relationship implements Comparable<Relationship>, Cloneable {
   private Date date;
   private String location;
   private long partner1, partner2;
-  private Set<Long> children;
-  private Map<Long, Date> adoptions;
+  private LongHashSet children;
+  private LongObjectMap<Date> adoptions;
   private boolean isWedding;
   private boolean hasEnded;
   private Date endDate;
@@ -61,21 +62,38 @@ public final class Relationship implements Comparable<Relationship>, Cloneable {
       long partner1, long partner2, Set<Long> children, Map<Long, Date> adoptions) {
     if (partner1 == partner2)
       throw new IllegalArgumentException("partners must be different");
-    setDate(date != null ? date.clone() : null);
+    setDate(date);
     setLocation(location);
     setWedding(isWedding);
     setPartner1(partner1);
     setPartner2(partner2);
-    setEndDate(endDate != null ? endDate.clone() : null);
+    setEndDate(endDate);
     setHasEnded(hasEnded);
-    this.children = new HashSet<>();
-    this.adoptions = new HashMap<>();
+    this.children = new LongHashSet(children.size());
+    this.adoptions = new LongObjectMap<>(adoptions.size());
     for (Long id : children)
       addChild(id);
     for (Map.Entry<Long, Date> entry : adoptions.entrySet())
       setAdopted(entry.getKey(), entry.getValue());
   }
 
+  /**
+   * Creates a copy of a relation.
+   * 
+   * @param relation the relation to copy
+   */
+  private Relationship(Relationship relation) {
+    this.date = relation.date;
+    this.location = relation.location;
+    this.isWedding = relation.isWedding;
+    this.hasEnded = relation.hasEnded;
+    this.endDate = relation.endDate;
+    this.partner1 = relation.partner1;
+    this.partner2 = relation.partner2;
+    this.children = new LongHashSet(relation.children);
+    this.adoptions = new LongObjectMap<>(relation.adoptions);
+  }
+
   /**
    * @return the relation's start date
    */
@@ -204,7 +222,25 @@ public final class Relationship implements Comparable<Relationship>, Cloneable {
    * @return a set of all the children's IDs
    */
   public Set<Long> getChildren() {
-    return new HashSet<>(this.children);
+    Set<Long> children = new HashSet<>();
+    this.children.forEachKey(children::add);
+    return children;
+  }
+
+  /**
+   * Returns the children's IDs without boxing them.
+   * 
+   * @return an array of all the children's IDs
+   */
+  public long[] getChildrenIds() {
+    return this.children.toKeyArray();
+  }
+
+  /**
+   * @return the number of children
+   */
+  public int getChildrenCount() {
+    return this.children.size();
   }
 
   /**
@@ -350,8 +386,7 @@ public final class Relationship implements Comparable<Relationship>, Cloneable {
 
   @Override
   public Relationship clone() {
-    return new Relationship(getDate().orElse(null), this.location, this.isWedding, this.hasEnded, getEndDate().orElse(null), this.partner1,
-        this.partner2, this.children, this.adoptions);
+    return new Relationship(this);
   }
 
   @Override
@@ -0,0 +1,143 @@
+/*
+ * Copyright © 2017 Damien Vergnet
+ *
+ * This file is part of Jenealogio.
+ *
+ * This program is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with this program.  If not, see <http://www.gnu.org/licenses/>.
+ */
+package net.darmo_creations.jenealogio.util;
+
+import java.awt.image.BufferedImage;
+import java.awt.image.DataBuffer;
+import java.util.Iterator;
+import java.util.LinkedHashMap;
+import java.util.Map;
+
+/**
+ * A cache for decoded images. Its capacity is a number of bytes, the least recently used images are
+ * removed when the images' total size exceeds it. Images bigger than the capacity are not cached.
+ * 
+ * @author Damien Vergnet
+ * @param <K> keys type
+ */
+public class ImageCache<K> {
+  private final LinkedHashMap<K, BufferedImage> images;
+  private long capacity;
+  private long size;
+
+  /**
+   * Creates a cache.
+   * 
+   * @param capacity the capacity in bytes
+   */
+  public ImageCache(long capacity) {
+    this.images = new LinkedHashMap<>(16, 0.75f, true);
+    setCapacity(capacity);
+  }
+
+  /**
+   * @return the capacity in bytes
+   */
+  public synchronized long getCapacity() {
+    return this.capacity;
+  }
+
+  /**
+   * Sets the capacity. Images are removed if needed.
+   * 
+   * @param capacity the new capacity in bytes
+   */
+  public synchronized void setCapacity(long capacity) {
+    if (capacity < 0)
+      throw new IllegalArgumentException("negative capacity");
+    this.capacity = capacity;
+    trim();
+  }
+
+  /**
+   * @return the total size of all cached images in bytes
+   */
+  public synchronized long getSize() {
+    return this.size;
+  }
+
+  /**
+   * Returns the image for the given key.
+   * 
+   * @param key the key
+   * @return the image or null if it is not in the cache
+   */
+  public synchronized BufferedImage get(K key) {
+    return this.images.get(key);
+  }
+
+  /**
+   * Adds an image to the cache. It becomes the most recently used one.
+   * 
+   * @param key the key
+   * @param image the image
+   */
+  public synchronized void put(K key, BufferedImage image) {
+    long imageSize = sizeOf(image);
+
+    remove(key);
+    if (imageSize <= this.capacity) {
+      this.images.put(key, image);
+      this.size += imageSize;
+      trim();
+    }
+  }
+
+  /**
+   * Removes an image from the cache.
+   * 
+   * @param key the key
+   */
+  public synchronized void remove(K key) {
+    BufferedImage image = this.images.remove(key);
+    if (image != null)
+      this.size -= sizeOf(image);
+  }
+
+  /**
+   * Removes all images.
+   */
+  public synchronized void clear() {
+    this.images.clear();
+    this.size = 0;
+  }
+
+  /**
+   * Removes the least recently used images until the size does not exceed the capacity.
+   */
+  private void trim() {
+    Iterator<Map.Entry<K, BufferedImage>> it = this.images.entrySet().iterator();
+
+    while (this.size > this.capacity && it.hasNext()) {
+      this.size -= sizeOf(it.next().getValue());
+      it.remove();
+    }
+  }
+
+  /**
+   * Returns the size of the data of an image.
+   * 
+   * @param image the image
+   * @return the size in bytes
+   */
+  public static long sizeOf(BufferedImage image) {
+    DataBuffer buffer = image.getRaster().getDataBuffer();
+    return (long) buffer.getSize() * buffer.getNumBanks() * DataBuffer.getDataTypeSize(buffer.getDataType()) / 8;
+  }
+}
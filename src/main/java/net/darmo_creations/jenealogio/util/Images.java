@@ -154,7 +154,25 @@ public final class Images {
   }
 
   /**
-   * Computes the hashcode of an image.
+   * Computes a 64-bit fingerprint of some data, like encoded images. Unlike
+   * {@link #hashCode(BufferedImage)}, nothing is encoded.
+   * 
+   * @param data the data
+   * @return the fingerprint
+   */
+  public static long fingerprint(byte[] data) {
+    final long prime = 0x100000001B3L;
+    long result = 0xCBF29CE484222325L;
+
+    for (byte b : data)
+      result = (result ^ (b & 0xFF)) * prime;
+
+    return result;
+  }
+
+  /**
+   * Computes the hashcode of an image. This method encodes the image as PNG, prefer
+   * {@link #fingerprint(byte[])} on encoded data when it is available.
    * 
    * @param img the image
    * @return the hashcode
@@ -0,0 +1,145 @@
+/*
+ * Copyright © 2017 Damien Vergnet
+ * 
+ * This file is part of Jenealogio.
+ *
+ * This program is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ * 
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ * 
+ * You should have received a copy of the GNU General Public License
+ * along with this program.  If not, see <http://www.gnu.org/licenses/>.
+ */
+package net.darmo_creations.jenealogio.util;
+
+import java.util.Collection;
+
+/**
+ * A set of {@code long} values that does not box them.
+ * 
+ * @author Damien Vergnet
+ */
+public final class LongHashSet extends LongHashTable {
+  /**
+   * Creates an empty set.
+   */
+  public LongHashSet() {
+    this(0);
+  }
+
+  /**
+   * Creates an empty set.
+   * 
+   * @param expectedSize the number of values the set should hold without being resized
+   */
+  public LongHashSet(int expectedSize) {
+    super(expectedSize);
+  }
+
+  /**
+   * Creates a set containing the given values.
+   * 
+   * @param values the values
+   */
+  public LongHashSet(Collection<Long> values) {
+    this(values.size());
+    values.forEach(this::add);
+  }
+
+  /**
+   * Creates a copy of a set.
+   * 
+   * @param set the set to copy
+   */
+  public LongHashSet(LongHashSet set) {
+    this(set.size());
+    set.forEachKey(this::add);
+  }
+
+  /**
+   * Adds a value.
+   * 
+   * @param value the value
+   * @return true if the value was not already present
+   */
+  public boolean add(long value) {
+    int size = size();
+    insert(value);
+    return size() != size;
+  }
+
+  /**
+   * Removes a value.
+   * 
+   * @param value the value
+   * @return true if the value was present
+   */
+  public boolean remove(long value) {
+    int slot = find(value);
+    if (slot < 0)
+      return false;
+    removeSlot(slot);
+    return true;
+  }
+
+  /**
+   * @param value a value
+   * @return true if the value is present
+   */
+  public boolean contains(long value) {
+    return find(value) >= 0;
+  }
+
+  @Override
+  void allocateValues(int length) {}
+
+  @Override
+  Object values() {
+    return null;
+  }
+
+  @Override
+  void copyValue(Object oldValues, int from, int to) {}
+
+  @Override
+  void moveValue(int from, int to) {}
+
+  @Override
+  void clearValue(int slot) {}
+
+  @Override
+  public int hashCode() {
+    int[] hash = {0};
+    forEachKey(value -> hash[0] += Long.hashCode(value));
+    return hash[0];
+  }
+
+  @Override
+  public boolean equals(Object obj) {
+    if (this == obj)
+      return true;
+    if (!(obj instanceof LongHashSet))
+      return false;
+    LongHashSet other = (LongHashSet) obj;
+    if (size() != other.size())
+      return false;
+    for (long value : toKeyArray()) {
+      if (!other.contains(value))
+        return false;
+    }
+    return true;
+  }
+
+  @Override
+  public String toString() {
+    StringBuilder sb = new StringBuilder("[");
+    forEachKey(value -> sb.append(sb.length() > 1 ? ", " : "").append(value));
+    return sb.append("]").toString();
+  }
+}
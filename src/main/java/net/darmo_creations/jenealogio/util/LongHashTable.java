@@ -0,0 +1,259 @@
+/*
+ * Copyright © 2017 Damien Vergnet
+ * 
+ * This file is part of Jenealogio.
+ *
+ * This program is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ * 
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ * 
+ * You should have received a copy of the GNU General Public License
+ * along with this program.  If not, see <http://www.gnu.org/licenses/>.
+ */
+package net.darmo_creations.jenealogio.util;
+
+import java.util.function.IntConsumer;
+import java.util.function.LongConsumer;
+
+/**
+ * Base class of the hash tables with {@code long} keys. Keys are stored unboxed in a single array
+ * using open addressing with linear probing; subclasses store values in parallel arrays.
+ * <p>
+ * The key 0 marks free slots, it is stored in an extra slot at the end of the arrays. Removals
+ * shift the following keys back so that no tombstones are needed.
+ * </p>
+ * 
+ * @author Damien Vergnet
+ */
+abstract class LongHashTable {
+  private static final float LOAD_FACTOR = 0.75f;
+  private static final int MIN_CAPACITY = 4;
+
+  /** Keys; the last slot holds the key 0 */
+  long[] keys;
+  /** True if the key 0 is present */
+  private boolean hasZero;
+  private int mask;
+  private int size;
+  private int maxFill;
+
+  /**
+   * Creates an empty table.
+   * 
+   * @param expectedSize the number of keys the table should hold without being resized
+   */
+  LongHashTable(int expectedSize) {
+    allocate(capacityFor(expectedSize));
+  }
+
+  /**
+   * @return the number of keys
+   */
+  public int size() {
+    return this.size;
+  }
+
+  /**
+   * @return true if there are no keys
+   */
+  public boolean isEmpty() {
+    return this.size == 0;
+  }
+
+  /**
+   * Removes all keys.
+   */
+  public void clear() {
+    if (this.size > 0) {
+      allocate(capacityFor(0));
+      this.hasZero = false;
+      this.size = 0;
+    }
+  }
+
+  /**
+   * Calls the action for every key.
+   * 
+   * @param action the action
+   */
+  public void forEachKey(LongConsumer action) {
+    forEachSlot(slot -> action.accept(this.keys[slot]));
+  }
+
+  /**
+   * @return a copy of all keys
+   */
+  public long[] toKeyArray() {
+    long[] result = new long[this.size];
+    int[] i = {0};
+    forEachKey(key -> result[i[0]++] = key);
+    return result;
+  }
+
+  /**
+   * Calls the action for the index of every used slot.
+   */
+  void forEachSlot(IntConsumer action) {
+    int capacity = this.mask + 1;
+    for (int i = 0; i < capacity; i++) {
+      if (this.keys[i] != 0)
+        action.accept(i);
+    }
+    if (this.hasZero)
+      action.accept(capacity);
+  }
+
+  /**
+   * Returns the slot holding a key.
+   * 
+   * @return the slot or -1 if the key is absent
+   */
+  int find(long key) {
+    if (key == 0)
+      return this.hasZero ? this.mask + 1 : -1;
+
+    for (int i = mix(key) & this.mask;; i = (i + 1) & this.mask) {
+      long k = this.keys[i];
+      if (k == 0)
+        return -1;
+      if (k == key)
+        return i;
+    }
+  }
+
+  /**
+   * Returns the slot holding a key, the key is added if it is absent. Slots returned for new keys
+   * have their value reset.
+   * 
+   * @return the slot
+   */
+  int insert(long key) {
+    int slot = find(key);
+    if (slot >= 0)
+      return slot;
+
+    if (this.size >= this.maxFill)
+      rehash((this.mask + 1) * 2);
+    this.size++;
+
+    if (key == 0) {
+      this.hasZero = true;
+      return this.mask + 1;
+    }
+    int i = mix(key) & this.mask;
+    while (this.keys[i] != 0)
+      i = (i + 1) & this.mask;
+    this.keys[i] = key;
+    return i;
+  }
+
+  /**
+   * Removes the key in the given slot.
+   */
+  void removeSlot(int slot) {
+    this.size--;
+    clearValue(slot);
+    if (slot == this.mask + 1) {
+      this.hasZero = false;
+      return;
+    }
+
+    // Following keys are shifted back if the free slot is on their probing path.
+    int last = slot;
+    for (;;) {
+      int pos = (last + 1) & this.mask;
+      long k;
+      for (;;) {
+        k = this.keys[pos];
+        if (k == 0) {
+          this.keys[last] = 0;
+          clearValue(last);
+          return;
+        }
+        int ideal = mix(k) & this.mask;
+        if (last <= pos ? last >= ideal || ideal > pos : last >= ideal && ideal > pos)
+          break;
+        pos = (pos + 1) & this.mask;
+      }
+      this.keys[last] = k;
+      moveValue(pos, last);
+      last = pos;
+    }
+  }
+
+  /**
+   * Allocates the value arrays. They must have the same length as {@link #keys}.
+   * 
+   * @param length the arrays' length
+   */
+  abstract void allocateValues(int length);
+
+  /**
+   * Returns the value arrays so that they can be copied by {@link #copyValue} after a resize.
+   */
+  abstract Object values();
+
+  /**
+   * Copies a value from the arrays returned by {@link #values()} before a resize.
+   */
+  abstract void copyValue(Object oldValues, int from, int to);
+
+  /**
+   * Moves a value from a slot to another.
+   */
+  abstract void moveValue(int from, int to);
+
+  /**
+   * Clears the value of a slot.
+   */
+  abstract void clearValue(int slot);
+
+  private void allocate(int capacity) {
+    this.keys = new long[capacity + 1];
+    this.mask = capacity - 1;
+    this.maxFill = Math.min(capacity - 1, (int) Math.ceil(capacity * LOAD_FACTOR));
+    allocateValues(capacity + 1);
+  }
+
+  private void rehash(int capacity) {
+    long[] oldKeys = this.keys;
+    Object oldValues = values();
+    int oldCapacity = this.mask + 1;
+
+    allocate(capacity);
+    for (int i = 0; i < oldCapacity; i++) {
+      long k = oldKeys[i];
+      if (k != 0) {
+        int j = mix(k) & this.mask;
+        while (this.keys[j] != 0)
+          j = (j + 1) & this.mask;
+        this.keys[j] = k;
+        copyValue(oldValues, i, j);
+      }
+    }
+    if (this.hasZero)
+      copyValue(oldValues, oldCapacity, capacity);
+  }
+
+  private static int capacityFor(int expectedSize) {
+    int capacity = MIN_CAPACITY;
+    while (capacity * LOAD_FACTOR < expectedSize && capacity < 1 << 30)
+      capacity <<= 1;
+    return capacity;
+  }
+
+  /**
+   * Spreads the bits of a key, IDs are often consecutive.
+   */
+  static int mix(long key) {
+    long h = key * 0x9E3779B97F4A7C15L;
+    h ^= h >>> 32;
+    return (int) (h ^ (h >>> 16));
+  }
+}
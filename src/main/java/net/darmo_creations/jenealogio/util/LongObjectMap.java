@@ -0,0 +1,188 @@
+/*
+ * Copyright © 2017 Damien Vergnet
+ * 
+ * This file is part of Jenealogio.
+ *
+ * This program is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ * 
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ * 
+ * You should have received a copy of the GNU General Public License
+ * along with this program.  If not, see <http://www.gnu.org/licenses/>.
+ */
+package net.darmo_creations.jenealogio.util;
+
+import java.util.Map;
+import java.util.Objects;
+
+/**
+ * A map with {@code long} keys that does not box them. Null values are allowed.
+ * 
+ * @author Damien Vergnet
+ * @param <V> values type
+ */
+public final class LongObjectMap<V> extends LongHashTable {
+  private Object[] values;
+
+  /**
+   * Creates an empty map.
+   */
+  public LongObjectMap() {
+    this(0);
+  }
+
+  /**
+   * Creates an empty map.
+   * 
+   * @param expectedSize the number of entries the map should hold without being resized
+   */
+  public LongObjectMap(int expectedSize) {
+    super(expectedSize);
+  }
+
+  /**
+   * Creates a map containing the given entries.
+   * 
+   * @param map the entries
+   */
+  public LongObjectMap(Map<Long, ? extends V> map) {
+    this(map.size());
+    map.forEach(this::put);
+  }
+
+  /**
+   * Creates a copy of a map. Values are not copied.
+   * 
+   * @param map the map to copy
+   */
+  public LongObjectMap(LongObjectMap<? extends V> map) {
+    this(map.size());
+    map.forEach(this::put);
+  }
+
+  /**
+   * Returns the value for a key.
+   * 
+   * @param key the key
+   * @return the value or null if the key is absent
+   */
+  @SuppressWarnings("unchecked")
+  public V get(long key) {
+    int slot = find(key);
+    return slot >= 0 ? (V) this.values[slot] : null;
+  }
+
+  /**
+   * @param key a key
+   * @return true if the key is present
+   */
+  public boolean containsKey(long key) {
+    return find(key) >= 0;
+  }
+
+  /**
+   * Sets the value for a key.
+   * 
+   * @param key the key
+   * @param value the value
+   */
+  public void put(long key, V value) {
+    int slot = insert(key);
+    this.values[slot] = value;
+  }
+
+  /**
+   * Removes a key.
+   * 
+   * @param key the key
+   * @return true if the key was present
+   */
+  public boolean remove(long key) {
+    int slot = find(key);
+    if (slot < 0)
+      return false;
+    removeSlot(slot);
+    return true;
+  }
+
+  /**
+   * Calls the action for every entry.
+   * 
+   * @param action the action
+   */
+  @SuppressWarnings("unchecked")
+  public void forEach(EntryConsumer<? super V> action) {
+    forEachSlot(slot -> action.accept(this.keys[slot], (V) this.values[slot]));
+  }
+
+  @Override
+  void allocateValues(int length) {
+    this.values = new Object[length];
+  }
+
+  @Override
+  Object values() {
+    return this.values;
+  }
+
+  @Override
+  void copyValue(Object oldValues, int from, int to) {
+    this.values[to] = ((Object[]) oldValues)[from];
+  }
+
+  @Override
+  void moveValue(int from, int to) {
+    this.values[to] = this.values[from];
+  }
+
+  @Override
+  void clearValue(int slot) {
+    this.values[slot] = null;
+  }
+
+  @Override
+  public int hashCode() {
+    int[] hash = {0};
+    forEach((key, value) -> hash[0] += Long.hashCode(key) ^ Objects.hashCode(value));
+    return hash[0];
+  }
+
+  @Override
+  public boolean equals(Object obj) {
+    if (this == obj)
+      return true;
+    if (!(obj instanceof LongObjectMap))
+      return false;
+    LongObjectMap<?> other = (LongObjectMap<?>) obj;
+    if (size() != other.size())
+      return false;
+    for (long key : toKeyArray()) {
+      if (!other.containsKey(key) || !Objects.equals(get(key), other.get(key)))
+        return false;
+    }
+    return true;
+  }
+
+  @Override
+  public String toString() {
+    StringBuilder sb = new StringBuilder("{");
+    forEach((key, value) -> sb.append(sb.length() > 1 ? ", " : "").append(key).append('=').append(value));
+    return sb.append("}").toString();
+  }
+
+  /**
+   * Receives the entries of a map.
+   * 
+   * @param <V> values type
+   */
+  @FunctionalInterface
+  public interface EntryConsumer<V> {
+    void accept(long key, V value);
+  }
+}
@@ -0,0 +1,198 @@
+/*
+ * Copyright © 2017 Damien Vergnet
+ * 
+ * This file is part of Jenealogio.
+ *
+ * This program is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ * 
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ * 
+ * You should have received a copy of the GNU General Public License
+ * along with this program.  If not, see <http://www.gnu.org/licenses/>.
+ */
+package net.darmo_creations.jenealogio.util;
+
+import java.awt.Point;
+
+/**
+ * A map from {@code long} keys to points. Keys are not boxed and coordinates are packed in a
+ * single {@code long}, so no objects are allocated per entry.
+ * 
+ * @author Damien Vergnet
+ */
+public final class LongPointMap extends LongHashTable {
+  private long[] values;
+
+  /**
+   * Creates an empty map.
+   */
+  public LongPointMap() {
+    this(0);
+  }
+
+  /**
+   * Creates an empty map.
+   * 
+   * @param expectedSize the number of entries the map should hold without being resized
+   */
+  public LongPointMap(int expectedSize) {
+    super(expectedSize);
+  }
+
+  /**
+   * Creates a copy of a map.
+   * 
+   * @param map the map to copy
+   */
+  public LongPointMap(LongPointMap map) {
+    this(map.size());
+    map.forEach(this::put);
+  }
+
+  /**
+   * Returns the point for a key.
+   * 
+   * @param key the key
+   * @return a new point or null if the key is absent
+   */
+  public Point get(long key) {
+    int slot = find(key);
+    return slot >= 0 ? new Point(x(this.values[slot]), y(this.values[slot])) : null;
+  }
+
+  /**
+   * @param key a key
+   * @return true if the key is present
+   */
+  public boolean containsKey(long key) {
+    return find(key) >= 0;
+  }
+
+  /**
+   * Sets the point for a key.
+   * 
+   * @param key the key
+   * @param x the x coordinate
+   * @param y the y coordinate
+   */
+  public void put(long key, int x, int y) {
+    int slot = insert(key);
+    this.values[slot] = pack(x, y);
+  }
+
+  /**
+   * Sets the point for a key. The point is not kept.
+   * 
+   * @param key the key
+   * @param p the point
+   */
+  public void put(long key, Point p) {
+    put(key, p.x, p.y);
+  }
+
+  /**
+   * Removes a key.
+   * 
+   * @param key the key
+   * @return true if the key was present
+   */
+  public boolean remove(long key) {
+    int slot = find(key);
+    if (slot < 0)
+      return false;
+    removeSlot(slot);
+    return true;
+  }
+
+  /**
+   * Calls the action for every entry.
+   * 
+   * @param action the action
+   */
+  public void forEach(EntryConsumer action) {
+    forEachSlot(slot -> action.accept(this.keys[slot], x(this.values[slot]), y(this.values[slot])));
+  }
+
+  @Override
+  void allocateValues(int length) {
+    this.values = new long[length];
+  }
+
+  @Override
+  Object values() {
+    return this.values;
+  }
+
+  @Override
+  void copyValue(Object oldValues, int from, int to) {
+    this.values[to] = ((long[]) oldValues)[from];
+  }
+
+  @Override
+  void moveValue(int from, int to) {
+    this.values[to] = this.values[from];
+  }
+
+  @Override
+  void clearValue(int slot) {
+    this.values[slot] = 0;
+  }
+
+  private static long pack(int x, int y) {
+    return ((long) x << 32) | (y & 0xFFFFFFFFL);
+  }
+
+  private static int x(long value) {
+    return (int) (value >> 32);
+  }
+
+  private static int y(long value) {
+    return (int) value;
+  }
+
+  @Override
+  public int hashCode() {
+    int[] hash = {0};
+    forEachSlot(slot -> hash[0] += Long.hashCode(this.keys[slot]) ^ Long.hashCode(this.values[slot]));
+    return hash[0];
+  }
+
+  @Override
+  public boolean equals(Object obj) {
+    if (this == obj)
+      return true;
+    if (!(obj instanceof LongPointMap))
+      return false;
+    LongPointMap other = (LongPointMap) obj;
+    if (size() != other.size())
+      return false;
+    boolean[] equal = {true};
+    forEachSlot(slot -> {
+      int otherSlot = other.find(this.keys[slot]);
+      if (otherSlot < 0 || other.values[otherSlot] != this.values[slot])
+        equal[0] = false;
+    });
+    return equal[0];
+  }
+
+  @Override
+  public String toString() {
+    StringBuilder sb = new StringBuilder("{");
+    forEach((key, x, y) -> sb.append(sb.length() > 1 ? ", " : "").append(key).append("=(").append(x).append(", ").append(y).append(')'));
+    return sb.append("}").toString();
+  }
+
+  /**
+   * Receives the entries of a map.
+   */
+  @FunctionalInterface
+  public interface EntryConsumer {
+    void accept(long key, int x, int y);
+  }
+}
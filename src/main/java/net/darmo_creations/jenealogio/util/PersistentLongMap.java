@@ -0,0 +1,656 @@
+/*
+ * Copyright © 2017 Damien Vergnet
+ *
+ * This file is part of Jenealogio.
+ *
+ * This program is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with this program.  If not, see <http://www.gnu.org/licenses/>.
+ */
+package net.darmo_creations.jenealogio.util;
+
+import java.util.AbstractCollection;
+import java.util.Collection;
+import java.util.Iterator;
+import java.util.NoSuchElementException;
+import java.util.Objects;
+import java.util.stream.Stream;
+import java.util.stream.StreamSupport;
+
+/**
+ * An immutable map with {@code long} keys. Modifications return a new map that shares all unchanged
+ * parts with the original one, so keeping many versions of a map only costs memory for what changed
+ * between them.
+ * <p>
+ * This is a hash array mapped trie: each level of the trie uses 5 bits of the key, starting from
+ * the lowest ones. Null values are not allowed.
+ * </p>
+ * 
+ * @author Damien Vergnet
+ * @param <V> values type
+ */
+public final class PersistentLongMap<V> implements Iterable<PersistentLongMap.Entry<V>> {
+  private static final int BITS = 5;
+  private static final int MASK = (1 << BITS) - 1;
+  private static final PersistentLongMap<?> EMPTY = new PersistentLongMap<>(null, 0);
+
+  /** Either null, an entry or a node */
+  private final Object root;
+  private final int size;
+
+  /**
+   * @return the empty map
+   */
+  @SuppressWarnings("unchecked")
+  public static <V> PersistentLongMap<V> empty() {
+    return (PersistentLongMap<V>) EMPTY;
+  }
+
+  private PersistentLongMap(Object root, int size) {
+    this.root = root;
+    this.size = size;
+  }
+
+  /**
+   * @return the number of entries
+   */
+  public int size() {
+    return this.size;
+  }
+
+  /**
+   * @return true if this map has no entries
+   */
+  public boolean isEmpty() {
+    return this.size == 0;
+  }
+
+  /**
+   * Returns the value for the given key.
+   * 
+   * @param key the key
+   * @return the value or null if there is none
+   */
+  @SuppressWarnings("unchecked")
+  public V get(long key) {
+    return (V) get(this.root, 0, key);
+  }
+
+  /**
+   * Returns the value for the given key or the default value if there is none.
+   * 
+   * @param key the key
+   * @param defaultValue the default value
+   * @return the value
+   */
+  public V getOrDefault(long key, V defaultValue) {
+    V value = get(key);
+    return value != null ? value : defaultValue;
+  }
+
+  /**
+   * Tells if this map has a value for the given key.
+   * 
+   * @param key the key
+   * @return true if there is a value
+   */
+  public boolean containsKey(long key) {
+    return get(key) != null;
+  }
+
+  /**
+   * Returns a map with the given value associated to the given key.
+   * 
+   * @param key the key
+   * @param value the value
+   * @return the new map; this map if the key was already associated to this exact value
+   */
+  public PersistentLongMap<V> put(long key, V value) {
+    boolean[] added = new boolean[1];
+    Object newRoot = put(this.root, 0, new Entry<>(key, Objects.requireNonNull(value)), added);
+
+    if (newRoot == this.root)
+      return this;
+    return new PersistentLongMap<>(newRoot, added[0] ? this.size + 1 : this.size);
+  }
+
+  /**
+   * Returns a map without the given key.
+   * 
+   * @param key the key
+   * @return the new map; this map if the key was not present
+   */
+  public PersistentLongMap<V> remove(long key) {
+    Object newRoot = remove(this.root, 0, key);
+
+    if (newRoot == this.root)
+      return this;
+    return newRoot == null ? empty() : new PersistentLongMap<>(newRoot, this.size - 1);
+  }
+
+  /**
+   * Reports the differences between a previous version of this map and this map. Values are
+   * compared by identity. Parts of the trie shared by both maps are skipped, so when this map was
+   * derived from the previous one the cost only depends on the number of changes.
+   * 
+   * @param previous the previous version
+   * @param handler the object the differences are reported to
+   */
+  public void diff(PersistentLongMap<V> previous, DiffHandler<V> handler) {
+    diff(previous.root, this.root, handler);
+  }
+
+  /**
+   * @return a read-only view of all values
+   */
+  public Collection<V> values() {
+    return new AbstractCollection<V>() {
+      @Override
+      public Iterator<V> iterator() {
+        Iterator<Entry<V>> it = PersistentLongMap.this.iterator();
+
+        return new Iterator<V>() {
+          @Override
+          public boolean hasNext() {
+            return it.hasNext();
+          }
+
+          @Override
+          public V next() {
+            return it.next().getValue();
+          }
+        };
+      }
+
+      @Override
+      public int size() {
+        return PersistentLongMap.this.size;
+      }
+    };
+  }
+
+  /**
+   * @return a stream of all entries
+   */
+  public Stream<Entry<V>> stream() {
+    return StreamSupport.stream(spliterator(), false);
+  }
+
+  @Override
+  public Iterator<Entry<V>> iterator() {
+    return new EntryIterator<>(this.root);
+  }
+
+  @Override
+  public int hashCode() {
+    int result = 0;
+
+    for (Entry<V> e : this)
+      result += e.hashCode();
+
+    return result;
+  }
+
+  @Override
+  public boolean equals(Object obj) {
+    if (this == obj)
+      return true;
+    if (obj == null)
+      return false;
+    if (getClass() != obj.getClass())
+      return false;
+    PersistentLongMap<?> other = (PersistentLongMap<?>) obj;
+    return this.size == other.size && equals(this.root, other.root, 0);
+  }
+
+  @Override
+  public String toString() {
+    StringBuilder sb = new StringBuilder("{");
+
+    for (Entry<V> e : this) {
+      if (sb.length() > 1)
+        sb.append(", ");
+      sb.append(e);
+    }
+
+    return sb.append("}").toString();
+  }
+
+  /**
+   * Returns the value for a key in the given trie.
+   * 
+   * @param o the trie (null, an entry or a node)
+   * @param shift the current shift
+   * @param key the key
+   * @return the value or null if there is none
+   */
+  private static Object get(Object o, int shift, long key) {
+    for (; o != null; shift += BITS) {
+      if (o instanceof Entry) {
+        Entry<?> e = (Entry<?>) o;
+        return e.key == key ? e.value : null;
+      }
+      Node n = (Node) o;
+      int bit = bit(key, shift);
+      if ((n.bitmap & bit) == 0)
+        return null;
+      o = n.array[n.index(bit)];
+    }
+
+    return null;
+  }
+
+  /**
+   * Tells if two tries at the same level have the same keys and equal values. Parts shared by both
+   * tries are skipped.
+   * 
+   * @param o1 the first trie (null, an entry or a node)
+   * @param o2 the second trie (null, an entry or a node)
+   * @param shift the current shift
+   * @return true if both tries are equal
+   */
+  private static boolean equals(Object o1, Object o2, int shift) {
+    if (o1 == o2)
+      return true;
+
+    if (o1 instanceof Node && o2 instanceof Node) {
+      Node n1 = (Node) o1;
+      Node n2 = (Node) o2;
+
+      // Each child holds the keys with the same bits at this level, none is empty.
+      if (n1.bitmap != n2.bitmap)
+        return false;
+      for (int i = 0; i < n1.array.length; i++) {
+        if (!equals(n1.array[i], n2.array[i], shift + BITS))
+          return false;
+      }
+      return true;
+    }
+
+    // At least one of the tries is null or a single entry, both are small.
+    int count = 0;
+    for (Iterator<Entry<Object>> it = new EntryIterator<>(o1); it.hasNext(); count++) {
+      Entry<Object> e = it.next();
+      if (!e.value.equals(get(o2, shift, e.key)))
+        return false;
+    }
+    for (Iterator<Entry<Object>> it = new EntryIterator<>(o2); it.hasNext(); count--)
+      it.next();
+    return count == 0;
+  }
+
+  /**
+   * Inserts an entry in the given trie.
+   * 
+   * @param o the trie (null, an entry or a node)
+   * @param shift the current shift
+   * @param entry the entry to insert
+   * @param added set to true if the key was not already present
+   * @return the new trie
+   */
+  private static Object put(Object o, int shift, Entry<?> entry, boolean[] added) {
+    if (o == null) {
+      added[0] = true;
+      return entry;
+    }
+    if (o instanceof Entry) {
+      Entry<?> e = (Entry<?>) o;
+      if (e.key == entry.key)
+        return e.value == entry.value ? e : entry;
+      added[0] = true;
+      return merge(e, entry, shift);
+    }
+
+    Node n = (Node) o;
+    int bit = bit(entry.key, shift);
+    int index = n.index(bit);
+
+    if ((n.bitmap & bit) == 0) {
+      added[0] = true;
+      return n.insert(index, bit, entry);
+    }
+
+    Object child = n.array[index];
+    Object newChild = put(child, shift + BITS, entry, added);
+
+    return newChild == child ? n : n.replace(index, newChild);
+  }
+
+  /**
+   * Creates the smallest trie containing the two given entries. Their keys must be different.
+   * 
+   * @param e1 the first entry
+   * @param e2 the second entry
+   * @param shift the current shift
+   * @return the trie
+   */
+  private static Node merge(Entry<?> e1, Entry<?> e2, int shift) {
+    int i1 = (int) (e1.key >>> shift) & MASK;
+    int i2 = (int) (e2.key >>> shift) & MASK;
+
+    if (i1 == i2)
+      return new Node(1 << i1, new Object[]{merge(e1, e2, shift + BITS)});
+    if (i1 < i2)
+      return new Node((1 << i1) | (1 << i2), new Object[]{e1, e2});
+    return new Node((1 << i1) | (1 << i2), new Object[]{e2, e1});
+  }
+
+  /**
+   * Removes a key from the given trie.
+   * 
+   * @param o the trie (null, an entry or a node)
+   * @param shift the current shift
+   * @param key the key to remove
+   * @return the new trie; the same trie if the key was not present
+   */
+  private static Object remove(Object o, int shift, long key) {
+    if (o == null)
+      return null;
+    if (o instanceof Entry)
+      return ((Entry<?>) o).key == key ? null : o;
+
+    Node n = (Node) o;
+    int bit = bit(key, shift);
+
+    if ((n.bitmap & bit) == 0)
+      return n;
+
+    int index = n.index(bit);
+    Object child = n.array[index];
+    Object newChild = remove(child, shift + BITS, key);
+
+    if (newChild == child)
+      return n;
+    if (newChild == null) {
+      if (n.array.length == 1)
+        return null;
+      // A single remaining entry is moved up
+      if (n.array.length == 2 && n.array[1 - index] instanceof Entry)
+        return n.array[1 - index];
+      return n.delete(index, bit);
+    }
+    if (n.array.length == 1 && newChild instanceof Entry)
+      return newChild;
+    return n.replace(index, newChild);
+  }
+
+  /**
+   * Compares two tries at the same level.
+   * 
+   * @param previous the previous trie (null, an entry or a node)
+   * @param current the current trie (null, an entry or a node)
+   * @param handler the object the differences are reported to
+   */
+  @SuppressWarnings("unchecked")
+  private static <V> void diff(Object previous, Object current, DiffHandler<V> handler) {
+    if (previous == current)
+      return;
+
+    if (previous instanceof Node && current instanceof Node) {
+      Node p = (Node) previous;
+      Node c = (Node) current;
+      int bitmap = p.bitmap | c.bitmap;
+
+      while (bitmap != 0) {
+        int bit = Integer.lowestOneBit(bitmap);
+        bitmap &= ~bit;
+        Object pChild = (p.bitmap & bit) != 0 ? p.array[p.index(bit)] : null;
+        Object cChild = (c.bitmap & bit) != 0 ? c.array[c.index(bit)] : null;
+        diff(pChild, cChild, handler);
+      }
+    }
+    else if (previous instanceof Entry) {
+      Entry<V> old = (Entry<V>) previous;
+      boolean found = false;
+
+      for (Iterator<Entry<V>> it = new EntryIterator<>(current); it.hasNext();) {
+        Entry<V> e = it.next();
+        if (e.key == old.key) {
+          found = true;
+          if (e.value != old.value)
+            handler.changed(e.key, old.value, e.value);
+        }
+        else
+          handler.added(e.key, e.value);
+      }
+      if (!found)
+        handler.removed(old.key, old.value);
+    }
+    else if (current instanceof Entry) {
+      Entry<V> entry = (Entry<V>) current;
+      boolean found = false;
+
+      for (Iterator<Entry<V>> it = new EntryIterator<>(previous); it.hasNext();) {
+        Entry<V> e = it.next();
+        if (e.key == entry.key) {
+          found = true;
+          if (e.value != entry.value)
+            handler.changed(e.key, e.value, entry.value);
+        }
+        else
+          handler.removed(e.key, e.value);
+      }
+      if (!found)
+        handler.added(entry.key, entry.value);
+    }
+    else if (previous == null) {
+      for (Iterator<Entry<V>> it = new EntryIterator<>(current); it.hasNext();) {
+        Entry<V> e = it.next();
+        handler.added(e.key, e.value);
+      }
+    }
+    else {
+      for (Iterator<Entry<V>> it = new EntryIterator<>(previous); it.hasNext();) {
+        Entry<V> e = it.next();
+        handler.removed(e.key, e.value);
+      }
+    }
+  }
+
+  /**
+   * Returns the bit for the given key at the given shift.
+   */
+  private static int bit(long key, int shift) {
+    return 1 << ((int) (key >>> shift) & MASK);
+  }
+
+  /**
+   * An entry of the map.
+   * 
+   * @author Damien Vergnet
+   * @param <V> value type
+   */
+  public static final class Entry<V> {
+    private final long key;
+    private final V value;
+
+    private Entry(long key, V value) {
+      this.key = key;
+      this.value = value;
+    }
+
+    /**
+     * @return the key
+     */
+    public long getKey() {
+      return this.key;
+    }
+
+    /**
+     * @return the value
+     */
+    public V getValue() {
+      return this.value;
+    }
+
+    @Override
+    public int hashCode() {
+      return Long.hashCode(this.key) ^ this.value.hashCode();
+    }
+
+    @Override
+    public boolean equals(Object obj) {
+      if (this == obj)
+        return true;
+      if (obj == null)
+        return false;
+      if (getClass() != obj.getClass())
+        return false;
+      Entry<?> other = (Entry<?>) obj;
+      return this.key == other.key && this.value.equals(other.value);
+    }
+
+    @Override
+    public String toString() {
+      return this.key + "=" + this.value;
+    }
+  }
+
+  /**
+   * Receives the differences between two versions of a map.
+   * 
+   * @author Damien Vergnet
+   * @param <V> value type
+   * @see PersistentLongMap#diff(PersistentLongMap, DiffHandler)
+   */
+  public interface DiffHandler<V> {
+    /**
+     * Called for each key that is only in the current map.
+     * 
+     * @param key the key
+     * @param value its value
+     */
+    void added(long key, V value);
+
+    /**
+     * Called for each key whose value was replaced.
+     * 
+     * @param key the key
+     * @param previous the previous value
+     * @param value the current value
+     */
+    void changed(long key, V previous, V value);
+
+    /**
+     * Called for each key that is only in the previous map.
+     * 
+     * @param key the key
+     * @param previous the previous value
+     */
+    void removed(long key, V previous);
+  }
+
+  /**
+   * An inner node of the trie. The bitmap tells which of the 32 possible children are present, the
+   * array only contains the present ones.
+   * 
+   * @author Damien Vergnet
+   */
+  private static final class Node {
+    private final int bitmap;
+    private final Object[] array;
+
+    Node(int bitmap, Object[] array) {
+      this.bitmap = bitmap;
+      this.array = array;
+    }
+
+    int index(int bit) {
+      return Integer.bitCount(this.bitmap & (bit - 1));
+    }
+
+    Node insert(int index, int bit, Object child) {
+      Object[] a = new Object[this.array.length + 1];
+      System.arraycopy(this.array, 0, a, 0, index);
+      a[index] = child;
+      System.arraycopy(this.array, index, a, index + 1, this.array.length - index);
+      return new Node(this.bitmap | bit, a);
+    }
+
+    Node replace(int index, Object child) {
+      Object[] a = this.array.clone();
+      a[index] = child;
+      return new Node(this.bitmap, a);
+    }
+
+    Node delete(int index, int bit) {
+      Object[] a = new Object[this.array.length - 1];
+      System.arraycopy(this.array, 0, a, 0, index);
+      System.arraycopy(this.array, index + 1, a, index, a.length - index);
+      return new Node(this.bitmap & ~bit, a);
+    }
+  }
+
+  /**
+   * Depth-first iterator over the entries of a trie.
+   * 
+   * @author Damien Vergnet
+   * @param <V> value type
+   */
+  private static final class EntryIterator<V> implements Iterator<Entry<V>> {
+    /** Maximum depth of a trie: 64 bits / 5 bits per level */
+    private static final int MAX_DEPTH = 64 / BITS + 1;
+
+    private final Node[] nodes;
+    private final int[] indexes;
+    private int depth;
+    private Entry<V> next;
+
+    @SuppressWarnings("unchecked")
+    EntryIterator(Object root) {
+      this.nodes = new Node[MAX_DEPTH];
+      this.indexes = new int[MAX_DEPTH];
+      this.depth = -1;
+      if (root instanceof Entry)
+        this.next = (Entry<V>) root;
+      else if (root != null) {
+        this.nodes[0] = (Node) root;
+        this.depth = 0;
+        advance();
+      }
+    }
+
+    @Override
+    public boolean hasNext() {
+      return this.next != null;
+    }
+
+    @Override
+    public Entry<V> next() {
+      if (this.next == null)
+        throw new NoSuchElementException();
+      Entry<V> e = this.next;
+      this.next = null;
+      advance();
+      return e;
+    }
+
+    @SuppressWarnings("unchecked")
+    private void advance() {
+      while (this.depth >= 0) {
+        Node n = this.nodes[this.depth];
+        if (this.indexes[this.depth] == n.array.length) {
+          this.depth--;
+          continue;
+        }
+        Object o = n.array[this.indexes[this.depth]++];
+        if (o instanceof Entry) {
+          this.next = (Entry<V>) o;
+          return;
+        }
+        this.depth++;
+        this.nodes[this.depth] = (Node) o;
+        this.indexes[this.depth] = 0;
+      }
+    }
+  }
+}
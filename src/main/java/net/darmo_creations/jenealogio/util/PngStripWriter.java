@@ -0,0 +1,188 @@
+/*
+ * Copyright © 2017 Damien Vergnet
+ * 
+ * This file is part of Jenealogio.
+ *
+ * This program is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ * 
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ * 
+ * You should have received a copy of the GNU General Public License
+ * along with this program.  If not, see <http://www.gnu.org/licenses/>.
+ */
+package net.darmo_creations.jenealogio.util;
+
+import java.awt.image.BufferedImage;
+import java.io.Closeable;
+import java.io.DataOutputStream;
+import java.io.IOException;
+import java.io.OutputStream;
+import java.nio.ByteBuffer;
+import java.nio.charset.StandardCharsets;
+import java.util.zip.CRC32;
+import java.util.zip.Deflater;
+import java.util.zip.DeflaterOutputStream;
+
+/**
+ * Writes a PNG image strip by strip, from top to bottom, so that the whole image never has to be
+ * held in memory. Pixels are written as 8-bit RGB, alpha is ignored.
+ * 
+ * @author Damien Vergnet
+ */
+public final class PngStripWriter implements Closeable {
+  private static final byte[] SIGNATURE = {(byte) 0x89, 'P', 'N', 'G', '\r', '\n', 0x1A, '\n'};
+  /** Maximum size of IDAT chunks */
+  private static final int CHUNK_SIZE = 1 << 16;
+  /** The "Sub" filter: each byte is stored as the difference with the same byte of the previous pixel */
+  private static final int FILTER_SUB = 1;
+
+  private final DataOutputStream out;
+  private final int width, height;
+  private final DeflaterOutputStream data;
+  private final Deflater deflater;
+  private final byte[] row;
+  private int rowsWritten;
+
+  /**
+   * Creates a writer and writes the PNG header. The stream is closed along with the writer.
+   * 
+   * @param out the stream to write to
+   * @param width image's width
+   * @param height image's height
+   * @throws IOException if an I/O error occurs
+   */
+  public PngStripWriter(OutputStream out, int width, int height) throws IOException {
+    if (width <= 0 || height <= 0)
+      throw new IllegalArgumentException("invalid size " + width + "x" + height);
+    this.out = new DataOutputStream(out);
+    this.width = width;
+    this.height = height;
+    this.row = new byte[1 + 3 * width];
+    this.row[0] = FILTER_SUB;
+
+    this.out.write(SIGNATURE);
+    ByteBuffer header = ByteBuffer.allocate(13);
+    header.putInt(width);
+    header.putInt(height);
+    header.put((byte) 8); // Bit depth
+    header.put((byte) 2); // Color type: RGB
+    header.put((byte) 0); // Compression method
+    header.put((byte) 0); // Filter method
+    header.put((byte) 0); // No interlacing
+    writeChunk("IHDR", header.array(), header.capacity());
+
+    this.deflater = new Deflater(Deflater.DEFAULT_COMPRESSION);
+    this.data = new DeflaterOutputStream(new ChunkOutputStream(), this.deflater, CHUNK_SIZE);
+  }
+
+  /**
+   * Writes the next rows of the image. The strip must be as wide as the image.
+   * 
+   * @param strip the rows to write
+   * @throws IOException if an I/O error occurs
+   */
+  public void writeStrip(BufferedImage strip) throws IOException {
+    if (strip.getWidth() != this.width)
+      throw new IllegalArgumentException("strip width " + strip.getWidth() + " does not match image width " + this.width);
+    if (this.rowsWritten + strip.getHeight() > this.height)
+      throw new IllegalStateException("too many rows");
+
+    int[] pixels = new int[this.width];
+
+    for (int y = 0; y < strip.getHeight(); y++) {
+      strip.getRGB(0, y, this.width, 1, pixels, 0, this.width);
+      int previous = 0;
+      for (int x = 0, i = 1; x < this.width; x++, i += 3) {
+        int rgb = pixels[x];
+        this.row[i] = (byte) ((rgb >> 16) - (previous >> 16));
+        this.row[i + 1] = (byte) ((rgb >> 8) - (previous >> 8));
+        this.row[i + 2] = (byte) (rgb - previous);
+        previous = rgb;
+      }
+      this.data.write(this.row);
+    }
+    this.rowsWritten += strip.getHeight();
+  }
+
+  /**
+   * Writes the end of the image then closes the stream. All rows must have been written.
+   */
+  @Override
+  public void close() throws IOException {
+    try {
+      if (this.rowsWritten != this.height)
+        throw new IOException("missing rows: " + this.rowsWritten + " of " + this.height + " written");
+      this.data.close();
+      writeChunk("IEND", new byte[0], 0);
+    }
+    finally {
+      this.deflater.end();
+      this.out.close();
+    }
+  }
+
+  /**
+   * Writes a chunk.
+   * 
+   * @param type chunk type
+   * @param data chunk data
+   * @param length length of the data
+   * @throws IOException if an I/O error occurs
+   */
+  private void writeChunk(String type, byte[] data, int length) throws IOException {
+    byte[] typeBytes = type.getBytes(StandardCharsets.US_ASCII);
+    CRC32 crc = new CRC32();
+
+    crc.update(typeBytes);
+    crc.update(data, 0, length);
+    this.out.writeInt(length);
+    this.out.write(typeBytes);
+    this.out.write(data, 0, length);
+    this.out.writeInt((int) crc.getValue());
+  }
+
+  /**
+   * Splits the compressed data into IDAT chunks.
+   */
+  private class ChunkOutputStream extends OutputStream {
+    private final byte[] buffer = new byte[CHUNK_SIZE];
+    private int length;
+
+    @Override
+    public void write(int b) throws IOException {
+      write(new byte[]{(byte) b}, 0, 1);
+    }
+
+    @Override
+    public void write(byte[] b, int off, int len) throws IOException {
+      while (len > 0) {
+        int n = Math.min(len, this.buffer.length - this.length);
+        System.arraycopy(b, off, this.buffer, this.length, n);
+        this.length += n;
+        off += n;
+        len -= n;
+        if (this.length == this.buffer.length)
+          flush();
+      }
+    }
+
+    @Override
+    public void flush() throws IOException {
+      if (this.length > 0) {
+        writeChunk("IDAT", this.buffer, this.length);
+        this.length = 0;
+      }
+    }
+
+    @Override
+    public void close() throws IOException {
+      flush();
+    }
+  }
+}
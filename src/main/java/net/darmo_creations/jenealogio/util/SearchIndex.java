@@ -0,0 +1,188 @@
+/*
+ * Copyright © 2017 Damien Vergnet
+ * 
+ * This file is part of Jenealogio.
+ *
+ * This program is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ * 
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ * 
+ * You should have received a copy of the GNU General Public License
+ * along with this program.  If not, see <http://www.gnu.org/licenses/>.
+ */
+package net.darmo_creations.jenealogio.util;
+
+import java.text.Normalizer;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collection;
+import java.util.HashMap;
+import java.util.IdentityHashMap;
+import java.util.List;
+import java.util.Locale;
+import java.util.Map;
+import java.util.function.Function;
+import java.util.regex.Pattern;
+
+/**
+ * An immutable index that finds the items whose name contains a given text. Names are normalized
+ * (lowercased and without accents) once when the index is built. Every sequence of three characters
+ * of the names is indexed so that only the items sharing the rarest sequence of a query are looked
+ * at. Shorter queries scan the normalized names.
+ * <p>
+ * Being immutable, an index can be queried from any thread.
+ * </p>
+ * 
+ * @author Damien Vergnet
+ * @param <T> items type
+ */
+public final class SearchIndex<T> {
+  private static final Pattern MARKS = Pattern.compile("\\p{M}+");
+  private static final int GRAM = 3;
+
+  private final List<T> items;
+  private final String[] names;
+  private final Map<T, Integer> positions;
+  /** Sorted positions of the items containing each sequence of three characters */
+  private final Map<Long, int[]> grams;
+
+  /**
+   * Indexes the given items. Items are compared by identity.
+   * 
+   * @param items the items
+   * @param nameFunction gives the name of an item
+   */
+  public SearchIndex(Collection<T> items, Function<T, String> nameFunction) {
+    this.items = new ArrayList<>(items);
+    this.names = new String[this.items.size()];
+    this.positions = new IdentityHashMap<>();
+    for (int i = 0; i < this.names.length; i++) {
+      T item = this.items.get(i);
+      this.names[i] = normalize(nameFunction.apply(item));
+      this.positions.put(item, i);
+    }
+
+    // Lists grow as needed, their first cell holds their size.
+    this.grams = new HashMap<>();
+    for (int i = 0; i < this.names.length; i++) {
+      String name = this.names[i];
+      for (int j = 0; j + GRAM <= name.length(); j++) {
+        long gram = gram(name, j);
+        int[] list = this.grams.get(gram);
+
+        if (list == null) {
+          this.grams.put(gram, new int[]{1, i});
+        }
+        // Positions are added in order, a sequence repeated in a name is only added once.
+        else if (list[list[0]] != i) {
+          if (list[0] + 1 == list.length) {
+            list = Arrays.copyOf(list, list.length * 2);
+            this.grams.put(gram, list);
+          }
+          list[++list[0]] = i;
+        }
+      }
+    }
+    this.grams.replaceAll((gram, list) -> Arrays.copyOfRange(list, 1, list[0] + 1));
+  }
+
+  /**
+   * @return the number of items
+   */
+  public int size() {
+    return this.items.size();
+  }
+
+  /**
+   * Returns the item at the given position.
+   * 
+   * @param position the position
+   * @return the item
+   */
+  public T get(int position) {
+    return this.items.get(position);
+  }
+
+  /**
+   * Returns the position of an item.
+   * 
+   * @param item the item
+   * @return its position or -1 if it is not in the index
+   */
+  public int indexOf(T item) {
+    Integer i = this.positions.get(item);
+    return i != null ? i : -1;
+  }
+
+  /**
+   * Looks for the items whose name contains the given text. Case and accents are ignored.
+   * 
+   * @param query the text to look for
+   * @return the sorted positions of the matching items; all items if the query is empty
+   */
+  public int[] search(String query) {
+    String q = normalize(query);
+
+    if (q.isEmpty()) {
+      int[] all = new int[this.names.length];
+      for (int i = 0; i < all.length; i++)
+        all[i] = i;
+      return all;
+    }
+
+    int[] candidates = null;
+    if (q.length() >= GRAM) {
+      for (int i = 0; i + GRAM <= q.length(); i++) {
+        int[] list = this.grams.get(gram(q, i));
+        if (list == null)
+          return new int[0];
+        if (candidates == null || list.length < candidates.length)
+          candidates = list;
+      }
+    }
+
+    int n = candidates != null ? candidates.length : this.names.length;
+    int[] result = new int[n];
+    int count = 0;
+    for (int j = 0; j < n; j++) {
+      int i = candidates != null ? candidates[j] : j;
+      if (this.names[i].contains(q))
+        result[count++] = i;
+    }
+
+    int[] trimmed = new int[count];
+    System.arraycopy(result, 0, trimmed, 0, count);
+    return trimmed;
+  }
+
+  /**
+   * Returns the sequence of three characters starting at the given index as a number.
+   */
+  private static long gram(String s, int i) {
+    return ((long) s.charAt(i) << 32) | ((long) s.charAt(i + 1) << 16) | s.charAt(i + 2);
+  }
+
+  /**
+   * Lowercases a text and removes its accents.
+   * 
+   * @param s the text
+   * @return the normalized text; an empty string if the text is null
+   */
+  public static String normalize(String s) {
+    if (s == null)
+      return "";
+    // Most names have no accents, they do not need to be decomposed.
+    boolean ascii = true;
+    for (int i = 0; ascii && i < s.length(); i++)
+      ascii = s.charAt(i) < 0x80;
+    if (ascii)
+      return s.toLowerCase(Locale.ROOT);
+    return MARKS.matcher(Normalizer.normalize(s, Normalizer.Form.NFD)).replaceAll("").toLowerCase(Locale.ROOT);
+  }
+}
@@ -4,8 +4,28 @@ import org.junit.runner.RunWith;
 import org.junit.runners.Suite;
 import org.junit.runners.Suite.SuiteClasses;
 
+import net.darmo_creations.jenealogio.dao.DateCodecTest;
+import net.darmo_creations.jenealogio.dao.FamilyDaoTest;
+import net.darmo_creations.jenealogio.gui.components.FilteredListModelTest;
+import net.darmo_creations.jenealogio.gui.components.display_panel.SpatialGridTest;
+import net.darmo_creations.jenealogio.gui.components.display_panel.SvgWriterTest;
+import net.darmo_creations.jenealogio.gui.components.display_panel.TileCacheTest;
+import net.darmo_creations.jenealogio.model.FamilyEditTest;
+import net.darmo_creations.jenealogio.model.TreeLayoutTest;
+import net.darmo_creations.jenealogio.model.date.DateTest;
 import net.darmo_creations.jenealogio.model.family.FamilyMemberTest;
+import net.darmo_creations.jenealogio.model.family.FamilyTest;
+import net.darmo_creations.jenealogio.util.ImageCacheTest;
+import net.darmo_creations.jenealogio.util.LongHashSetTest;
+import net.darmo_creations.jenealogio.util.LongObjectMapTest;
+import net.darmo_creations.jenealogio.util.LongPointMapTest;
+import net.darmo_creations.jenealogio.util.PersistentLongMapTest;
+import net.darmo_creations.jenealogio.util.PngStripWriterTest;
+import net.darmo_creations.jenealogio.util.SearchIndexTest;
 
 @RunWith(Suite.class)
-@SuiteClasses({FamilyMemberTest.class})
+@SuiteClasses({BatchModeTest.class, DateCodecTest.class, DateTest.class, FamilyDaoTest.class, FamilyEditTest.class, FamilyMemberTest.class, FamilyTest.class, FilteredListModelTest.class,
+  ImageCacheTest.class, LongHashSetTest.class, LongObjectMapTest.class, LongPointMapTest.class, PersistentLongMapTest.class,
+  PngStripWriterTest.class, SearchIndexTest.class, SpatialGridTest.class, SvgWriterTest.class, TileCacheTest.class,
+  TreeLayoutTest.class})
 public class AllTests {}
@@ -0,0 +1,120 @@
+package net.darmo_creations.jenealogio;
+
+import static org.junit.Assert.*;
+
+import java.awt.Point;
+import java.io.ByteArrayOutputStream;
+import java.io.PrintStream;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.Comparator;
+import java.util.HashSet;
+import java.util.stream.Stream;
+
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Test;
+
+import net.darmo_creations.jenealogio.dao.FamilyDao;
+import net.darmo_creations.jenealogio.dao.FileFormat;
+import net.darmo_creations.jenealogio.model.FamilyEdit;
+import net.darmo_creations.jenealogio.model.family.Family;
+import net.darmo_creations.jenealogio.model.family.FamilyMember;
+import net.darmo_creations.jenealogio.model.family.Gender;
+import net.darmo_creations.jenealogio.model.family.Relationship;
+import net.darmo_creations.jenealogio.util.LongPointMap;
+
+public class BatchModeTest {
+  private Path dir;
+
+  @Before
+  public void setUp() throws Exception {
+    this.dir = Files.createTempDirectory("batch");
+  }
+
+  @After
+  public void tearDown() throws Exception {
+    try (Stream<Path> files = Files.walk(this.dir)) {
+      files.sorted(Comparator.reverseOrder()).forEach(f -> f.toFile().delete());
+    }
+  }
+
+  @Test
+  public void testValidate() {
+    Family family = new Family("Test");
+    LongPointMap locations = new LongPointMap();
+    for (int i = 0; i < 3; i++) {
+      family.addMember(new FamilyMember(null, "Smith", null, "Person" + i, null, Gender.UNKNOW, null, null, null, null, false, null));
+      locations.put((long) i, new Point());
+    }
+    family.addRelation(new Relationship(null, null, true, false, null, 0, 1, new HashSet<>(Arrays.asList(2L)), Collections.emptyMap()));
+
+    assertTrue(BatchMode.validate(new FamilyEdit(family, locations)).isEmpty());
+    locations.remove(2L);
+    assertEquals(1, BatchMode.validate(new FamilyEdit(family, locations)).size());
+  }
+
+  @Test
+  public void testInvalidArguments() {
+    PrintStream err = new PrintStream(new ByteArrayOutputStream());
+    BatchMode batchMode = new BatchMode(err, err);
+
+    assertEquals(2, batchMode.execute(new String[0]));
+    assertEquals(2, batchMode.execute(new String[]{"unknown"}));
+    assertEquals(2, batchMode.execute(new String[]{"convert", "xml", "out", "file.gtree"}));
+    assertEquals(2, batchMode.execute(new String[]{"stats"}));
+  }
+
+  @Test
+  public void testConvertKeepsRelativePaths() throws Exception {
+    Path in = this.dir.resolve("in");
+    Path out = this.dir.resolve("out");
+    saveTree(in.resolve("a/t.gtree"));
+    saveTree(in.resolve("b/t.gtree"));
+
+    assertEquals(0, new BatchMode(nullStream(), nullStream()).execute(new String[]{"convert", "binary", out.toString(), in.toString()}));
+    assertTrue(Files.isRegularFile(out.resolve("a/t.gtree")));
+    assertTrue(Files.isRegularFile(out.resolve("b/t.gtree")));
+  }
+
+  @Test
+  public void testConvertCollision() throws Exception {
+    Path in1 = this.dir.resolve("in1");
+    Path in2 = this.dir.resolve("in2");
+    Path out = this.dir.resolve("out");
+    saveTree(in1.resolve("t.gtree"));
+    saveTree(in2.resolve("t.gtree"));
+    ByteArrayOutputStream err = new ByteArrayOutputStream();
+
+    assertEquals(1, new BatchMode(nullStream(), new PrintStream(err)).execute(new String[]{"convert", "binary", out.toString(), in1.toString(),
+      in2.toString()}));
+    assertEquals(1, err.toString().trim().split("\\R").length);
+    assertTrue(err.toString().startsWith(in2.resolve("t.gtree").toString()));
+  }
+
+  @Test
+  public void testConvertIntoInputDirectory() throws Exception {
+    Path in = this.dir.resolve("in");
+    Path file = in.resolve("t.gtree");
+    saveTree(file);
+    byte[] content = Files.readAllBytes(file);
+
+    assertEquals(1, new BatchMode(nullStream(), nullStream()).execute(new String[]{"convert", "binary", in.toString(), in.toString()}));
+    assertArrayEquals(content, Files.readAllBytes(file));
+  }
+
+  private static void saveTree(Path file) throws Exception {
+    Files.createDirectories(file.getParent());
+    Family family = new Family("Test");
+    family.addMember(new FamilyMember(null, "Smith", null, "Person", null, Gender.UNKNOW, null, null, null, null, false, null));
+    LongPointMap locations = new LongPointMap();
+    locations.put(0L, new Point());
+    FamilyDao.instance().save(file.toString(), new FamilyEdit(family, locations), FileFormat.JSON);
+  }
+
+  private static PrintStream nullStream() {
+    return new PrintStream(new ByteArrayOutputStream());
+  }
+}
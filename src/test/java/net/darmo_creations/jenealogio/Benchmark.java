@@ -0,0 +1,104 @@
+package net.darmo_creations.jenealogio;
+
+import java.io.IOException;
+import java.lang.management.ManagementFactory;
+import java.nio.file.Files;
+import java.nio.file.Paths;
+
+/**
+ * Helpers for the benchmarks found in test sources. Benchmarks are classes with a main method, they
+ * are not run with the tests. Each operation is run several times and the fastest round is kept, the
+ * first rounds warming the JIT up.
+ */
+public final class Benchmark {
+  /** Results are stored here so that the JIT cannot drop the measured code. */
+  private static volatile Object sink;
+
+  /**
+   * An operation to measure.
+   */
+  public interface Operation {
+    /**
+     * @return any result computed by the operation
+     */
+    Object run() throws Exception;
+  }
+
+  /**
+   * The fastest round of an operation.
+   */
+  public static final class Result {
+    /** Round's duration in nanoseconds */
+    public final long time;
+    /** Bytes allocated by the current thread during the round */
+    public final long allocated;
+
+    private Result(long time, long allocated) {
+      this.time = time;
+      this.allocated = allocated;
+    }
+  }
+
+  /**
+   * Runs an operation several times.
+   * 
+   * @param rounds the number of rounds
+   * @param operation the operation
+   * @return the fastest round
+   */
+  public static Result measure(int rounds, Operation operation) throws Exception {
+    Result best = null;
+
+    for (int i = 0; i < rounds; i++) {
+      long allocated = allocatedBytes();
+      long start = System.nanoTime();
+      sink = operation.run();
+      long time = System.nanoTime() - start;
+      allocated = allocatedBytes() - allocated;
+      if (best == null || time < best.time)
+        best = new Result(time, allocated);
+    }
+
+    return best;
+  }
+
+  /**
+   * @return the number of bytes allocated by the current thread so far
+   */
+  public static long allocatedBytes() {
+    return ((com.sun.management.ThreadMXBean) ManagementFactory.getThreadMXBean()).getThreadAllocatedBytes(Thread.currentThread().getId());
+  }
+
+  /**
+   * Returns the heap used after a full garbage collection. Run benchmarks with
+   * {@code -XX:+UseSerialGC} for stable values.
+   * 
+   * @return the used heap in bytes
+   */
+  public static long usedHeap() {
+    for (int i = 0; i < 3; i++)
+      System.gc();
+    Runtime runtime = Runtime.getRuntime();
+    return runtime.totalMemory() - runtime.freeMemory();
+  }
+
+  /**
+   * Returns the peak resident set size of this process, as reported by Linux.
+   * 
+   * @return the peak RSS in bytes; -1 if it is not available
+   */
+  public static long peakRss() {
+    try {
+      for (String line : Files.readAllLines(Paths.get("/proc/self/status"))) {
+        if (line.startsWith("VmHWM:"))
+          return Long.parseLong(line.replaceAll("\\D", "")) * 1024;
+      }
+    }
+    catch (IOException | NumberFormatException __) {
+      // Not on Linux
+    }
+    return -1;
+  }
+
+  private Benchmark() {}
+}
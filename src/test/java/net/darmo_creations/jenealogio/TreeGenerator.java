@@ -0,0 +1,122 @@
+package net.darmo_creations.jenealogio;
+
+import java.awt.image.BufferedImage;
+import java.io.File;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Map;
+import java.util.Random;
+
+import net.darmo_creations.jenealogio.dao.FamilyDao;
+import net.darmo_creations.jenealogio.dao.FileFormat;
+import net.darmo_creations.jenealogio.model.FamilyEdit;
+import net.darmo_creations.jenealogio.model.date.Date;
+import net.darmo_creations.jenealogio.model.family.Family;
+import net.darmo_creations.jenealogio.model.family.FamilyMember;
+import net.darmo_creations.jenealogio.model.family.Gender;
+import net.darmo_creations.jenealogio.model.family.Portrait;
+import net.darmo_creations.jenealogio.model.family.Relationship;
+import net.darmo_creations.jenealogio.util.LongPointMap;
+
+/**
+ * Generates trees for the benchmarks. Members are split into generations of 200; in each generation,
+ * members are paired into couples and most members are the child of a random couple of the previous
+ * generation. Cards are laid out on a grid, one row per generation. Trees only depend on their
+ * parameters.
+ * <p>
+ * Its main method writes a tree file of about the given size:
+ * {@code java -cp <classes> net.darmo_creations.jenealogio.TreeGenerator <file> <size in MB> [JSON|BINARY|STORE]}
+ * </p>
+ */
+public final class TreeGenerator {
+  /** Number of members per generation */
+  public static final int GENERATION = 200;
+  /** Horizontal and vertical distance between cards */
+  public static final int CELL_WIDTH = 160, CELL_HEIGHT = 120;
+
+  /** One member out of this number has a portrait in generated files */
+  private static final int FILE_PORTRAITS = 10;
+  /** Number of members of the tree used to estimate the size of a member in a file */
+  private static final int SAMPLE = 10_000;
+
+  public static void main(String[] args) throws Exception {
+    String file = args[0];
+    long size = Long.parseLong(args[1]) << 20;
+    FileFormat format = args.length > 2 ? FileFormat.valueOf(args[2]) : FileFormat.JSON;
+
+    FamilyDao.instance().save(file, generate(SAMPLE, FILE_PORTRAITS), format);
+    int members = (int) (size * SAMPLE / new File(file).length());
+    FamilyDao.instance().save(file, generate(members, FILE_PORTRAITS), format);
+    System.out.printf("%s: %,d members, %.1f MB%n", file, members, new File(file).length() / 1e6);
+  }
+
+  /**
+   * Generates a tree.
+   * 
+   * @param members the number of members
+   * @param portraitEvery one member out of this number has a 64x64 portrait; 0 for none
+   * @return the tree and cards locations
+   */
+  public static FamilyEdit generate(int members, int portraitEvery) {
+    Random random = new Random(members);
+    Family family = new Family("Generated " + members);
+    LongPointMap locations = new LongPointMap(members);
+
+    for (int i = 0; i < members; i++) {
+      int generation = i / GENERATION;
+      int year = year(generation) + random.nextInt(10);
+      Date birth = random.nextInt(10) == 0 ? null : Date.of(year, random.nextInt(3) == 0 ? Date.UNKNOWN : 1 + random.nextInt(12), 1 + random.nextInt(28));
+      Date death = random.nextBoolean() ? Date.of(year + 20 + random.nextInt(70), Date.UNKNOWN, Date.UNKNOWN) : null;
+      Portrait portrait = portraitEvery > 0 && i % portraitEvery == 0 ? new Portrait(portrait(random)) : null;
+
+      family.addMember(new FamilyMember(i, portrait, "Family" + random.nextInt(members / 10 + 1), null, "First" + i, i % 5 == 0 ? "Other names" : null,
+          i % 2 == 0 ? Gender.MAN : Gender.WOMAN, birth, "Place " + random.nextInt(1000), death, null, death != null,
+          i % 7 == 0 ? "A comment about member " + i : null));
+      locations.put(i, (i % GENERATION) * CELL_WIDTH, generation * CELL_HEIGHT);
+    }
+
+    Map<Integer, List<Long>> children = new HashMap<>();
+    for (int i = GENERATION; i < members; i++) {
+      if (random.nextInt(10) < 7)
+        children.computeIfAbsent(i - GENERATION - i % GENERATION + 2 * random.nextInt(GENERATION / 2), k -> new ArrayList<>()).add((long) i);
+    }
+    for (int i = 0; i + 1 < members; i += 2) {
+      List<Long> list = children.getOrDefault(i, Collections.emptyList());
+      if (list.isEmpty() && random.nextBoolean())
+        continue;
+      int year = year(i / GENERATION) + 20;
+      family.addRelation(new Relationship(Date.of(year, 1 + random.nextInt(12), Date.UNKNOWN), "Place " + random.nextInt(1000), true, false,
+          null, i, i + 1, new HashSet<>(list), Collections.emptyMap()));
+    }
+
+    return new FamilyEdit(family, locations);
+  }
+
+  /**
+   * Returns the first birth year of a generation. Years start over every 300 generations so that
+   * dates fit in the 4 digits of file formats.
+   */
+  private static int year(int generation) {
+    return 1500 + 25 * (generation % 300);
+  }
+
+  /**
+   * Generates a 64x64 image: a gradient with some noise, so that its PNG data is a few kilobytes.
+   */
+  private static BufferedImage portrait(Random random) {
+    BufferedImage image = new BufferedImage(64, 64, BufferedImage.TYPE_INT_RGB);
+    int color = random.nextInt(0x1000000);
+
+    for (int y = 0; y < 64; y++) {
+      for (int x = 0; x < 64; x++)
+        image.setRGB(x, y, color + (x << 17) + (y << 9) + random.nextInt(4));
+    }
+
+    return image;
+  }
+
+  private TreeGenerator() {}
+}
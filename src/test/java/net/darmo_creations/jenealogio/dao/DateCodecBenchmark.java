@@ -0,0 +1,127 @@
+package net.darmo_creations.jenealogio.dao;
+
+import java.io.Writer;
+import java.time.format.DateTimeParseException;
+import java.util.Random;
+import java.util.regex.Matcher;
+import java.util.regex.Pattern;
+
+import net.darmo_creations.jenealogio.Benchmark;
+import net.darmo_creations.jenealogio.model.date.Date;
+import net.darmo_creations.jenealogio.model.date.DateBuilder;
+
+/**
+ * Compares {@link DateCodec} with the regular expression and {@link String#format(String, Object...)}
+ * code it replaced. Each operation is run on 1,000,000 random dates, best of 5 rounds.
+ * <p>
+ * Run with: {@code java -cp <classes> net.darmo_creations.jenealogio.dao.DateCodecBenchmark}
+ * </p>
+ */
+public class DateCodecBenchmark {
+  private static final int DATES = 1_000_000;
+  private static final int ROUNDS = 5;
+
+  private static final Pattern DATE_PATTERN = Pattern.compile("(\\d{4}|\\?{4})-(\\d{2}|\\?{2})-(\\d{2}|\\?{2})");
+
+  public static void main(String[] args) throws Exception {
+    Random random = new Random(0);
+    Date[] dates = new Date[DATES];
+    String[] texts = new String[DATES];
+    for (int i = 0; i < DATES; i++) {
+      dates[i] = Date.of(1000 + random.nextInt(1000), random.nextInt(4) == 0 ? Date.UNKNOWN : 1 + random.nextInt(12), 1 + random.nextInt(28));
+      texts[i] = DateCodec.format(dates[i]);
+    }
+
+    run("parse, regex", () -> {
+      int n = 0;
+      for (String s : texts)
+        n += oldParse(s).getYear();
+      return n;
+    });
+    run("parse, DateCodec", () -> {
+      int n = 0;
+      for (String s : texts)
+        n += DateCodec.parse(s).getYear();
+      return n;
+    });
+    run("format, String.format", () -> {
+      int n = 0;
+      for (Date d : dates)
+        n += oldFormat(d).length();
+      return n;
+    });
+    run("format, DateCodec.format", () -> {
+      int n = 0;
+      for (Date d : dates)
+        n += DateCodec.format(d).length();
+      return n;
+    });
+    Writer writer = new NullWriter();
+    char[] buffer = new char[DateCodec.LENGTH];
+    run("write, DateCodec.write", () -> {
+      for (Date d : dates)
+        writer.write(buffer, 0, DateCodec.write(d, buffer, 0));
+      return 0;
+    });
+  }
+
+  /**
+   * Runs an operation and prints the time and bytes allocated per date in its fastest round.
+   */
+  private static void run(String name, Benchmark.Operation operation) throws Exception {
+    Benchmark.Result result = Benchmark.measure(ROUNDS, operation);
+    System.out.printf("%-26s %7.1f ns/date %6.1f B/date%n", name, (double) result.time / DATES, (double) result.allocated / DATES);
+  }
+
+  /**
+   * The parser used before {@link DateCodec}.
+   */
+  private static Date oldParse(String s) throws DateTimeParseException {
+    Matcher matcher = DATE_PATTERN.matcher(s);
+
+    if (matcher.matches()) {
+      DateBuilder builder = new DateBuilder();
+      String year = matcher.group(1);
+      String month = matcher.group(2);
+      String date = matcher.group(3);
+
+      if (year.matches("\\d{4}"))
+        builder.setYear(Integer.parseInt(year));
+      if (month.matches("\\d{2}"))
+        builder.setMonth(Integer.parseInt(month));
+      if (date.matches("\\d{2}"))
+        builder.setDate(Integer.parseInt(date));
+
+      return builder.getDate();
+    }
+
+    throw new DateTimeParseException("wrong date format", s, -1);
+  }
+
+  /**
+   * The formatter used before {@link DateCodec}.
+   */
+  private static String oldFormat(Date d) {
+    String date = "";
+
+    date += d.isYearSet() ? String.format("%04d", d.getYear()) : "????";
+    date += "-" + (d.isMonthSet() ? String.format("%02d", d.getMonth()) : "??");
+    date += "-" + (d.isDateSet() ? String.format("%02d", d.getDate()) : "??");
+
+    return date;
+  }
+
+  /**
+   * A writer that drops everything, so that only formatting is measured.
+   */
+  private static class NullWriter extends Writer {
+    @Override
+    public void write(char[] cbuf, int off, int len) {}
+
+    @Override
+    public void flush() {}
+
+    @Override
+    public void close() {}
+  }
+}
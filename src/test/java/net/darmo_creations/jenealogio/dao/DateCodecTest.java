@@ -0,0 +1,62 @@
+package net.darmo_creations.jenealogio.dao;
+
+import static org.junit.Assert.*;
+
+import java.time.format.DateTimeParseException;
+
+import org.junit.Test;
+
+import net.darmo_creations.jenealogio.model.date.Date;
+
+public class DateCodecTest {
+  @Test
+  public void testParse() {
+    assertEquals(Date.of(1932, 12, 2), DateCodec.parse("1932-12-02"));
+    assertEquals(Date.of(1932, Date.UNKNOWN, 2), DateCodec.parse("1932-??-02"));
+    assertNull(DateCodec.parse("????-??-??"));
+    assertNull(DateCodec.parse(""));
+  }
+
+  @Test(expected = DateTimeParseException.class)
+  public void testParseDayOutOfMonth() {
+    DateCodec.parse("1999-02-30");
+  }
+
+  @Test(expected = DateTimeParseException.class)
+  public void testParseDayOutOfRange() {
+    DateCodec.parse("????-??-32");
+  }
+
+  @Test(expected = DateTimeParseException.class)
+  public void testParseMixedPart() {
+    DateCodec.parse("1932-1?-02");
+  }
+
+  @Test(expected = DateTimeParseException.class)
+  public void testParseWrongLength() {
+    DateCodec.parse("1932-12-2");
+  }
+
+  @Test(expected = DateTimeParseException.class)
+  public void testParseOutOfRange() {
+    DateCodec.parse("????-13-??");
+  }
+
+  @Test
+  public void testFormat() {
+    assertEquals("0987-01-05", DateCodec.format(Date.of(987, 1, 5)));
+    assertEquals("????-11-??", DateCodec.format(Date.of(Date.UNKNOWN, 11, Date.UNKNOWN)));
+  }
+
+  @Test
+  public void testWrite() {
+    char[] buffer = "[..........]".toCharArray();
+    assertEquals(11, DateCodec.write(Date.of(1932, Date.UNKNOWN, 2), buffer, 1));
+    assertEquals("[1932-??-02]", new String(buffer));
+  }
+
+  @Test(expected = IllegalArgumentException.class)
+  public void testFormatLongYear() {
+    DateCodec.format(Date.of(12345, 1, 1));
+  }
+}
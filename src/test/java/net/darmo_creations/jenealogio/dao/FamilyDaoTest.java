@@ -0,0 +1,387 @@
+package net.darmo_creations.jenealogio.dao;
+
+import static org.junit.Assert.*;
+
+import java.awt.Point;
+import java.awt.image.BufferedImage;
+import java.io.ByteArrayOutputStream;
+import java.io.DataOutputStream;
+import java.io.File;
+import java.io.RandomAccessFile;
+import java.nio.ByteBuffer;
+import java.nio.file.Files;
+import java.nio.file.StandardOpenOption;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.HashSet;
+import java.util.Set;
+import java.util.zip.CRC32;
+
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Test;
+
+import net.darmo_creations.jenealogio.model.FamilyEdit;
+import net.darmo_creations.jenealogio.model.date.DateBuilder;
+import net.darmo_creations.jenealogio.model.family.Family;
+import net.darmo_creations.jenealogio.model.family.FamilyDiffHandler;
+import net.darmo_creations.jenealogio.model.family.FamilyMember;
+import net.darmo_creations.jenealogio.model.family.Gender;
+import net.darmo_creations.jenealogio.model.family.Relationship;
+import net.darmo_creations.jenealogio.util.LongPointMap;
+
+public class FamilyDaoTest {
+  private File file;
+
+  @Before
+  public void setUp() throws Exception {
+    this.file = File.createTempFile("family", ".gtree");
+  }
+
+  @After
+  public void tearDown() throws Exception {
+    this.file.delete();
+    Journal.delete(this.file.toPath());
+  }
+
+  @Test
+  public void testSaveLoad() throws Exception {
+    testSaveLoad(FileFormat.JSON);
+  }
+
+  @Test
+  public void testSaveLoadBinary() throws Exception {
+    testSaveLoad(FileFormat.BINARY);
+  }
+
+  @Test
+  public void testSaveLoadStore() throws Exception {
+    testSaveLoad(FileFormat.STORE);
+  }
+
+  @Test
+  public void testFormatOf() throws Exception {
+    for (FileFormat format : FileFormat.values()) {
+      FamilyDao.instance().save(this.file.getPath(), createEdit(), format);
+      assertEquals(format, FamilyDao.formatOf(this.file.toPath()));
+    }
+  }
+
+  @Test
+  public void testStoreRandomAccess() throws Exception {
+    FamilyEdit saved = createEdit();
+    FamilyDao.instance().save(this.file.getPath(), saved, FileFormat.STORE);
+
+    try (MappedFamilyStore store = FamilyDao.instance().openStore(this.file.getPath(), false)) {
+      assertEquals(3, store.getMembersNumber());
+      assertEquals(saved.getFamily().getMember(1), store.getMember(1));
+      assertFalse(store.getMember(3).isPresent());
+      assertEquals(new Point(20, -2), store.getPosition(2).get());
+      assertEquals(1, store.getRelations(0).size());
+
+      Family subset = store.load(Arrays.asList(0L, 1L)).getFamily();
+      assertEquals(2, subset.getMembersView().size());
+      assertTrue(subset.getRelation(0, 1).get().getChildren().isEmpty());
+      assertTrue(store.load(Arrays.asList(0L, 2L)).getFamily().getRelationsView().isEmpty());
+    }
+  }
+
+  @Test
+  public void testStoreBackedFamily() throws Exception {
+    FamilyEdit saved = createEdit();
+    FamilyDao.instance().save(this.file.getPath(), saved, FileFormat.STORE);
+    Family family = FamilyDao.instance().load(this.file.getPath(), false).getFamily();
+    Family expected = saved.getFamily();
+
+    assertEquals(expected.getMember(1), family.getMember(1));
+    assertEquals(expected.getRelation(1, 0), family.getRelation(1, 0));
+    assertTrue(family.hasParents(2));
+
+    Family edited = family.clone();
+    Family expectedEdited = expected.clone();
+    for (Family f : Arrays.asList(edited, expectedEdited)) {
+      f.removeMember(2);
+      f.addMember(new FamilyMember(null, "Doe", null, null, null, Gender.WOMAN, null, null, null, null, false, null));
+      f.addRelation(new Relationship(null, null, false, false, null, 1, 3, Collections.emptySet(), Collections.emptyMap()));
+    }
+
+    assertEquals(expectedEdited, edited);
+    assertEquals(new HashSet<>(expectedEdited.getMembersView()), new HashSet<>(edited.getMembersView()));
+    assertEquals(new HashSet<>(expectedEdited.getRelationsView()), new HashSet<>(edited.getRelationsView()));
+    assertEquals(2, edited.getRelationsView().size());
+    assertFalse(edited.hasParents(2));
+    assertFalse(edited.getMember(2).isPresent());
+    // The source is shared, not modified.
+    assertEquals(expected, family);
+
+    Set<String> changes = new HashSet<>();
+    edited.diff(family, new FamilyDiffHandler() {
+      @Override
+      public void memberAdded(FamilyMember member) {
+        changes.add("+m" + member.getId());
+      }
+
+      @Override
+      public void memberUpdated(FamilyMember previous, FamilyMember member) {
+        changes.add("~m" + member.getId());
+      }
+
+      @Override
+      public void memberRemoved(FamilyMember previous) {
+        changes.add("-m" + previous.getId());
+      }
+
+      @Override
+      public void relationAdded(Relationship relation) {
+        changes.add("+r" + relation.getPartner1() + relation.getPartner2());
+      }
+
+      @Override
+      public void relationUpdated(Relationship previous, Relationship relation) {
+        changes.add("~r" + relation.getPartner1() + relation.getPartner2());
+      }
+
+      @Override
+      public void relationRemoved(Relationship previous) {
+        changes.add("-r" + previous.getPartner1() + previous.getPartner2());
+      }
+    });
+    assertEquals(new HashSet<>(Arrays.asList("-m2", "+m3", "~r01", "+r13")), changes);
+  }
+
+  @Test
+  public void testStoreBackedFamilyEquals() throws Exception {
+    FamilyEdit saved = createEdit();
+    FamilyDao.instance().save(this.file.getPath(), saved, FileFormat.STORE);
+    Family family = FamilyDao.instance().load(this.file.getPath(), false).getFamily();
+    FamilyMember member = family.getMember(1).get();
+
+    assertEquals(saved.getFamily().getMember(1).get().getPortrait(), member.getPortrait());
+    assertArrayEquals(saved.getFamily().getMember(1).get().getPortrait().get().getData(), member.getPortrait().get().getData());
+
+    Family edited = family.clone();
+    edited.updateMember(member);
+    assertEquals(family, edited);
+
+    member.setUseName("Other");
+    edited.updateMember(member);
+    assertNotEquals(family, edited);
+    assertNotEquals(edited, family);
+
+    Family updated = family.clone();
+    Relationship relation = updated.getRelation(0, 1).get();
+    relation.setNotAdopted(2);
+    updated.updateRelation(relation);
+    assertNotEquals(family, updated);
+  }
+
+  @Test
+  public void testReleaseStore() throws Exception {
+    FamilyEdit saved = createEdit();
+    FamilyDao.instance().save(this.file.getPath(), saved, FileFormat.STORE);
+    Family family = FamilyDao.instance().load(this.file.getPath(), false).getFamily();
+
+    assertTrue(MappedFamilyStore.release(this.file.toPath()));
+    assertFalse(MappedFamilyStore.release(this.file.toPath()));
+    Files.write(this.file.toPath(), new byte[]{0});
+    assertEquals(saved.getFamily(), family);
+    assertEquals(saved.getFamily().getMember(1).get().getPortrait(), family.getMember(1).get().getPortrait());
+  }
+
+  @Test
+  public void testSaveIncrementalStore() throws Exception {
+    FamilyDao.instance().save(this.file.getPath(), createEdit(), FileFormat.STORE);
+    FamilyEdit saved = FamilyDao.instance().load(this.file.getPath(), false);
+
+    FamilyEdit edit = modify(saved);
+    FamilyDao.instance().saveIncremental(this.file.getPath(), saved, edit, FileFormat.STORE);
+    FamilyEdit loaded = FamilyDao.instance().load(this.file.getPath(), false);
+
+    assertEquals(edit.getFamily(), loaded.getFamily());
+    assertEquals(edit.getLocations(), loaded.getLocations());
+  }
+
+  @Test(expected = java.text.ParseException.class)
+  public void testLoadStoreWrongGender() throws Exception {
+    FamilyDao.instance().save(this.file.getPath(), createEdit(), FileFormat.STORE);
+    try (RandomAccessFile f = new RandomAccessFile(this.file, "rw")) {
+      // Gender of the first member, after the header and the IDs index
+      f.seek(60 + 3 * 8 + 24);
+      f.write('X');
+    }
+    FamilyDao.instance().load(this.file.getPath(), false);
+  }
+
+  @Test(expected = java.text.ParseException.class)
+  public void testLoadStoreWrongDate() throws Exception {
+    FamilyDao.instance().save(this.file.getPath(), createEdit(), FileFormat.STORE);
+    try (RandomAccessFile f = new RandomAccessFile(this.file, "rw")) {
+      // Birth date of the first member: month 13
+      f.seek(60 + 3 * 8 + 25);
+      f.writeInt(1990 << 12 | 13 << 8 | 6);
+    }
+    FamilyDao.instance().load(this.file.getPath(), false);
+  }
+
+  @Test
+  public void testSaveIncremental() throws Exception {
+    FamilyEdit saved = createEdit();
+    FamilyDao.instance().save(this.file.getPath(), saved, FileFormat.JSON);
+
+    FamilyEdit edit = modify(saved);
+    FamilyDao.instance().saveIncremental(this.file.getPath(), saved, edit, FileFormat.JSON);
+    assertTrue(Files.exists(Journal.of(this.file.toPath())));
+    FamilyEdit loaded = FamilyDao.instance().load(this.file.getPath(), false);
+
+    assertEquals(edit.getFamily(), loaded.getFamily());
+    assertEquals(edit.getLocations(), loaded.getLocations());
+  }
+
+  @Test
+  public void testJournalRecovery() throws Exception {
+    FamilyEdit saved = createEdit();
+    FamilyDao.instance().save(this.file.getPath(), saved, FileFormat.BINARY);
+    FamilyEdit edit = modify(saved);
+    FamilyDao.instance().saveIncremental(this.file.getPath(), saved, edit, FileFormat.BINARY);
+
+    // Interrupted save: a record announcing 100 bytes but holding only 3
+    Files.write(Journal.of(this.file.toPath()), new byte[]{0, 0, 0, 100, 1, 2, 3, 4, 5, 6, 7}, StandardOpenOption.APPEND);
+    FamilyEdit loaded = FamilyDao.instance().load(this.file.getPath(), false);
+    assertEquals(edit.getFamily(), loaded.getFamily());
+
+    // The broken record is dropped by the next save.
+    FamilyEdit edit2 = modify(edit);
+    FamilyDao.instance().saveIncremental(this.file.getPath(), edit, edit2, FileFormat.BINARY);
+    assertEquals(edit2.getFamily(), FamilyDao.instance().load(this.file.getPath(), false).getFamily());
+  }
+
+  @Test(expected = java.text.ParseException.class)
+  public void testJournalUnknownOperation() throws Exception {
+    FamilyEdit saved = createEdit();
+    FamilyDao.instance().save(this.file.getPath(), saved, FileFormat.BINARY);
+    FamilyDao.instance().saveIncremental(this.file.getPath(), saved, modify(saved), FileFormat.BINARY);
+
+    appendJournalRecord(new byte[]{(byte) 0xFF});
+    FamilyDao.instance().load(this.file.getPath(), false);
+  }
+
+  @Test(expected = java.text.ParseException.class)
+  public void testJournalInvalidRelation() throws Exception {
+    FamilyEdit saved = createEdit();
+    FamilyDao.instance().save(this.file.getPath(), saved, FileFormat.BINARY);
+    FamilyDao.instance().saveIncremental(this.file.getPath(), saved, modify(saved), FileFormat.BINARY);
+
+    // The relation exists but one of its children does not.
+    ByteArrayOutputStream bytes = new ByteArrayOutputStream();
+    DataOutputStream out = new DataOutputStream(bytes);
+    out.writeByte(5);
+    BinaryFormat.writeRelation(out, new Relationship(null, null, true, false, null, 0, 1, Collections.singleton(42L), Collections.emptyMap()));
+    appendJournalRecord(bytes.toByteArray());
+    FamilyDao.instance().load(this.file.getPath(), false);
+  }
+
+  /**
+   * Appends a valid record to the journal of the test file.
+   */
+  private void appendJournalRecord(byte[] payload) throws Exception {
+    CRC32 crc = new CRC32();
+    crc.update(payload);
+    ByteBuffer record = ByteBuffer.allocate(2 * Integer.BYTES + payload.length);
+    record.putInt(payload.length);
+    record.putInt((int) crc.getValue());
+    record.put(payload);
+    Files.write(Journal.of(this.file.toPath()), record.array(), StandardOpenOption.APPEND);
+  }
+
+  @Test
+  public void testFullSaveDeletesJournal() throws Exception {
+    FamilyEdit saved = createEdit();
+    FamilyDao.instance().save(this.file.getPath(), saved, FileFormat.JSON);
+    FamilyDao.instance().saveIncremental(this.file.getPath(), saved, modify(saved), FileFormat.JSON);
+    FamilyDao.instance().save(this.file.getPath(), saved, FileFormat.JSON);
+
+    assertFalse(Files.exists(Journal.of(this.file.toPath())));
+    assertEquals(saved.getFamily(), FamilyDao.instance().load(this.file.getPath(), false).getFamily());
+  }
+
+  private static FamilyEdit modify(FamilyEdit edit) {
+    Family family = edit.getFamily();
+    LongPointMap locations = edit.getLocations();
+    FamilyMember member = family.getMember(0).get();
+    family.updateMember(new FamilyMember(0, member.getPortrait().orElse(null), "Jones", null, null, null, Gender.MAN, null, null, null,
+        null, true, null));
+    family.setName(family.getName() + "!");
+    family.removeMember(2);
+    locations.remove(2L);
+    locations.put(1L, new Point(locations.get(1L).x + 5, 7));
+    family.addMember(new FamilyMember(null, "Doe", null, null, null, Gender.WOMAN, null, null, null, null, false, null));
+    locations.put(family.getGlobalId() - 1, new Point(100, 100));
+    return new FamilyEdit(family, locations);
+  }
+
+  private void testSaveLoad(FileFormat format) throws Exception {
+    FamilyEdit saved = createEdit();
+
+    FamilyDao.instance().save(this.file.getPath(), saved, format);
+    FamilyEdit edit = FamilyDao.instance().load(this.file.getPath(), false);
+
+    assertEquals(saved.getFamily(), edit.getFamily());
+    assertEquals(saved.getLocations(), edit.getLocations());
+  }
+
+  private static FamilyEdit createEdit() {
+    Family family = new Family("Test");
+    LongPointMap locations = new LongPointMap();
+    DateBuilder builder = new DateBuilder();
+    builder.setYear(1990);
+    BufferedImage image = new BufferedImage(4, 3, BufferedImage.TYPE_INT_RGB);
+    image.setRGB(1, 1, 0xFF8000);
+    for (int i = 0; i < 3; i++) {
+      family.addMember(new FamilyMember(i == 1 ? image : null, "Smith", null, "Person" + i, null, Gender.MAN, builder.getDate(), "Paris",
+          null, null, false, "comment \"" + i + "\""));
+      locations.put((long) i, new Point(i * 10, -i));
+    }
+    family.addRelation(new Relationship(builder.getDate(), null, true, false, null, 0, 1, Collections.singleton(2L),
+        Collections.singletonMap(2L, builder.getDate())));
+
+    return new FamilyEdit(family, locations);
+  }
+
+  @Test
+  public void testLoadLegacyFormat() throws Exception {
+    String json = "{\"global_id\":2,\"name\":\"Old\",\"weddings\":[{\"spouse1\":0,\"spouse2\":1,\"date\":\"1950-??-??\","
+        + "\"location\":\"\",\"children\":[]}],\"members\":[" + legacyMember(0) + "," + legacyMember(1) + "]}";
+    Files.write(this.file.toPath(), Arrays.asList(json));
+
+    Family family = FamilyDao.instance().load(this.file.getPath(), false).getFamily();
+
+    assertEquals(2, family.getMembersView().size());
+    Relationship r = family.getRelation(0, 1).get();
+    assertTrue(r.isWedding());
+    assertFalse(r.hasEnded());
+    assertFalse(family.getMember(0).get().isDead());
+  }
+
+  @Test(expected = java.text.ParseException.class)
+  public void testLoadCorrupted() throws Exception {
+    Files.write(this.file.toPath(), Arrays.asList("{\"global_id\":0,\"name\":\"Test\",\"members\":[]}"));
+    FamilyDao.instance().load(this.file.getPath(), false);
+  }
+
+  @Test(expected = java.text.ParseException.class)
+  public void testLoadBinaryWrongLength() throws Exception {
+    FamilyDao.instance().save(this.file.getPath(), createEdit(), FileFormat.BINARY);
+    try (RandomAccessFile f = new RandomAccessFile(this.file, "rw")) {
+      // Members number, after the header and the name "Test"
+      f.seek(28);
+      f.writeInt(Integer.MAX_VALUE);
+    }
+    FamilyDao.instance().load(this.file.getPath(), false);
+  }
+
+  private static String legacyMember(long id) {
+    return "{\"id\":" + id + ",\"image\":\"\",\"name\":\"Smith\",\"use_name\":\"\",\"first_name\":\"\",\"other_names\":\"\","
+        + "\"gender\":\"M\",\"birth_date\":\"\",\"birth_location\":\"\",\"death_date\":\"\",\"death_location\":\"\","
+        + "\"comment\":\"\",\"position\":{\"x\":0,\"y\":0}}";
+  }
+}
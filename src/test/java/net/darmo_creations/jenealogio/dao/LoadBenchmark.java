@@ -0,0 +1,35 @@
+package net.darmo_creations.jenealogio.dao;
+
+import java.nio.file.Paths;
+
+import net.darmo_creations.jenealogio.Benchmark;
+import net.darmo_creations.jenealogio.TreeGenerator;
+import net.darmo_creations.jenealogio.model.FamilyEdit;
+
+/**
+ * Measures the time and memory needed to load a file. The first load gives the peak resident set
+ * size of the process and the heap retained by the loaded tree, then the best time of 3 more loads
+ * is kept. Files are generated by {@link TreeGenerator}, in another process so that the peak RSS is
+ * only the one of loading:
+ * 
+ * <pre>
+ * java -cp &lt;classes&gt; net.darmo_creations.jenealogio.TreeGenerator tree.gtree 100
+ * java -Xmx3g -cp &lt;classes&gt; net.darmo_creations.jenealogio.dao.LoadBenchmark tree.gtree
+ * </pre>
+ */
+public class LoadBenchmark {
+  public static void main(String[] args) throws Exception {
+    String file = args[0];
+    long heap = Benchmark.usedHeap();
+    long rss = Benchmark.peakRss();
+
+    FamilyEdit edit = FamilyDao.instance().load(file, false);
+    long peakRss = Benchmark.peakRss();
+    long retained = Benchmark.usedHeap() - heap;
+    Benchmark.Result result = Benchmark.measure(3, () -> FamilyDao.instance().load(file, false));
+
+    System.out.printf("%s (%s, %,d members): %.0f ms, peak RSS %.0f MB (%.0f MB before loading), retained heap %.0f MB%n", file,
+        FamilyDao.formatOf(Paths.get(file)), edit.getFamily().getMembersView().size(), result.time / 1e6, peakRss / 1e6, rss / 1e6,
+        retained / 1e6);
+  }
+}
@@ -0,0 +1,33 @@
+package net.darmo_creations.jenealogio.dao;
+
+import java.io.File;
+
+import net.darmo_creations.jenealogio.Benchmark;
+import net.darmo_creations.jenealogio.TreeGenerator;
+import net.darmo_creations.jenealogio.model.FamilyEdit;
+
+/**
+ * Measures the throughput of saving a 50,000-member tree, with a portrait every 10 members, in each
+ * file format. The best time of 5 saves is kept; throughput is the file size divided by that time and
+ * allocation is the number of bytes allocated by that save.
+ * <p>
+ * Run with: {@code java -XX:+UseSerialGC -cp <classes> net.darmo_creations.jenealogio.dao.SaveBenchmark [directory]}
+ * </p>
+ */
+public class SaveBenchmark {
+  public static void main(String[] args) throws Exception {
+    File directory = new File(args.length > 0 ? args[0] : System.getProperty("java.io.tmpdir"));
+    FamilyEdit edit = TreeGenerator.generate(50_000, 10);
+
+    for (FileFormat format : FileFormat.values()) {
+      File file = new File(directory, "save-benchmark." + format.name().toLowerCase());
+      Benchmark.Result result = Benchmark.measure(5, () -> {
+        FamilyDao.instance().save(file.getPath(), edit, format);
+        return file;
+      });
+      System.out.printf("%s: %.1f MB in %.0f ms, %.0f MB/s, %.1f MB allocated%n", format, file.length() / 1e6, result.time / 1e6,
+          file.length() / 1e6 / (result.time / 1e9), result.allocated / 1e6);
+      file.delete();
+    }
+  }
+}
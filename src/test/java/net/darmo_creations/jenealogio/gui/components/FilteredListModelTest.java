@@ -0,0 +1,81 @@
+package net.darmo_creations.jenealogio.gui.components;
+
+import static org.junit.Assert.*;
+
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.function.Function;
+
+import javax.swing.event.ListDataEvent;
+import javax.swing.event.ListDataListener;
+
+import org.junit.Before;
+import org.junit.Test;
+
+import net.darmo_creations.jenealogio.util.SearchIndex;
+
+public class FilteredListModelTest {
+  private static final String[] ITEMS = {"Jean", "Jeanne", "Paul", "Pauline"};
+
+  private FilteredListModel<String> model;
+  private SearchIndex<String> index;
+  private int events;
+
+  @Before
+  public void setUp() throws Exception {
+    this.model = new FilteredListModel<>();
+    this.index = new SearchIndex<>(Arrays.asList(ITEMS), Function.identity());
+    this.model.setIndex(this.index);
+    this.events = 0;
+    this.model.addListDataListener(new ListDataListener() {
+      @Override
+      public void intervalRemoved(ListDataEvent e) {
+        FilteredListModelTest.this.events++;
+      }
+
+      @Override
+      public void intervalAdded(ListDataEvent e) {
+        FilteredListModelTest.this.events++;
+      }
+
+      @Override
+      public void contentsChanged(ListDataEvent e) {
+        FilteredListModelTest.this.events++;
+      }
+    });
+  }
+
+  @Test
+  public void testAllShown() {
+    assertEquals(4, this.model.getSize());
+    assertEquals("Pauline", this.model.getElementAt(3));
+  }
+
+  @Test
+  public void testOneEventPerQuery() {
+    this.model.setMatches(this.index, this.index.search("paul"));
+    assertEquals(1, this.events);
+    assertEquals(2, this.model.getSize());
+    assertEquals("Paul", this.model.getElementAt(0));
+  }
+
+  @Test
+  public void testStaleIndexIgnored() {
+    SearchIndex<String> other = new SearchIndex<>(Collections.singletonList("Paul"), Function.identity());
+    this.model.setMatches(other, other.search("paul"));
+    assertEquals(0, this.events);
+    assertEquals(4, this.model.getSize());
+  }
+
+  @Test
+  public void testHidden() {
+    this.model.setHidden(Arrays.asList(ITEMS[1], ITEMS[2]), true);
+    assertEquals(2, this.model.getSize());
+    assertEquals("Pauline", this.model.getElementAt(1));
+    this.model.setMatches(this.index, this.index.search("jean"));
+    assertEquals(1, this.model.getSize());
+    this.model.setHidden(Collections.singletonList(ITEMS[1]), false);
+    assertEquals(2, this.model.getSize());
+    assertEquals(3, this.events);
+  }
+}
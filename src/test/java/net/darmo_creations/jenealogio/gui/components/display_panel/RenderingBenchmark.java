@@ -0,0 +1,72 @@
+package net.darmo_creations.jenealogio.gui.components.display_panel;
+
+import java.awt.Graphics2D;
+import java.awt.Point;
+import java.awt.Rectangle;
+import java.awt.image.BufferedImage;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Locale;
+
+import javax.swing.JScrollPane;
+
+import net.darmo_creations.gui_framework.ApplicationRegistry;
+import net.darmo_creations.gui_framework.config.Language;
+import net.darmo_creations.gui_framework.config.WritableConfig;
+import net.darmo_creations.jenealogio.Benchmark;
+import net.darmo_creations.jenealogio.Jenealogio;
+import net.darmo_creations.jenealogio.TreeGenerator;
+import net.darmo_creations.jenealogio.model.FamilyEdit;
+
+/**
+ * Measures the time needed to repaint a 1920x1080 viewport at a fixed scroll position for trees of
+ * growing size; the smallest tree fills the viewport. A cold repaint invalidates the tiles first so
+ * that every link and card in the viewport is drawn again; a warm repaint only copies cached tiles.
+ * The best of 20 repaints is kept.
+ * <p>
+ * Run with: {@code java -Djava.awt.headless=true -cp <classes> net.darmo_creations.jenealogio.gui.components.display_panel.RenderingBenchmark}
+ * </p>
+ */
+public class RenderingBenchmark {
+  private static final Rectangle VIEWPORT = new Rectangle(1600, 0, 1920, 1080);
+
+  public static void main(String[] args) throws Exception {
+    List<Language> languages = new ArrayList<>();
+    languages.add(new Language("English", Locale.US));
+    ApplicationRegistry.setLanguages(languages);
+    new Jenealogio().preInit();
+    WritableConfig config = new WritableConfig();
+
+    for (int members : new int[]{10_000, 40_000, 100_000, 250_000}) {
+      FamilyEdit edit = TreeGenerator.generate(members, 10);
+      JScrollPane scrollPane = new JScrollPane();
+      DisplayPanel panel = new DisplayPanel(scrollPane);
+      scrollPane.setViewportView(panel);
+      panel.refresh(edit.getFamily(), edit.getLocations(), config);
+      panel.setSize(panel.getPreferredSize());
+      scrollPane.setSize(VIEWPORT.width, VIEWPORT.height);
+      scrollPane.doLayout();
+      scrollPane.getViewport().setViewPosition(VIEWPORT.getLocation());
+
+      BufferedImage image = new BufferedImage(VIEWPORT.width, VIEWPORT.height, BufferedImage.TYPE_INT_RGB);
+      Graphics2D g = image.createGraphics();
+      g.translate(-VIEWPORT.x, -VIEWPORT.y);
+      g.setClip(VIEWPORT);
+
+      Benchmark.Result cold = Benchmark.measure(20, () -> {
+        panel.repaintAll();
+        panel.paintComponent(g);
+        return image;
+      });
+      Benchmark.Result warm = Benchmark.measure(20, () -> {
+        panel.paintComponent(g);
+        return image;
+      });
+      g.dispose();
+
+      System.out.printf("%,7d members (%,6d x %,6d px): cold repaint %6.2f ms, warm repaint %5.2f ms%n", members, panel.getWidth(),
+          panel.getHeight(), cold.time / 1e6, warm.time / 1e6);
+    }
+    System.exit(0);
+  }
+}
@@ -0,0 +1,66 @@
+package net.darmo_creations.jenealogio.gui.components.display_panel;
+
+import static org.junit.Assert.*;
+
+import java.awt.Rectangle;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.HashSet;
+
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Test;
+
+public class SpatialGridTest {
+  private SpatialGrid<Integer> grid;
+
+  @Before
+  public void setUp() throws Exception {
+    this.grid = new SpatialGrid<>(100);
+    this.grid.put(0, new Rectangle(10, 10, 20, 20));
+    this.grid.put(1, new Rectangle(150, 150, 20, 20));
+    this.grid.put(2, new Rectangle(-50, 0, 300, 10));
+  }
+
+  @After
+  public void tearDown() throws Exception {
+    this.grid = null;
+  }
+
+  @Test
+  public void testQuery() {
+    assertEquals(new HashSet<>(Arrays.asList(0, 2)), this.grid.query(new Rectangle(0, 0, 50, 50)));
+    assertEquals(Collections.singleton(1), this.grid.query(new Rectangle(140, 140, 20, 20)));
+    assertTrue(this.grid.query(new Rectangle(400, 400, 10, 10)).isEmpty());
+  }
+
+  @Test
+  public void testQueryBiggerThanGrid() {
+    assertEquals(3, this.grid.query(new Rectangle(-10000, -10000, 20000, 20000)).size());
+  }
+
+  @Test
+  public void testPutUpdatesBounds() {
+    this.grid.put(0, new Rectangle(300, 300, 10, 10));
+    assertEquals(Collections.singleton(2), this.grid.query(new Rectangle(0, 0, 50, 50)));
+    assertEquals(Collections.singleton(0), this.grid.query(new Rectangle(305, 305, 1, 1)));
+  }
+
+  @Test
+  public void testRemove() {
+    this.grid.remove(2);
+    assertEquals(2, this.grid.size());
+    assertEquals(Collections.singleton(0), this.grid.query(new Rectangle(0, 0, 50, 50)));
+  }
+
+  @Test
+  public void testTranslate() {
+    this.grid.translate(Arrays.asList(0, 1, 5), 5, 100);
+    assertEquals(new Rectangle(15, 110, 20, 20), this.grid.getBounds(0));
+    assertEquals(new Rectangle(155, 250, 20, 20), this.grid.getBounds(1));
+    assertEquals(Collections.singleton(2), this.grid.query(new Rectangle(0, 0, 50, 50)));
+    assertEquals(Collections.singleton(0), this.grid.query(new Rectangle(20, 115, 1, 1)));
+    assertEquals(Collections.singleton(1), this.grid.query(new Rectangle(160, 260, 1, 1)));
+    assertEquals(3, this.grid.size());
+  }
+}
@@ -0,0 +1,13 @@
+package net.darmo_creations.jenealogio.gui.components.display_panel;
+
+import static org.junit.Assert.*;
+
+import org.junit.Test;
+
+public class SvgWriterTest {
+  @Test
+  public void testEscape() {
+    assertEquals("abc", SvgWriter.escape("abc"));
+    assertEquals("a &amp; &lt;b&gt; &quot;c&quot;", SvgWriter.escape("a & <b> \"c\""));
+  }
+}
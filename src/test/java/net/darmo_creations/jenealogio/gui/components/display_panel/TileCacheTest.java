@@ -0,0 +1,93 @@
+package net.darmo_creations.jenealogio.gui.components.display_panel;
+
+import static org.junit.Assert.*;
+
+import java.awt.Color;
+import java.awt.Graphics2D;
+import java.awt.Rectangle;
+import java.awt.image.BufferedImage;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Test;
+
+public class TileCacheTest {
+  private TileCache cache;
+  private List<Rectangle> rendered;
+  private Graphics2D g;
+
+  @Before
+  public void setUp() throws Exception {
+    this.cache = new TileCache(100, 4);
+    this.rendered = new ArrayList<>();
+    this.g = new BufferedImage(400, 400, BufferedImage.TYPE_INT_RGB).createGraphics();
+  }
+
+  @After
+  public void tearDown() throws Exception {
+    this.g.dispose();
+  }
+
+  @Test
+  public void testTilesReused() {
+    paint(new Rectangle(0, 0, 200, 100));
+    assertEquals(2, this.rendered.size());
+    paint(new Rectangle(50, 50, 100, 10));
+    assertEquals(2, this.rendered.size());
+  }
+
+  @Test
+  public void testInvalidate() {
+    paint(new Rectangle(0, 0, 200, 100));
+    this.cache.invalidate(new Rectangle(150, 10, 5, 5));
+    paint(new Rectangle(0, 0, 200, 100));
+    assertEquals(3, this.rendered.size());
+    assertEquals(new Rectangle(100, 0, 100, 100), this.rendered.get(2));
+  }
+
+  @Test
+  public void testLeastRecentlyUsedDropped() {
+    paint(new Rectangle(0, 0, 500, 100));
+    assertEquals(5, this.rendered.size());
+    paint(new Rectangle(0, 0, 100, 100));
+    assertEquals(6, this.rendered.size());
+  }
+
+  @Test
+  public void testSetMaxTiles() {
+    paint(new Rectangle(0, 0, 400, 100));
+    this.cache.setMaxTiles(2);
+    paint(new Rectangle(200, 0, 200, 100));
+    assertEquals(4, this.rendered.size());
+    paint(new Rectangle(0, 0, 100, 100));
+    assertEquals(5, this.rendered.size());
+  }
+
+  @Test
+  public void testDeviceScale() {
+    List<Double> scales = new ArrayList<>();
+    BufferedImage image = new BufferedImage(200, 200, BufferedImage.TYPE_INT_RGB);
+    Graphics2D g2 = image.createGraphics();
+    g2.scale(2, 2);
+    this.cache.paint(g2, new Rectangle(0, 0, 100, 100), Color.WHITE, (graphics, bounds) -> {
+      scales.add(graphics.getTransform().getScaleX());
+      graphics.setColor(Color.BLACK);
+      graphics.fillRect(99, 99, 1, 1);
+    });
+    g2.dispose();
+
+    assertEquals(Arrays.asList(2.0), scales);
+    // The last logical pixel covers 2x2 device pixels.
+    assertEquals(Color.BLACK.getRGB(), image.getRGB(198, 198));
+    assertEquals(Color.WHITE.getRGB(), image.getRGB(197, 197));
+    paint(new Rectangle(0, 0, 100, 100));
+    assertEquals(1, this.rendered.size());
+  }
+
+  private void paint(Rectangle zone) {
+    this.cache.paint(this.g, zone, Color.WHITE, (graphics, bounds) -> this.rendered.add(bounds));
+  }
+}
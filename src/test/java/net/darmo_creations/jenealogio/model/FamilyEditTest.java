@@ -0,0 +1,67 @@
+package net.darmo_creations.jenealogio.model;
+
+import static org.junit.Assert.*;
+
+import java.awt.Point;
+
+import org.junit.Before;
+import org.junit.Test;
+
+import net.darmo_creations.jenealogio.model.family.Family;
+import net.darmo_creations.jenealogio.model.family.FamilyMember;
+import net.darmo_creations.jenealogio.model.family.Gender;
+import net.darmo_creations.jenealogio.util.LongPointMap;
+
+public class FamilyEditTest {
+  private Family family;
+  private FamilyEdit edit;
+
+  @Before
+  public void setUp() throws Exception {
+    this.family = new Family("Test");
+    LongPointMap locations = new LongPointMap();
+    for (int i = 0; i < 3; i++) {
+      this.family.addMember(new FamilyMember(null, "Smith", null, "Person" + i, null, Gender.UNKNOW, null, null, null, null, false, null));
+      locations.put(i, new Point(i, i));
+    }
+    this.edit = new FamilyEdit(this.family, locations);
+  }
+
+  @Test
+  public void testMovedLocations() {
+    LongPointMap moved = new LongPointMap();
+    moved.put(1, new Point(10, 10));
+    FamilyEdit next = new FamilyEdit(this.edit, this.family, moved);
+
+    LongPointMap expected = this.edit.getLocations();
+    expected.put(1, new Point(10, 10));
+    assertEquals(expected, next.getLocations());
+    assertEquals(new Point(1, 1), this.edit.getLocations().get(1));
+  }
+
+  @Test
+  public void testAddedLocations() {
+    this.family.addMember(new FamilyMember(null, "Smith", null, "Person3", null, Gender.UNKNOW, null, null, null, null, false, null));
+    LongPointMap added = new LongPointMap();
+    added.put(3, new Point(3, 3));
+    FamilyEdit next = new FamilyEdit(this.edit, this.family, added);
+
+    assertEquals(4, next.getLocationsView().size());
+    assertEquals(new Point(3, 3), next.getLocations().get(3));
+  }
+
+  @Test
+  public void testRemovedMemberLocationDropped() {
+    this.family.removeMember(1);
+    FamilyEdit next = new FamilyEdit(this.edit, this.family, new LongPointMap());
+
+    assertFalse(next.getLocations().containsKey(1));
+    assertEquals(2, next.getLocationsView().size());
+    assertTrue(this.edit.getLocations().containsKey(1));
+  }
+
+  @Test
+  public void testUnchangedEditsEqual() {
+    assertEquals(this.edit, new FamilyEdit(this.edit, this.family, new LongPointMap()));
+  }
+}
@@ -0,0 +1,26 @@
+package net.darmo_creations.jenealogio.model;
+
+import net.darmo_creations.jenealogio.Benchmark;
+import net.darmo_creations.jenealogio.TreeGenerator;
+import net.darmo_creations.jenealogio.model.family.Family;
+
+/**
+ * Measures the time needed by {@link TreeLayout} to arrange generated trees of growing size. Cards
+ * have the same width, as in the main controller the widths are read before the layout starts. The
+ * best of 5 layouts is kept.
+ * <p>
+ * Run with: {@code java -Xmx3g -cp <classes> net.darmo_creations.jenealogio.model.TreeLayoutBenchmark}
+ * </p>
+ */
+public class TreeLayoutBenchmark {
+  private static final int CARD_WIDTH = 150;
+
+  public static void main(String[] args) throws Exception {
+    for (int members : new int[]{1_000, 10_000, 100_000, 250_000}) {
+      Family family = TreeGenerator.generate(members, 0).getFamily();
+      Benchmark.Result result = Benchmark.measure(5, () -> TreeLayout.layout(family, id -> CARD_WIDTH));
+      System.out.printf("%,7d members, %,7d relations: %8.1f ms, %.2f us per member%n", members, family.getRelationsView().size(),
+          result.time / 1e6, result.time / 1e3 / members);
+    }
+  }
+}
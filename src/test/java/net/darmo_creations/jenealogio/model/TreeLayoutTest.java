@@ -0,0 +1,77 @@
+package net.darmo_creations.jenealogio.model;
+
+import static org.junit.Assert.*;
+
+import java.awt.Point;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.HashSet;
+
+import org.junit.Before;
+import org.junit.Test;
+
+import net.darmo_creations.jenealogio.model.family.Family;
+import net.darmo_creations.jenealogio.model.family.FamilyMember;
+import net.darmo_creations.jenealogio.model.family.Gender;
+import net.darmo_creations.jenealogio.model.family.Relationship;
+import net.darmo_creations.jenealogio.util.LongPointMap;
+
+public class TreeLayoutTest {
+  private static final int WIDTH = 80;
+
+  private Family family;
+
+  @Before
+  public void setUp() throws Exception {
+    this.family = new Family("Test");
+    for (int i = 0; i < 8; i++)
+      this.family.addMember(new FamilyMember(null, "Smith", null, "Person" + i, null, Gender.UNKNOW, null, null, null, null, false, null));
+    this.family.addRelation(new Relationship(null, null, true, false, null, 0, 1, Collections.singleton(2L), Collections.emptyMap()));
+    this.family.addRelation(
+        new Relationship(null, null, true, false, null, 2, 3, new HashSet<>(Arrays.asList(4L, 5L)), Collections.emptyMap()));
+    this.family.addRelation(new Relationship(null, null, false, false, null, 5, 6, Collections.emptySet(), Collections.emptyMap()));
+  }
+
+  @Test
+  public void testAllMembersPlaced() {
+    LongPointMap points = TreeLayout.layout(this.family, id -> WIDTH);
+    assertEquals(8, points.size());
+  }
+
+  @Test
+  public void testChildrenBelowParents() {
+    LongPointMap points = TreeLayout.layout(this.family, id -> WIDTH);
+    assertTrue(points.get(2L).y > points.get(0L).y);
+    assertTrue(points.get(4L).y > points.get(2L).y);
+    assertTrue(points.get(5L).y > points.get(3L).y);
+  }
+
+  @Test
+  public void testPartnersOnSameRow() {
+    LongPointMap points = TreeLayout.layout(this.family, id -> WIDTH);
+    assertEquals(points.get(0L).y, points.get(1L).y);
+    assertEquals(points.get(2L).y, points.get(3L).y);
+    // 6 has no parents, it is placed next to its partner
+    assertEquals(points.get(5L).y, points.get(6L).y);
+  }
+
+  @Test
+  public void testNoOverlap() {
+    LongPointMap points = TreeLayout.layout(this.family, id -> WIDTH);
+    long[] ids = points.toKeyArray();
+    for (long id1 : ids) {
+      for (long id2 : ids) {
+        Point p1 = points.get(id1), p2 = points.get(id2);
+        if (id1 != id2 && p1.y == p2.y)
+          assertTrue(Math.abs(p1.x - p2.x) >= WIDTH);
+      }
+    }
+  }
+
+  @Test
+  public void testCycleDoesNotFail() {
+    // A member cannot be their own ancestor but corrupted files may contain such cycles.
+    this.family.addRelation(new Relationship(null, null, false, false, null, 4, 7, Collections.singleton(0L), Collections.emptyMap()));
+    assertEquals(8, TreeLayout.layout(this.family, id -> WIDTH).size());
+  }
+}
@@ -0,0 +1,56 @@
+package net.darmo_creations.jenealogio.model;
+
+import java.util.ArrayList;
+import java.util.List;
+
+import net.darmo_creations.jenealogio.Benchmark;
+import net.darmo_creations.jenealogio.TreeGenerator;
+import net.darmo_creations.jenealogio.model.family.Family;
+import net.darmo_creations.jenealogio.model.family.FamilyMember;
+import net.darmo_creations.jenealogio.util.LongPointMap;
+
+/**
+ * Measures the memory kept by an undo history of 1,000 single-card edits on a 20k-member tree, as
+ * done by the main controller: each edit either renames a member or moves its card then a
+ * {@link FamilyEdit} is created from the previous one. The memory of the tree itself is shown for
+ * reference, it is what a full copy of the tree per edit would cost.
+ * <p>
+ * Run with: {@code java -XX:+UseSerialGC -Xmx3g -cp <classes> net.darmo_creations.jenealogio.model.UndoHistoryBenchmark}
+ * </p>
+ */
+public class UndoHistoryBenchmark {
+  private static final int MEMBERS = 20_000;
+  private static final int EDITS = 1_000;
+
+  public static void main(String[] args) {
+    long empty = Benchmark.usedHeap();
+    FamilyEdit generated = TreeGenerator.generate(MEMBERS, 10);
+    Family family = generated.getFamily();
+    long tree = Benchmark.usedHeap() - empty;
+
+    List<FamilyEdit> history = new ArrayList<>();
+    history.add(new FamilyEdit(family, generated.getLocations()));
+    long before = Benchmark.usedHeap();
+    long start = System.nanoTime();
+
+    for (int i = 0; i < EDITS; i++) {
+      long id = (i * 7919L) % MEMBERS;
+      LongPointMap moved = new LongPointMap();
+      if (i % 2 == 0) {
+        FamilyMember member = family.getMember(id).get();
+        member.setUseName("Edit " + i);
+        family.updateMember(member);
+      }
+      else {
+        moved.put(id, i, -i);
+      }
+      history.add(new FamilyEdit(history.get(history.size() - 1), family, moved));
+    }
+
+    long time = System.nanoTime() - start;
+    long retained = Benchmark.usedHeap() - before;
+    System.out.printf("%,d members, tree and decoded portraits: %.1f MB%n", MEMBERS, tree / 1e6);
+    System.out.printf("%,d edits: %.3f ms per edit, %.1f MB retained, %.1f KB per edit (%d edits kept)%n", EDITS, time / 1e6 / EDITS,
+        retained / 1e6, retained / 1e3 / EDITS, history.size());
+  }
+}
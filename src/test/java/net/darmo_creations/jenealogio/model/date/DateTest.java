@@ -0,0 +1,87 @@
+package net.darmo_creations.jenealogio.model.date;
+
+import static org.junit.Assert.*;
+
+import org.junit.Test;
+
+public class DateTest {
+  @Test
+  public void testParts() {
+    Date d = Date.of(1932, 12, 2);
+    assertEquals(1932, d.getYear());
+    assertEquals(12, d.getMonth());
+    assertEquals(2, d.getDate());
+    assertFalse(d.isIncomplete());
+    assertEquals(31, d.getDaysNbInMonth());
+  }
+
+  @Test
+  public void testIncomplete() {
+    Date d = Date.of(Date.UNKNOWN, 2, Date.UNKNOWN);
+    assertFalse(d.isYearSet());
+    assertFalse(d.isDateSet());
+    assertTrue(d.isIncomplete());
+    assertEquals(29, d.getDaysNbInMonth());
+    assertEquals(28, Date.of(1900, 2, Date.UNKNOWN).getDaysNbInMonth());
+  }
+
+  @Test(expected = NullPointerException.class)
+  public void testMissingPart() {
+    Date.of(2000, Date.UNKNOWN, Date.UNKNOWN).getMonth();
+  }
+
+  @Test(expected = IllegalArgumentException.class)
+  public void testDayOutOfMonth() {
+    Date.of(2001, 2, 29);
+  }
+
+  @Test(expected = IllegalArgumentException.class)
+  public void testEmpty() {
+    Date.of(Date.UNKNOWN, Date.UNKNOWN, Date.UNKNOWN);
+  }
+
+  @Test
+  public void testShared() {
+    assertSame(Date.of(1950, 6, 15), Date.of(1950, 6, 15));
+    assertSame(Date.of(1950, 6, 15), Date.fromInt(Date.of(1950, 6, 15).toInt()));
+  }
+
+  @Test(expected = IllegalArgumentException.class)
+  public void testInvalidInt() {
+    Date.fromInt(Date.of(1950, Date.UNKNOWN, 15).toInt() | 3 << 8);
+  }
+
+  @Test
+  public void testCompare() {
+    assertTrue(Date.of(1950, 6, 15).before(Date.of(1950, 6, 16)));
+    assertTrue(Date.of(1950, 7, 1).after(Date.of(1950, 6, 30)));
+    assertTrue(Date.of(1951, 1, 1).after(Date.of(1950, 12, 31)));
+    assertEquals(0, Date.of(1950, 6, 15).compareTo(Date.of(1950, 6, 15)));
+  }
+
+  @Test
+  public void testComparePartial() {
+    // Only the parts both dates have are compared.
+    assertEquals(0, Date.of(1950, 6, Date.UNKNOWN).compareTo(Date.of(1950, 6, 30)));
+    assertEquals(0, Date.of(1950, Date.UNKNOWN, 3).compareTo(Date.of(1950, 12, 31)));
+    assertTrue(Date.of(1950, 5, Date.UNKNOWN).before(Date.of(1950, 6, 1)));
+    assertTrue(Date.of(1951, Date.UNKNOWN, Date.UNKNOWN).after(Date.of(1950, 12, 31)));
+  }
+
+  @Test(expected = NullPointerException.class)
+  public void testCompareWithoutYear() {
+    Date.of(1950, 6, 15).compareTo(Date.of(Date.UNKNOWN, 6, 15));
+  }
+
+  @Test
+  public void testBuilderRollsOver() {
+    DateBuilder builder = new DateBuilder();
+    builder.setYear(2001);
+    builder.setMonth(2);
+    builder.setDate(30);
+    assertEquals(Date.of(2001, 3, 2), builder.getDate());
+    builder.setMonth(12);
+    builder.setDate(32);
+    assertEquals(Date.of(2002, 1, 1), builder.getDate());
+  }
+}
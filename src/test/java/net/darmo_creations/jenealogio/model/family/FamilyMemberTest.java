@@ -2,6 +2,7 @@ package net.darmo_creations.jenealogio.model.family;
 
 import static org.junit.Assert.*;
 
+import java.awt.image.BufferedImage;
 import java.time.Period;
 import java.util.Optional;
 
@@ -57,6 +58,19 @@ public class FamilyMemberTest {
     assertEquals(Images.hashCode(this.m2.getImage().get()), Images.hashCode(this.m2.clone().getImage().get()));
   }
 
+  @Test
+  public void testPortraitShared() {
+    assertSame(this.m2.getPortrait().get(), this.m2.clone().getPortrait().get());
+  }
+
+  @Test
+  public void testPortraitFingerprint() {
+    BufferedImage image = this.m2.getImage().get();
+    assertEquals(new Portrait(image), this.m2.getPortrait().get());
+    image.setRGB(0, 0, ~image.getRGB(0, 0));
+    assertNotEquals(new Portrait(image), this.m2.getPortrait().get());
+  }
+
   @Test
   public void testFullAgeDaysDifferent() {
     this.m1.setBirthDate(getDate(2000, 1, 1));
@@ -0,0 +1,235 @@
+package net.darmo_creations.jenealogio.model.family;
+
+import static org.junit.Assert.*;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Set;
+import java.util.stream.Collectors;
+
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Test;
+
+import net.darmo_creations.jenealogio.model.date.Date;
+import net.darmo_creations.jenealogio.model.date.DateBuilder;
+
+public class FamilyTest {
+  private Family family;
+
+  @Before
+  public void setUp() throws Exception {
+    this.family = new Family("Test");
+    for (int i = 0; i < 5; i++)
+      this.family.addMember(new FamilyMember(null, "Smith", null, "Person" + i, null, Gender.UNKNOW, null, null, null, null, false, null));
+    this.family.addRelation(
+        new Relationship(null, null, true, false, null, 0, 1, new HashSet<>(Arrays.asList(2L, 3L)), Collections.emptyMap()));
+  }
+
+  @After
+  public void tearDown() throws Exception {
+    this.family = null;
+  }
+
+  @Test
+  public void testGetMember() {
+    assertEquals("Person3", this.family.getMember(3).get().getFirstName().get());
+    assertFalse(this.family.getMember(5).isPresent());
+  }
+
+  @Test
+  public void testGetRelationBothOrders() {
+    assertTrue(this.family.getRelation(0, 1).isPresent());
+    assertTrue(this.family.getRelation(1, 0).isPresent());
+    assertTrue(this.family.areInRelationship(1, 0));
+    assertFalse(this.family.areInRelationship(0, 2));
+  }
+
+  @Test
+  public void testGetRelations() {
+    assertEquals(1, this.family.getRelations(0).size());
+    assertEquals(1, this.family.getRelations(1).size());
+    assertTrue(this.family.getRelations(2).isEmpty());
+    assertEquals(1, this.family.getAllRelations().size());
+  }
+
+  @Test
+  public void testDuplicateRelation() {
+    Set<Relationship> relations = new HashSet<>();
+    relations.add(new Relationship(null, null, true, false, null, 0, 1, Collections.singleton(2L), Collections.emptyMap()));
+    relations.add(new Relationship(null, "Paris", true, false, null, 1, 0, Collections.singleton(3L), Collections.emptyMap()));
+    Family family = new Family(4, "Test", new HashSet<>(), relations);
+
+    assertEquals(1, family.getRelationsView().size());
+    assertTrue(family.hasParents(2) != family.hasParents(3));
+  }
+
+  @Test
+  public void testHasParents() {
+    assertTrue(this.family.hasParents(2));
+    assertFalse(this.family.hasParents(4));
+  }
+
+  @Test
+  public void testRemovePartner() {
+    this.family.removeMember(0);
+    assertFalse(this.family.getMember(0).isPresent());
+    assertFalse(this.family.areInRelationship(0, 1));
+    assertTrue(this.family.getRelations(1).isEmpty());
+    assertFalse(this.family.hasParents(2));
+  }
+
+  @Test
+  public void testRemoveChild() {
+    this.family.removeMember(2);
+    assertFalse(this.family.hasParents(2));
+    assertEquals(Collections.singleton(3L), this.family.getRelation(0, 1).get().getChildren());
+  }
+
+  @Test
+  public void testUpdateRelation() {
+    Relationship r = this.family.getRelation(0, 1).get();
+    r.removeChild(3);
+    r.addChild(4);
+    this.family.updateRelation(r);
+    assertFalse(this.family.hasParents(3));
+    assertTrue(this.family.hasParents(4));
+    assertEquals(1, this.family.getAllRelations().size());
+  }
+
+  @Test
+  public void testRemoveRelationship() {
+    this.family.removeRelationship(this.family.getRelation(1, 0).get());
+    assertFalse(this.family.areInRelationship(0, 1));
+    assertFalse(this.family.hasParents(2));
+  }
+
+  @Test
+  public void testViews() {
+    assertEquals(5, this.family.getMembersView().size());
+    assertEquals(this.family.getAllRelations(), new HashSet<>(this.family.getRelationsView()));
+    this.family.removeMember(1);
+    assertEquals(0, this.family.getRelationsView().size());
+    assertFalse(this.family.getRelationsView().iterator().hasNext());
+  }
+
+  @Test(expected = UnsupportedOperationException.class)
+  public void testMembersViewUnmodifiable() {
+    this.family.getMembersView().clear();
+  }
+
+  @Test
+  public void testClone() {
+    assertEquals(this.family, this.family.clone());
+  }
+
+  @Test
+  public void testCloneIndependent() {
+    Family clone = this.family.clone();
+    clone.removeMember(2);
+    assertTrue(this.family.hasParents(2));
+    assertEquals(2, this.family.getRelation(0, 1).get().getChildren().size());
+    assertEquals(5, this.family.getMembersView().size());
+    assertNotEquals(this.family, clone);
+  }
+
+  @Test
+  public void testStreamPotentialChildren() {
+    setBirthYear(0, 1950);
+    setBirthYear(1, 1955);
+    setBirthYear(4, 1980);
+    // Same year as the youngest partner and incomplete, both dates are equal
+    addMember(1955, 6);
+    addMember(1940, -1);
+    addMember(-1, -1);
+
+    Relationship relation = this.family.getRelation(0, 1).get();
+    List<Long> ids = this.family.streamPotentialChildren(relation).map(FamilyMember::getId).collect(Collectors.toList());
+    assertEquals(Arrays.asList(4L, 7L), ids);
+    assertEquals(Collections.singletonList(7L),
+        this.family.streamPotentialChildren(relation).skip(1).limit(1).map(FamilyMember::getId).collect(Collectors.toList()));
+
+    // The index is rebuilt after members change.
+    setBirthYear(6, 1990);
+    ids = this.family.streamPotentialChildren(relation).map(FamilyMember::getId).collect(Collectors.toList());
+    assertEquals(Arrays.asList(4L, 6L, 7L), ids);
+    assertEquals(3, this.family.getPotentialChildren(relation).size());
+  }
+
+  @Test
+  public void testStreamPotentialChildrenWithoutDates() {
+    Relationship relation = this.family.getRelation(0, 1).get();
+    assertEquals(Collections.singleton(4L),
+        this.family.streamPotentialChildren(relation).map(FamilyMember::getId).collect(Collectors.toSet()));
+    assertEquals(5, this.family.streamPotentialChildren(null).count());
+  }
+
+  private void setBirthYear(long id, int year) {
+    FamilyMember m = this.family.getMember(id).get();
+    m.setBirthDate(date(year, -1));
+    this.family.updateMember(m);
+  }
+
+  private void addMember(int year, int month) {
+    this.family.addMember(new FamilyMember(null, "Smith", null, "Other", null, Gender.UNKNOW, date(year, month), null, null, null, false, null));
+  }
+
+  private static Date date(int year, int month) {
+    DateBuilder builder = new DateBuilder();
+    if (year >= 0)
+      builder.setYear(year);
+    if (month >= 0)
+      builder.setMonth(month);
+    return builder.getDate();
+  }
+
+  @Test
+  public void testDiff() {
+    Family previous = this.family.clone();
+    FamilyMember m = this.family.getMember(4).get();
+    m.setFirstName("Other");
+    this.family.updateMember(m);
+    this.family.removeMember(2);
+    this.family.addRelation(new Relationship(null, null, false, false, null, 3, 4, Collections.emptySet(), Collections.emptyMap()));
+
+    List<String> changes = new ArrayList<>();
+    this.family.diff(previous, new FamilyDiffHandler() {
+      @Override
+      public void memberAdded(FamilyMember member) {
+        changes.add("+m" + member.getId());
+      }
+
+      @Override
+      public void memberUpdated(FamilyMember old, FamilyMember member) {
+        changes.add("*m" + member.getId());
+      }
+
+      @Override
+      public void memberRemoved(FamilyMember old) {
+        changes.add("-m" + old.getId());
+      }
+
+      @Override
+      public void relationAdded(Relationship relation) {
+        changes.add("+r" + relation.getPartner1() + relation.getPartner2());
+      }
+
+      @Override
+      public void relationUpdated(Relationship old, Relationship relation) {
+        assertEquals(2, old.getChildren().size());
+        changes.add("*r" + relation.getPartner1() + relation.getPartner2());
+      }
+
+      @Override
+      public void relationRemoved(Relationship old) {
+        changes.add("-r" + old.getPartner1() + old.getPartner2());
+      }
+    });
+
+    Collections.sort(changes);
+    assertEquals(Arrays.asList("*m4", "*r01", "+r34", "-m2"), changes);
+  }
+}
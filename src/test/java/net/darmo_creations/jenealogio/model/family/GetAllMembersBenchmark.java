@@ -0,0 +1,39 @@
+package net.darmo_creations.jenealogio.model.family;
+
+import java.awt.image.BufferedImage;
+import java.util.ArrayList;
+import java.util.List;
+
+import net.darmo_creations.jenealogio.Benchmark;
+import net.darmo_creations.jenealogio.TreeGenerator;
+import net.darmo_creations.jenealogio.util.Images;
+
+/**
+ * Measures {@link Family#getAllMembers()} on trees of 1k, 10k and 100k members where one member out
+ * of 10 has a portrait. Members used to be hashed by encoding their image as PNG
+ * ({@link Images#hashCode(BufferedImage)}); the old cost is estimated as the current one plus that
+ * encoding for each portrait. Best of 5 rounds.
+ * <p>
+ * Run with: {@code java -Xmx3g -cp <classes> net.darmo_creations.jenealogio.model.family.GetAllMembersBenchmark}
+ * </p>
+ */
+public class GetAllMembersBenchmark {
+  public static void main(String[] args) throws Exception {
+    for (int size : new int[]{1_000, 10_000, 100_000}) {
+      Family family = TreeGenerator.generate(size, 10).getFamily();
+      List<BufferedImage> images = new ArrayList<>();
+      for (FamilyMember member : family.getMembersView())
+        member.getPortrait().ifPresent(portrait -> images.add(portrait.getImage()));
+
+      Benchmark.Result current = Benchmark.measure(5, () -> family.getAllMembers());
+      Benchmark.Result old = Benchmark.measure(5, () -> {
+        int hash = family.getAllMembers().size();
+        for (BufferedImage image : images)
+          hash += Images.hashCode(image);
+        return hash;
+      });
+
+      System.out.printf("%,7d members: PNG hashing %8.1f ms, fingerprints %6.1f ms%n", size, old.time / 1e6, current.time / 1e6);
+    }
+  }
+}
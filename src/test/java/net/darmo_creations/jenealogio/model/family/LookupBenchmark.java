@@ -0,0 +1,80 @@
+package net.darmo_creations.jenealogio.model.family;
+
+import java.util.Random;
+
+import net.darmo_creations.jenealogio.Benchmark;
+import net.darmo_creations.jenealogio.TreeGenerator;
+
+/**
+ * Measures the lookups done when a card is clicked on trees of 1k to 1M members: each lookup is
+ * done for 100,000 random members. For reference, the last column is the time of a linear scan of
+ * all members, as lookups were done before they were indexed, measured on 100 members. Best of 5
+ * rounds.
+ * <p>
+ * Run with: {@code java -Xmx3g -cp <classes> net.darmo_creations.jenealogio.model.family.LookupBenchmark}
+ * </p>
+ */
+public class LookupBenchmark {
+  private static final int LOOKUPS = 100_000;
+  private static final int SCANS = 100;
+
+  public static void main(String[] args) throws Exception {
+    System.out.println("members    getMember getRelation getRelations areInRelationship hasParents       scan (ns/lookup)");
+    for (int size : new int[]{1_000, 10_000, 100_000, 1_000_000}) {
+      Family family = TreeGenerator.generate(size, 0).getFamily();
+      Random random = new Random(0);
+      long[] ids = new long[LOOKUPS];
+      for (int i = 0; i < LOOKUPS; i++)
+        ids[i] = random.nextInt(size) & ~1;
+
+      double getMember = measure(() -> {
+        int n = 0;
+        for (long id : ids)
+          n += family.getMember(id).isPresent() ? 1 : 0;
+        return n;
+      });
+      double getRelation = measure(() -> {
+        int n = 0;
+        for (long id : ids)
+          n += family.getRelation(id, id + 1).isPresent() ? 1 : 0;
+        return n;
+      });
+      double getRelations = measure(() -> {
+        int n = 0;
+        for (long id : ids)
+          n += family.getRelations(id).size();
+        return n;
+      });
+      double areInRelationship = measure(() -> {
+        int n = 0;
+        for (long id : ids)
+          n += family.areInRelationship(id + 1, id) ? 1 : 0;
+        return n;
+      });
+      double hasParents = measure(() -> {
+        int n = 0;
+        for (long id : ids)
+          n += family.hasParents(id) ? 1 : 0;
+        return n;
+      });
+      double scan = (double) Benchmark.measure(5, () -> {
+        int n = 0;
+        for (int i = 0; i < SCANS; i++) {
+          long id = ids[i];
+          n += family.getMembersView().stream().filter(m -> m.getId() == id).findAny().isPresent() ? 1 : 0;
+        }
+        return n;
+      }).time / SCANS;
+
+      System.out.printf("%,9d %12.0f %11.0f %12.0f %17.0f %10.0f %10.0f%n", size, getMember, getRelation, getRelations, areInRelationship,
+          hasParents, scan);
+    }
+  }
+
+  /**
+   * @return the time per lookup in nanoseconds
+   */
+  private static double measure(Benchmark.Operation operation) throws Exception {
+    return (double) Benchmark.measure(5, operation).time / LOOKUPS;
+  }
+}
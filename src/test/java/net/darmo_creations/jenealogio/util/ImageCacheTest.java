@@ -0,0 +1,63 @@
+package net.darmo_creations.jenealogio.util;
+
+import static org.junit.Assert.*;
+
+import java.awt.image.BufferedImage;
+
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Test;
+
+public class ImageCacheTest {
+  /** Size of a 10x10 RGB image */
+  private static final long IMAGE_SIZE = 400;
+
+  private ImageCache<Integer> cache;
+
+  @Before
+  public void setUp() throws Exception {
+    this.cache = new ImageCache<>(3 * IMAGE_SIZE);
+  }
+
+  @After
+  public void tearDown() throws Exception {
+    this.cache = null;
+  }
+
+  @Test
+  public void testSizeOf() {
+    assertEquals(IMAGE_SIZE, ImageCache.sizeOf(newImage()));
+  }
+
+  @Test
+  public void testLeastRecentlyUsedRemoved() {
+    for (int i = 0; i < 3; i++)
+      this.cache.put(i, newImage());
+    this.cache.get(0);
+    this.cache.put(3, newImage());
+    assertNotNull(this.cache.get(0));
+    assertNull(this.cache.get(1));
+    assertNotNull(this.cache.get(3));
+    assertEquals(3 * IMAGE_SIZE, this.cache.getSize());
+  }
+
+  @Test
+  public void testSetCapacity() {
+    for (int i = 0; i < 3; i++)
+      this.cache.put(i, newImage());
+    this.cache.setCapacity(IMAGE_SIZE);
+    assertEquals(IMAGE_SIZE, this.cache.getSize());
+    assertNotNull(this.cache.get(2));
+  }
+
+  @Test
+  public void testTooBigNotCached() {
+    this.cache.put(0, new BufferedImage(100, 100, BufferedImage.TYPE_INT_RGB));
+    assertNull(this.cache.get(0));
+    assertEquals(0, this.cache.getSize());
+  }
+
+  private static BufferedImage newImage() {
+    return new BufferedImage(10, 10, BufferedImage.TYPE_INT_RGB);
+  }
+}
@@ -0,0 +1,92 @@
+package net.darmo_creations.jenealogio.util;
+
+import static org.junit.Assert.*;
+
+import java.util.Arrays;
+import java.util.HashSet;
+import java.util.Random;
+import java.util.Set;
+
+import org.junit.Before;
+import org.junit.Test;
+
+public class LongHashSetTest {
+  private LongHashSet set;
+
+  @Before
+  public void setUp() throws Exception {
+    this.set = new LongHashSet();
+  }
+
+  @Test
+  public void testAddContains() {
+    assertTrue(this.set.add(3));
+    assertFalse(this.set.add(3));
+    assertTrue(this.set.contains(3));
+    assertFalse(this.set.contains(4));
+    assertEquals(1, this.set.size());
+  }
+
+  @Test
+  public void testZero() {
+    assertFalse(this.set.contains(0));
+    this.set.add(0);
+    assertTrue(this.set.contains(0));
+    assertArrayEquals(new long[]{0}, this.set.toKeyArray());
+    assertTrue(this.set.remove(0));
+    assertTrue(this.set.isEmpty());
+  }
+
+  @Test
+  public void testAgainstHashSet() {
+    Random random = new Random(42);
+    Set<Long> expected = new HashSet<>();
+
+    // Small key range so that removals often shift colliding keys
+    for (int i = 0; i < 100000; i++) {
+      long key = random.nextInt(2000) - 100;
+      if (random.nextInt(3) == 0)
+        assertEquals(expected.remove(key), this.set.remove(key));
+      else
+        assertEquals(expected.add(key), this.set.add(key));
+    }
+
+    assertEquals(expected.size(), this.set.size());
+    for (long key = -100; key < 1900; key++)
+      assertEquals(expected.contains(key), this.set.contains(key));
+    long[] keys = this.set.toKeyArray();
+    Arrays.sort(keys);
+    assertArrayEquals(expected.stream().mapToLong(Long::longValue).sorted().toArray(), keys);
+  }
+
+  @Test
+  public void testEquals() {
+    LongHashSet other = new LongHashSet(Arrays.asList(1L, 2L, 0L));
+    this.set.add(0);
+    this.set.add(2);
+    this.set.add(1);
+    assertEquals(other, this.set);
+    assertEquals(other.hashCode(), this.set.hashCode());
+    this.set.remove(1);
+    assertNotEquals(other, this.set);
+  }
+
+  @Test
+  public void testCopy() {
+    this.set.add(5);
+    LongHashSet copy = new LongHashSet(this.set);
+    copy.add(6);
+    assertFalse(this.set.contains(6));
+    assertTrue(copy.contains(5));
+  }
+
+  @Test
+  public void testClear() {
+    for (long i = 0; i < 100; i++)
+      this.set.add(i);
+    this.set.clear();
+    assertTrue(this.set.isEmpty());
+    assertFalse(this.set.contains(0));
+    assertFalse(this.set.contains(50));
+  }
+}
@@ -0,0 +1,56 @@
+package net.darmo_creations.jenealogio.util;
+
+import static org.junit.Assert.*;
+
+import java.util.Collections;
+
+import org.junit.Before;
+import org.junit.Test;
+
+public class LongObjectMapTest {
+  private LongObjectMap<String> map;
+
+  @Before
+  public void setUp() throws Exception {
+    this.map = new LongObjectMap<>();
+  }
+
+  @Test
+  public void testNullValues() {
+    this.map.put(1, null);
+    assertTrue(this.map.containsKey(1));
+    assertNull(this.map.get(1));
+    assertFalse(this.map.containsKey(2));
+  }
+
+  @Test
+  public void testGrowth() {
+    for (long i = 0; i < 1000; i++)
+      this.map.put(i * 7, "v" + i);
+    assertEquals(1000, this.map.size());
+    for (long i = 0; i < 1000; i++)
+      assertEquals("v" + i, this.map.get(i * 7));
+  }
+
+  @Test
+  public void testRemove() {
+    this.map.put(1, "a");
+    this.map.put(2, "b");
+    assertTrue(this.map.remove(1));
+    assertFalse(this.map.remove(1));
+    assertNull(this.map.get(1));
+    assertEquals("b", this.map.get(2));
+  }
+
+  @Test
+  public void testEquals() {
+    this.map.put(5, "a");
+    this.map.put(6, null);
+    LongObjectMap<String> other = new LongObjectMap<>(this.map);
+    assertEquals(this.map, other);
+    assertEquals(this.map.hashCode(), other.hashCode());
+    other.put(6, "b");
+    assertNotEquals(this.map, other);
+    assertEquals(new LongObjectMap<>(Collections.singletonMap(5L, "a")).get(5), "a");
+  }
+}
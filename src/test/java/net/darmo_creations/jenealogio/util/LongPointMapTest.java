@@ -0,0 +1,70 @@
+package net.darmo_creations.jenealogio.util;
+
+import static org.junit.Assert.*;
+
+import java.awt.Point;
+import java.util.HashMap;
+import java.util.Map;
+import java.util.Random;
+
+import org.junit.Before;
+import org.junit.Test;
+
+public class LongPointMapTest {
+  private LongPointMap map;
+
+  @Before
+  public void setUp() throws Exception {
+    this.map = new LongPointMap();
+  }
+
+  @Test
+  public void testNegativeCoordinates() {
+    this.map.put(1, -5, Integer.MIN_VALUE);
+    this.map.put(0, Integer.MAX_VALUE, -1);
+    assertEquals(new Point(-5, Integer.MIN_VALUE), this.map.get(1));
+    assertEquals(new Point(Integer.MAX_VALUE, -1), this.map.get(0));
+    assertNull(this.map.get(2));
+  }
+
+  @Test
+  public void testGetReturnsCopy() {
+    this.map.put(1, new Point(1, 2));
+    this.map.get(1).translate(5, 5);
+    assertEquals(new Point(1, 2), this.map.get(1));
+  }
+
+  @Test
+  public void testAgainstHashMap() {
+    Random random = new Random(42);
+    Map<Long, Point> expected = new HashMap<>();
+
+    for (int i = 0; i < 50000; i++) {
+      long key = random.nextInt(1000);
+      if (random.nextInt(4) == 0) {
+        assertEquals(expected.remove(key) != null, this.map.remove(key));
+      }
+      else {
+        Point p = new Point(random.nextInt(), random.nextInt());
+        expected.put(key, p);
+        this.map.put(key, p);
+      }
+    }
+
+    assertEquals(expected.size(), this.map.size());
+    expected.forEach((key, p) -> assertEquals(p, this.map.get(key)));
+    this.map.forEach((key, x, y) -> assertEquals(expected.get(key), new Point(x, y)));
+  }
+
+  @Test
+  public void testEquals() {
+    LongPointMap other = new LongPointMap();
+    other.put(1, 2, 3);
+    this.map.put(1, 2, 3);
+    assertEquals(other, this.map);
+    assertEquals(other.hashCode(), this.map.hashCode());
+    this.map.put(1, 2, 4);
+    assertNotEquals(other, this.map);
+    assertEquals(other, new LongPointMap(other));
+  }
+}
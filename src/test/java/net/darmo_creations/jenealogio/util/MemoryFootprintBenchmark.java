@@ -0,0 +1,80 @@
+package net.darmo_creations.jenealogio.util;
+
+import java.awt.Point;
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+
+import net.darmo_creations.jenealogio.Benchmark;
+import net.darmo_creations.jenealogio.TreeGenerator;
+import net.darmo_creations.jenealogio.model.FamilyEdit;
+import net.darmo_creations.jenealogio.model.family.Relationship;
+
+/**
+ * Measures the heap retained by a 100k-member tree without portraits, then by its cards' positions
+ * and its relations' children stored in primitive collections and in boxed collections. Sizes are
+ * differences of the used heap after full garbage collections.
+ * <p>
+ * Run with: {@code java -XX:+UseSerialGC -Xmx3g -cp <classes> net.darmo_creations.jenealogio.util.MemoryFootprintBenchmark}
+ * </p>
+ */
+public class MemoryFootprintBenchmark {
+  private static final int MEMBERS = 100_000;
+
+  /** Measured objects are kept here while the heap is measured. */
+  private static Object kept;
+
+  public static void main(String[] args) throws Exception {
+    FamilyEdit[] edit = new FamilyEdit[1];
+    long tree = footprint(() -> edit[0] = TreeGenerator.generate(MEMBERS, 0));
+    LongPointMap locations = edit[0].getLocations();
+    List<Relationship> relations = new ArrayList<>(edit[0].getFamily().getRelationsView());
+    int children = relations.stream().mapToInt(r -> r.getChildrenIds().length).sum();
+
+    long points = footprint(() -> new LongPointMap(locations));
+    long boxedPoints = footprint(() -> {
+      Map<Long, Point> map = new HashMap<>();
+      locations.forEach((id, x, y) -> map.put(id, new Point(x, y)));
+      return map;
+    });
+    long sets = footprint(() -> {
+      List<LongHashSet> list = new ArrayList<>(relations.size());
+      for (Relationship relation : relations) {
+        LongHashSet set = new LongHashSet();
+        for (long id : relation.getChildrenIds())
+          set.add(id);
+        list.add(set);
+      }
+      return list;
+    });
+    long boxedSets = footprint(() -> {
+      List<Set<Long>> list = new ArrayList<>(relations.size());
+      for (Relationship relation : relations) {
+        Set<Long> set = new HashSet<>();
+        for (long id : relation.getChildrenIds())
+          set.add(id);
+        list.add(set);
+      }
+      return list;
+    });
+
+    System.out.printf("Tree of %,d members and %,d relations: %.1f MB%n", MEMBERS, relations.size(), tree / 1e6);
+    System.out.printf("Positions of %,d cards: LongPointMap %.1f MB, HashMap<Long, Point> %.1f MB%n", locations.size(), points / 1e6,
+        boxedPoints / 1e6);
+    System.out.printf("Children (%,d ids): LongHashSet %.1f MB, HashSet<Long> %.1f MB%n", children, sets / 1e6, boxedSets / 1e6);
+  }
+
+  /**
+   * @return the number of bytes retained by the object created by the operation
+   */
+  private static long footprint(Benchmark.Operation operation) throws Exception {
+    long before = Benchmark.usedHeap();
+    kept = operation.run();
+    long size = Benchmark.usedHeap() - before;
+    kept = null;
+    return size;
+  }
+}
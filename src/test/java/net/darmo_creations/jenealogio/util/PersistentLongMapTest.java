@@ -0,0 +1,199 @@
+package net.darmo_creations.jenealogio.util;
+
+import static org.junit.Assert.*;
+
+import java.util.HashMap;
+import java.util.Map;
+import java.util.Random;
+
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Test;
+
+public class PersistentLongMapTest {
+  private PersistentLongMap<String> map;
+
+  @Before
+  public void setUp() throws Exception {
+    this.map = PersistentLongMap.empty();
+    for (long i = 0; i < 100; i++)
+      this.map = this.map.put(i, "v" + i);
+  }
+
+  @After
+  public void tearDown() throws Exception {
+    this.map = null;
+  }
+
+  @Test
+  public void testGet() {
+    assertEquals(100, this.map.size());
+    assertEquals("v42", this.map.get(42));
+    assertNull(this.map.get(100));
+    assertNull(this.map.get(-1));
+  }
+
+  @Test
+  public void testPutDoesNotModify() {
+    PersistentLongMap<String> m = this.map.put(42, "other");
+    assertEquals("v42", this.map.get(42));
+    assertEquals("other", m.get(42));
+    assertEquals(100, m.size());
+  }
+
+  @Test
+  public void testRemoveDoesNotModify() {
+    PersistentLongMap<String> m = this.map.remove(42);
+    assertEquals("v42", this.map.get(42));
+    assertNull(m.get(42));
+    assertEquals(99, m.size());
+    assertSame(m, m.remove(42));
+  }
+
+  @Test
+  public void testRemoveAll() {
+    PersistentLongMap<String> m = this.map;
+    for (long i = 0; i < 100; i++)
+      m = m.remove(i);
+    assertTrue(m.isEmpty());
+    assertFalse(m.iterator().hasNext());
+  }
+
+  @Test
+  public void testEquals() {
+    PersistentLongMap<String> m = PersistentLongMap.empty();
+    for (long i = 99; i >= 0; i--)
+      m = m.put(i, "v" + i);
+    assertEquals(this.map, m);
+    assertEquals(this.map.hashCode(), m.hashCode());
+    assertNotEquals(this.map, m.put(3, "other"));
+  }
+
+  @Test
+  public void testEqualsRandomMaps() {
+    Random random = new Random(0);
+
+    for (int i = 0; i < 200; i++) {
+      Map<Long, Long> expected1 = new HashMap<>();
+      Map<Long, Long> expected2 = new HashMap<>();
+      PersistentLongMap<Long> m1 = PersistentLongMap.empty();
+      PersistentLongMap<Long> m2 = PersistentLongMap.empty();
+
+      for (int j = 0; j < 50; j++) {
+        long key = random.nextInt(64) << random.nextInt(40);
+        m1 = m1.put(key, key % 3);
+        expected1.put(key, key % 3);
+        if (random.nextInt(20) != 0) {
+          m2 = m2.put(key, key % 3);
+          expected2.put(key, key % 3);
+        }
+        if (random.nextInt(4) == 0) {
+          long removed = random.nextInt(64) << random.nextInt(40);
+          m1 = m1.remove(removed);
+          m2 = m2.remove(removed);
+          expected1.remove(removed);
+          expected2.remove(removed);
+        }
+      }
+
+      assertEquals(expected1.equals(expected2), m1.equals(m2));
+      assertEquals(expected1.equals(expected2), m2.equals(m1));
+    }
+  }
+
+  @Test
+  public void testRandomKeys() {
+    Random random = new Random(0);
+    Map<Long, Long> expected = new HashMap<>();
+    PersistentLongMap<Long> m = PersistentLongMap.empty();
+
+    for (int i = 0; i < 10000; i++) {
+      long key = random.nextLong() >> random.nextInt(64);
+      if (random.nextInt(3) == 0) {
+        expected.remove(key);
+        m = m.remove(key);
+      }
+      else {
+        expected.put(key, (long) i);
+        m = m.put(key, (long) i);
+      }
+    }
+
+    assertEquals(expected.size(), m.size());
+    Map<Long, Long> actual = new HashMap<>();
+    m.forEach(e -> actual.put(e.getKey(), e.getValue()));
+    assertEquals(expected, actual);
+  }
+
+  @Test
+  public void testDiff() {
+    PersistentLongMap<String> m = this.map.put(3, "other").remove(42).put(100, "v100").put(1L << 40, "far");
+    Map<Long, String> added = new HashMap<>();
+    Map<Long, String> changed = new HashMap<>();
+    Map<Long, String> removed = new HashMap<>();
+
+    m.diff(this.map, new PersistentLongMap.DiffHandler<String>() {
+      @Override
+      public void added(long key, String value) {
+        added.put(key, value);
+      }
+
+      @Override
+      public void changed(long key, String previous, String value) {
+        assertEquals("v" + key, previous);
+        changed.put(key, value);
+      }
+
+      @Override
+      public void removed(long key, String previous) {
+        removed.put(key, previous);
+      }
+    });
+
+    assertEquals(2, added.size());
+    assertEquals("v100", added.get(100L));
+    assertEquals("far", added.get(1L << 40));
+    assertEquals(1, changed.size());
+    assertEquals("other", changed.get(3L));
+    assertEquals(1, removed.size());
+    assertEquals("v42", removed.get(42L));
+  }
+
+  @Test
+  public void testDiffUnrelatedMaps() {
+    Random random = new Random(0);
+    PersistentLongMap<Long> m1 = PersistentLongMap.empty();
+    PersistentLongMap<Long> m2 = PersistentLongMap.empty();
+
+    for (long i = 0; i < 1000; i++) {
+      long key = random.nextInt(2000);
+      if (random.nextBoolean())
+        m1 = m1.put(key, key);
+      else
+        m2 = m2.put(key, key);
+    }
+
+    Map<Long, Long> actual = new HashMap<>();
+    m1.forEach(e -> actual.put(e.getKey(), e.getValue()));
+    m2.diff(m1, new PersistentLongMap.DiffHandler<Long>() {
+      @Override
+      public void added(long key, Long value) {
+        assertNull(actual.put(key, value));
+      }
+
+      @Override
+      public void changed(long key, Long previous, Long value) {
+        assertSame(previous, actual.put(key, value));
+      }
+
+      @Override
+      public void removed(long key, Long previous) {
+        assertSame(previous, actual.remove(key));
+      }
+    });
+
+    Map<Long, Long> expected = new HashMap<>();
+    m2.forEach(e -> expected.put(e.getKey(), e.getValue()));
+    assertEquals(expected, actual);
+  }
+}
@@ -0,0 +1,45 @@
+package net.darmo_creations.jenealogio.util;
+
+import static org.junit.Assert.*;
+
+import java.awt.image.BufferedImage;
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.util.Random;
+
+import javax.imageio.ImageIO;
+
+import org.junit.Test;
+
+public class PngStripWriterTest {
+  @Test
+  public void testWriteStrips() throws IOException {
+    Random random = new Random(0);
+    BufferedImage expected = new BufferedImage(70, 45, BufferedImage.TYPE_INT_RGB);
+    for (int y = 0; y < expected.getHeight(); y++)
+      for (int x = 0; x < expected.getWidth(); x++)
+        expected.setRGB(x, y, x < 35 ? 0xFFFFFF : random.nextInt());
+
+    ByteArrayOutputStream out = new ByteArrayOutputStream();
+    try (PngStripWriter writer = new PngStripWriter(out, 70, 45)) {
+      writer.writeStrip(expected.getSubimage(0, 0, 70, 20));
+      writer.writeStrip(expected.getSubimage(0, 20, 70, 20));
+      writer.writeStrip(expected.getSubimage(0, 40, 70, 5));
+    }
+
+    BufferedImage actual = ImageIO.read(new ByteArrayInputStream(out.toByteArray()));
+    assertEquals(70, actual.getWidth());
+    assertEquals(45, actual.getHeight());
+    for (int y = 0; y < expected.getHeight(); y++)
+      for (int x = 0; x < expected.getWidth(); x++)
+        assertEquals(expected.getRGB(x, y) & 0xFFFFFF, actual.getRGB(x, y) & 0xFFFFFF);
+  }
+
+  @Test(expected = IOException.class)
+  public void testMissingRows() throws IOException {
+    try (PngStripWriter writer = new PngStripWriter(new ByteArrayOutputStream(), 10, 10)) {
+      writer.writeStrip(new BufferedImage(10, 5, BufferedImage.TYPE_INT_RGB));
+    }
+  }
+}
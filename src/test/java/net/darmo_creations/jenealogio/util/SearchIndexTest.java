@@ -0,0 +1,56 @@
+package net.darmo_creations.jenealogio.util;
+
+import static org.junit.Assert.*;
+
+import java.util.Arrays;
+import java.util.function.Function;
+
+import org.junit.Before;
+import org.junit.Test;
+
+public class SearchIndexTest {
+  private SearchIndex<String> index;
+
+  @Before
+  public void setUp() throws Exception {
+    this.index = new SearchIndex<>(Arrays.asList("Jean Dupont", "Hélène Durand", "Anna Smith", "Annabelle Dupond", "Bob"),
+        Function.identity());
+  }
+
+  @Test
+  public void testEmptyQueryMatchesAll() {
+    assertArrayEquals(new int[]{0, 1, 2, 3, 4}, this.index.search(""));
+    assertArrayEquals(new int[]{0, 1, 2, 3, 4}, this.index.search(null));
+  }
+
+  @Test
+  public void testShortQuery() {
+    assertArrayEquals(new int[]{0, 1, 3}, this.index.search("du"));
+    assertArrayEquals(new int[]{4}, this.index.search("bo"));
+  }
+
+  @Test
+  public void testSubstring() {
+    assertArrayEquals(new int[]{0, 3}, this.index.search("dupon"));
+    assertArrayEquals(new int[]{2, 3}, this.index.search("anna"));
+    assertArrayEquals(new int[]{0}, this.index.search("n dup"));
+  }
+
+  @Test
+  public void testIgnoresCaseAndAccents() {
+    assertArrayEquals(new int[]{1}, this.index.search("HELENE"));
+    assertArrayEquals(new int[]{1}, this.index.search("hélè"));
+  }
+
+  @Test
+  public void testNoMatch() {
+    assertEquals(0, this.index.search("xyz").length);
+    assertEquals(0, this.index.search("dupontt").length);
+  }
+
+  @Test
+  public void testIndexOfUsesIdentity() {
+    assertEquals(4, this.index.indexOf("Bob"));
+    assertEquals(-1, this.index.indexOf(new String("Bob")));
+  }
+}